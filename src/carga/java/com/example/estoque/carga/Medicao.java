@@ -0,0 +1,76 @@
+package com.example.estoque.carga;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencias e respostas de uma {@link Operacao}, em microssegundos.
+ *
+ * <p>{@code corrigida} conta do instante em que a requisicao deveria ter saido pelo ritmo
+ * configurado, e nao de quando saiu: se o servidor (ou o proprio gerador) atrasa, a espera das
+ * requisicoes seguintes entra na latencia em vez de sumir da medicao (coordinated omission).
+ * {@code servico} conta so do envio a resposta, para comparar.
+ */
+final class Medicao {
+
+    private final Histogram corrigida = new ConcurrentHistogram(3);
+    private final Histogram servico = new ConcurrentHistogram(3);
+    private final LongAdder sucessos = new LongAdder();
+    private final Map<Integer, LongAdder> falhasPorStatus = new ConcurrentHashMap<>();
+
+    /**
+     * @param status status HTTP, ou {@code -1} se a requisicao falhou sem resposta
+     */
+    void registrar(int status, long previstoNanos, long envioNanos, long fimNanos) {
+        corrigida.recordValue(Math.max((fimNanos - previstoNanos) / 1000, 0));
+        servico.recordValue(Math.max((fimNanos - envioNanos) / 1000, 0));
+        if (status >= 200 && status < 300) {
+            sucessos.increment();
+        } else {
+            falhasPorStatus.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Resumo da janela medida; latencias em milissegundos.
+     */
+    Map<String, Object> resumo(double segundos) {
+        long requisicoes = corrigida.getTotalCount();
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("requisicoes", requisicoes);
+        resumo.put("falhas", requisicoes - sucessos.sum());
+        Map<String, Long> porStatus = new LinkedHashMap<>();
+        falhasPorStatus.forEach((status, total) -> porStatus.put(String.valueOf(status), total.sum()));
+        resumo.put("falhasPorStatus", porStatus);
+        // so as respondidas com sucesso: no modelo aberto as enviadas por segundo sao sempre o rps pedido
+        resumo.put("vazao", sucessos.sum() / segundos);
+        resumo.put("p50", ms(corrigida.getValueAtPercentile(50)));
+        resumo.put("p99", ms(corrigida.getValueAtPercentile(99)));
+        resumo.put("p999", ms(corrigida.getValueAtPercentile(99.9)));
+        resumo.put("max", ms(corrigida.getMaxValue()));
+        resumo.put("p99Servico", ms(servico.getValueAtPercentile(99)));
+        return resumo;
+    }
+
+    /**
+     * Grava a distribuicao corrigida no formato {@code .hgrm}, que o HdrHistogram plota.
+     */
+    void gravarDistribuicao(Path arquivo) throws IOException {
+        try (PrintStream saida = new PrintStream(Files.newOutputStream(arquivo))) {
+            corrigida.outputPercentileDistribution(saida, 1000.0);
+        }
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.estoque.carga;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+
+/**
+ * Requisicoes da carga mista. Os produtos do catalogo semeado se chamam {@code carga-<posicao>}.
+ */
+enum Operacao {
+
+    /**
+     * Pedido de uma unidade: {@code POST /estoque/atualizar}.
+     */
+    ATUALIZAR {
+        @Override
+        HttpRequest requisicao(URI base, long id, int posicao) {
+            return json(base.resolve("/estoque/atualizar"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"itens\":[{\"id\":" + id + ",\"qtd\":1}]}"))
+                    .build();
+        }
+    },
+
+    /**
+     * Leitura por nome: {@code GET /estoque/{nome}}.
+     */
+    LER {
+        @Override
+        HttpRequest requisicao(URI base, long id, int posicao) {
+            return HttpRequest.newBuilder(base.resolve("/estoque/" + TesteDeCarga.nome(posicao))).GET().build();
+        }
+    },
+
+    /**
+     * Edicao administrativa do produto inteiro, reabastecendo o estoque: {@code PUT /produtos/{id}}.
+     */
+    EDITAR {
+        @Override
+        HttpRequest requisicao(URI base, long id, int posicao) {
+            String corpo = "{\"nome\":\"" + TesteDeCarga.nome(posicao) + "\",\"descricao\":\"editado pela carga\","
+                    + "\"preco\":" + (1 + posicao % 100) + ",\"qtd\":" + TesteDeCarga.QTD_INICIAL + "}";
+            return json(base.resolve("/produtos/" + id)).PUT(HttpRequest.BodyPublishers.ofString(corpo)).build();
+        }
+    };
+
+    abstract HttpRequest requisicao(URI base, long id, int posicao);
+
+    String nome() {
+        return name().toLowerCase();
+    }
+
+    private static HttpRequest.Builder json(URI uri) {
+        return HttpRequest.newBuilder(uri).header("Content-Type", "application/json");
+    }
+}
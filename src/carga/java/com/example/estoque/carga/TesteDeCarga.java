@@ -0,0 +1,337 @@
+package com.example.estoque.carga;
+
+import com.example.estoque.EstoqueApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Teste de carga da API inteira: semeia o catalogo num H2 em memoria proprio, sobe a aplicacao
+ * sobre ele numa porta livre e dispara uma carga mista em modelo aberto (as requisicoes saem no ritmo
+ * configurado, cada uma numa thread virtual, quer as anteriores tenham respondido ou nao).
+ *
+ * <p>Parametros {@code chave=valor} (todos opcionais):
+ * <ul>
+ *   <li>{@code rps=200} requisicoes por segundo, somando as operacoes</li>
+ *   <li>{@code duracao=30s} e {@code aquecimento=10s}; o aquecimento nao entra na medicao</li>
+ *   <li>{@code mix=atualizar:60,ler:35,editar:5} peso de cada {@link Operacao}</li>
+ *   <li>{@code produtos=10000} e {@code zipf=1.0} tamanho do catalogo e concentracao dos pedidos</li>
+ *   <li>{@code em-voo=2000} maximo de requisicoes sem resposta; acima disso o gerador espera, e a espera
+ *       entra na latencia corrigida</li>
+ *   <li>{@code resultado=target/carga-resultado.json}, {@code baseline=src/carga/baseline.json},
+ *       {@code tolerancia=0.10} e {@code gravar-baseline=false}</li>
+ *   <li>{@code max-falhas=0.01} fracao maxima de respostas sem sucesso em cada operacao</li>
+ *   <li>{@code app.<propriedade>=<valor>} repassado a aplicacao, ex.: {@code app.estoque.ledger.enabled=true}</li>
+ * </ul>
+ *
+ * <p>Termina com codigo 1 se alguma operacao falhar acima de {@code max-falhas} (e entao nao grava
+ * baseline) ou, com um baseline gravado, se a vazao de alguma operacao cair ou o p50/p99 subir mais
+ * que a tolerancia. Gerador e aplicacao dividem a mesma JVM e a mesma CPU.
+ */
+public final class TesteDeCarga {
+
+    static final int QTD_INICIAL = 1_000_000;
+
+    private static final int LOTE = 10_000;
+
+    private static final String BANCO = "jdbc:h2:mem:carga";
+    private static final String LEDGER = "target/carga-ledger.journal";
+
+    private final Map<String, String> parametros;
+    private final double rps;
+    private final Duration duracao;
+    private final Duration aquecimento;
+    private final Map<Operacao, Integer> mix;
+    private final int produtos;
+    private final Zipf zipf;
+    private final int emVoo;
+
+    private final Map<Operacao, Medicao> medicoes = new EnumMap<>(Operacao.class);
+    // maior atraso do gerador em relacao ao ritmo; alto demais indica que a medicao nao e confiavel
+    private final AtomicLong atrasoMaximo = new AtomicLong();
+
+    private TesteDeCarga(Map<String, String> parametros) {
+        this.parametros = parametros;
+        this.rps = Double.parseDouble(parametros.getOrDefault("rps", "200"));
+        this.duracao = DurationStyle.detectAndParse(parametros.getOrDefault("duracao", "30s"));
+        this.aquecimento = DurationStyle.detectAndParse(parametros.getOrDefault("aquecimento", "10s"));
+        this.mix = mix(parametros.getOrDefault("mix", "atualizar:60,ler:35,editar:5"));
+        this.produtos = Integer.parseInt(parametros.getOrDefault("produtos", "10000"));
+        this.zipf = new Zipf(produtos, Double.parseDouble(parametros.getOrDefault("zipf", "1.0")));
+        this.emVoo = Integer.parseInt(parametros.getOrDefault("em-voo", "2000"));
+        mix.keySet().forEach(operacao -> medicoes.put(operacao, new Medicao()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        for (String argumento : args) {
+            int separador = argumento.indexOf('=');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Parâmetro sem chave=valor: " + argumento);
+            }
+            parametros.put(argumento.substring(0, separador), argumento.substring(separador + 1));
+        }
+        System.exit(new TesteDeCarga(parametros).executar());
+    }
+
+    static String nome(int posicao) {
+        return "carga-" + posicao;
+    }
+
+    private int executar() throws Exception {
+        // a conexao aberta mantem o banco em memoria vivo ate o fim; a aplicacao sobe com o catalogo
+        // ja semeado, porque ledger, armazens, busca, alertas e resumo carregam os produtos na subida
+        try (Connection banco = DriverManager.getConnection(BANCO, "sa", "")) {
+            long[] ids = semear(banco);
+            try (ConfigurableApplicationContext contexto = iniciarAplicacao()) {
+                URI base = URI.create("http://localhost:" + contexto.getEnvironment().getProperty("local.server.port"));
+                System.out.printf("%nCarga: %.0f req/s por %s (+%s de aquecimento), mix %s, %d produtos%n",
+                        rps, duracao, aquecimento, mix, produtos);
+                disparar(base, ids);
+            }
+        }
+
+        Map<String, Object> resultado = resultado();
+        imprimir(resultado);
+        ObjectMapper json = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Path arquivo = Paths.get(parametros.getOrDefault("resultado", "target/carga-resultado.json"));
+        Files.createDirectories(arquivo.toAbsolutePath().getParent());
+        json.writeValue(arquivo.toFile(), resultado);
+        for (Map.Entry<Operacao, Medicao> medicao : medicoes.entrySet()) {
+            medicao.getValue().gravarDistribuicao(arquivo.resolveSibling("carga-" + medicao.getKey().nome() + ".hgrm"));
+        }
+        System.out.println("Resultado gravado em " + arquivo);
+
+        if (!dentroDoLimiteDeFalhas(resultado)) {
+            return 1;
+        }
+        Path baseline = Paths.get(parametros.getOrDefault("baseline", "src/carga/baseline.json"));
+        if (Boolean.parseBoolean(parametros.getOrDefault("gravar-baseline", "false"))) {
+            json.writeValue(baseline.toFile(), resultado);
+            System.out.println("Baseline gravado em " + baseline);
+            return 0;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("Sem baseline em " + baseline + "; grave um com gravar-baseline=true");
+            return 0;
+        }
+        return comparar(json.readValue(baseline.toFile(), Map.class), resultado) ? 0 : 1;
+    }
+
+    private ConfigurableApplicationContext iniciarAplicacao() {
+        // como argumentos de linha de comando, para terem precedencia sobre o application.properties
+        List<String> argumentos = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + BANCO,
+                // journal proprio: baixas de uma execucao anterior nao podem ser reaplicadas neste banco
+                "--estoque.ledger.journal=" + LEDGER,
+                "--spring.h2.console.enabled=false",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--logging.level.root=WARN"));
+        parametros.forEach((chave, valor) -> {
+            if (chave.startsWith("app.")) {
+                argumentos.add("--" + chave.substring(4) + "=" + valor);
+            }
+        });
+        return new SpringApplicationBuilder(EstoqueApplication.class)
+                .logStartupInfo(false)
+                .run(argumentos.toArray(String[]::new));
+    }
+
+    // direto por JDBC, com o esquema de schema-inicio-rapido.sql: o catalogo grande nao precisa
+    // passar pelos eventos de cadastro
+    private long[] semear(Connection banco) throws IOException {
+        ScriptUtils.executeSqlScript(banco, new ClassPathResource("schema-inicio-rapido.sql"));
+        Files.deleteIfExists(Paths.get(LEDGER));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(banco, true));
+        List<Object[]> lote = new ArrayList<>(LOTE);
+        for (int i = 0; i < produtos; i++) {
+            lote.add(new Object[]{nome(i), "produto da carga " + i, 1.0 + i % 100, QTD_INICIAL});
+            if (lote.size() == LOTE || i == produtos - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO produto (id, nome, descricao, preco, qtd) "
+                        + "VALUES (NEXT VALUE FOR produto_seq, ?, ?, ?, ?)", lote);
+                lote.clear();
+            }
+        }
+        // posicao i do Zipf -> produto carga-i
+        return jdbcTemplate.queryForList("SELECT id FROM produto WHERE nome LIKE 'carga-%' ORDER BY id", Long.class)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private void disparar(URI base, long[] ids) throws InterruptedException {
+        List<Operacao> sorteio = new ArrayList<>();
+        mix.forEach((operacao, peso) -> {
+            for (int i = 0; i < peso; i++) {
+                sorteio.add(operacao);
+            }
+        });
+        SplittableRandom aleatorio = new SplittableRandom(42);
+        Semaphore semResposta = new Semaphore(emVoo);
+
+        try (ExecutorService virtuais = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient cliente = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build()) {
+            long inicio = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            long inicioMedicao = inicio + aquecimento.toNanos();
+            long fim = inicioMedicao + duracao.toNanos();
+            for (long i = 0; ; i++) {
+                // o horario previsto vem do indice, e nao do anterior: atrasos nao se acumulam no ritmo
+                long previsto = inicio + (long) (i * 1e9 / rps);
+                if (previsto >= fim) {
+                    break;
+                }
+                for (long falta = previsto - System.nanoTime(); falta > 0; falta = previsto - System.nanoTime()) {
+                    LockSupport.parkNanos(falta);
+                }
+                semResposta.acquireUninterruptibly();
+                boolean medir = previsto >= inicioMedicao;
+                if (medir) {
+                    atrasoMaximo.accumulateAndGet(System.nanoTime() - previsto, Math::max);
+                }
+
+                Operacao operacao = sorteio.get(aleatorio.nextInt(sorteio.size()));
+                int posicao = zipf.sortear(aleatorio);
+                virtuais.submit(() -> {
+                    try {
+                        long envio = System.nanoTime();
+                        int status;
+                        try {
+                            status = cliente.send(operacao.requisicao(base, ids[posicao], posicao),
+                                    HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (IOException e) {
+                            status = -1;
+                        }
+                        if (medir) {
+                            medicoes.get(operacao).registrar(status, previsto, envio, System.nanoTime());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        semResposta.release();
+                    }
+                });
+            }
+            virtuais.shutdown();
+            if (!virtuais.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Requisições ainda sem resposta um minuto depois do fim da carga");
+            }
+        }
+    }
+
+    private Map<String, Object> resultado() {
+        double segundos = duracao.toNanos() / 1e9;
+        Map<String, Object> operacoes = new LinkedHashMap<>();
+        medicoes.forEach((operacao, medicao) -> operacoes.put(operacao.nome(), medicao.resumo(segundos)));
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("parametros", parametros);
+        resultado.put("atrasoMaximoDoGeradorMs", atrasoMaximo.get() / 1e6);
+        resultado.put("operacoes", operacoes);
+        return resultado;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void imprimir(Map<String, Object> resultado) {
+        System.out.printf("%n%-10s %10s %8s %9s %9s %9s %9s %9s %12s%n",
+                "operacao", "requisicoes", "falhas", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "p99 serv. ms");
+        ((Map<String, Map<String, Object>>) resultado.get("operacoes")).forEach((operacao, resumo) ->
+                System.out.printf("%-10s %10d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %12.2f%n", operacao,
+                        resumo.get("requisicoes"), resumo.get("falhas"), resumo.get("vazao"), resumo.get("p50"),
+                        resumo.get("p99"), resumo.get("p999"), resumo.get("max"), resumo.get("p99Servico")));
+        System.out.printf("Atraso máximo do gerador: %.2f ms%n%n", resultado.get("atrasoMaximoDoGeradorMs"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean dentroDoLimiteDeFalhas(Map<String, Object> resultado) {
+        double maximo = Double.parseDouble(parametros.getOrDefault("max-falhas", "0.01"));
+        boolean dentro = true;
+        for (Map.Entry<String, Map<String, Object>> operacao
+                : ((Map<String, Map<String, Object>>) resultado.get("operacoes")).entrySet()) {
+            long requisicoes = ((Number) operacao.getValue().get("requisicoes")).longValue();
+            long falhas = ((Number) operacao.getValue().get("falhas")).longValue();
+            if (requisicoes > 0 && (double) falhas / requisicoes > maximo) {
+                System.out.printf("FALHAS: %s com %d de %d requisições sem sucesso (%s), acima de %.1f%%%n",
+                        operacao.getKey(), falhas, requisicoes, operacao.getValue().get("falhasPorStatus"), maximo * 100);
+                dentro = false;
+            }
+        }
+        return dentro;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean comparar(Map<String, Object> baseline, Map<String, Object> resultado) {
+        double tolerancia = Double.parseDouble(parametros.getOrDefault("tolerancia", "0.10"));
+        Map<String, Map<String, Object>> antes = (Map<String, Map<String, Object>>) baseline.get("operacoes");
+        Map<String, Map<String, Object>> agora = (Map<String, Map<String, Object>>) resultado.get("operacoes");
+        boolean dentro = true;
+        System.out.printf("Comparação com o baseline (tolerância %.0f%%):%n", tolerancia * 100);
+        for (Map.Entry<String, Map<String, Object>> operacao : agora.entrySet()) {
+            Map<String, Object> base = antes.get(operacao.getKey());
+            if (base == null) {
+                continue;
+            }
+            // vazao menor e pior; latencia maior e pior
+            dentro &= comparar(operacao.getKey(), "vazao", base, operacao.getValue(), -1, tolerancia);
+            dentro &= comparar(operacao.getKey(), "p50", base, operacao.getValue(), 1, tolerancia);
+            dentro &= comparar(operacao.getKey(), "p99", base, operacao.getValue(), 1, tolerancia);
+        }
+        System.out.println(dentro ? "Dentro do baseline" : "REGRESSÃO em relação ao baseline");
+        return dentro;
+    }
+
+    private static boolean comparar(String operacao, String medida, Map<String, Object> base, Map<String, Object> atual,
+                                    int piora, double tolerancia) {
+        double antes = ((Number) base.get(medida)).doubleValue();
+        double agora = ((Number) atual.get(medida)).doubleValue();
+        double variacao = antes == 0 ? 0 : (agora - antes) / antes;
+        boolean dentro = variacao * piora <= tolerancia;
+        System.out.printf("  %-10s %-5s %10.2f -> %10.2f (%+6.1f%%)%s%n", operacao, medida, antes, agora,
+                variacao * 100, dentro ? "" : "  <- regressão");
+        return dentro;
+    }
+
+    private static Map<Operacao, Integer> mix(String mix) {
+        Map<Operacao, Integer> pesos = new EnumMap<>(Operacao.class);
+        for (String item : mix.split(",")) {
+            String[] partes = item.trim().split(":");
+            int peso = Integer.parseInt(partes[1].trim());
+            if (peso > 0) {
+                pesos.put(Operacao.valueOf(partes[0].trim().toUpperCase()), peso);
+            }
+        }
+        if (pesos.isEmpty()) {
+            throw new IllegalArgumentException("Mix sem nenhuma operação: " + mix);
+        }
+        return pesos;
+    }
+}
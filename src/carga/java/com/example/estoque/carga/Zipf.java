@@ -0,0 +1,34 @@
+package com.example.estoque.carga;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Sorteia posicoes {@code 0 .. n-1} com probabilidade proporcional a {@code 1 / (posicao + 1)^expoente}:
+ * poucos produtos recebem a maior parte dos pedidos. Expoente 0 e uniforme.
+ */
+final class Zipf {
+
+    private final double[] acumulada;
+
+    Zipf(int n, double expoente) {
+        if (n <= 0 || expoente < 0) {
+            throw new IllegalArgumentException("Zipf precisa de n > 0 e expoente >= 0");
+        }
+        acumulada = new double[n];
+        double soma = 0;
+        for (int i = 0; i < n; i++) {
+            soma += 1 / Math.pow(i + 1, expoente);
+            acumulada[i] = soma;
+        }
+        for (int i = 0; i < n; i++) {
+            acumulada[i] /= soma;
+        }
+    }
+
+    int sortear(RandomGenerator aleatorio) {
+        int posicao = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+        // sem acerto exato, binarySearch devolve -(ponto de insercao) - 1
+        return Math.min(posicao >= 0 ? posicao : -posicao - 1, acumulada.length - 1);
+    }
+}
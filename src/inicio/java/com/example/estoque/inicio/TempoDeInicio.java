@@ -0,0 +1,203 @@
+package com.example.estoque.inicio;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo de inicio da aplicacao: cada rodada sobe o jar extraido numa JVM nova, numa porta livre, e
+ * mede do disparo do processo ate a primeira resposta 200 de {@code GET /estoque}. Conta a subida
+ * da JVM, do contexto e a primeira requisicao, que no perfil {@code inicio-rapido} tambem cria os
+ * beans preguicosos.
+ *
+ * <p>Modos comparados, alternados a cada rodada:
+ * <ul>
+ *   <li>{@code padrao}: configuracao do application.properties</li>
+ *   <li>{@code perfil}: perfil {@code inicio-rapido}, ainda sem AOT</li>
+ *   <li>{@code aot}: perfil com as definicoes de beans geradas no build</li>
+ *   <li>{@code aot-cds}: o anterior com o arquivo CDS gerado no build</li>
+ * </ul>
+ *
+ * <p>Parametros {@code chave=valor}: {@code jar} e {@code cds} (passados pelo perfil Maven),
+ * {@code rodadas=5}, {@code modos=padrao,perfil,aot,aot-cds}, {@code limite=120s} por subida e
+ * {@code resultado=target/inicio-rapido/tempo-de-inicio.json}. A saida de cada subida fica em
+ * {@code inicio-<modo>-<rodada>.log}, ao lado do resultado.
+ */
+public final class TempoDeInicio {
+
+    // argumentos de JVM de cada modo
+    private final Map<String, List<String>> argumentos = new LinkedHashMap<>();
+
+    private final Map<String, String> parametros;
+    private final Path jar;
+    private final Path cds;
+    private final int rodadas;
+    private final List<String> modos;
+    private final Duration limite;
+    private final Path resultado;
+    private final HttpClient cliente = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    private TempoDeInicio(Map<String, String> parametros) {
+        this.parametros = parametros;
+        this.jar = Paths.get(obrigatorio(parametros, "jar"));
+        this.cds = Paths.get(obrigatorio(parametros, "cds"));
+        this.rodadas = Integer.parseInt(parametros.getOrDefault("rodadas", "5"));
+        this.modos = List.of(parametros.getOrDefault("modos", "padrao,perfil,aot,aot-cds").split(","));
+        this.limite = DurationStyle.detectAndParse(parametros.getOrDefault("limite", "120s"));
+        this.resultado = Paths.get(parametros.getOrDefault("resultado", "target/inicio-rapido/tempo-de-inicio.json"));
+
+        argumentos.put("padrao", List.of());
+        argumentos.put("perfil", List.of("-Dspring.profiles.active=inicio-rapido"));
+        argumentos.put("aot", List.of("-Dspring.profiles.active=inicio-rapido", "-Dspring.aot.enabled=true"));
+        argumentos.put("aot-cds", List.of("-XX:SharedArchiveFile=" + cds,
+                "-Dspring.profiles.active=inicio-rapido", "-Dspring.aot.enabled=true"));
+        for (String modo : modos) {
+            if (!argumentos.containsKey(modo)) {
+                throw new IllegalArgumentException("Modo desconhecido: " + modo + " (use " + argumentos.keySet() + ")");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parametros = new LinkedHashMap<>();
+        for (String argumento : args) {
+            int separador = argumento.indexOf('=');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Parâmetro sem chave=valor: " + argumento);
+            }
+            parametros.put(argumento.substring(0, separador), argumento.substring(separador + 1));
+        }
+        System.exit(new TempoDeInicio(parametros).executar());
+    }
+
+    private static String obrigatorio(Map<String, String> parametros, String chave) {
+        String valor = parametros.get(chave);
+        if (valor == null) {
+            throw new IllegalArgumentException("Parâmetro obrigatório: " + chave);
+        }
+        return valor;
+    }
+
+    private int executar() throws Exception {
+        if (!Files.exists(jar)) {
+            System.out.println("Jar extraído não encontrado em " + jar + "; rode com -Pinicio-rapido verify");
+            return 1;
+        }
+        if (modos.contains("aot-cds") && !Files.exists(cds)) {
+            System.out.println("Arquivo CDS não encontrado em " + cds);
+            return 1;
+        }
+        Files.createDirectories(resultado.toAbsolutePath().getParent());
+
+        Map<String, List<Double>> tempos = new LinkedHashMap<>();
+        modos.forEach(modo -> tempos.put(modo, new ArrayList<>()));
+        // modos alternados: variacoes da maquina ao longo da medicao caem em todos por igual
+        for (int rodada = 1; rodada <= rodadas; rodada++) {
+            for (String modo : modos) {
+                double ms = subir(modo, rodada);
+                tempos.get(modo).add(ms);
+                System.out.printf("rodada %d %-8s %8.0f ms%n", rodada, modo, ms);
+            }
+        }
+
+        Map<String, Object> porModo = new LinkedHashMap<>();
+        tempos.forEach((modo, medidas) -> porModo.put(modo, resumo(medidas)));
+        Map<String, Object> saida = new LinkedHashMap<>();
+        saida.put("parametros", parametros);
+        saida.put("java", System.getProperty("java.vm.version"));
+        saida.put("modos", porModo);
+        imprimir(porModo);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(resultado.toFile(), saida);
+        System.out.println("Resultado gravado em " + resultado);
+        return 0;
+    }
+
+    /**
+     * Milissegundos do disparo da JVM ate a primeira resposta 200 de {@code GET /estoque}.
+     */
+    private double subir(String modo, int rodada) throws Exception {
+        int porta = portaLivre();
+        List<String> comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        comando.addAll(argumentos.get(modo));
+        comando.addAll(List.of("-jar", jar.toString(), "--server.port=" + porta,
+                "--spring.datasource.url=jdbc:h2:mem:inicio"));
+        Path log = resultado.resolveSibling("inicio-" + modo + "-" + rodada + ".log");
+        HttpRequest estoque = HttpRequest.newBuilder(URI.create("http://localhost:" + porta + "/estoque"))
+                .timeout(Duration.ofSeconds(5)).GET().build();
+
+        long inicio = System.nanoTime();
+        Process processo = new ProcessBuilder(comando).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            long prazo = inicio + limite.toNanos();
+            while (System.nanoTime() < prazo) {
+                if (!processo.isAlive()) {
+                    throw new IllegalStateException("A aplicação terminou sem responder (modo " + modo + "), veja " + log);
+                }
+                try {
+                    if (cliente.send(estoque, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - inicio) / 1e6;
+                    }
+                } catch (IOException e) {
+                    // porta ainda fechada
+                }
+                Thread.sleep(5);
+            }
+            throw new IllegalStateException("Sem resposta de /estoque em " + limite + " (modo " + modo + "), veja " + log);
+        } finally {
+            processo.destroy();
+            if (!processo.waitFor(10, TimeUnit.SECONDS)) {
+                processo.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static int portaLivre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Map<String, Object> resumo(List<Double> medidas) {
+        double[] ordenadas = medidas.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        int meio = ordenadas.length / 2;
+        double mediana = ordenadas.length % 2 == 1 ? ordenadas[meio] : (ordenadas[meio - 1] + ordenadas[meio]) / 2;
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("medianaMs", mediana);
+        resumo.put("minimoMs", ordenadas[0]);
+        resumo.put("maximoMs", ordenadas[ordenadas.length - 1]);
+        resumo.put("rodadasMs", Arrays.stream(ordenadas).boxed().toList());
+        return resumo;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void imprimir(Map<String, Object> porModo) {
+        double base = porModo.containsKey("padrao")
+                ? (double) ((Map<String, Object>) porModo.get("padrao")).get("medianaMs") : Double.NaN;
+        System.out.printf("%n%-8s %12s %10s %10s %10s%n", "modo", "mediana ms", "min ms", "max ms", "vs padrao");
+        porModo.forEach((modo, valor) -> {
+            Map<String, Object> resumo = (Map<String, Object>) valor;
+            double mediana = (double) resumo.get("medianaMs");
+            System.out.printf("%-8s %12.0f %10.0f %10.0f %9.0f%%%n", modo, mediana, resumo.get("minimoMs"),
+                    resumo.get("maximoMs"), (mediana / base - 1) * 100);
+        });
+        System.out.println();
+    }
+}
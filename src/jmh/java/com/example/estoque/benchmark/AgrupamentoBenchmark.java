@@ -0,0 +1,63 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.service.AgrupadorDePedidos;
+import com.example.estoque.service.ProdutoService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pedidos concorrentes disputando poucos produtos: baixa direta no servico contra o agrupador de pedidos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class AgrupamentoBenchmark {
+
+    @Param({"false", "true"})
+    boolean agrupado;
+
+    @Param({"1", "10"})
+    int produtosDisputados;
+
+    private CatalogoBenchmark catalogo;
+    private ProdutoService service;
+    private AgrupadorDePedidos agrupador;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        catalogo = CatalogoBenchmark.iniciar("jmh-agrupamento-" + agrupado + "-" + produtosDisputados,
+                "estoque.agrupamento.enabled=" + agrupado);
+        service = catalogo.bean(ProdutoService.class);
+        agrupador = agrupado ? catalogo.bean(AgrupadorDePedidos.class) : null;
+        ids = catalogo.popular(produtosDisputados, 1_000_000_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        catalogo.close();
+    }
+
+    @Benchmark
+    public void atualizarEstoque() {
+        ItemPedido item = new ItemPedido();
+        item.setId(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+        item.setQtd(1);
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item));
+        if (agrupador != null) {
+            agrupador.atualizarEstoque(pedido);
+        } else {
+            service.atualizarEstoque(pedido);
+        }
+    }
+}
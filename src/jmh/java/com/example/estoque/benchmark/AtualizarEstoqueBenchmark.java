@@ -0,0 +1,64 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.service.ProdutoService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baixa de estoque de um pedido em funcao do numero de itens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AtualizarEstoqueBenchmark {
+
+    private static final int PRODUTOS = 10_000;
+
+    @Param({"1", "10", "50"})
+    int itensPorPedido;
+
+    private CatalogoBenchmark catalogo;
+    private ProdutoService service;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        catalogo = CatalogoBenchmark.iniciar("jmh-pedido-" + itensPorPedido);
+        service = catalogo.bean(ProdutoService.class);
+        // estoque suficiente para nenhuma baixa falhar durante a medicao
+        ids = catalogo.popular(PRODUTOS, 1_000_000_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        catalogo.close();
+    }
+
+    @Benchmark
+    public void atualizarEstoque() {
+        service.atualizarEstoque(pedidoAleatorio());
+    }
+
+    private Pedido pedidoAleatorio() {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        List<ItemPedido> itens = new ArrayList<>(itensPorPedido);
+        for (int i = 0; i < itensPorPedido; i++) {
+            ItemPedido item = new ItemPedido();
+            item.setId(ids[aleatorio.nextInt(ids.length)]);
+            item.setQtd(1);
+            itens.add(item);
+        }
+        Pedido pedido = new Pedido();
+        pedido.setItens(itens);
+        return pedido;
+    }
+}
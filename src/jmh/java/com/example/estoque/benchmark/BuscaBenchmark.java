@@ -0,0 +1,55 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.service.IndiceDeBusca;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Busca no {@link IndiceDeBusca} com um catalogo sintetico (nomes e descricoes combinando um
+ * vocabulario fixo com um codigo unico por produto), sem banco.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class BuscaBenchmark {
+
+    private static final String[] ITENS = {"caneta", "caderno", "lapis", "borracha", "regua", "estojo",
+            "mochila", "grampeador", "tesoura", "cola", "marcador", "apontador", "agenda", "pasta", "clipe",
+            "envelope", "etiqueta", "fichario", "calculadora", "compasso"};
+    private static final String[] ATRIBUTOS = {"azul", "vermelho", "preto", "verde", "amarelo", "branco",
+            "escolar", "profissional", "premium", "basico", "grande", "pequeno", "colorido", "neon", "kraft",
+            "metalico", "infantil", "executivo", "reciclado", "transparente"};
+    private static final String[] MARCAS = {"faber", "bic", "pilot", "stabilo", "tilibra", "acrilex",
+            "maped", "pentel", "staedtler", "compactor"};
+
+    @Param({"1000000"})
+    int produtos;
+
+    @Param({"caneta azul", "stab", "cad esc pre", "stabilo neon grande", "sku4242", "xyz"})
+    String consulta;
+
+    private IndiceDeBusca indice;
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(42);
+        indice = new IndiceDeBusca(1024);
+        for (int i = 1; i <= produtos; i++) {
+            String nome = ITENS[random.nextInt(ITENS.length)] + " " + ATRIBUTOS[random.nextInt(ATRIBUTOS.length)]
+                    + " " + MARCAS[random.nextInt(MARCAS.length)] + " sku" + i;
+            String descricao = ATRIBUTOS[random.nextInt(ATRIBUTOS.length)] + " "
+                    + ATRIBUTOS[random.nextInt(ATRIBUTOS.length)] + " caixa com " + (1 + random.nextInt(50));
+            indice.indexar((long) i, nome, descricao);
+        }
+    }
+
+    @Benchmark
+    public IndiceDeBusca.Resultado buscar() {
+        return indice.buscar(consulta, 0, 20);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.repository.ProdutoRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code findByNome} direto no repositorio (sem o cache), com e sem o indice unico em {@code nome}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuscaPorNomeBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int produtos;
+
+    @Param({"true", "false"})
+    boolean indiceNome;
+
+    private CatalogoBenchmark catalogo;
+    private ProdutoRepository repository;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        catalogo = CatalogoBenchmark.iniciar("jmh-nome-" + produtos + "-" + indiceNome);
+        repository = catalogo.bean(ProdutoRepository.class);
+        catalogo.popular(produtos, 100);
+        if (!indiceNome) {
+            catalogo.jdbc().execute("ALTER TABLE produto DROP CONSTRAINT uk_produto_nome");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        catalogo.close();
+    }
+
+    @Benchmark
+    public ProdutoEntity findByNome() {
+        return repository.findByNome("produto-" + ThreadLocalRandom.current().nextInt(produtos));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.EstoqueApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sobe a aplicacao sem servidor web sobre um H2 em memoria exclusivo do benchmark e popula o catalogo.
+ */
+final class CatalogoBenchmark implements AutoCloseable {
+
+    private static final int LOTE = 10_000;
+
+    private final ConfigurableApplicationContext contexto;
+    private final JdbcTemplate jdbcTemplate;
+
+    private CatalogoBenchmark(ConfigurableApplicationContext contexto) {
+        this.contexto = contexto;
+        this.jdbcTemplate = contexto.getBean(JdbcTemplate.class);
+    }
+
+    static CatalogoBenchmark iniciar(String banco, String... propriedades) {
+        // passadas como argumentos de linha de comando para terem precedencia sobre o application.properties
+        List<String> argumentos = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + banco,
+                "--spring.h2.console.enabled=false",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--logging.level.root=WARN"));
+        for (String propriedade : propriedades) {
+            argumentos.add("--" + propriedade);
+        }
+        ConfigurableApplicationContext contexto = new SpringApplicationBuilder(EstoqueApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(argumentos.toArray(String[]::new));
+        return new CatalogoBenchmark(contexto);
+    }
+
+    <T> T bean(Class<T> tipo) {
+        return contexto.getBean(tipo);
+    }
+
+    JdbcTemplate jdbc() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * Insere {@code produtos} linhas chamadas {@code produto-0 .. produto-(n-1)}.
+     *
+     * @return os ids gerados, em ordem
+     */
+    long[] popular(int produtos, int qtdPorProduto) {
+        List<Object[]> lote = new ArrayList<>(LOTE);
+        for (int i = 0; i < produtos; i++) {
+            lote.add(new Object[]{"produto-" + i, "descricao do produto " + i, 1.0 + i % 100, qtdPorProduto});
+            if (lote.size() == LOTE) {
+                inserir(lote);
+            }
+        }
+        inserir(lote);
+        return jdbcTemplate.queryForList("SELECT id FROM produto ORDER BY id", Long.class)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private void inserir(List<Object[]> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO produto (id, nome, descricao, preco, qtd) "
+                + "VALUES (NEXT VALUE FOR produto_seq, ?, ?, ?, ?)", lote);
+        lote.clear();
+    }
+
+    @Override
+    public void close() {
+        contexto.close();
+    }
+}
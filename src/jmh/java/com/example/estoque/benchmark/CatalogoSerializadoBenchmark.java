@@ -0,0 +1,69 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.service.CatalogoDeProdutos;
+import com.example.estoque.service.ProdutoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corpo do {@code GET /estoque} em JSON: lido e serializado a cada chamada, como antes do catalogo,
+ * contra a versao ja serializada do {@link CatalogoDeProdutos} e contra a reconstrucao dela depois
+ * de uma alteracao de um produto, que reserializa e recomprime so o bloco dele.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogoSerializadoBenchmark {
+
+    @Param({"1000", "10000"})
+    int produtos;
+
+    private CatalogoBenchmark catalogo;
+    private ProdutoService service;
+    private ObjectMapper objectMapper;
+    private CatalogoDeProdutos catalogoDeProdutos;
+    private long[] ids;
+    private int proximo;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        catalogo = CatalogoBenchmark.iniciar("jmh-catalogo-" + produtos);
+        service = catalogo.bean(ProdutoService.class);
+        objectMapper = catalogo.bean(ObjectMapper.class);
+        catalogoDeProdutos = catalogo.bean(CatalogoDeProdutos.class);
+        ids = catalogo.popular(produtos, 100);
+        // a carga foi direto por JDBC, sem eventos
+        catalogoDeProdutos.invalidar();
+        catalogoDeProdutos.atualizar();
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        catalogo.close();
+    }
+
+    @Benchmark
+    public byte[] serializarACadaChamada() throws IOException {
+        return objectMapper.writeValueAsBytes(service.encontrarTodos());
+    }
+
+    @Benchmark
+    public CatalogoDeProdutos.Versao versaoSerializada() {
+        return catalogoDeProdutos.atual();
+    }
+
+    // o que a tarefa agendada faz a cada intervalo com uma alteracao pendente
+    @Benchmark
+    public CatalogoDeProdutos.Versao reconstruirAposUmaAlteracao() {
+        catalogoDeProdutos.invalidar(List.of(ids[proximo++ % ids.length]));
+        catalogoDeProdutos.atualizar();
+        return catalogoDeProdutos.atual();
+    }
+}
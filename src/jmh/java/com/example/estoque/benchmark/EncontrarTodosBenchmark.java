@@ -0,0 +1,49 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.service.ProdutoService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listagem do catalogo inteiro: lista materializada ({@code encontrarTodos}) contra streaming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncontrarTodosBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int produtos;
+
+    private CatalogoBenchmark catalogo;
+    private ProdutoService service;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        catalogo = CatalogoBenchmark.iniciar("jmh-listagem-" + produtos);
+        service = catalogo.bean(ProdutoService.class);
+        catalogo.popular(produtos, 100);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() {
+        catalogo.close();
+    }
+
+    @Benchmark
+    public List<Produto> encontrarTodos() {
+        return service.encontrarTodos();
+    }
+
+    @Benchmark
+    public void percorrerProdutos(Blackhole blackhole) {
+        service.percorrerProdutos(blackhole::consume);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversao {@link Produto} &lt;-&gt; {@link ProdutoEntity} para um lote de produtos, sem banco.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapeamentoBenchmark {
+
+    @Param({"1000"})
+    int tamanho;
+
+    private List<ProdutoEntity> entidades;
+    private List<Produto> produtos;
+
+    @Setup
+    public void preparar() {
+        entidades = new ArrayList<>(tamanho);
+        produtos = new ArrayList<>(tamanho);
+        for (int i = 0; i < tamanho; i++) {
+            entidades.add(new ProdutoEntity((long) i, "produto-" + i, "descricao " + i, 1.0 + i, i));
+            produtos.add(new Produto("produto-" + i, "descricao " + i, 1.0 + i, i));
+        }
+    }
+
+    @Benchmark
+    public List<Produto> entidadeParaProduto() {
+        return entidades.stream().map(Produto::new).toList();
+    }
+
+    @Benchmark
+    public List<ProdutoEntity> produtoParaEntidade() {
+        return produtos.stream().map(ProdutoEntity::new).toList();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.service.RodaDeTempo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo da roda de tempo das reservas com muitas reservas pendentes: agendar um vencimento e
+ * avancar um tick (a varredura que o {@code ReservasDeEstoque} faz a cada {@code tick-ms}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RodaDeTempoBenchmark {
+
+    private static final long TICK = 1000;
+    // prazo padrao das reservas (15 min) em ticks de 1 s
+    private static final long PRAZO = 900_000;
+
+    @Param({"300000"})
+    int pendentes;
+
+    private RodaDeTempo<Long> roda;
+    private long agora;
+
+    @Setup(Level.Iteration)
+    public void preparar() {
+        agora = 0;
+        roda = new RodaDeTempo<>(TICK, 512, agora);
+        for (long i = 0; i < pendentes; i++) {
+            roda.agendar(i, ThreadLocalRandom.current().nextLong(PRAZO));
+        }
+    }
+
+    @Benchmark
+    public void agendar() {
+        roda.agendar(agora, agora + PRAZO);
+    }
+
+    /**
+     * Cada chamada e um tick: os vencidos saem e outros tantos sao agendados, mantendo a roda cheia.
+     */
+    @Benchmark
+    public List<Long> avancarUmTick() {
+        agora += TICK;
+        List<Long> vencidos = roda.avancar(agora);
+        for (Long vencido : vencidos) {
+            roda.agendar(vencido, agora + PRAZO);
+        }
+        return vencidos;
+    }
+}
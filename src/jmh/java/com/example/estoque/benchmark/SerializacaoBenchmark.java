@@ -0,0 +1,81 @@
+package com.example.estoque.benchmark;
+
+import com.example.estoque.domain.Produto;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Codificacao e leitura de uma listagem de {@link Produto} (a resposta do {@code GET /estoque}) em JSON, Smile
+ * e CBOR, com e sem gzip. O tamanho de cada resposta e impresso no inicio da execucao.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializacaoBenchmark {
+
+    private static final TypeReference<List<Produto>> LISTA = new TypeReference<>() {};
+
+    @Param({"json", "smile", "cbor"})
+    String formato;
+
+    @Param({"false", "true"})
+    boolean gzip;
+
+    @Param({"10000"})
+    int produtos;
+
+    private ObjectMapper mapper;
+    private List<Produto> listagem;
+    private byte[] codificada;
+
+    @Setup
+    public void preparar() throws IOException {
+        mapper = switch (formato) {
+            case "smile" -> new SmileMapper();
+            case "cbor" -> new CBORMapper();
+            default -> new ObjectMapper();
+        };
+        listagem = new ArrayList<>(produtos);
+        for (int i = 0; i < produtos; i++) {
+            listagem.add(new Produto("Produto " + i, "Descrição do produto " + i + ", caixa com " + (i % 50) + " unidades",
+                    1.0 + (i % 1000) / 100.0, i % 500));
+        }
+        codificada = codificar();
+        System.out.printf("%n%s, gzip=%s: %d bytes%n", formato, gzip, codificada.length);
+    }
+
+    @Benchmark
+    public byte[] codificar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * 1024);
+        try (OutputStream saida = gzip ? new GZIPOutputStream(bytes, 8192) : bytes) {
+            mapper.writeValue(saida, listagem);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public List<Produto> decodificar() throws IOException {
+        try (InputStream entrada = gzip
+                ? new GZIPInputStream(new ByteArrayInputStream(codificada), 8192)
+                : new ByteArrayInputStream(codificada)) {
+            return mapper.readValue(entrada, LISTA);
+        }
+    }
+}
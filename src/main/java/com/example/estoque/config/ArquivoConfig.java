@@ -0,0 +1,43 @@
+package com.example.estoque.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Perfil {@code arquivo}: sem banco, o repositorio grava direto no arquivo mapeado e o
+ * gerenciador de transacoes abaixo nao tem o que confirmar ou desfazer. Ele so mantem a
+ * sincronizacao de transacao, para que {@code @Transactional} e os {@code @TransactionalEventListener}
+ * continuem funcionando como no modo com banco, e para que o repositorio devolva as baixas de uma
+ * transacao desfeita.
+ */
+@Configuration
+@Profile("arquivo")
+public class ArquivoConfig {
+
+    @Bean
+    public PlatformTransactionManager transactionManager() {
+        return new AbstractPlatformTransactionManager() {
+            @Override
+            protected Object doGetTransaction() {
+                return new Object();
+            }
+
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+            }
+
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+            }
+
+            @Override
+            protected void doRollback(DefaultTransactionStatus status) {
+            }
+        };
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.estoque.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Conta os comandos SQL preparados durante cada requisicao e publica o total em
+ * {@code estoque.requisicao.comandos-sql}, por metodo e rota. Um lote JDBC conta como um comando,
+ * ja que e preparado uma vez e enviado junto.
+ *
+ * <p>A contagem fica em um {@code ThreadLocal}: o que roda fora da thread da requisicao (respostas
+ * em streaming, flush do ledger) nao entra no total. As conexoes sao envolvidas por uma classe que
+ * so delega, sem proxy por reflexao: cada chamada a conexao custa uma chamada a mais, e so as que
+ * preparam comandos tocam o contador.
+ */
+public class ContadorDeComandosSql extends OncePerRequestFilter {
+
+    private static final ThreadLocal<int[]> COMANDOS = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+
+    public ContadorDeComandosSql(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        int[] comandos = new int[1];
+        COMANDOS.set(comandos);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            COMANDOS.remove();
+            Object rota = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("estoque.requisicao.comandos-sql")
+                    .description("Comandos SQL preparados por requisicao")
+                    .tag("method", request.getMethod())
+                    .tag("uri", rota == null ? "UNKNOWN" : rota.toString())
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(comandos[0]);
+        }
+    }
+
+    /**
+     * Envolve o {@link DataSource} para que cada conexao entregue conte os comandos preparados nela.
+     */
+    static DataSource contando(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return contando(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return contando(super.getConnection(username, password));
+            }
+        };
+    }
+
+    private static Connection contando(Connection conexao) {
+        return new ConexaoContando(conexao);
+    }
+
+    private static void contar() {
+        int[] comandos = COMANDOS.get();
+        if (comandos != null) {
+            comandos[0]++;
+        }
+    }
+
+    /**
+     * Delega tudo a conexao do pool; {@code prepareStatement}, {@code prepareCall} e
+     * {@code createStatement} contam um comando antes.
+     */
+    private static final class ConexaoContando implements Connection {
+
+        private final Connection conexao;
+
+        private ConexaoContando(Connection conexao) {
+            this.conexao = conexao;
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            contar();
+            return conexao.createStatement();
+        }
+
+        @Override
+        public Statement createStatement(int tipo, int concorrencia) throws SQLException {
+            contar();
+            return conexao.createStatement(tipo, concorrencia);
+        }
+
+        @Override
+        public Statement createStatement(int tipo, int concorrencia, int persistencia) throws SQLException {
+            contar();
+            return conexao.createStatement(tipo, concorrencia, persistencia);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            contar();
+            return conexao.prepareStatement(sql);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int tipo, int concorrencia) throws SQLException {
+            contar();
+            return conexao.prepareStatement(sql, tipo, concorrencia);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int tipo, int concorrencia, int persistencia)
+                throws SQLException {
+            contar();
+            return conexao.prepareStatement(sql, tipo, concorrencia, persistencia);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int chavesGeradas) throws SQLException {
+            contar();
+            return conexao.prepareStatement(sql, chavesGeradas);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] colunas) throws SQLException {
+            contar();
+            return conexao.prepareStatement(sql, colunas);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] colunas) throws SQLException {
+            contar();
+            return conexao.prepareStatement(sql, colunas);
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql) throws SQLException {
+            contar();
+            return conexao.prepareCall(sql);
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int tipo, int concorrencia) throws SQLException {
+            contar();
+            return conexao.prepareCall(sql, tipo, concorrencia);
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int tipo, int concorrencia, int persistencia)
+                throws SQLException {
+            contar();
+            return conexao.prepareCall(sql, tipo, concorrencia, persistencia);
+        }
+
+        @Override
+        public String nativeSQL(String sql) throws SQLException {
+            return conexao.nativeSQL(sql);
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            conexao.setAutoCommit(autoCommit);
+        }
+
+        @Override
+        public boolean getAutoCommit() throws SQLException {
+            return conexao.getAutoCommit();
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            conexao.commit();
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            conexao.rollback();
+        }
+
+        @Override
+        public void rollback(Savepoint savepoint) throws SQLException {
+            conexao.rollback(savepoint);
+        }
+
+        @Override
+        public Savepoint setSavepoint() throws SQLException {
+            return conexao.setSavepoint();
+        }
+
+        @Override
+        public Savepoint setSavepoint(String nome) throws SQLException {
+            return conexao.setSavepoint(nome);
+        }
+
+        @Override
+        public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+            conexao.releaseSavepoint(savepoint);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            conexao.close();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return conexao.isClosed();
+        }
+
+        @Override
+        public DatabaseMetaData getMetaData() throws SQLException {
+            return conexao.getMetaData();
+        }
+
+        @Override
+        public void setReadOnly(boolean readOnly) throws SQLException {
+            conexao.setReadOnly(readOnly);
+        }
+
+        @Override
+        public boolean isReadOnly() throws SQLException {
+            return conexao.isReadOnly();
+        }
+
+        @Override
+        public void setCatalog(String catalogo) throws SQLException {
+            conexao.setCatalog(catalogo);
+        }
+
+        @Override
+        public String getCatalog() throws SQLException {
+            return conexao.getCatalog();
+        }
+
+        @Override
+        public void setTransactionIsolation(int nivel) throws SQLException {
+            conexao.setTransactionIsolation(nivel);
+        }
+
+        @Override
+        public int getTransactionIsolation() throws SQLException {
+            return conexao.getTransactionIsolation();
+        }
+
+        @Override
+        public SQLWarning getWarnings() throws SQLException {
+            return conexao.getWarnings();
+        }
+
+        @Override
+        public void clearWarnings() throws SQLException {
+            conexao.clearWarnings();
+        }
+
+        @Override
+        public Map<String, Class<?>> getTypeMap() throws SQLException {
+            return conexao.getTypeMap();
+        }
+
+        @Override
+        public void setTypeMap(Map<String, Class<?>> tipos) throws SQLException {
+            conexao.setTypeMap(tipos);
+        }
+
+        @Override
+        public void setHoldability(int persistencia) throws SQLException {
+            conexao.setHoldability(persistencia);
+        }
+
+        @Override
+        public int getHoldability() throws SQLException {
+            return conexao.getHoldability();
+        }
+
+        @Override
+        public Clob createClob() throws SQLException {
+            return conexao.createClob();
+        }
+
+        @Override
+        public Blob createBlob() throws SQLException {
+            return conexao.createBlob();
+        }
+
+        @Override
+        public NClob createNClob() throws SQLException {
+            return conexao.createNClob();
+        }
+
+        @Override
+        public SQLXML createSQLXML() throws SQLException {
+            return conexao.createSQLXML();
+        }
+
+        @Override
+        public boolean isValid(int segundos) throws SQLException {
+            return conexao.isValid(segundos);
+        }
+
+        @Override
+        public void setClientInfo(String nome, String valor) throws SQLClientInfoException {
+            conexao.setClientInfo(nome, valor);
+        }
+
+        @Override
+        public void setClientInfo(Properties propriedades) throws SQLClientInfoException {
+            conexao.setClientInfo(propriedades);
+        }
+
+        @Override
+        public String getClientInfo(String nome) throws SQLException {
+            return conexao.getClientInfo(nome);
+        }
+
+        @Override
+        public Properties getClientInfo() throws SQLException {
+            return conexao.getClientInfo();
+        }
+
+        @Override
+        public Array createArrayOf(String tipo, Object[] elementos) throws SQLException {
+            return conexao.createArrayOf(tipo, elementos);
+        }
+
+        @Override
+        public Struct createStruct(String tipo, Object[] atributos) throws SQLException {
+            return conexao.createStruct(tipo, atributos);
+        }
+
+        @Override
+        public void setSchema(String esquema) throws SQLException {
+            conexao.setSchema(esquema);
+        }
+
+        @Override
+        public String getSchema() throws SQLException {
+            return conexao.getSchema();
+        }
+
+        @Override
+        public void abort(Executor executor) throws SQLException {
+            conexao.abort(executor);
+        }
+
+        @Override
+        public void setNetworkTimeout(Executor executor, int milissegundos) throws SQLException {
+            conexao.setNetworkTimeout(executor, milissegundos);
+        }
+
+        @Override
+        public int getNetworkTimeout() throws SQLException {
+            return conexao.getNetworkTimeout();
+        }
+
+        @Override
+        public void beginRequest() throws SQLException {
+            conexao.beginRequest();
+        }
+
+        @Override
+        public void endRequest() throws SQLException {
+            conexao.endRequest();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> tipo) throws SQLException {
+            return tipo.isInstance(this) ? tipo.cast(this) : conexao.unwrap(tipo);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> tipo) throws SQLException {
+            return tipo.isInstance(this) || conexao.isWrapperFor(tipo);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.estoque.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Com {@code spring.main.lazy-initialization=true} (perfil {@code inicio-rapido}) um bean so e
+ * criado no primeiro uso, e o {@code @Scheduled} de um bean que nunca foi criado nunca e agendado:
+ * reservas deixariam de expirar e o ledger de gravar as baixas. Os beans com tarefas agendadas
+ * continuam sendo criados na subida; o resto fica para a primeira requisicao que precisar dele.
+ *
+ * <p>O mesmo vale para quem ouve eventos ({@code @EventListener}, {@code @TransactionalEventListener}):
+ * criado no primeiro evento, um bean que carrega o estado do banco na construcao ja leria a
+ * alteracao que o evento traz e a aplicaria de novo.
+ */
+@Configuration
+public class InicioRapidoConfig {
+
+    @Bean
+    public static LazyInitializationExcludeFilter agendadosEOuvintesNaSubida() {
+        return (nome, definicao, tipo) -> !MethodIntrospector.selectMethods(tipo,
+                (MethodIntrospector.MetadataLookup<Boolean>) metodo ->
+                        AnnotatedElementUtils.hasAnnotation(metodo, Scheduled.class)
+                                || AnnotatedElementUtils.hasAnnotation(metodo, EventListener.class) ? true : null)
+                .isEmpty();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.estoque.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Com threads virtuais o Tomcat deixa de limitar quantas requisicoes chegam ao servico ao mesmo tempo.
+ * Este interceptor segura cada requisicao em um semaforo do tamanho do pool de conexoes, de modo que o
+ * excesso espera parado em uma thread virtual (barata) em vez de disputar conexoes no Hikari.
+ * Quem espera mais que {@code estoque.limitador.espera-maxima} recebe 503.
+ *
+ * <p>Respostas em streaming ({@code StreamingResponseBody}, como a exportacao NDJSON) seguram a
+ * conexao enquanto escrevem, em outra thread: a permissao so volta quando a requisicao assincrona
+ * termina. Ja SSE e {@code DeferredResult} so esperam eventos, sem conexao, e devolvem a permissao
+ * assim que o controller retorna.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class LimitadorDeConexoes implements AsyncHandlerInterceptor {
+
+    private static final String PERMISSAO = LimitadorDeConexoes.class.getName() + ".permissao";
+    private static final String STREAMING = LimitadorDeConexoes.class.getName() + ".streaming";
+
+    private final Semaphore permissoes;
+    private final long esperaMaximaNanos;
+    private final AtomicInteger naFila = new AtomicInteger();
+    private final Timer espera;
+    private final Counter rejeitadas;
+
+    // registrado em cada requisicao; so e chamado quando o controller devolve um Callable ou um
+    // StreamingResponseBody
+    private final CallableProcessingInterceptor aoTerminarStreaming = new CallableProcessingInterceptor() {
+        @Override
+        public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+            request.setAttribute(STREAMING, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        @Override
+        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+            liberar(request.getNativeRequest(HttpServletRequest.class));
+        }
+    };
+
+    public LimitadorDeConexoes(@Value("${estoque.limitador.permissoes}") int permissoes,
+                               @Value("${estoque.limitador.espera-maxima:5s}") Duration esperaMaxima,
+                               MeterRegistry registry) {
+        this.permissoes = new Semaphore(permissoes, true);
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        Gauge.builder("estoque.limitador.fila", naFila, AtomicInteger::get)
+                .description("Requisicoes aguardando uma permissao de acesso ao banco")
+                .register(registry);
+        Gauge.builder("estoque.limitador.em-uso", this.permissoes, p -> permissoes - p.availablePermits())
+                .description("Permissoes de acesso ao banco em uso")
+                .register(registry);
+        this.espera = Timer.builder("estoque.limitador.espera")
+                .description("Tempo de espera por uma permissao de acesso ao banco")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejeitadas = Counter.builder("estoque.limitador.rejeitadas")
+                .description("Requisicoes recusadas por excederem a espera maxima")
+                .register(registry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        if (request.getAttribute(PERMISSAO) != null) {
+            return true; // redespacho assincrono da mesma requisicao
+        }
+        naFila.incrementAndGet();
+        long inicio = System.nanoTime();
+        boolean obteve;
+        try {
+            obteve = permissoes.tryAcquire(esperaMaximaNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            naFila.decrementAndGet();
+            espera.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+        if (!obteve) {
+            rejeitadas.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return false;
+        }
+        // devolvida uma unica vez, mesmo com o fim da requisicao assincrona e o redespacho em threads diferentes
+        request.setAttribute(PERMISSAO, new AtomicBoolean(true));
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(PERMISSAO, aoTerminarStreaming);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        if (request.getAttribute(STREAMING) == null) {
+            liberar(request);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        liberar(request);
+    }
+
+    private void liberar(HttpServletRequest request) {
+        if (request != null && request.getAttribute(PERMISSAO) instanceof AtomicBoolean permissao
+                && permissao.compareAndSet(true, false)) {
+            permissoes.release();
+        }
+    }
+}
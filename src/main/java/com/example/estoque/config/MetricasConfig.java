@@ -0,0 +1,42 @@
+package com.example.estoque.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Instrumentacao exposta em {@code /actuator/prometheus}: tempos dos metodos anotados com
+ * {@code @Timed} e comandos SQL por requisicao.
+ */
+@Configuration
+public class MetricasConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ContadorDeComandosSql> contadorDeComandosSql(MeterRegistry registry) {
+        FilterRegistrationBean<ContadorDeComandosSql> registro =
+                new FilterRegistrationBean<>(new ContadorDeComandosSql(registry));
+        registro.addUrlPatterns("/estoque", "/estoque/*", "/produtos", "/produtos/*");
+        return registro;
+    }
+
+    // estatico para nao antecipar a criacao desta configuracao (e do MeterRegistry) junto dos post-processors
+    @Bean
+    public static BeanPostProcessor contarComandosSql() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String nome) {
+                return bean instanceof DataSource dataSource ? ContadorDeComandosSql.contando(dataSource) : bean;
+            }
+        };
+    }
+}
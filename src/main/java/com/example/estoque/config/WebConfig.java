@@ -0,0 +1,41 @@
+package com.example.estoque.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ObjectProvider<LimitadorDeConexoes> limitador;
+
+    public WebConfig(ObjectProvider<LimitadorDeConexoes> limitador) {
+        this.limitador = limitador;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        limitador.ifAvailable(interceptor -> registry.addInterceptor(interceptor)
+                .addPathPatterns("/estoque", "/estoque/**", "/produtos", "/produtos/**"));
+    }
+
+    // Smile (application/x-jackson-smile) e CBOR (application/cbor) com a mesma configuracao do
+    // ObjectMapper de JSON; o Spring so usaria os padroes do Jackson. O JSON continua sendo o padrao
+    // quando o Accept nao pede outro formato.
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.estoque.controller;
+
+import com.example.estoque.domain.AlertaEstoque;
+import com.example.estoque.service.AlertaDeEstoque;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+@RestController
+@RequestMapping("/estoque/alertas")
+@ConditionalOnProperty(prefix = "estoque.alertas", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AlertaController {
+
+    AlertaDeEstoque alertas;
+
+    public AlertaController(AlertaDeEstoque alertas) {
+        this.alertas = alertas;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<AlertaEstoque>> abaixoDoLimite(){
+        return ResponseEntity.ok().body(alertas.abaixoDoLimite());
+    }
+
+    /**
+     * Server-Sent Events: primeiro os produtos que ja estao abaixo do limite, depois um evento a cada
+     * produto que cruza o limite ({@code estoque-baixo}) ou volta a ele ({@code estoque-normalizado}).
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter acompanhar() throws IOException {
+        SseEmitter emitter = new SseEmitter(0L);
+        Consumer<AlertaEstoque> ouvinte = alerta -> {
+            try {
+                emitter.send(evento(alerta));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        emitter.onCompletion(() -> alertas.removerOuvinte(ouvinte));
+        emitter.onTimeout(() -> alertas.removerOuvinte(ouvinte));
+        emitter.onError(erro -> alertas.removerOuvinte(ouvinte));
+        alertas.adicionarOuvinte(ouvinte);
+        for (AlertaEstoque alerta : alertas.abaixoDoLimite()) {
+            emitter.send(evento(alerta));
+        }
+        return emitter;
+    }
+
+    @PutMapping("/limites/{id}")
+    public ResponseEntity<Integer> definirLimite(@PathVariable Long id, @RequestBody Integer limite){
+        alertas.definirLimite(id, limite);
+        return ResponseEntity.ok().body(alertas.limite(id));
+    }
+
+    @DeleteMapping("/limites/{id}")
+    public ResponseEntity<Integer> removerLimite(@PathVariable Long id){
+        alertas.definirLimite(id, null);
+        return ResponseEntity.ok().body(alertas.limite(id));
+    }
+
+    private static SseEmitter.SseEventBuilder evento(AlertaEstoque alerta) {
+        String nome = alerta.getTipo() == AlertaEstoque.Tipo.ABAIXO_DO_LIMITE ? "estoque-baixo" : "estoque-normalizado";
+        return SseEmitter.event()
+                .id(String.valueOf(alerta.getId()))
+                .name(nome)
+                .data(alerta, MediaType.APPLICATION_JSON);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.estoque.controller;
+
+import com.example.estoque.domain.EstoqueArmazem;
+import com.example.estoque.service.AlocadorDeEstoque;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/estoque/armazens")
+@Profile("!arquivo")
+@ConditionalOnProperty(prefix = "estoque.armazens", name = "enabled", havingValue = "true")
+public class ArmazemController {
+
+    AlocadorDeEstoque alocador;
+
+    public ArmazemController(AlocadorDeEstoque alocador) {
+        this.alocador = alocador;
+    }
+
+    @GetMapping("/{produtoId}")
+    public ResponseEntity<List<EstoqueArmazem>> listar(@PathVariable Long produtoId){
+        List<EstoqueArmazem> armazens = alocador.listar(produtoId);
+        if (armazens.isEmpty()){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().body(armazens);
+    }
+
+    /**
+     * Grava a quantidade dos armazens informados; os demais ficam como estao.
+     */
+    @PutMapping("/{produtoId}")
+    public ResponseEntity<String> repor(@PathVariable Long produtoId, @RequestBody List<EstoqueArmazem> quantidades){
+        try {
+            if (!alocador.repor(produtoId, quantidades)){
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Produto não encontrado com ID: " + produtoId);
+            }
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+        return ResponseEntity.ok().body("Estoque dos armazéns atualizado");
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.estoque.controller;
+
+import com.example.estoque.domain.ProdutoEncontrado;
+import com.example.estoque.service.BuscaDeProdutos;
+import com.example.estoque.service.IndiceDeBusca;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/produtos/busca")
+@ConditionalOnProperty(prefix = "estoque.busca", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class BuscaController {
+
+    static final String TOTAL = "X-Total-Count";
+
+    BuscaDeProdutos busca;
+
+    public BuscaController(BuscaDeProdutos busca) {
+        this.busca = busca;
+    }
+
+    /**
+     * Produtos cujo nome ou descricao contem todos os termos de {@code q} (o ultimo pode estar
+     * incompleto), por relevancia. Paginado por {@code page}/{@code limit}; o total vai no cabecalho
+     * {@code X-Total-Count} e a proxima pagina no {@code Link}.
+     */
+    @GetMapping
+    public ResponseEntity<List<ProdutoEncontrado>> buscar(@RequestParam String q,
+                                                          @RequestParam(defaultValue = "0") int page,
+                                                          @RequestParam(required = false) Integer limit) {
+        int limite = Listagens.limite(limit);
+        int pagina = Math.max(0, page);
+        int inicio = (int) Math.min((long) pagina * limite, Integer.MAX_VALUE - limite);
+        IndiceDeBusca.Resultado resultado = busca.buscar(q, inicio, limite);
+        ResponseEntity.BodyBuilder resposta = ResponseEntity.ok().header(TOTAL, String.valueOf(resultado.total()));
+        if ((long) inicio + limite < resultado.total()) {
+            String proxima = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("page", pagina + 1)
+                    .replaceQueryParam("limit", limite)
+                    .toUriString();
+            resposta.header(HttpHeaders.LINK, "<" + proxima + ">; rel=\"next\"");
+        }
+        return resposta.body(resultado.itens());
+    }
+}
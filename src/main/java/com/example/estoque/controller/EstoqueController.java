@@ -2,12 +2,27 @@ package com.example.estoque.controller;
 
 import com.example.estoque.domain.Pedido;
 import com.example.estoque.domain.Produto;
+import com.example.estoque.domain.RelatorioImportacao;
 import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.service.AgrupadorDePedidos;
+import com.example.estoque.service.CatalogoDeProdutos;
+import com.example.estoque.service.ImportacaoService;
 import com.example.estoque.service.ProdutoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -16,19 +31,105 @@ public class EstoqueController {
 
     ProdutoService service;
 
-    public EstoqueController(ProdutoService service) {
+    ImportacaoService importacaoService;
+
+    ObjectMapper objectMapper;
+
+    // presente apenas com estoque.agrupamento.enabled=true
+    ObjectProvider<AgrupadorDePedidos> agrupador;
+
+    // ausente com estoque.catalogo.enabled=false
+    ObjectProvider<CatalogoDeProdutos> catalogo;
+
+    public EstoqueController(ProdutoService service, ImportacaoService importacaoService, ObjectMapper objectMapper,
+                             ObjectProvider<AgrupadorDePedidos> agrupador, ObjectProvider<CatalogoDeProdutos> catalogo) {
         this.service = service;
+        this.importacaoService = importacaoService;
+        this.objectMapper = objectMapper;
+        this.agrupador = agrupador;
+        this.catalogo = catalogo;
     }
 
     @PostMapping
     public ResponseEntity<String> cadastraProduto(@RequestBody Produto produto){
-        service.cadastrarProduto(produto);
+        try {
+            service.cadastrarProduto(produto);
+        }catch (ForaDeEstoqueException e){
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
         return ResponseEntity.ok().body("Cadastrado com Sucesso");
     }
 
     @GetMapping
-    public ResponseEntity<List<Produto>> listarProdutos(){
-        return ResponseEntity.ok().body(service.encontrarTodos());
+    public ResponseEntity<List<Produto>> listarProdutos(@RequestParam(required = false) Long after,
+                                                        @RequestParam(required = false) Integer limit){
+        if (after == null && limit == null){
+            return ResponseEntity.ok().body(service.encontrarTodos());
+        }
+        int limite = Listagens.limite(limit);
+        List<ProdutoEntity> pagina = service.listarProdutos(after, limite);
+        Long ultimoId = pagina.isEmpty() ? null : pagina.get(pagina.size() - 1).getId();
+        return Listagens.pagina(pagina.stream().map(Produto::new).toList(), ultimoId, limite);
+    }
+
+    /**
+     * Catalogo inteiro em JSON, copiado dos pedacos da ultima versao publicada (gzip se o cliente
+     * aceitar), sem esperar reconstrucao. O {@code 304} para um {@code If-None-Match} igual ao ETag
+     * da versao sai do proprio Spring. Smile, CBOR e a paginacao continuam em {@link #listarProdutos}.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE, params = {"!after", "!limit"})
+    public ResponseEntity<Resource> listarCatalogo(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                                   String codificacoes) throws IOException {
+        CatalogoDeProdutos catalogo = this.catalogo.getIfAvailable();
+        if (catalogo == null){
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .body(new ByteArrayResource(objectMapper.writeValueAsBytes(service.encontrarTodos())));
+        }
+        CatalogoDeProdutos.Versao versao = catalogo.atual();
+        ResponseEntity.BodyBuilder resposta = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (aceitaGzip(codificacoes) && versao.tamanhoGzip() < versao.tamanhoJson()){
+            // outro ETag: a variante comprimida e outra representacao do mesmo catalogo
+            String etag = versao.etag().substring(0, versao.etag().length() - 1) + "-gzip\"";
+            return resposta.eTag(etag).header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .contentLength(versao.tamanhoGzip()).body(new InputStreamResource(versao.lerGzip()));
+        }
+        return resposta.eTag(versao.etag()).contentLength(versao.tamanhoJson())
+                .body(new InputStreamResource(versao.lerJson()));
+    }
+
+    private static boolean aceitaGzip(String codificacoes){
+        if (codificacoes == null){
+            return false;
+        }
+        for (String codificacao : codificacoes.split(",")){
+            String[] partes = codificacao.split(";");
+            String nome = partes[0].trim();
+            if (!nome.equalsIgnoreCase("gzip") && !nome.equals("*")){
+                continue;
+            }
+            // gzip;q=0 recusa explicitamente
+            double peso = 1;
+            for (int i = 1; i < partes.length; i++){
+                String parametro = partes[i].trim();
+                if (parametro.startsWith("q=")){
+                    try {
+                        peso = Double.parseDouble(parametro.substring(2));
+                    } catch (NumberFormatException e){
+                        peso = 0;
+                    }
+                }
+            }
+            return peso > 0;
+        }
+        return false;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportarProdutos(){
+        return Listagens.<Produto>ndjson(objectMapper,
+                consumidor -> service.percorrerProdutos(entity -> consumidor.accept(new Produto(entity))));
     }
 
     @GetMapping("/{nome}")
@@ -36,11 +137,34 @@ public class EstoqueController {
         return ResponseEntity.ok().body(service.encontrarPorNome(nome));
     }
 
+    @PostMapping(value = "/importar", consumes = "text/csv")
+    public ResponseEntity<RelatorioImportacao> importarCsv(InputStream corpo) throws IOException {
+        return ResponseEntity.ok().body(importacaoService.importarCsv(corpo));
+    }
+
+    @PostMapping(value = "/importar", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<RelatorioImportacao> importarNdjson(InputStream corpo) throws IOException {
+        return ResponseEntity.ok().body(importacaoService.importarNdjson(corpo));
+    }
+
+    /**
+     * A chave de idempotencia pode vir no corpo ({@code chave}) ou no cabecalho {@code Idempotency-Key};
+     * o reenvio de um pedido ja aplicado responde como o original, sem baixar o estoque de novo.
+     */
     @PostMapping("/atualizar")
-    public ResponseEntity<String> atualizarEstoque(@RequestBody Pedido pedido){
+    public ResponseEntity<String> atualizarEstoque(@RequestBody Pedido pedido,
+                                                   @RequestHeader(value = "Idempotency-Key", required = false) String chave){
+        if (pedido.getChave() == null){
+            pedido.setChave(chave);
+        }
         try{
-            service.atualizarEstoque(pedido);
-        }catch (ForaDeEstoqueException e){
+            AgrupadorDePedidos agrupador = this.agrupador.getIfAvailable();
+            if (agrupador != null){
+                agrupador.atualizarEstoque(pedido);
+            }else {
+                service.atualizarEstoque(pedido);
+            }
+        }catch (ForaDeEstoqueException | IllegalArgumentException e){
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
         return ResponseEntity.ok().body("Estoque Atualizado");
@@ -0,0 +1,42 @@
+package com.example.estoque.controller;
+
+import com.example.estoque.domain.QuantidadeEm;
+import com.example.estoque.service.HistoricoDeEstoque;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+
+@RestController
+@RequestMapping("/estoque/historico")
+@Profile("!arquivo")
+@ConditionalOnProperty(prefix = "estoque.historico", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class HistoricoController {
+
+    HistoricoDeEstoque historico;
+
+    public HistoricoController(HistoricoDeEstoque historico) {
+        this.historico = historico;
+    }
+
+    /**
+     * Quantidade do produto no instante {@code em} (ISO-8601, padrao agora).
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<QuantidadeEm> quantidadeEm(@PathVariable Long id,
+                                                     @RequestParam(required = false)
+                                                     @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant em){
+        QuantidadeEm quantidade = historico.quantidadeEm(id, em == null ? Instant.now() : em);
+        if (quantidade == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().body(quantidade);
+    }
+}
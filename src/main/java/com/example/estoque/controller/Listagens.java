@@ -0,0 +1,64 @@
+package com.example.estoque.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Apoio comum as listagens de produtos: paginacao por chave e streaming NDJSON.
+ */
+final class Listagens {
+
+    static final int LIMITE_PADRAO = 100;
+    static final int LIMITE_MAXIMO = 1000;
+
+    private Listagens() {
+    }
+
+    static int limite(Integer limit) {
+        if (limit == null) {
+            return LIMITE_PADRAO;
+        }
+        return Math.max(1, Math.min(limit, LIMITE_MAXIMO));
+    }
+
+    /**
+     * Responde a pagina e, se ela veio cheia, aponta a proxima no cabecalho {@code Link}.
+     */
+    static <T> ResponseEntity<List<T>> pagina(List<T> itens, Long ultimoId, int limite) {
+        ResponseEntity.BodyBuilder resposta = ResponseEntity.ok();
+        if (ultimoId != null && itens.size() == limite) {
+            String proxima = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", ultimoId)
+                    .replaceQueryParam("limit", limite)
+                    .toUriString();
+            resposta.header(HttpHeaders.LINK, "<" + proxima + ">; rel=\"next\"");
+        }
+        return resposta.body(itens);
+    }
+
+    /**
+     * Escreve um objeto JSON por linha a medida que a fonte produz, sem montar a lista em memoria.
+     */
+    static <T> ResponseEntity<StreamingResponseBody> ndjson(ObjectMapper objectMapper, Consumer<Consumer<T>> fonte) {
+        ObjectWriter writer = objectMapper.writer();
+        StreamingResponseBody corpo = out -> fonte.accept(item -> {
+            try {
+                out.write(writer.writeValueAsBytes(item));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(corpo);
+    }
+}
@@ -1,11 +1,27 @@
 package com.example.estoque.controller;
 
+import com.example.estoque.domain.AlteracaoProduto;
 import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.exception.ForaDeEstoqueException;
 import com.example.estoque.service.ProdutoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/produtos")
@@ -14,24 +30,110 @@ public class ProdutoController {
     @Autowired
     private ProdutoService produtoService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping
-    public List<ProdutoEntity> listarTodos() {
-        return produtoService.listarProdutos();
+    public ResponseEntity<List<ProdutoEntity>> listarTodos(@RequestParam(required = false) Long after,
+                                                           @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(produtoService.listarProdutos());
+        }
+        int limite = Listagens.limite(limit);
+        List<ProdutoEntity> pagina = produtoService.listarProdutos(after, limite);
+        Long ultimoId = pagina.isEmpty() ? null : pagina.get(pagina.size() - 1).getId();
+        return Listagens.pagina(pagina, ultimoId, limite);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportarTodos() {
+        return Listagens.<ProdutoEntity>ndjson(objectMapper, produtoService::percorrerProdutos);
     }
 
+    /**
+     * Responde com a versao do produto como ETag; com {@code If-None-Match} igual a ela devolve 304
+     * sem corpo. {@code Cache-Control: no-cache} faz clientes e proxies sempre revalidarem.
+     */
     @GetMapping("/{id}")
-    public ProdutoEntity buscarPorId(@PathVariable Long id) {
-        return produtoService.buscarProdutoPorId(id);
+    public ResponseEntity<ProdutoEntity> buscarPorId(@PathVariable Long id, WebRequest request) {
+        ProdutoEntity produto = produtoService.buscarProdutoPorId(id);
+        if (produto == null || produto.getVersao() == null) {
+            return ResponseEntity.ok().body(produto);
+        }
+        String etag = etag(produto);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(produto);
     }
 
     @PostMapping
     public ProdutoEntity criar(@RequestBody ProdutoEntity produto) {
         return produtoService.criarProduto(produto);
     }
+    /**
+     * Com {@code If-Match}, so grava se o produto ainda estiver na versao informada; senao, 412. Sem o
+     * cabecalho, uma alteracao concorrente (uma baixa, por exemplo) entre a leitura e a gravacao da 409,
+     * assim como uma quantidade que o estoque por armazem nao comporta.
+     */
     @PutMapping("/{id}")
-    public ProdutoEntity atualizar(@PathVariable Long id, @RequestBody ProdutoEntity produtoAtualizado) {
+    public ResponseEntity<?> atualizar(@PathVariable Long id, @RequestBody ProdutoEntity produtoAtualizado,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         produtoAtualizado.setId(id); // garante que o ID na URL seja usado
-        return produtoService.atualizarProduto(produtoAtualizado);
+        try {
+            ProdutoEntity salvo = produtoService.atualizarProduto(produtoAtualizado, versoes(ifMatch));
+            return ResponseEntity.ok().eTag(etag(salvo)).body(salvo);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(ifMatch == null ? HttpStatus.CONFLICT : HttpStatus.PRECONDITION_FAILED).build();
+        } catch (ForaDeEstoqueException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Altera so os campos enviados, em um unico UPDATE; campos ausentes ou nulos ficam como estao.
+     * Com {@code If-Match} (ou {@code versao} no corpo), so grava se o produto ainda estiver na versao
+     * informada; senao, 412.
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> alterar(@PathVariable Long id, @RequestBody AlteracaoProduto alteracao,
+                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        try {
+            ProdutoEntity alterado = produtoService.alterarProduto(id, alteracao, versoes(ifMatch));
+            if (alterado == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok().eTag(etag(alterado)).body(alterado);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Já existe um produto com o nome " + alteracao.getNome());
+        } catch (ForaDeEstoqueException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+    }
+
+    /**
+     * Alteracoes parciais em massa, cada uma com o {@code id} do produto, gravadas em lotes JDBC
+     * numa unica transacao. Ids inexistentes sao listados no relatorio; uma alteracao com
+     * {@code versao} que nao bate com a do produto recusa todas com 412.
+     */
+    @PatchMapping
+    public ResponseEntity<?> alterarVarios(@RequestBody List<AlteracaoProduto> alteracoes) {
+        try {
+            return ResponseEntity.ok(produtoService.alterarProdutos(alteracoes));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Alguma alteração usa o nome de outro produto; nada foi gravado");
+        } catch (ForaDeEstoqueException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage() + "; nada foi gravado");
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                    .body("O produto " + e.getIdentifier() + " não está mais na versão informada; nada foi gravado");
+        }
     }
 
     @DeleteMapping("/{id}")
@@ -39,4 +141,30 @@ public class ProdutoController {
         produtoService.deletarProduto(id);
     }
 
+    private static String etag(ProdutoEntity produto) {
+        return "\"" + produto.getVersao() + "\"";
+    }
+
+    // versoes aceitas pelo If-Match; null = qualquer uma. If-Match compara de forma forte, entao
+    // ETags fracas nunca casam
+    private static Set<Long> versoes(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        Set<Long> versoes = new HashSet<>();
+        for (ETag etag : ETag.parse(ifMatch)) {
+            if (etag.isWildcard()) {
+                return null;
+            }
+            if (!etag.weak()) {
+                try {
+                    versoes.add(Long.valueOf(etag.tag()));
+                } catch (NumberFormatException e) {
+                    // ETag que nao saiu daqui: nao casa com nenhuma versao
+                }
+            }
+        }
+        return versoes;
+    }
+
 }
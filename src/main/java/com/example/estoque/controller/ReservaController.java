@@ -0,0 +1,70 @@
+package com.example.estoque.controller;
+
+import com.example.estoque.domain.EstoqueDisponivel;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Reserva;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.service.ProdutoService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DurationFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/estoque/reservas")
+@ConditionalOnProperty(prefix = "estoque.reservas", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ReservaController {
+
+    ProdutoService service;
+
+    public ReservaController(ProdutoService service) {
+        this.service = service;
+    }
+
+    /**
+     * Reserva os itens do pedido por {@code prazo} (ex.: {@code 10m}; padrao em
+     * {@code estoque.reservas.prazo}). A resposta traz o id usado para confirmar ou liberar.
+     */
+    @PostMapping
+    public ResponseEntity<?> reservar(@RequestBody Pedido pedido, @RequestParam(required = false)
+                                      @DurationFormat(style = DurationFormat.Style.SIMPLE) Duration prazo){
+        try {
+            Reserva reserva = service.reservar(pedido, prazo);
+            return ResponseEntity.status(HttpStatus.CREATED).body(reserva);
+        } catch (ForaDeEstoqueException | IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{id}/confirmar")
+    public ResponseEntity<String> confirmar(@PathVariable String id){
+        try {
+            if (!service.confirmarReserva(id)){
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Reserva não encontrada ou expirada");
+            }
+        } catch (ForaDeEstoqueException e){
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+        return ResponseEntity.ok().body("Reserva confirmada");
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> liberar(@PathVariable String id){
+        if (!service.liberarReserva(id)){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/disponivel/{produtoId}")
+    public ResponseEntity<EstoqueDisponivel> disponivel(@PathVariable Long produtoId){
+        EstoqueDisponivel disponivel = service.disponivel(produtoId);
+        if (disponivel == null){
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().body(disponivel);
+    }
+}
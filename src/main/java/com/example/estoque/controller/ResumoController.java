@@ -0,0 +1,26 @@
+package com.example.estoque.controller;
+
+import com.example.estoque.domain.ResumoEstoque;
+import com.example.estoque.service.ResumoDeEstoque;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/estoque/resumo")
+@ConditionalOnProperty(prefix = "estoque.resumo", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ResumoController {
+
+    ResumoDeEstoque resumo;
+
+    public ResumoController(ResumoDeEstoque resumo) {
+        this.resumo = resumo;
+    }
+
+    @GetMapping
+    public ResponseEntity<ResumoEstoque> resumo(){
+        return ResponseEntity.ok().body(resumo.resumo());
+    }
+}
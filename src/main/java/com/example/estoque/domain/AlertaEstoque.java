@@ -0,0 +1,43 @@
+package com.example.estoque.domain;
+
+public class AlertaEstoque {
+
+    /**
+     * ABAIXO_DO_LIMITE quando a quantidade cai abaixo do limite de reposicao; NORMALIZADO quando volta a ele.
+     */
+    public enum Tipo { ABAIXO_DO_LIMITE, NORMALIZADO }
+
+    private final Tipo tipo;
+    private final Long id;
+    private final String nome;
+    private final int qtd;
+    private final int limite;
+
+    public AlertaEstoque(Tipo tipo, Long id, String nome, int qtd, int limite) {
+        this.tipo = tipo;
+        this.id = id;
+        this.nome = nome;
+        this.qtd = qtd;
+        this.limite = limite;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public int getQtd() {
+        return qtd;
+    }
+
+    public int getLimite() {
+        return limite;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.estoque.domain;
+
+import com.example.estoque.entity.ProdutoEntity;
+
+/**
+ * Alteracao parcial de um produto: so os campos informados sao gravados; os ausentes (ou nulos)
+ * ficam como estao. Com {@code versao}, so grava se o produto ainda estiver nela.
+ */
+public class AlteracaoProduto {
+
+    private Long id;
+    private String nome;
+    private String descricao;
+    private Double preco;
+    private Integer qtd;
+    private Long versao;
+
+    public AlteracaoProduto() {
+    }
+
+    public AlteracaoProduto(Long id, String nome, String descricao, Double preco, Integer qtd) {
+        this.id = id;
+        this.nome = nome;
+        this.descricao = descricao;
+        this.preco = preco;
+        this.qtd = qtd;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    public void setDescricao(String descricao) {
+        this.descricao = descricao;
+    }
+
+    public Double getPreco() {
+        return preco;
+    }
+
+    public void setPreco(Double preco) {
+        this.preco = preco;
+    }
+
+    public Integer getQtd() {
+        return qtd;
+    }
+
+    public void setQtd(Integer qtd) {
+        this.qtd = qtd;
+    }
+
+    /**
+     * Versao esperada do produto; {@code null} aceita qualquer uma.
+     */
+    public Long getVersao() {
+        return versao;
+    }
+
+    public void setVersao(Long versao) {
+        this.versao = versao;
+    }
+
+    /**
+     * Copia para o produto apenas os campos informados.
+     */
+    public void aplicar(ProdutoEntity produto) {
+        if (nome != null) {
+            produto.setNome(nome);
+        }
+        if (descricao != null) {
+            produto.setDescricao(descricao);
+        }
+        if (preco != null) {
+            produto.setPreco(preco);
+        }
+        if (qtd != null) {
+            produto.setQtd(qtd);
+        }
+    }
+
+    /**
+     * Junta uma alteracao posterior do mesmo produto; os campos dela prevalecem.
+     */
+    public void juntar(AlteracaoProduto posterior) {
+        if (posterior.nome != null) {
+            nome = posterior.nome;
+        }
+        if (posterior.descricao != null) {
+            descricao = posterior.descricao;
+        }
+        if (posterior.preco != null) {
+            preco = posterior.preco;
+        }
+        if (posterior.qtd != null) {
+            qtd = posterior.qtd;
+        }
+        if (posterior.versao != null) {
+            versao = posterior.versao;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.estoque.domain;
+
+public class ErroImportacao {
+
+    private final long linha;
+    private final String mensagem;
+
+    public ErroImportacao(long linha, String mensagem) {
+        this.linha = linha;
+        this.mensagem = mensagem;
+    }
+
+    public long getLinha() {
+        return linha;
+    }
+
+    public String getMensagem() {
+        return mensagem;
+    }
+}
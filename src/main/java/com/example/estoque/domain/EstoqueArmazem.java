@@ -0,0 +1,31 @@
+package com.example.estoque.domain;
+
+public class EstoqueArmazem {
+
+    private String armazem;
+    private Integer qtd;
+
+    public EstoqueArmazem() {
+    }
+
+    public EstoqueArmazem(String armazem, Integer qtd) {
+        this.armazem = armazem;
+        this.qtd = qtd;
+    }
+
+    public String getArmazem() {
+        return armazem;
+    }
+
+    public void setArmazem(String armazem) {
+        this.armazem = armazem;
+    }
+
+    public Integer getQtd() {
+        return qtd;
+    }
+
+    public void setQtd(Integer qtd) {
+        this.qtd = qtd;
+    }
+}
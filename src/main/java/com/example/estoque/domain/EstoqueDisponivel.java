@@ -0,0 +1,33 @@
+package com.example.estoque.domain;
+
+public class EstoqueDisponivel {
+
+    private final Long produtoId;
+    private final int qtd;
+    private final int reservado;
+
+    public EstoqueDisponivel(Long produtoId, int qtd, int reservado) {
+        this.produtoId = produtoId;
+        this.qtd = qtd;
+        this.reservado = reservado;
+    }
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public int getQtd() {
+        return qtd;
+    }
+
+    /**
+     * Soma das reservas ativas do produto.
+     */
+    public int getReservado() {
+        return reservado;
+    }
+
+    public int getDisponivel() {
+        return qtd - reservado;
+    }
+}
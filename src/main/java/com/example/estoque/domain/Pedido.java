@@ -4,8 +4,34 @@ import java.util.List;
 
 public class Pedido {
 
+    String chave;
+
+    String regiao;
+
     List<ItemPedido> itens;
 
+    /**
+     * Chave de idempotencia escolhida pelo cliente; o reenvio com a mesma chave nao baixa o estoque de novo.
+     */
+    public String getChave() {
+        return chave;
+    }
+
+    public void setChave(String chave) {
+        this.chave = chave;
+    }
+
+    /**
+     * Regiao de entrega, usada pela alocacao por armazem mais proximo; opcional.
+     */
+    public String getRegiao() {
+        return regiao;
+    }
+
+    public void setRegiao(String regiao) {
+        this.regiao = regiao;
+    }
+
     public List<ItemPedido> getItens() {
         return itens;
     }
@@ -0,0 +1,35 @@
+package com.example.estoque.domain;
+
+public class ProdutoEncontrado {
+
+    private final Long id;
+    private final String nome;
+    private final String descricao;
+    private final int pontuacao;
+
+    public ProdutoEncontrado(Long id, String nome, String descricao, int pontuacao) {
+        this.id = id;
+        this.nome = nome;
+        this.descricao = descricao;
+        this.pontuacao = pontuacao;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    /**
+     * Relevancia do produto para a busca; maior e melhor.
+     */
+    public int getPontuacao() {
+        return pontuacao;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.estoque.domain;
+
+import java.time.Instant;
+
+public class QuantidadeEm {
+
+    private final Long produtoId;
+    private final Instant instante;
+    private final int qtd;
+    private final Instant snapshotEm;
+    private final int movimentosAplicados;
+
+    public QuantidadeEm(Long produtoId, Instant instante, int qtd, Instant snapshotEm, int movimentosAplicados) {
+        this.produtoId = produtoId;
+        this.instante = instante;
+        this.qtd = qtd;
+        this.snapshotEm = snapshotEm;
+        this.movimentosAplicados = movimentosAplicados;
+    }
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public Instant getInstante() {
+        return instante;
+    }
+
+    public int getQtd() {
+        return qtd;
+    }
+
+    /**
+     * Momento do snapshot usado como ponto de partida; {@code null} se a quantidade foi reconstruida
+     * desde o primeiro movimento do produto.
+     */
+    public Instant getSnapshotEm() {
+        return snapshotEm;
+    }
+
+    /**
+     * Movimentos do historico reaplicados sobre o snapshot.
+     */
+    public int getMovimentosAplicados() {
+        return movimentosAplicados;
+    }
+}
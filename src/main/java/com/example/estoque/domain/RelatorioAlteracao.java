@@ -0,0 +1,25 @@
+package com.example.estoque.domain;
+
+import java.util.List;
+
+public class RelatorioAlteracao {
+
+    private final int produtosAlterados;
+    private final List<Long> naoEncontrados;
+
+    public RelatorioAlteracao(int produtosAlterados, List<Long> naoEncontrados) {
+        this.produtosAlterados = produtosAlterados;
+        this.naoEncontrados = naoEncontrados;
+    }
+
+    public int getProdutosAlterados() {
+        return produtosAlterados;
+    }
+
+    /**
+     * Ids informados que nao existem no catalogo; nada foi gravado para eles.
+     */
+    public List<Long> getNaoEncontrados() {
+        return naoEncontrados;
+    }
+}
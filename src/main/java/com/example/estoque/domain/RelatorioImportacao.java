@@ -0,0 +1,48 @@
+package com.example.estoque.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RelatorioImportacao {
+
+    /**
+     * Limite de erros detalhados na resposta; {@link #getTotalErros()} continua contando todos.
+     */
+    public static final int MAXIMO_ERROS_DETALHADOS = 1000;
+
+    private long linhasLidas;
+    private long produtosGravados;
+    private long totalErros;
+    private final List<ErroImportacao> erros = new ArrayList<>();
+
+    public void linhaLida() {
+        linhasLidas++;
+    }
+
+    public void gravados(int quantidade) {
+        produtosGravados += quantidade;
+    }
+
+    public void erro(long linha, String mensagem) {
+        totalErros++;
+        if (erros.size() < MAXIMO_ERROS_DETALHADOS) {
+            erros.add(new ErroImportacao(linha, mensagem));
+        }
+    }
+
+    public long getLinhasLidas() {
+        return linhasLidas;
+    }
+
+    public long getProdutosGravados() {
+        return produtosGravados;
+    }
+
+    public long getTotalErros() {
+        return totalErros;
+    }
+
+    public List<ErroImportacao> getErros() {
+        return erros;
+    }
+}
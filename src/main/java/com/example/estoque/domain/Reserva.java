@@ -0,0 +1,35 @@
+package com.example.estoque.domain;
+
+import java.time.Instant;
+import java.util.List;
+
+public class Reserva {
+
+    private final String id;
+    private final List<ItemPedido> itens;
+    private final Instant expiraEm;
+
+    public Reserva(String id, List<ItemPedido> itens, Instant expiraEm) {
+        this.id = id;
+        this.itens = itens;
+        this.expiraEm = expiraEm;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Quantidade reservada de cada produto, uma linha por produto.
+     */
+    public List<ItemPedido> getItens() {
+        return itens;
+    }
+
+    /**
+     * Sem confirmacao ate este instante, a reserva e liberada sozinha.
+     */
+    public Instant getExpiraEm() {
+        return expiraEm;
+    }
+}
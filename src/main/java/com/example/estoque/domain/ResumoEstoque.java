@@ -0,0 +1,45 @@
+package com.example.estoque.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class ResumoEstoque {
+
+    private final long produtos;
+    private final BigDecimal valorTotal;
+    private final long foraDeEstoque;
+
+    public ResumoEstoque(long produtos, BigDecimal valorTotal, long foraDeEstoque) {
+        this.produtos = produtos;
+        this.valorTotal = valorTotal.setScale(2, RoundingMode.HALF_EVEN);
+        this.foraDeEstoque = foraDeEstoque;
+    }
+
+    // usado pela consulta de agregacao do repositorio
+    public ResumoEstoque(Long produtos, Double valorTotal, Long foraDeEstoque) {
+        this(produtos == null ? 0 : produtos,
+                valorTotal == null ? BigDecimal.ZERO : BigDecimal.valueOf(valorTotal),
+                foraDeEstoque == null ? 0 : foraDeEstoque);
+    }
+
+    /**
+     * Numero de produtos (SKUs) cadastrados.
+     */
+    public long getProdutos() {
+        return produtos;
+    }
+
+    /**
+     * Soma de {@code preco * qtd}; produtos sem preco nao entram.
+     */
+    public BigDecimal getValorTotal() {
+        return valorTotal;
+    }
+
+    /**
+     * Produtos com quantidade zero (ou sem quantidade).
+     */
+    public long getForaDeEstoque() {
+        return foraDeEstoque;
+    }
+}
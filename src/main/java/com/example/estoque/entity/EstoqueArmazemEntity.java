@@ -0,0 +1,56 @@
+package com.example.estoque.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Parte do estoque de um produto guardada em um armazem. So existe para o Hibernate criar a
+ * tabela; a leitura e a gravacao sao feitas por JDBC em {@code AlocadorDeEstoque}.
+ */
+@Entity(name = "estoque_armazem")
+@Table(name = "estoque_armazem")
+@IdClass(EstoqueArmazemEntity.Chave.class)
+public class EstoqueArmazemEntity {
+
+    @Id
+    @Column(name = "produto_id")
+    private Long produtoId;
+
+    @Id
+    @Column(length = 50)
+    private String armazem;
+
+    @Column(nullable = false)
+    private Integer qtd;
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public String getArmazem() {
+        return armazem;
+    }
+
+    public Integer getQtd() {
+        return qtd;
+    }
+
+    public static class Chave implements Serializable {
+
+        private Long produtoId;
+        private String armazem;
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Chave outra && Objects.equals(produtoId, outra.produtoId)
+                    && Objects.equals(armazem, outra.armazem);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(produtoId, armazem);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.estoque.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Linha do historico de estoque, so acrescentada. So existe para o Hibernate criar a tabela; a
+ * gravacao e a leitura sao feitas por JDBC em {@code HistoricoDeEstoque}.
+ */
+@Entity(name = "movimento_estoque")
+@Table(name = "movimento_estoque", indexes = @Index(name = "ix_movimento_produto", columnList = "produto_id, id"))
+public class MovimentoEstoqueEntity {
+
+    /**
+     * BAIXA guarda a quantidade baixada; AJUSTE, a nova quantidade do produto (cadastro ou
+     * atualizacao); REMOCAO nao tem quantidade.
+     */
+    public enum Tipo { BAIXA, AJUSTE, REMOCAO }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "produto_id", nullable = false)
+    private Long produtoId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Tipo tipo;
+
+    private Integer quantidade;
+
+    @Column(name = "registrado_em", nullable = false)
+    private Instant registradoEm;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public Integer getQuantidade() {
+        return quantidade;
+    }
+
+    public Instant getRegistradoEm() {
+        return registradoEm;
+    }
+}
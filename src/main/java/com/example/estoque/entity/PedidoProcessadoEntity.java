@@ -0,0 +1,29 @@
+package com.example.estoque.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Chave de idempotencia de um pedido ja aplicado. So existe para o Hibernate criar a tabela; a
+ * leitura e a gravacao sao feitas por JDBC em {@code PedidosProcessados}.
+ */
+@Entity(name = "pedido_processado")
+@Table(name = "pedido_processado", indexes = @Index(name = "ix_pedido_processado_em", columnList = "processado_em"))
+public class PedidoProcessadoEntity {
+
+    @Id
+    @Column(length = 100)
+    private String chave;
+
+    @Column(name = "processado_em", nullable = false)
+    private Instant processadoEm;
+
+    public String getChave() {
+        return chave;
+    }
+
+    public Instant getProcessadoEm() {
+        return processadoEm;
+    }
+}
@@ -3,19 +3,40 @@ package com.example.estoque.entity;
 import jakarta.persistence.*;
 
 @Entity(name = "produto")
+@Table(name = "produto", uniqueConstraints = @UniqueConstraint(name = "uk_produto_nome", columnNames = "nome"))
 public class ProdutoEntity {
 
+    // sequence com pool (allocationSize) para o Hibernate conseguir agrupar inserts em lote
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "produto_seq")
+    @SequenceGenerator(name = "produto_seq", sequenceName = "produto_seq", allocationSize = 50)
     private Long id;
     private String nome;
     private String descricao;
     private Double preco;
     private Integer qtd;
 
+    // controle otimista: sobe a cada alteracao, inclusive nas baixas feitas direto por SQL
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long versao;
+
     public ProdutoEntity() {
     }
 
+    public ProdutoEntity(Long id, String nome, String descricao, Double preco, Integer qtd) {
+        this.id = id;
+        this.nome = nome;
+        this.descricao = descricao;
+        this.preco = preco;
+        this.qtd = qtd;
+    }
+
+    public ProdutoEntity(Long id, String nome, String descricao, Double preco, Integer qtd, Long versao) {
+        this(id, nome, descricao, preco, qtd);
+        this.versao = versao;
+    }
+
     public ProdutoEntity(com.example.estoque.domain.Produto produto) {
         this.nome = produto.getNome();
         this.descricao = produto.getDescricao();
@@ -63,6 +84,14 @@ public class ProdutoEntity {
         this.qtd = qtd;
     }
 
+    public Long getVersao() {
+        return versao;
+    }
+
+    public void setVersao(Long versao) {
+        this.versao = versao;
+    }
+
     public void setQuantidade(int i) {
         this.qtd = i;
     }
@@ -0,0 +1,65 @@
+package com.example.estoque.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Item de uma reserva de estoque ainda ativa, gravado em lote para que as reservas sobrevivam a
+ * um reinicio. So existe para o Hibernate criar a tabela; a leitura e a gravacao sao feitas por
+ * JDBC em {@code ReservasDeEstoque}.
+ */
+@Entity(name = "reserva_estoque")
+@Table(name = "reserva_estoque", indexes = @Index(name = "ix_reserva_expira_em", columnList = "expira_em"))
+@IdClass(ReservaEstoqueEntity.Chave.class)
+public class ReservaEstoqueEntity {
+
+    @Id
+    @Column(length = 36)
+    private String reserva;
+
+    @Id
+    @Column(name = "produto_id")
+    private Long produtoId;
+
+    @Column(nullable = false)
+    private Integer qtd;
+
+    @Column(name = "expira_em", nullable = false)
+    private Instant expiraEm;
+
+    public String getReserva() {
+        return reserva;
+    }
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public Integer getQtd() {
+        return qtd;
+    }
+
+    public Instant getExpiraEm() {
+        return expiraEm;
+    }
+
+    public static class Chave implements Serializable {
+
+        private String reserva;
+        private Long produtoId;
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Chave outra && Objects.equals(reserva, outra.reserva)
+                    && Objects.equals(produtoId, outra.produtoId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(reserva, produtoId);
+        }
+    }
+}
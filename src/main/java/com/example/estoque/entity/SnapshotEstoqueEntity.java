@@ -0,0 +1,29 @@
+package com.example.estoque.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Foto periodica das quantidades de {@code produto}; os itens ficam em {@link SnapshotEstoqueItemEntity}.
+ * So existe para o Hibernate criar a tabela.
+ */
+@Entity(name = "snapshot_estoque")
+@Table(name = "snapshot_estoque", indexes = @Index(name = "ix_snapshot_tirado_em", columnList = "tirado_em"))
+public class SnapshotEstoqueEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "tirado_em", nullable = false)
+    private Instant tiradoEm;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getTiradoEm() {
+        return tiradoEm;
+    }
+}
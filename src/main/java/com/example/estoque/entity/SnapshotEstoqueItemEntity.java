@@ -0,0 +1,62 @@
+package com.example.estoque.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Quantidade de um produto num snapshot e o ultimo movimento do historico ja incluido nela; a
+ * reconstrucao aplica so os movimentos seguintes. So existe para o Hibernate criar a tabela.
+ */
+@Entity(name = "snapshot_estoque_item")
+@Table(name = "snapshot_estoque_item", indexes = @Index(name = "ix_snapshot_item_produto", columnList = "produto_id"))
+@IdClass(SnapshotEstoqueItemEntity.Chave.class)
+public class SnapshotEstoqueItemEntity {
+
+    @Id
+    @Column(name = "snapshot_id")
+    private Long snapshotId;
+
+    @Id
+    @Column(name = "produto_id")
+    private Long produtoId;
+
+    private Integer qtd;
+
+    @Column(name = "ultimo_movimento")
+    private Long ultimoMovimento;
+
+    public Long getSnapshotId() {
+        return snapshotId;
+    }
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public Integer getQtd() {
+        return qtd;
+    }
+
+    public Long getUltimoMovimento() {
+        return ultimoMovimento;
+    }
+
+    public static class Chave implements Serializable {
+
+        private Long snapshotId;
+        private Long produtoId;
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Chave outra && Objects.equals(snapshotId, outra.snapshotId)
+                    && Objects.equals(produtoId, outra.produtoId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(snapshotId, produtoId);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.estoque.event;
+
+import com.example.estoque.entity.ProdutoEntity;
+
+/**
+ * Publicado pelo {@code ProdutoService} a cada alteracao de produto ou de estoque.
+ */
+public class ProdutoAlteradoEvent {
+
+    /**
+     * CADASTRO tambem cobre o cadastro por nome que regrava a quantidade de um produto existente.
+     */
+    public enum Tipo { CADASTRO, ATUALIZACAO, BAIXA, REMOCAO }
+
+    private final Tipo tipo;
+    private final Long id;
+    private final ProdutoEntity produto;
+    private final Integer quantidade;
+
+    private ProdutoAlteradoEvent(Tipo tipo, Long id, ProdutoEntity produto, Integer quantidade) {
+        this.tipo = tipo;
+        this.id = id;
+        this.produto = produto;
+        this.quantidade = quantidade;
+    }
+
+    public static ProdutoAlteradoEvent cadastro(ProdutoEntity produto) {
+        return new ProdutoAlteradoEvent(Tipo.CADASTRO, produto.getId(), produto, produto.getQtd());
+    }
+
+    public static ProdutoAlteradoEvent atualizacao(ProdutoEntity produto) {
+        return new ProdutoAlteradoEvent(Tipo.ATUALIZACAO, produto.getId(), produto, produto.getQtd());
+    }
+
+    public static ProdutoAlteradoEvent baixa(Long id, Integer quantidade) {
+        return new ProdutoAlteradoEvent(Tipo.BAIXA, id, null, quantidade);
+    }
+
+    public static ProdutoAlteradoEvent remocao(Long id) {
+        return new ProdutoAlteradoEvent(Tipo.REMOCAO, id, null, null);
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Estado do produto apos cadastro ou atualizacao; {@code null} para baixa e remocao.
+     */
+    public ProdutoEntity getProduto() {
+        return produto;
+    }
+
+    /**
+     * Quantidade em estoque apos cadastro/atualizacao, ou quantidade baixada no caso de baixa.
+     */
+    public Integer getQuantidade() {
+        return quantidade;
+    }
+}
@@ -4,4 +4,8 @@ public class ForaDeEstoqueException extends RuntimeException{
     public ForaDeEstoqueException(String mensagem) {
         super(mensagem);
     }
+
+    public ForaDeEstoqueException(String nomeProduto, Integer disponivel) {
+        this("Produto " + nomeProduto + " possui apenas: " + disponivel + " em estoque");
+    }
 }
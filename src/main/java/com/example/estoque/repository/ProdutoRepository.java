@@ -1,11 +1,57 @@
 package com.example.estoque.repository;
 
-
+import com.example.estoque.domain.ResumoEstoque;
 import com.example.estoque.entity.ProdutoEntity;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.domain.Limit;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Operacoes sobre os produtos que os servicos usam. Implementada pelo {@link ProdutoRepositoryJpa}
+ * (Spring Data, com banco) e pelo {@link ProdutoRepositoryArquivo} (perfil {@code arquivo}).
+ */
+public interface ProdutoRepository extends ProdutoRepositoryCustom {
+
+    public Optional<ProdutoEntity> findById(Long id);
+
+    public boolean existsById(Long id);
+
+    public List<ProdutoEntity> findAll();
+
+    public List<ProdutoEntity> findAllById(Iterable<Long> ids);
+
+    public long count();
 
-public interface ProdutoRepository extends JpaRepository<ProdutoEntity, Long> {
+    public <S extends ProdutoEntity> S save(S produto);
+
+    public <S extends ProdutoEntity> List<S> saveAll(Iterable<S> produtos);
+
+    public void deleteById(Long id);
 
     public ProdutoEntity findByNome(String nome);
 
+    public List<ProdutoEntity> findByNomeIn(Collection<String> nomes);
+
+    public List<ProdutoEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    /**
+     * Carrega os produtos com bloqueio de escrita (SELECT ... FOR UPDATE), sempre na ordem de id.
+     */
+    public List<ProdutoEntity> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    /**
+     * Percorre o catalogo inteiro em ordem de id. Os produtos sao montados por construtor e nao ficam
+     * no contexto de persistencia, entao a memoria usada nao cresce com o tamanho do catalogo.
+     * Precisa ser consumido dentro de uma transacao e fechado ao final.
+     */
+    public Stream<ProdutoEntity> percorrerTodos();
+
+    /**
+     * Numero de produtos, valor total ({@code preco * qtd}) e produtos sem estoque em uma unica consulta.
+     */
+    public ResumoEstoque resumir();
+
 }
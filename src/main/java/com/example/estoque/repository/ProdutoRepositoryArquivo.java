@@ -0,0 +1,777 @@
+package com.example.estoque.repository;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.domain.ResumoEstoque;
+import com.example.estoque.entity.ProdutoEntity;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * {@link ProdutoRepository} sem banco nem JPA (perfil {@code arquivo}): os produtos ficam em um
+ * arquivo mapeado em memoria com registros de tamanho fixo, e o registro do produto de id
+ * {@code n} fica sempre na posicao {@code n - 1}. Ids nao sao reaproveitados; um produto removido
+ * apenas marca o seu registro.
+ *
+ * <p>Layout do registro ({@value #TAMANHO_REGISTRO} bytes): estado, indicadores de nulo, id, preco,
+ * saldo (versao e quantidade na mesma palavra de 64 bits), tamanhos de nome e descricao e os dois
+ * textos em UTF-16 com ate {@value #TAMANHO_TEXTO} caracteres cada. O saldo e alterado com CAS direto
+ * no buffer mapeado, sem trava, e toda alteracao sobe a versao; as demais escritas passam por uma
+ * trava de escrita e so acontecem depois de um CAS no saldo confirmar a versao lida. O indice nome → registro fica fora do heap e e
+ * reconstruido na subida percorrendo o arquivo.
+ *
+ * <p>As escritas chegam ao cache de paginas do sistema na hora e sobrevivem a um reinicio do
+ * processo; {@code force()} e chamado a cada {@code estoque.arquivo.force-interval-ms} e no
+ * encerramento. Nao ha transacao de banco: uma baixa ou alteracao de varios produtos e tudo ou nada
+ * por conta propria, e se a transacao do Spring em volta dela for desfeita o que foi gravado volta.
+ */
+@Repository
+@Profile("arquivo")
+public class ProdutoRepositoryArquivo implements ProdutoRepository {
+
+    static final int TAMANHO_REGISTRO = 1056;
+    static final int TAMANHO_TEXTO = 255;
+
+    private static final int MAGICO = 0x50524F44; // "PROD"
+    private static final int VERSAO = 2;
+    private static final int CABECALHO = 64;
+    private static final int CABECALHO_PROXIMO = 16;
+
+    private static final int ESTADO = 0;
+    private static final int NULOS = 4;
+    private static final int ID = 8;
+    private static final int PRECO = 16;
+    // alinhado em 8 bytes para o CAS de 64 bits: versao nos 32 bits altos, quantidade nos baixos
+    private static final int SALDO = 24;
+    private static final int TAMANHO_NOME = 32;
+    private static final int TAMANHO_DESCRICAO = 34;
+    private static final int NOME = 36;
+    private static final int DESCRICAO = NOME + 2 * TAMANHO_TEXTO;
+
+    private static final int LIVRE = 0;
+    private static final int ATIVO = 1;
+    private static final int REMOVIDO = 2;
+
+    private static final int PRECO_NULO = 1;
+    private static final int DESCRICAO_NULA = 2;
+    private static final int NOME_NULO = 4;
+    private static final int QTD_NULA = Integer.MIN_VALUE;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel canal;
+    private final MappedByteBuffer arquivo;
+    private final int capacidade;
+    private final IndicePorNome indice;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ProdutoRepositoryArquivo(@Value("${estoque.arquivo.caminho:data/produtos.dat}") String caminho,
+                                    @Value("${estoque.arquivo.capacidade:100000}") int capacidade) throws IOException {
+        Path arquivoProdutos = Paths.get(caminho);
+        Path pasta = arquivoProdutos.toAbsolutePath().getParent();
+        if (pasta != null) {
+            Files.createDirectories(pasta);
+        }
+        this.canal = FileChannel.open(arquivoProdutos, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean novo = canal.size() == 0;
+        // um arquivo criado com capacidade maior que a configurada continua inteiro acessivel
+        long tamanho = Math.max(canal.size(), CABECALHO + (long) capacidade * TAMANHO_REGISTRO);
+        if (tamanho > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacidade de " + capacidade + " produtos excede o tamanho maximo do arquivo");
+        }
+        this.capacidade = (int) ((tamanho - CABECALHO) / TAMANHO_REGISTRO);
+        this.arquivo = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+        if (novo) {
+            arquivo.putInt(0, MAGICO);
+            arquivo.putInt(4, VERSAO);
+            arquivo.putInt(8, TAMANHO_REGISTRO);
+        } else if (arquivo.getInt(0) != MAGICO || arquivo.getInt(4) != VERSAO
+                || arquivo.getInt(8) != TAMANHO_REGISTRO) {
+            throw new IllegalStateException("Arquivo " + caminho + " nao e um arquivo de produtos desta versao");
+        }
+
+        this.indice = new IndicePorNome(this.capacidade);
+        for (int registro = 0; registro < ocupados(); registro++) {
+            if (estado(registro) == ATIVO && !nomeNulo(registro)) {
+                indice.inserir(nome(registro), registro);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.arquivo.force-interval-ms:1000}")
+    public void sincronizar() {
+        arquivo.force();
+    }
+
+    @PreDestroy
+    public void fechar() throws IOException {
+        sincronizar();
+        canal.close();
+    }
+
+    // ---------------------------------------------------------------- leitura
+
+    @Override
+    public Optional<ProdutoEntity> findById(Long id) {
+        int registro = registro(id);
+        if (registro < 0) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(ler(registro));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        int registro = registro(id);
+        return registro >= 0 && estado(registro) == ATIVO;
+    }
+
+    @Override
+    public ProdutoEntity findByNome(String nome) {
+        if (nome == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int registro = indice.buscar(nome, this);
+            return registro < 0 ? null : ler(registro);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ProdutoEntity> findByNomeIn(Collection<String> nomes) {
+        List<ProdutoEntity> produtos = new ArrayList<>(nomes.size());
+        for (String nome : nomes) {
+            ProdutoEntity produto = findByNome(nome);
+            if (produto != null) {
+                produtos.add(produto);
+            }
+        }
+        return produtos;
+    }
+
+    @Override
+    public List<ProdutoEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit) {
+        int maximo = limit.isLimited() ? limit.max() : Integer.MAX_VALUE;
+        List<ProdutoEntity> produtos = new ArrayList<>(Math.min(maximo, 1024));
+        lock.readLock().lock();
+        try {
+            // o registro de id n esta na posicao n - 1, entao o proximo id comeca na posicao id
+            for (long registro = Math.max(0, id); registro < ocupados() && produtos.size() < maximo; registro++) {
+                ProdutoEntity produto = ler((int) registro);
+                if (produto != null) {
+                    produtos.add(produto);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return produtos;
+    }
+
+    @Override
+    public List<ProdutoEntity> findByIdInOrderByIdAsc(Collection<Long> ids) {
+        return ids.stream()
+                .sorted()
+                .distinct()
+                .map(this::findById)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    // sem banco nao ha linha a travar; as leituras ja sao copias
+    @Override
+    public List<ProdutoEntity> travarProdutos(Collection<Long> ids) {
+        return findByIdInOrderByIdAsc(ids);
+    }
+
+    @Override
+    public Stream<ProdutoEntity> percorrerTodos() {
+        return IntStream.range(0, ocupados())
+                .mapToObj(registro -> {
+                    lock.readLock().lock();
+                    try {
+                        return ler(registro);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                })
+                .filter(produto -> produto != null);
+    }
+
+    @Override
+    public List<ProdutoEntity> findAll() {
+        try (Stream<ProdutoEntity> produtos = percorrerTodos()) {
+            return produtos.toList();
+        }
+    }
+
+    @Override
+    public List<ProdutoEntity> findAllById(Iterable<Long> ids) {
+        List<ProdutoEntity> produtos = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(produtos::add));
+        return produtos;
+    }
+
+    @Override
+    public long count() {
+        long ativos = 0;
+        for (int registro = 0; registro < ocupados(); registro++) {
+            if (estado(registro) == ATIVO) {
+                ativos++;
+            }
+        }
+        return ativos;
+    }
+
+    @Override
+    public ResumoEstoque resumir() {
+        long produtos = 0;
+        long foraDeEstoque = 0;
+        double valorTotal = 0;
+        try (Stream<ProdutoEntity> todos = percorrerTodos()) {
+            for (ProdutoEntity produto : (Iterable<ProdutoEntity>) todos::iterator) {
+                produtos++;
+                if (produto.getQtd() == null || produto.getQtd() <= 0) {
+                    foraDeEstoque++;
+                }
+                if (produto.getPreco() != null && produto.getQtd() != null) {
+                    valorTotal += produto.getPreco() * produto.getQtd();
+                }
+            }
+        }
+        return new ResumoEstoque(produtos, BigDecimal.valueOf(valorTotal), foraDeEstoque);
+    }
+
+    // ---------------------------------------------------------------- escrita
+
+    @Override
+    public <S extends ProdutoEntity> S save(S produto) {
+        validar(produto.getNome(), produto.getDescricao());
+        lock.writeLock().lock();
+        try {
+            int registro = produto.getId() == null ? -1 : registro(produto.getId());
+            if (registro >= 0 && estado(registro) == ATIVO) {
+                String nomeAnterior = nomeNulo(registro) ? null : nome(registro);
+                boolean renomeado = !Objects.equals(produto.getNome(), nomeAnterior);
+                if (renomeado && produto.getNome() != null) {
+                    exigirNomeLivre(produto.getNome());
+                }
+                reservarVersao(registro, produto);
+                if (renomeado && nomeAnterior != null) {
+                    indice.remover(nomeAnterior, registro);
+                }
+                gravar(registro, produto);
+                if (renomeado && produto.getNome() != null) {
+                    indice.inserir(produto.getNome(), registro);
+                }
+            } else {
+                // como no JPA, um id que nao existe e tratado como produto novo com id gerado
+                if (produto.getNome() != null) {
+                    exigirNomeLivre(produto.getNome());
+                }
+                registro = novoRegistro();
+                produto.setId(registro + 1L);
+                produto.setVersao(0L);
+                LONG.setVolatile(arquivo, base(registro) + SALDO, saldo(0, qtdGravada(produto.getQtd())));
+                gravar(registro, produto);
+                LONG.setVolatile(arquivo, CABECALHO_PROXIMO, registro + 1L);
+                if (produto.getNome() != null) {
+                    indice.inserir(produto.getNome(), registro);
+                }
+            }
+            return produto;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public <S extends ProdutoEntity> List<S> saveAll(Iterable<S> produtos) {
+        List<S> salvos = new ArrayList<>();
+        produtos.forEach(produto -> salvos.add(save(produto)));
+        return salvos;
+    }
+
+    @Override
+    public ProdutoEntity gravarPorNome(Produto produto) {
+        validar(produto.getNome(), produto.getDescricao());
+        lock.writeLock().lock();
+        try {
+            int registro = indice.buscar(produto.getNome(), this);
+            if (registro >= 0) {
+                // mesma regra do MERGE: um nome ja cadastrado recebe apenas a nova quantidade
+                int qtd = qtdGravada(produto.getQtd());
+                int posicao = base(registro) + SALDO;
+                long atual;
+                do {
+                    atual = (long) LONG.getVolatile(arquivo, posicao);
+                } while (!LONG.compareAndSet(arquivo, posicao, atual, saldo(versao(atual) + 1, qtd)));
+                return ler(registro);
+            }
+            return save(new ProdutoEntity(produto));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ProdutoEntity alterarCampos(AlteracaoProduto alteracao) {
+        validar(alteracao.getNome(), alteracao.getDescricao());
+        lock.writeLock().lock();
+        try {
+            int registro = registro(alteracao.getId());
+            if (registro < 0 || estado(registro) != ATIVO) {
+                return null;
+            }
+            ProdutoEntity anterior = ler(registro);
+            ProdutoEntity alterado = alterar(registro, alteracao);
+            if (alterado != null) {
+                aoDesfazer(() -> desfazerAlteracoes(List.of(new Alteracao(registro, anterior, alterado))));
+            }
+            return alterado;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ProdutoEntity> alterarCampos(List<AlteracaoProduto> alteracoes) {
+        alteracoes.forEach(alteracao -> validar(alteracao.getNome(), alteracao.getDescricao()));
+        List<Alteracao> feitas = new ArrayList<>(alteracoes.size());
+        lock.writeLock().lock();
+        try {
+            for (AlteracaoProduto alteracao : alteracoes) {
+                int registro = registro(alteracao.getId());
+                if (registro >= 0 && estado(registro) == ATIVO) {
+                    ProdutoEntity anterior = ler(registro);
+                    ProdutoEntity alterado = alterar(registro, alteracao);
+                    if (alterado == null) {
+                        // sem transacao de banco para desfazer: a lista e tudo ou nada por conta propria
+                        throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, alteracao.getId());
+                    }
+                    feitas.add(new Alteracao(registro, anterior, alterado));
+                }
+            }
+        } catch (RuntimeException e) {
+            desfazerAlteracoes(feitas);
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        aoDesfazer(() -> desfazerAlteracoes(feitas));
+        return feitas.stream()
+                .map(Alteracao::alterado)
+                .sorted(Comparator.comparing(ProdutoEntity::getId))
+                .toList();
+    }
+
+    private record Alteracao(int registro, ProdutoEntity anterior, ProdutoEntity alterado) {
+    }
+
+    // volta nome, descricao e preco; a quantidade volta pela diferenca para nao perder baixas posteriores
+    private void desfazerAlteracoes(List<Alteracao> feitas) {
+        lock.writeLock().lock();
+        try {
+            for (int i = feitas.size() - 1; i >= 0; i--) {
+                Alteracao feita = feitas.get(i);
+                int registro = feita.registro();
+                if (estado(registro) != ATIVO) {
+                    continue;
+                }
+                String nome = feita.alterado().getNome();
+                if (!Objects.equals(nome, feita.anterior().getNome())) {
+                    if (nome != null) {
+                        indice.remover(nome, registro);
+                    }
+                    if (feita.anterior().getNome() != null) {
+                        indice.inserir(feita.anterior().getNome(), registro);
+                    }
+                }
+                gravar(registro, feita.anterior());
+                if (!Objects.equals(feita.alterado().getQtd(), feita.anterior().getQtd())) {
+                    voltarQtd(registro, feita.alterado().getQtd(), feita.anterior().getQtd());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] baixarEstoque(Map<Long, Integer> quantidadesPorProduto) {
+        return baixarEstoque(quantidadesPorProduto, Map.of());
+    }
+
+    /**
+     * Tudo ou nada: se algum produto nao tiver saldo, as baixas ja feitas neste pedido sao devolvidas.
+     */
+    @Override
+    public int[] baixarEstoque(Map<Long, Integer> quantidadesPorProduto, Map<Long, Integer> reservadas) {
+        int[] atualizados = new int[quantidadesPorProduto.size()];
+        List<Map.Entry<Long, Integer>> aplicadas = new ArrayList<>(quantidadesPorProduto.size());
+        int i = 0;
+        for (Map.Entry<Long, Integer> item : quantidadesPorProduto.entrySet()) {
+            int registro = registro(item.getKey());
+            int reservada = reservadas.getOrDefault(item.getKey(), 0);
+            if (registro < 0 || estado(registro) != ATIVO || !baixar(registro, item.getValue(), reservada)) {
+                aplicadas.forEach(aplicada -> somar(registro(aplicada.getKey()), aplicada.getValue()));
+                return atualizados;
+            }
+            aplicadas.add(item);
+            atualizados[i++] = 1;
+        }
+        aoDesfazer(() -> aplicadas.forEach(aplicada -> somar(registro(aplicada.getKey()), aplicada.getValue())));
+        return atualizados;
+    }
+
+    @Override
+    public int[] aplicarBaixas(Map<Long, Integer> quantidadesPorProduto) {
+        int[] atualizados = new int[quantidadesPorProduto.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> item : quantidadesPorProduto.entrySet()) {
+            int registro = registro(item.getKey());
+            if (registro >= 0 && estado(registro) == ATIVO) {
+                somar(registro, -item.getValue());
+                atualizados[i] = 1;
+            }
+            i++;
+        }
+        return atualizados;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        int registro = registro(id);
+        if (registro < 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (estado(registro) == ATIVO) {
+                if (!nomeNulo(registro)) {
+                    indice.remover(nome(registro), registro);
+                }
+                INT.setVolatile(arquivo, base(registro) + ESTADO, REMOVIDO);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // o gerenciador de transacoes do perfil nao desfaz nada: quem grava devolve o que gravou
+    private static void aoDesfazer(Runnable desfazer) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    desfazer.run();
+                }
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------- registros
+
+    private int ocupados() {
+        return (int) (long) LONG.getVolatile(arquivo, CABECALHO_PROXIMO);
+    }
+
+    private int registro(Long id) {
+        if (id == null || id < 1 || id > ocupados()) {
+            return -1;
+        }
+        return (int) (id - 1);
+    }
+
+    private int novoRegistro() {
+        int registro = ocupados();
+        if (registro >= capacidade) {
+            throw new IllegalStateException("Arquivo de produtos cheio (" + capacidade
+                    + " registros); aumente estoque.arquivo.capacidade");
+        }
+        return registro;
+    }
+
+    private static int base(int registro) {
+        return CABECALHO + registro * TAMANHO_REGISTRO;
+    }
+
+    private int estado(int registro) {
+        return (int) INT.getVolatile(arquivo, base(registro) + ESTADO);
+    }
+
+    private boolean nomeNulo(int registro) {
+        return (arquivo.getInt(base(registro) + NULOS) & NOME_NULO) != 0;
+    }
+
+    String nome(int registro) {
+        return texto(base(registro) + NOME, arquivo.getShort(base(registro) + TAMANHO_NOME));
+    }
+
+    private ProdutoEntity ler(int registro) {
+        int base = base(registro);
+        if (estado(registro) != ATIVO) {
+            return null;
+        }
+        int nulos = arquivo.getInt(base + NULOS);
+        long saldo = (long) LONG.getVolatile(arquivo, base + SALDO);
+        int qtd = qtd(saldo);
+        return new ProdutoEntity(
+                arquivo.getLong(base + ID),
+                (nulos & NOME_NULO) != 0 ? null : texto(base + NOME, arquivo.getShort(base + TAMANHO_NOME)),
+                (nulos & DESCRICAO_NULA) != 0 ? null : texto(base + DESCRICAO, arquivo.getShort(base + TAMANHO_DESCRICAO)),
+                (nulos & PRECO_NULO) != 0 ? null : arquivo.getDouble(base + PRECO),
+                qtd == QTD_NULA ? null : qtd,
+                (long) versao(saldo));
+    }
+
+    private void gravar(int registro, ProdutoEntity produto) {
+        int base = base(registro);
+        int nulos = (produto.getPreco() == null ? PRECO_NULO : 0)
+                | (produto.getDescricao() == null ? DESCRICAO_NULA : 0)
+                | (produto.getNome() == null ? NOME_NULO : 0);
+        arquivo.putLong(base + ID, registro + 1L);
+        arquivo.putDouble(base + PRECO, produto.getPreco() == null ? 0 : produto.getPreco());
+        arquivo.putInt(base + NULOS, nulos);
+        gravarTexto(base + NOME, base + TAMANHO_NOME, produto.getNome());
+        gravarTexto(base + DESCRICAO, base + TAMANHO_DESCRICAO, produto.getDescricao());
+        INT.setVolatile(arquivo, base + ESTADO, ATIVO);
+    }
+
+    // chamado com a trava de escrita: so o saldo pode mudar por fora, e ele e trocado por CAS;
+    // null se o produto nao esta na versao esperada
+    private ProdutoEntity alterar(int registro, AlteracaoProduto alteracao) {
+        ProdutoEntity produto = ler(registro);
+        if (alteracao.getVersao() != null && !alteracao.getVersao().equals(produto.getVersao())) {
+            return null;
+        }
+        String nomeAnterior = produto.getNome();
+        alteracao.aplicar(produto);
+        boolean renomeado = !Objects.equals(produto.getNome(), nomeAnterior);
+        if (renomeado) {
+            exigirNomeLivre(produto.getNome());
+        }
+        int posicao = base(registro) + SALDO;
+        long atual;
+        do {
+            atual = (long) LONG.getVolatile(arquivo, posicao);
+            // uma baixa entre a leitura e aqui tambem sobe a versao
+            if (alteracao.getVersao() != null && versao(atual) != alteracao.getVersao()) {
+                return null;
+            }
+        } while (!LONG.compareAndSet(arquivo, posicao, atual, saldo(versao(atual) + 1,
+                alteracao.getQtd() == null ? qtd(atual) : alteracao.getQtd())));
+        if (renomeado) {
+            if (nomeAnterior != null) {
+                indice.remover(nomeAnterior, registro);
+            }
+            indice.inserir(produto.getNome(), registro);
+        }
+        gravar(registro, produto);
+        return ler(registro);
+    }
+
+    /**
+     * Confere a versao do produto com a gravada e, no mesmo CAS, grava a nova quantidade e sobe a
+     * versao. Falha se a versao nao bate ou se uma baixa mudou o saldo desde a leitura; um produto
+     * sem versao (nunca lido daqui) regrava sem conferir.
+     */
+    private void reservarVersao(int registro, ProdutoEntity produto) {
+        int posicao = base(registro) + SALDO;
+        long atual = (long) LONG.getVolatile(arquivo, posicao);
+        if (produto.getVersao() != null && produto.getVersao() != versao(atual)) {
+            throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, produto.getId());
+        }
+        int versao = versao(atual) + 1;
+        if (!LONG.compareAndSet(arquivo, posicao, atual, saldo(versao, qtdGravada(produto.getQtd())))) {
+            throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, produto.getId());
+        }
+        produto.setVersao((long) versao);
+    }
+
+    private boolean baixar(int registro, int qtd, int manter) {
+        int posicao = base(registro) + SALDO;
+        long atual;
+        do {
+            atual = (long) LONG.getVolatile(arquivo, posicao);
+            if (qtd(atual) == QTD_NULA || qtd(atual) < qtd + manter) {
+                return false;
+            }
+        } while (!LONG.compareAndSet(arquivo, posicao, atual, saldo(versao(atual) + 1, qtd(atual) - qtd)));
+        return true;
+    }
+
+    private void voltarQtd(int registro, Integer gravada, Integer anterior) {
+        int posicao = base(registro) + SALDO;
+        long atual;
+        int qtd;
+        do {
+            atual = (long) LONG.getVolatile(arquivo, posicao);
+            qtd = anterior == null || gravada == null || qtd(atual) == QTD_NULA
+                    ? qtdGravada(anterior)
+                    : qtd(atual) - gravada + anterior;
+        } while (!LONG.compareAndSet(arquivo, posicao, atual, saldo(versao(atual) + 1, qtd)));
+    }
+
+    private void somar(int registro, int qtd) {
+        int posicao = base(registro) + SALDO;
+        long atual;
+        do {
+            atual = (long) LONG.getVolatile(arquivo, posicao);
+            if (qtd(atual) == QTD_NULA) {
+                return;
+            }
+        } while (!LONG.compareAndSet(arquivo, posicao, atual, saldo(versao(atual) + 1, qtd(atual) + qtd)));
+    }
+
+    private static long saldo(int versao, int qtd) {
+        return ((long) versao << 32) | (qtd & 0xFFFFFFFFL);
+    }
+
+    private static int versao(long saldo) {
+        return (int) (saldo >>> 32);
+    }
+
+    private static int qtd(long saldo) {
+        return (int) saldo;
+    }
+
+    private static int qtdGravada(Integer qtd) {
+        return qtd == null ? QTD_NULA : qtd;
+    }
+
+    private String texto(int posicao, short tamanho) {
+        char[] caracteres = new char[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            caracteres[i] = arquivo.getChar(posicao + 2 * i);
+        }
+        return new String(caracteres);
+    }
+
+    private void gravarTexto(int posicao, int posicaoTamanho, String texto) {
+        int tamanho = texto == null ? 0 : texto.length();
+        for (int i = 0; i < tamanho; i++) {
+            arquivo.putChar(posicao + 2 * i, texto.charAt(i));
+        }
+        arquivo.putShort(posicaoTamanho, (short) tamanho);
+    }
+
+    private void exigirNomeLivre(String nome) {
+        if (indice.buscar(nome, this) >= 0) {
+            throw new DuplicateKeyException("Já existe um produto com o nome " + nome);
+        }
+    }
+
+    private static void validar(String nome, String descricao) {
+        if ((nome != null && nome.length() > TAMANHO_TEXTO)
+                || (descricao != null && descricao.length() > TAMANHO_TEXTO)) {
+            throw new DataIntegrityViolationException("Nome e descrição devem ter até " + TAMANHO_TEXTO + " caracteres");
+        }
+    }
+
+    /**
+     * Tabela hash de enderecamento aberto fora do heap: cada posicao guarda o hash do nome e o
+     * numero do registro mais um (0 = vazia, -1 = removida). O nome em si e conferido no arquivo.
+     */
+    static final class IndicePorNome {
+
+        private static final int VAZIA = 0;
+        private static final int REMOVIDA = -1;
+
+        private final ByteBuffer tabela;
+        private final int mascara;
+
+        IndicePorNome(int capacidade) {
+            int posicoes = Integer.highestOneBit(Math.max(2, capacidade) * 2 - 1) << 1;
+            this.tabela = ByteBuffer.allocateDirect(posicoes * 8);
+            this.mascara = posicoes - 1;
+        }
+
+        int buscar(String nome, ProdutoRepositoryArquivo arquivo) {
+            int hash = nome.hashCode();
+            int posicao = hash & mascara;
+            // o limite de voltas evita laco infinito se as posicoes vazias acabarem (so restam removidas)
+            for (int tentativa = 0; tentativa <= mascara; tentativa++, posicao = (posicao + 1) & mascara) {
+                int registro = tabela.getInt(posicao * 8 + 4);
+                if (registro == VAZIA) {
+                    return -1;
+                }
+                if (registro != REMOVIDA && tabela.getInt(posicao * 8) == hash
+                        && nome.equals(arquivo.nome(registro - 1))) {
+                    return registro - 1;
+                }
+            }
+            return -1;
+        }
+
+        // reaproveita a primeira posicao vazia ou removida da sequencia de sondagem
+        void inserir(String nome, int registro) {
+            int hash = nome.hashCode();
+            int posicao = hash & mascara;
+            while (tabela.getInt(posicao * 8 + 4) > 0) {
+                posicao = (posicao + 1) & mascara;
+            }
+            tabela.putInt(posicao * 8, hash);
+            tabela.putInt(posicao * 8 + 4, registro + 1);
+        }
+
+        void remover(String nome, int registro) {
+            int posicao = nome.hashCode() & mascara;
+            for (int tentativa = 0; tentativa <= mascara; tentativa++, posicao = (posicao + 1) & mascara) {
+                int atual = tabela.getInt(posicao * 8 + 4);
+                if (atual == VAZIA) {
+                    return;
+                }
+                if (atual == registro + 1) {
+                    tabela.putInt(posicao * 8 + 4, REMOVIDA);
+                    return;
+                }
+            }
+        }
+    }
+}
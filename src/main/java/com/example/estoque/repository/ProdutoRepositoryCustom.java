@@ -0,0 +1,66 @@
+package com.example.estoque.repository;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ProdutoRepositoryCustom {
+
+    /**
+     * Baixa o estoque de varios produtos em um unico lote JDBC, usando
+     * {@code UPDATE ... WHERE qtd >= :qtd} para nunca deixar a quantidade negativa.
+     *
+     * @return linhas afetadas por produto, na ordem de iteracao do mapa (0 = estoque insuficiente ou inexistente)
+     */
+    int[] baixarEstoque(Map<Long, Integer> quantidadesPorProduto);
+
+    /**
+     * Como {@link #baixarEstoque(Map)}, mas exige que continuem em estoque, apos a baixa, as
+     * quantidades reservadas de cada produto ({@code WHERE qtd >= :qtd + :reservada}).
+     */
+    int[] baixarEstoque(Map<Long, Integer> quantidadesPorProduto, Map<Long, Integer> reservadas);
+
+    /**
+     * Le os produtos direto do banco, fora do contexto de persistencia, travando as linhas
+     * ({@code SELECT ... FOR UPDATE}) ate o fim da transacao. Ids inexistentes ficam de fora.
+     *
+     * @return copias destacadas, em ordem de id
+     */
+    List<ProdutoEntity> travarProdutos(Collection<Long> ids);
+
+    /**
+     * Aplica baixas ja validadas fora do banco (modo ledger) em um unico lote JDBC, sem condicao de saldo.
+     */
+    int[] aplicarBaixas(Map<Long, Integer> quantidadesPorProduto);
+
+    /**
+     * Cadastra o produto ou, se o nome ja existir, regrava apenas a quantidade, em um unico
+     * {@code MERGE} apoiado no indice unico de {@code nome}.
+     *
+     * @return o produto como ficou gravado
+     */
+    ProdutoEntity gravarPorNome(Produto produto);
+
+    /**
+     * Grava apenas os campos informados na alteracao (e sobe a versao) em um unico {@code UPDATE},
+     * sem carregar o produto antes. Com {@link AlteracaoProduto#getVersao()}, o {@code UPDATE} so
+     * casa com o produto nessa versao.
+     *
+     * @return o produto como ficou gravado, ou {@code null} se o id nao existir ou estiver em outra versao
+     */
+    ProdutoEntity alterarCampos(AlteracaoProduto alteracao);
+
+    /**
+     * Aplica varias alteracoes parciais em lotes JDBC, um {@code UPDATE} por combinacao de campos
+     * informados. Cada id deve aparecer uma unica vez.
+     *
+     * @return os produtos alterados como ficaram gravados, em ordem de id; ids inexistentes ou em
+     * outra versao ficam de fora
+     */
+    List<ProdutoEntity> alterarCampos(List<AlteracaoProduto> alteracoes);
+
+}
@@ -0,0 +1,172 @@
+package com.example.estoque.repository;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parte JDBC do {@link ProdutoRepositoryJpa}, encontrada pelo Spring Data pelo nome.
+ */
+public class ProdutoRepositoryCustomImpl implements ProdutoRepositoryCustom {
+
+    // toda escrita por SQL sobe a versao, para que um PUT com If-Match antigo nao sobrescreva a baixa
+    private static final String BAIXA_CONDICIONAL =
+            "UPDATE produto SET qtd = qtd - ?, versao = versao + 1 WHERE id = ? AND qtd >= ?";
+    private static final String BAIXA =
+            "UPDATE produto SET qtd = qtd - ?, versao = versao + 1 WHERE id = ?";
+    // FINAL TABLE devolve a linha gravada pelo MERGE na mesma ida ao banco. O id vem direto da
+    // sequence: cada valor e o topo de uma faixa que o otimizador do Hibernate nunca usa.
+    private static final String GRAVAR_POR_NOME = """
+            SELECT id, nome, descricao, preco, qtd, versao FROM FINAL TABLE (
+                MERGE INTO produto p
+                USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)),
+                               CAST(? AS DOUBLE PRECISION), CAST(? AS INTEGER))) AS n (nome, descricao, preco, qtd)
+                ON p.nome = n.nome
+                WHEN MATCHED THEN UPDATE SET qtd = n.qtd, versao = p.versao + 1
+                WHEN NOT MATCHED THEN INSERT (id, nome, descricao, preco, qtd, versao)
+                    VALUES (NEXT VALUE FOR produto_seq, n.nome, n.descricao, n.preco, n.qtd, 0))
+            """;
+
+    private static final String COLUNAS = "id, nome, descricao, preco, qtd, versao";
+    private static final String[] CAMPOS = {"nome", "descricao", "preco", "qtd"};
+    private static final RowMapper<ProdutoEntity> PRODUTO = (rs, linha) -> new ProdutoEntity(
+            rs.getLong("id"),
+            rs.getString("nome"),
+            rs.getString("descricao"),
+            rs.getObject("preco", Double.class),
+            rs.getObject("qtd", Integer.class),
+            rs.getLong("versao"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProdutoRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int[] baixarEstoque(Map<Long, Integer> quantidadesPorProduto) {
+        return baixarEstoque(quantidadesPorProduto, Map.of());
+    }
+
+    @Override
+    public int[] baixarEstoque(Map<Long, Integer> quantidadesPorProduto, Map<Long, Integer> reservadas) {
+        List<Object[]> parametros = quantidadesPorProduto.entrySet()
+                .stream()
+                .map(e -> new Object[]{e.getValue(), e.getKey(), e.getValue() + reservadas.getOrDefault(e.getKey(), 0)})
+                .toList();
+        return jdbcTemplate.batchUpdate(BAIXA_CONDICIONAL, parametros);
+    }
+
+    @Override
+    public List<ProdutoEntity> travarProdutos(Collection<Long> ids) {
+        return jdbcTemplate.query("SELECT " + COLUNAS + " FROM produto WHERE id = ANY(?) ORDER BY id FOR UPDATE",
+                PRODUTO, (Object) ids.toArray(Long[]::new));
+    }
+
+    @Override
+    public int[] aplicarBaixas(Map<Long, Integer> quantidadesPorProduto) {
+        List<Object[]> parametros = quantidadesPorProduto.entrySet()
+                .stream()
+                .map(e -> new Object[]{e.getValue(), e.getKey()})
+                .toList();
+        return jdbcTemplate.batchUpdate(BAIXA, parametros);
+    }
+
+    @Override
+    public ProdutoEntity gravarPorNome(Produto produto) {
+        try {
+            return merge(produto);
+        } catch (DuplicateKeyException e) {
+            // outro cadastro do mesmo nome inseriu primeiro; agora o MERGE cai no WHEN MATCHED
+            return merge(produto);
+        }
+    }
+
+    private ProdutoEntity merge(Produto produto) {
+        return jdbcTemplate.queryForObject(GRAVAR_POR_NOME, PRODUTO,
+                produto.getNome(), produto.getDescricao(), produto.getPreco(), produto.getQtd());
+    }
+
+    @Override
+    public ProdutoEntity alterarCampos(AlteracaoProduto alteracao) {
+        // como no MERGE, FINAL TABLE devolve a linha alterada sem uma segunda consulta
+        List<ProdutoEntity> alterado = jdbcTemplate.query(
+                "SELECT " + COLUNAS + " FROM FINAL TABLE (" + alteracaoSql(campos(alteracao)) + ")",
+                PRODUTO, parametros(alteracao));
+        return alterado.isEmpty() ? null : alterado.get(0);
+    }
+
+    @Override
+    public List<ProdutoEntity> alterarCampos(List<AlteracaoProduto> alteracoes) {
+        if (alteracoes.isEmpty()) {
+            return List.of();
+        }
+        // um lote por combinacao de campos: cada lote usa um unico comando preparado
+        Map<Integer, List<Object[]>> lotes = new LinkedHashMap<>();
+        for (AlteracaoProduto alteracao : alteracoes) {
+            lotes.computeIfAbsent(campos(alteracao), campos -> new ArrayList<>()).add(parametros(alteracao));
+        }
+        List<Long> ids = new ArrayList<>(alteracoes.size());
+        lotes.forEach((campos, parametros) -> {
+            int[] linhas = jdbcTemplate.batchUpdate(alteracaoSql(campos), parametros);
+            for (int i = 0; i < linhas.length; i++) {
+                // o id e o primeiro parametro depois dos campos; 0 linhas = inexistente ou outra versao
+                if (linhas[i] != 0) {
+                    ids.add((Long) parametros.get(i)[Integer.bitCount(campos & 15)]);
+                }
+            }
+        });
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("SELECT " + COLUNAS + " FROM produto WHERE id = ANY(?) ORDER BY id",
+                PRODUTO, (Object) ids.toArray(Long[]::new));
+    }
+
+    // bit i ligado = CAMPOS[i] informado; bit 4 = versao esperada informada
+    private static int campos(AlteracaoProduto alteracao) {
+        return (alteracao.getNome() != null ? 1 : 0)
+                | (alteracao.getDescricao() != null ? 2 : 0)
+                | (alteracao.getPreco() != null ? 4 : 0)
+                | (alteracao.getQtd() != null ? 8 : 0)
+                | (alteracao.getVersao() != null ? 16 : 0);
+    }
+
+    private static String alteracaoSql(int campos) {
+        StringBuilder sql = new StringBuilder("UPDATE produto SET ");
+        for (int i = 0; i < CAMPOS.length; i++) {
+            if ((campos & (1 << i)) != 0) {
+                sql.append(CAMPOS[i]).append(" = ?, ");
+            }
+        }
+        sql.append("versao = versao + 1 WHERE id = ?");
+        if ((campos & 16) != 0) {
+            sql.append(" AND versao = ?");
+        }
+        return sql.toString();
+    }
+
+    private static Object[] parametros(AlteracaoProduto alteracao) {
+        List<Object> parametros = new ArrayList<>(5);
+        for (Object valor : new Object[]{alteracao.getNome(), alteracao.getDescricao(),
+                alteracao.getPreco(), alteracao.getQtd()}) {
+            if (valor != null) {
+                parametros.add(valor);
+            }
+        }
+        parametros.add(alteracao.getId());
+        if (alteracao.getVersao() != null) {
+            parametros.add(alteracao.getVersao());
+        }
+        return parametros.toArray();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.estoque.repository;
+
+import com.example.estoque.domain.ResumoEstoque;
+import com.example.estoque.entity.ProdutoEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * {@link ProdutoRepository} com banco: consultas derivadas e JPQL do Spring Data, e a parte JDBC em
+ * {@link ProdutoRepositoryCustomImpl}. {@link ProdutoRepositoryCustom} aparece de novo entre as
+ * interfaces estendidas porque o Spring Data so procura a implementacao das estendidas diretamente.
+ */
+public interface ProdutoRepositoryJpa extends JpaRepository<ProdutoEntity, Long>, ProdutoRepository, ProdutoRepositoryCustom {
+
+    @Override
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    public List<ProdutoEntity> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Override
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.example.estoque.entity.ProdutoEntity(p.id, p.nome, p.descricao, p.preco, p.qtd, p.versao) "
+            + "from produto p order by p.id")
+    public Stream<ProdutoEntity> percorrerTodos();
+
+    @Override
+    @Query("select new com.example.estoque.domain.ResumoEstoque(count(p), sum(p.preco * p.qtd), "
+            + "sum(case when p.qtd is null or p.qtd <= 0 then 1 else 0 end)) from produto p")
+    public ResumoEstoque resumir();
+
+}
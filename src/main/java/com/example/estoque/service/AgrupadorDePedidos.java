@@ -0,0 +1,333 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Agrupa pedidos concorrentes de baixa de estoque em lotes. Os pedidos que chegam dentro de
+ * {@code estoque.agrupamento.janela} (ou ate {@code estoque.agrupamento.maximo-pedidos}) sao
+ * aplicados por uma unica thread em uma so transacao: os produtos envolvidos sao bloqueados uma
+ * vez, cada pedido e aceito ou recusado em ordem de chegada contra o saldo restante, e cada
+ * produto recebe uma unica baixa com o total aceito.
+ *
+ * <p>Quem chama continua recebendo a resposta do proprio pedido, com a mesma
+ * {@link ForaDeEstoqueException} do caminho direto. Se o lote inteiro falhar no banco, os pedidos
+ * sao refeitos um a um por {@link ProdutoService#atualizarEstoque}. No modo ledger as baixas ja
+ * sao feitas em memoria e o agrupador apenas repassa os pedidos ao servico.
+ *
+ * <p>As chaves de idempotencia dos pedidos aceitos sao gravadas em um lote na mesma transacao. Uma
+ * chave repetida dentro do lote vale como reenvio do primeiro pedido aceito com ela; uma chave que
+ * ja estava no banco derruba o lote, que entao e refeito um a um pelo servico.
+ *
+ * <p>Quem chama espera o lote no maximo {@code estoque.agrupamento.espera-maxima}. Se a thread do
+ * agrupador morrer ou o agrupador for encerrado, os pedidos ainda na fila sao recusados na hora.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.agrupamento", name = "enabled", havingValue = "true")
+@Timed(value = "estoque.servico", histogram = true)
+public class AgrupadorDePedidos {
+
+    private static final Logger log = LoggerFactory.getLogger(AgrupadorDePedidos.class);
+
+    private final ProdutoService service;
+    private final ProdutoRepository repository;
+    private final ApplicationEventPublisher publisher;
+    private final EstoqueMetricas metricas;
+    private final TransactionTemplate transactionTemplate;
+    private final long janelaNanos;
+    private final int maximoPedidos;
+    private final Duration esperaMaxima;
+    private final DistributionSummary pedidosPorLote;
+
+    private final BlockingQueue<Pendente> fila = new LinkedBlockingQueue<>();
+    private volatile boolean ativo;
+    private Thread consumidor;
+
+    // presente apenas com estoque.ledger.enabled=true
+    private final ObjectProvider<EstoqueLedger> ledger;
+    private final ObjectProvider<PedidosProcessados> pedidosProcessados;
+    private final ObjectProvider<ReservasDeEstoque> reservas;
+
+    public AgrupadorDePedidos(ProdutoService service,
+                              ProdutoRepository repository,
+                              ApplicationEventPublisher publisher,
+                              EstoqueMetricas metricas,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry registry,
+                              @Value("${estoque.agrupamento.janela:2ms}") Duration janela,
+                              @Value("${estoque.agrupamento.maximo-pedidos:256}") int maximoPedidos,
+                              @Value("${estoque.agrupamento.espera-maxima:10s}") Duration esperaMaxima,
+                              ObjectProvider<EstoqueLedger> ledger,
+                              ObjectProvider<PedidosProcessados> pedidosProcessados,
+                              ObjectProvider<ReservasDeEstoque> reservas) {
+        this.service = service;
+        this.repository = repository;
+        this.publisher = publisher;
+        this.metricas = metricas;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.janelaNanos = janela.toNanos();
+        this.maximoPedidos = maximoPedidos;
+        this.esperaMaxima = esperaMaxima;
+        this.ledger = ledger;
+        this.pedidosProcessados = pedidosProcessados;
+        this.reservas = reservas;
+        this.pedidosPorLote = DistributionSummary.builder("estoque.agrupamento.pedidos-por-lote")
+                .description("Pedidos aplicados em cada transacao do agrupador")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("estoque.agrupamento.fila", fila, BlockingQueue::size)
+                .description("Pedidos aguardando o proximo lote")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        ativo = true;
+        consumidor = new Thread(this::consumir, "agrupador-pedidos");
+        consumidor.setDaemon(true);
+        consumidor.start();
+    }
+
+    @PreDestroy
+    public void encerrar() throws InterruptedException {
+        // a thread termina de aplicar o que ja esta na fila antes de sair
+        ativo = false;
+        consumidor.join(TimeUnit.SECONDS.toMillis(10));
+        recusarFila();
+    }
+
+    /**
+     * Enfileira o pedido e espera o lote em que ele foi aplicado. Lanca {@link ForaDeEstoqueException}
+     * se algum produto do pedido nao tiver saldo; nesse caso nada do pedido e baixado.
+     */
+    public void atualizarEstoque(Pedido pedido) {
+        if (ledger.getIfAvailable() != null) {
+            service.atualizarEstoque(pedido);
+            return;
+        }
+        PedidosProcessados pedidosProcessados = this.pedidosProcessados.getIfAvailable();
+        if (pedido.getChave() != null && pedidosProcessados != null && pedidosProcessados.jaProcessado(pedido.getChave())) {
+            metricas.pedidoRepetido();
+            return;
+        }
+        if (!ativo) {
+            throw new IllegalStateException("Agrupador de pedidos encerrado");
+        }
+        Pendente pendente = new Pendente(pedido, ProdutoService.agruparPorProduto(pedido));
+        fila.add(pendente);
+        // o consumidor pode ter saido entre a verificacao acima e o add: sem ninguem para esvaziar a
+        // fila, o pedido sai dela aqui (se o consumidor ja o pegou, ele mesmo responde)
+        if (!ativo && fila.remove(pendente)) {
+            throw new IllegalStateException("Agrupador de pedidos encerrado");
+        }
+        try {
+            pendente.resposta.get(esperaMaxima.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (fila.remove(pendente)) {
+                throw new IllegalStateException("Tempo esgotado aguardando o lote do pedido; nada foi baixado", e);
+            }
+            // ja esta num lote: pode ou nao ter sido aplicado; reenviar com a mesma chave e seguro
+            throw new IllegalStateException("Tempo esgotado aguardando o lote do pedido", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando o lote do pedido", e);
+        }
+    }
+
+    private void consumir() {
+        List<Pendente> lote = new ArrayList<>(maximoPedidos);
+        try {
+            consumir(lote);
+        } finally {
+            // saida normal, interrupcao ou Error: ninguem mais esvazia a fila
+            ativo = false;
+            IllegalStateException encerrado = new IllegalStateException("Agrupador de pedidos encerrado");
+            lote.forEach(pendente -> pendente.resposta.completeExceptionally(encerrado));
+            recusarFila();
+        }
+    }
+
+    private void recusarFila() {
+        IllegalStateException encerrado = new IllegalStateException("Agrupador de pedidos encerrado");
+        for (Pendente pendente = fila.poll(); pendente != null; pendente = fila.poll()) {
+            pendente.resposta.completeExceptionally(encerrado);
+        }
+    }
+
+    private void consumir(List<Pendente> lote) {
+        while (ativo || !fila.isEmpty()) {
+            try {
+                Pendente primeiro = fila.poll(100, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+                lote.add(primeiro);
+                // a janela conta a partir do primeiro pedido; depois dela so entra o que ja esta na fila
+                long limite = System.nanoTime() + janelaNanos;
+                while (lote.size() < maximoPedidos) {
+                    long restante = limite - System.nanoTime();
+                    Pendente proximo = restante > 0 ? fila.poll(restante, TimeUnit.NANOSECONDS) : fila.poll();
+                    if (proximo == null) {
+                        break;
+                    }
+                    lote.add(proximo);
+                }
+                processar(lote);
+                lote.clear();
+            } catch (InterruptedException e) {
+                // o lote em andamento e o resto da fila sao recusados em consumir()
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Falha inesperada no agrupador de pedidos", e);
+                lote.forEach(pendente -> pendente.resposta.completeExceptionally(e));
+                lote.clear();
+            }
+            // um Error sai daqui com o lote ainda preenchido, para consumir() recusa-lo
+        }
+    }
+
+    private void processar(List<Pendente> lote) {
+        pedidosPorLote.record(lote.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> aplicar(lote));
+        } catch (RuntimeException e) {
+            log.warn("Falha ao gravar lote de {} pedidos; aplicando um a um", lote.size(), e);
+            lote.forEach(this::aplicarIndividualmente);
+            return;
+        }
+        for (Pendente pendente : lote) {
+            if (pendente.repetido) {
+                metricas.pedidoRepetido();
+                pendente.resposta.complete(null);
+                continue;
+            }
+            metricas.pedidoRecebido(pendente.pedido.getItens().size(), pendente.quantidades.size());
+            if (pendente.recusa == null) {
+                metricas.pedidoAceito();
+                pendente.resposta.complete(null);
+            } else {
+                if (pendente.recusa instanceof ForaDeEstoqueException) {
+                    metricas.pedidoForaDeEstoque();
+                } else {
+                    metricas.pedidoComErro();
+                }
+                pendente.resposta.completeExceptionally(pendente.recusa);
+            }
+        }
+    }
+
+    private void aplicar(List<Pendente> lote) {
+        Set<Long> ids = new TreeSet<>();
+        lote.forEach(pendente -> ids.addAll(pendente.quantidades.keySet()));
+
+        Map<Long, ProdutoEntity> produtos = new HashMap<>();
+        Map<Long, Integer> saldos = new HashMap<>();
+        ReservasDeEstoque reservas = this.reservas.getIfAvailable();
+        for (ProdutoEntity produto : repository.findByIdInOrderByIdAsc(ids)) {
+            produtos.put(produto.getId(), produto);
+            // o que esta reservado nao entra no saldo dos pedidos do lote
+            int reservado = reservas == null ? 0 : reservas.reservado(produto.getId());
+            saldos.put(produto.getId(), (produto.getQtd() == null ? 0 : produto.getQtd()) - reservado);
+        }
+
+        Map<Long, Integer> baixas = new TreeMap<>();
+        Set<String> chaves = new LinkedHashSet<>();
+        for (Pendente pendente : lote) {
+            pendente.recusa = null;
+            String chave = pendente.pedido.getChave();
+            pendente.repetido = chave != null && chaves.contains(chave);
+            if (pendente.repetido) {
+                continue;
+            }
+            for (Map.Entry<Long, Integer> item : pendente.quantidades.entrySet()) {
+                Integer saldo = saldos.get(item.getKey());
+                if (saldo == null) {
+                    pendente.recusa = new RuntimeException("Produto não encontrado com ID: " + item.getKey());
+                    break;
+                }
+                if (saldo < item.getValue()) {
+                    pendente.recusa = new ForaDeEstoqueException(produtos.get(item.getKey()).getNome(), saldo);
+                    break;
+                }
+            }
+            if (pendente.recusa == null) {
+                if (chave != null) {
+                    chaves.add(chave);
+                }
+                pendente.quantidades.forEach((id, qtd) -> {
+                    saldos.merge(id, -qtd, Integer::sum);
+                    baixas.merge(id, qtd, Integer::sum);
+                });
+            }
+        }
+
+        pedidosProcessados.ifAvailable(processados -> processados.registrarTodas(chaves));
+        if (!baixas.isEmpty()) {
+            // as linhas estao bloqueadas desde a leitura, entao a baixa nao precisa ser condicional
+            repository.aplicarBaixas(baixas);
+            baixas.forEach((id, qtd) -> publisher.publishEvent(ProdutoAlteradoEvent.baixa(id, qtd)));
+        }
+    }
+
+    private void aplicarIndividualmente(Pendente pendente) {
+        try {
+            service.atualizarEstoque(pendente.pedido);
+            pendente.resposta.complete(null);
+        } catch (RuntimeException e) {
+            pendente.resposta.completeExceptionally(e);
+        }
+    }
+
+    private static final class Pendente {
+        private final Pedido pedido;
+        private final Map<Long, Integer> quantidades;
+        private final CompletableFuture<Void> resposta = new CompletableFuture<>();
+        private RuntimeException recusa;
+        private boolean repetido;
+
+        private Pendente(Pedido pedido, Map<Long, Integer> quantidades) {
+            this.pedido = pedido;
+            this.quantidades = quantidades;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.AlertaEstoque;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Alertas de estoque baixo calculados a cada alteracao, sem varrer o catalogo. Mantem em memoria a
+ * quantidade e o limite de reposicao de cada produto; cada {@link ProdutoAlteradoEvent} atualiza um
+ * unico produto e, se a quantidade cruzou o limite, gera um {@link AlertaEstoque}.
+ *
+ * <p>As quantidades sao carregadas do banco na subida e depois acompanham os eventos (cadastro e
+ * atualizacao trazem a quantidade absoluta, baixa traz o quanto saiu). Como os eventos de transacoes
+ * diferentes podem chegar fora de ordem, a cada {@code estoque.alertas.reconciliacao-ms} as
+ * quantidades sao conferidas com o banco, depois de gravar as baixas pendentes do ledger e dos
+ * armazens; um produto so e corrigido quando diverge em duas conferencias seguidas com a mesma
+ * quantidade no banco, para nao atropelar um evento ainda a caminho. Os limites ficam apenas em
+ * memoria: produtos sem limite proprio usam {@code estoque.alertas.limite-padrao}. Os alertas sao
+ * entregues aos ouvintes por uma thread propria, para que um cliente lento nao segure quem alterou
+ * o estoque.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.alertas", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AlertaDeEstoque {
+
+    private static final Logger log = LoggerFactory.getLogger(AlertaDeEstoque.class);
+
+    private final ProdutoRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final int limitePadrao;
+    private final Counter correcoes;
+    // ausentes com estoque.ledger.enabled=false ou estoque.armazens.enabled=false
+    private final ObjectProvider<EstoqueLedger> ledger;
+    private final ObjectProvider<AlocadorDeEstoque> armazens;
+    // produtos divergentes na conferencia anterior, com a quantidade do banco (null = removido no banco)
+    private Map<Long, Integer> divergentes = Map.of();
+
+    private final Map<Long, Situacao> situacoes = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> limites = new ConcurrentHashMap<>();
+    private final Map<Long, AlertaEstoque> abaixoDoLimite = new ConcurrentHashMap<>();
+    private final List<Consumer<AlertaEstoque>> ouvintes = new CopyOnWriteArrayList<>();
+    private final ExecutorService entrega = Executors.newSingleThreadExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "alertas-estoque");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AlertaDeEstoque(ProdutoRepository repository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry registry,
+                           @Value("${estoque.alertas.limite-padrao:10}") int limitePadrao,
+                           ObjectProvider<EstoqueLedger> ledger,
+                           ObjectProvider<AlocadorDeEstoque> armazens) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.limitePadrao = limitePadrao;
+        this.ledger = ledger;
+        this.armazens = armazens;
+        this.correcoes = Counter.builder("estoque.alertas.correcoes")
+                .description("Produtos cuja quantidade nos alertas foi corrigida pela conferencia com o banco")
+                .register(registry);
+        Gauge.builder("estoque.alertas.abaixo-do-limite", abaixoDoLimite, Map::size)
+                .description("Produtos com quantidade abaixo do limite de reposicao")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void carregar() {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<ProdutoEntity> produtos = repository.percorrerTodos()) {
+                produtos.forEach(produto -> alterar(produto.getId(), produto.getNome(), qtd(produto.getQtd()), false));
+            }
+        });
+        log.info("Alertas de estoque carregados: {} de {} produtos abaixo do limite", abaixoDoLimite.size(),
+                situacoes.size());
+    }
+
+    /**
+     * Confere a quantidade de cada produto com o banco e corrige os que divergiram tambem na
+     * conferencia anterior, com a mesma quantidade no banco.
+     */
+    @Scheduled(fixedDelayString = "${estoque.alertas.reconciliacao-ms:60000}",
+            initialDelayString = "${estoque.alertas.reconciliacao-ms:60000}")
+    public synchronized void reconciliar() {
+        ledger.ifAvailable(EstoqueLedger::flush);
+        armazens.ifAvailable(AlocadorDeEstoque::consolidar);
+        Map<Long, Integer> agora = new HashMap<>();
+        Set<Long> noBanco = new HashSet<>();
+        int[] corrigidos = new int[1];
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<ProdutoEntity> produtos = repository.percorrerTodos()) {
+                produtos.forEach(produto -> {
+                    noBanco.add(produto.getId());
+                    int qtd = qtd(produto.getQtd());
+                    Situacao atual = situacoes.get(produto.getId());
+                    if (atual != null && atual.qtd == qtd) {
+                        return;
+                    }
+                    if (Objects.equals(divergentes.get(produto.getId()), qtd)) {
+                        alterar(produto.getId(), produto.getNome(), qtd, true);
+                        corrigidos[0]++;
+                    } else {
+                        agora.put(produto.getId(), qtd);
+                    }
+                });
+            }
+        });
+        for (Long id : situacoes.keySet()) {
+            if (noBanco.contains(id)) {
+                continue;
+            }
+            if (divergentes.containsKey(id) && divergentes.get(id) == null) {
+                aoAlterarProduto(ProdutoAlteradoEvent.remocao(id));
+                corrigidos[0]++;
+            } else {
+                agora.put(id, null);
+            }
+        }
+        divergentes = agora;
+        if (corrigidos[0] > 0) {
+            correcoes.increment(corrigidos[0]);
+            log.warn("Alertas de estoque divergentes do banco em duas conferências seguidas: {} produtos corrigidos",
+                    corrigidos[0]);
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        entrega.shutdown();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        switch (evento.getTipo()) {
+            case CADASTRO, ATUALIZACAO ->
+                    alterar(evento.getId(), evento.getProduto().getNome(), qtd(evento.getQuantidade()), true);
+            case BAIXA -> baixar(evento.getId(), evento.getQuantidade());
+            case REMOCAO -> situacoes.computeIfPresent(evento.getId(), (id, atual) -> {
+                limites.remove(id);
+                abaixoDoLimite.remove(id);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Define o limite de reposicao do produto; {@code null} volta ao limite padrao.
+     */
+    public void definirLimite(Long id, Integer limite) {
+        if (limite == null) {
+            limites.remove(id);
+        } else {
+            limites.put(id, limite);
+        }
+        AlertaEstoque[] alerta = new AlertaEstoque[1];
+        situacoes.computeIfPresent(id, (chave, atual) -> {
+            alerta[0] = verificar(id, atual);
+            return atual;
+        });
+        avisar(alerta[0]);
+    }
+
+    public int limite(Long id) {
+        return limites.getOrDefault(id, limitePadrao);
+    }
+
+    /**
+     * Produtos atualmente abaixo do limite, no estado do ultimo alerta de cada um.
+     */
+    public List<AlertaEstoque> abaixoDoLimite() {
+        return List.copyOf(abaixoDoLimite.values());
+    }
+
+    public void adicionarOuvinte(Consumer<AlertaEstoque> ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    public void removerOuvinte(Consumer<AlertaEstoque> ouvinte) {
+        ouvintes.remove(ouvinte);
+    }
+
+    private void baixar(Long id, int quantidade) {
+        AlertaEstoque[] alerta = new AlertaEstoque[1];
+        situacoes.computeIfPresent(id, (chave, atual) -> {
+            Situacao nova = new Situacao(atual.nome, atual.qtd - quantidade);
+            alerta[0] = verificar(id, nova);
+            return nova;
+        });
+        avisar(alerta[0]);
+    }
+
+    private void alterar(Long id, String nome, int qtd, boolean avisar) {
+        AlertaEstoque[] alerta = new AlertaEstoque[1];
+        situacoes.compute(id, (chave, atual) -> {
+            Situacao nova = new Situacao(nome, qtd);
+            alerta[0] = verificar(id, nova);
+            return nova;
+        });
+        if (avisar) {
+            avisar(alerta[0]);
+        }
+    }
+
+    // chamado dentro do compute do produto, entao as transicoes de um mesmo produto nao se cruzam
+    private AlertaEstoque verificar(Long id, Situacao situacao) {
+        int limite = limite(id);
+        if (situacao.qtd < limite) {
+            AlertaEstoque alerta = new AlertaEstoque(AlertaEstoque.Tipo.ABAIXO_DO_LIMITE, id, situacao.nome,
+                    situacao.qtd, limite);
+            return abaixoDoLimite.put(id, alerta) == null ? alerta : null;
+        }
+        if (abaixoDoLimite.remove(id) != null) {
+            return new AlertaEstoque(AlertaEstoque.Tipo.NORMALIZADO, id, situacao.nome, situacao.qtd, limite);
+        }
+        return null;
+    }
+
+    private void avisar(AlertaEstoque alerta) {
+        if (alerta == null || ouvintes.isEmpty()) {
+            return;
+        }
+        entrega.execute(() -> ouvintes.forEach(ouvinte -> {
+            try {
+                ouvinte.accept(alerta);
+            } catch (RuntimeException e) {
+                log.debug("Falha ao entregar alerta de estoque; ouvinte removido", e);
+                ouvintes.remove(ouvinte);
+            }
+        }));
+    }
+
+    private static int qtd(Integer qtd) {
+        return qtd == null ? 0 : qtd;
+    }
+
+    private record Situacao(String nome, int qtd) {
+    }
+}
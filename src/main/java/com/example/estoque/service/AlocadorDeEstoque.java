@@ -0,0 +1,407 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.EstoqueArmazem;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Estoque dividido por armazem: a quantidade de cada produto fica em uma linha por armazem na
+ * tabela {@code estoque_armazem}, e a baixa de um pedido escolhe de quais armazens sai cada item
+ * conforme a {@link EstrategiaDeAlocacao} configurada.
+ *
+ * <p>A baixa le as linhas do produto sem trava, escolhe os armazens e aplica um
+ * {@code UPDATE ... WHERE qtd >= ?} em lote so nas linhas escolhidas; pedidos que caem em
+ * armazens diferentes do mesmo produto nao disputam a mesma linha. Se uma linha mudou entre a
+ * leitura e o {@code UPDATE}, o que ja foi aplicado e devolvido e o pedido e alocado de novo com as
+ * linhas do produto travadas ({@code FOR UPDATE}).
+ *
+ * <p>A coluna {@code produto.qtd} continua sendo a soma dos armazens, e e o que o
+ * {@code GET /estoque} mostra, mas so e regravada a cada {@code estoque.armazens.consolidacao-ms},
+ * por uma unica thread, com a soma dos armazens de cada produto tocado desde a ultima consolidacao:
+ * a linha do produto deixa de ser disputada por todos os pedidos e fica ate um intervalo atrasada
+ * em relacao aos armazens. Como a consolidacao grava a soma, e nao as baixas acumuladas, uma
+ * alteracao do produto no meio do caminho nao e contada duas vezes. A subida tambem recalcula
+ * {@code produto.qtd} a partir dos armazens, que sao a quantidade autoritativa. Por isso a tabela
+ * nao deve sobreviver a um periodo com o modo desligado.
+ *
+ * <p>Cadastro e alteracao de quantidade pelo produto gravam a diferenca no armazem padrao (o
+ * primeiro de {@code estoque.armazens.nomes}), na mesma transacao que grava o produto; uma reducao
+ * tira primeiro dele e depois dos demais. Uma reducao maior que o que ha nos armazens (baixas ainda
+ * nao consolidadas somam mais que a quantidade nova) falha com {@link ForaDeEstoqueException} e
+ * desfaz a alteracao do produto. Nao combina com o modo ledger nem com o agrupamento de pedidos, que
+ * baixam {@code produto.qtd} diretamente.
+ */
+@Component
+@Profile("!arquivo")
+@ConditionalOnProperty(prefix = "estoque.armazens", name = "enabled", havingValue = "true")
+public class AlocadorDeEstoque {
+
+    private static final Logger log = LoggerFactory.getLogger(AlocadorDeEstoque.class);
+
+    private static final String BAIXA =
+            "UPDATE estoque_armazem SET qtd = qtd - ? WHERE produto_id = ? AND armazem = ? AND qtd >= ?";
+    private static final String DEVOLUCAO =
+            "UPDATE estoque_armazem SET qtd = qtd + ? WHERE produto_id = ? AND armazem = ?";
+    private static final String GRAVAR =
+            "MERGE INTO estoque_armazem (produto_id, armazem, qtd) KEY (produto_id, armazem) VALUES (?, ?, ?)";
+    // produto.qtd = soma dos armazens, so onde difere
+    private static final String CONSOLIDAR = "MERGE INTO produto p "
+            + "USING (SELECT produto_id, SUM(qtd) AS total FROM estoque_armazem %s GROUP BY produto_id) s "
+            + "ON p.id = s.produto_id "
+            + "WHEN MATCHED AND (p.qtd IS NULL OR p.qtd <> s.total) THEN UPDATE SET qtd = s.total, versao = p.versao + 1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProdutoRepository repository;
+    private final ProdutoCache cache;
+    private final ApplicationEventPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate ajusteTemplate;
+    private final EstrategiaDeAlocacao estrategia;
+    private final List<String> nomes;
+    private final Map<String, List<String>> ordemPorRegiao = new HashMap<>();
+
+    // produtos tocados desde a ultima consolidacao, com produto.qtd menos a soma dos armazens: baixas
+    // (positivas) e reposicoes (negativas) ja confirmadas nos armazens e ainda nao em produto.qtd
+    private final Map<Long, Integer> pendentes = new ConcurrentHashMap<>();
+    // uma consolidacao por vez (agendada, snapshot do historico e encerramento)
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // a consolidacao muda produto.qtd sem publicar eventos; ausente com estoque.catalogo.enabled=false
+    private final ObjectProvider<CatalogoDeProdutos> catalogo;
+
+    public AlocadorDeEstoque(JdbcTemplate jdbcTemplate,
+                             ProdutoRepository repository,
+                             ProdutoCache cache,
+                             ApplicationEventPublisher publisher,
+                             PlatformTransactionManager transactionManager,
+                             Environment environment,
+                             @Value("${estoque.armazens.nomes:CD-SP,CD-RJ,CD-MG}") List<String> nomes,
+                             @Value("${estoque.armazens.estrategia:mais-proximo}") EstrategiaDeAlocacao estrategia,
+                             @Value("${estoque.ledger.enabled:false}") boolean ledger,
+                             @Value("${estoque.agrupamento.enabled:false}") boolean agrupamento,
+                             ObjectProvider<CatalogoDeProdutos> catalogo) {
+        if (ledger || agrupamento) {
+            throw new IllegalStateException("estoque.armazens não pode ser usado com estoque.ledger nem estoque.agrupamento");
+        }
+        if (nomes.isEmpty()) {
+            throw new IllegalStateException("Informe ao menos um armazém em estoque.armazens.nomes");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.repository = repository;
+        this.cache = cache;
+        this.publisher = publisher;
+        this.catalogo = catalogo;
+        // subida, reposicao e consolidacao: sempre numa transacao propria
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // ajustes pelo produto: na transacao de quem alterou, ou numa propria se o evento veio sem uma
+        this.ajusteTemplate = new TransactionTemplate(transactionManager);
+        this.estrategia = estrategia;
+        this.nomes = List.copyOf(nomes);
+
+        // estoque.armazens.proximidade.<regiao>=CD-RJ,CD-SP: os nao citados vem depois, na ordem de nomes
+        Binder.get(environment)
+                .bind("estoque.armazens.proximidade", Bindable.mapOf(String.class, String.class))
+                .ifBound(proximidade -> proximidade.forEach((regiao, ordem) -> {
+                    Set<String> armazens = new LinkedHashSet<>();
+                    Arrays.stream(ordem.split(",")).map(String::trim).filter(this.nomes::contains).forEach(armazens::add);
+                    armazens.addAll(this.nomes);
+                    ordemPorRegiao.put(regiao.toLowerCase(), List.copyOf(armazens));
+                }));
+    }
+
+    /**
+     * Cria no armazem padrao a linha dos produtos que ainda nao tem nenhuma e acerta
+     * {@code produto.qtd} pela soma dos armazens, descartando baixas perdidas em uma queda antes da
+     * consolidacao.
+     */
+    @PostConstruct
+    public void iniciar() {
+        transactionTemplate.executeWithoutResult(status -> {
+            int criados = jdbcTemplate.update("INSERT INTO estoque_armazem (produto_id, armazem, qtd) "
+                    + "SELECT p.id, ?, COALESCE(p.qtd, 0) FROM produto p "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM estoque_armazem e WHERE e.produto_id = p.id)", nomes.get(0));
+            jdbcTemplate.update("DELETE FROM estoque_armazem e WHERE NOT EXISTS (SELECT 1 FROM produto p WHERE p.id = e.produto_id)");
+            int corrigidos = jdbcTemplate.update(CONSOLIDAR.formatted(""));
+            log.info("Estoque por armazém: {} produtos levados para {}, {} quantidades recalculadas",
+                    criados, nomes.get(0), corrigidos);
+        });
+    }
+
+    /**
+     * Baixa os itens do pedido dos armazens, tudo ou nada, na transacao corrente.
+     *
+     * @param reservadas quantidade que precisa continuar em estoque, por produto
+     * @param regiao     regiao de entrega do pedido; {@code null} segue a ordem de {@code estoque.armazens.nomes}
+     * @return {@code null} se a baixa foi feita, ou o id de um produto sem estoque suficiente (ou inexistente)
+     */
+    public Long baixar(Map<Long, Integer> quantidades, Map<Long, Integer> reservadas, String regiao) {
+        List<String> ordem = ordem(regiao);
+        EstrategiaDeAlocacao.Alocacao alocacao =
+                estrategia.alocar(quantidades, saldos(quantidades.keySet(), false), reservadas, ordem);
+        if (alocacao.semEstoque() != null) {
+            return alocacao.semEstoque();
+        }
+        if (!aplicar(alocacao.retiradas())) {
+            // outro pedido mexeu nas mesmas linhas: agora com elas travadas, a alocacao vale ate o commit
+            alocacao = estrategia.alocar(quantidades, saldos(quantidades.keySet(), true), reservadas, ordem);
+            if (alocacao.semEstoque() != null) {
+                return alocacao.semEstoque();
+            }
+            if (!aplicar(alocacao.retiradas())) {
+                throw new IllegalStateException("Baixa por armazém falhou com as linhas travadas");
+            }
+        }
+        aoConfirmar(quantidades);
+        return null;
+    }
+
+    /**
+     * Soma dos armazens de cada produto, com as linhas travadas ate o fim da transacao. Produtos sem
+     * linha em nenhum armazem ficam de fora.
+     */
+    public Map<Long, Integer> travarSomas(Collection<Long> ids) {
+        Map<Long, Integer> somas = new HashMap<>();
+        saldos(ids, true).forEach((id, porArmazem) ->
+                somas.put(id, porArmazem.values().stream().mapToInt(Integer::intValue).sum()));
+        return somas;
+    }
+
+    public List<EstoqueArmazem> listar(Long produtoId) {
+        return jdbcTemplate.query("SELECT armazem, qtd FROM estoque_armazem WHERE produto_id = ? ORDER BY armazem",
+                (rs, linha) -> new EstoqueArmazem(rs.getString(1), rs.getInt(2)), produtoId);
+    }
+
+    /**
+     * Grava a quantidade de cada armazem informado (os demais ficam como estao). A diferenca entra em
+     * {@code produto.qtd} na proxima consolidacao e e publicada como uma baixa negativa.
+     *
+     * @return {@code false} se o produto nao existir
+     */
+    public boolean repor(Long produtoId, List<EstoqueArmazem> quantidades) {
+        for (EstoqueArmazem item : quantidades) {
+            if (item.getArmazem() == null || !nomes.contains(item.getArmazem())) {
+                throw new IllegalArgumentException("Armazém desconhecido: " + item.getArmazem());
+            }
+            if (item.getQtd() == null || item.getQtd() < 0) {
+                throw new IllegalArgumentException("Quantidade deve ser zero ou maior");
+            }
+        }
+        Boolean existe = transactionTemplate.execute(status -> {
+            if (!repository.existsById(produtoId)) {
+                return false;
+            }
+            Map<String, Integer> atuais = saldos(List.of(produtoId), true).getOrDefault(produtoId, Map.of());
+            Map<String, Integer> novas = new TreeMap<>();
+            quantidades.forEach(item -> novas.put(item.getArmazem(), item.getQtd()));
+            int diferenca = novas.entrySet().stream()
+                    .mapToInt(item -> item.getValue() - atuais.getOrDefault(item.getKey(), 0))
+                    .sum();
+            gravar(produtoId, novas);
+            if (diferenca != 0) {
+                aoConfirmar(Map.of(produtoId, -diferenca));
+                publisher.publishEvent(ProdutoAlteradoEvent.baixa(produtoId, -diferenca));
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(existe);
+    }
+
+    /**
+     * Grava em {@code produto.qtd} a soma dos armazens dos produtos tocados desde a ultima
+     * consolidacao. Um lote que falha volta para os pendentes.
+     */
+    @Scheduled(fixedDelayString = "${estoque.armazens.consolidacao-ms:200}")
+    public void consolidar() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Long> tocados = new ArrayList<>(pendentes.keySet());
+            if (tocados.isEmpty()) {
+                return;
+            }
+            Map<Long, Integer> lote = new TreeMap<>();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    // com as linhas dos produtos travadas, um ajuste pelo produto nao le os pendentes
+                    // no meio da consolidacao: ou ve o lote inteiro ou ja ve a soma gravada
+                    repository.travarProdutos(tocados);
+                    for (Long id : tocados) {
+                        Integer quantidade = pendentes.remove(id);
+                        if (quantidade != null) {
+                            lote.put(id, quantidade);
+                        }
+                    }
+                    jdbcTemplate.update(CONSOLIDAR.formatted("WHERE produto_id = ANY(?)"),
+                            (Object) lote.keySet().toArray(Long[]::new));
+                });
+                lote.keySet().forEach(cache::invalidar);
+                catalogo.ifAvailable(atual -> atual.invalidar(lote.keySet()));
+            } catch (RuntimeException e) {
+                lote.forEach((id, quantidade) -> pendentes.merge(id, quantidade, Integer::sum));
+                log.warn("Falha ao consolidar o estoque dos armazéns; nova tentativa no próximo ciclo", e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Antes do commit de quem alterou o produto, na mesma transacao: produto e armazens sao gravados
+     * juntos, e uma reducao que os armazens nao comportam desfaz a alteracao.
+     *
+     * @throws ForaDeEstoqueException se a quantidade nova deixaria algum armazem negativo
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        switch (evento.getTipo()) {
+            case CADASTRO, ATUALIZACAO -> ajusteTemplate.executeWithoutResult(status -> {
+                // a linha do produto antes das dos armazens, na mesma ordem das reservas e da consolidacao
+                repository.travarProdutos(List.of(evento.getId()));
+                // produto.qtd recebeu a quantidade absoluta; o que esta pendente ainda sera subtraido dela
+                int quantidade = evento.getQuantidade() == null ? 0 : evento.getQuantidade();
+                ajustar(evento.getId(), quantidade - pendentes.getOrDefault(evento.getId(), 0));
+                // a proxima consolidacao grava a soma em produto.qtd; o que esta pendente nao muda
+                aoConfirmar(Map.of(evento.getId(), 0));
+            });
+            case REMOCAO -> ajusteTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM estoque_armazem WHERE produto_id = ?", evento.getId());
+                aoConfirmar(() -> pendentes.remove(evento.getId()));
+            });
+            case BAIXA -> {
+                // baixas e reposicoes ja passaram pelos armazens
+            }
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        consolidar();
+    }
+
+    // leva a soma dos armazens do produto a alvo
+    private void ajustar(Long produtoId, int alvo) {
+        Map<String, Integer> atuais = saldos(List.of(produtoId), true).getOrDefault(produtoId, Map.of());
+        int soma = atuais.values().stream().mapToInt(Integer::intValue).sum();
+        int diferenca = alvo - soma;
+        Map<String, Integer> novas = new TreeMap<>();
+        if (diferenca >= 0) {
+            novas.put(nomes.get(0), atuais.getOrDefault(nomes.get(0), 0) + diferenca);
+        } else {
+            // reducao: esvazia o padrao e depois os demais
+            int faltam = -diferenca;
+            List<String> ordem = new ArrayList<>(nomes);
+            atuais.keySet().stream().filter(armazem -> !ordem.contains(armazem)).forEach(ordem::add);
+            for (String armazem : ordem) {
+                int atual = atuais.getOrDefault(armazem, 0);
+                int retirada = Math.min(faltam, Math.max(atual, 0));
+                if (retirada > 0) {
+                    novas.put(armazem, atual - retirada);
+                    faltam -= retirada;
+                }
+            }
+            if (faltam > 0) {
+                throw new ForaDeEstoqueException("Quantidade do produto " + produtoId + " recusada: os armazéns têm "
+                        + soma + " e as baixas ainda não consolidadas deixariam " + alvo);
+            }
+        }
+        gravar(produtoId, novas);
+    }
+
+    // true se todas as linhas tinham saldo; senao devolve o que foi aplicado
+    private boolean aplicar(Map<Long, Map<String, Integer>> retiradas) {
+        List<Object[]> parametros = new ArrayList<>();
+        retiradas.forEach((id, porArmazem) -> new TreeMap<>(porArmazem)
+                .forEach((armazem, qtd) -> parametros.add(new Object[]{qtd, id, armazem, qtd})));
+        int[] atualizados = jdbcTemplate.batchUpdate(BAIXA, parametros);
+
+        List<Object[]> devolver = new ArrayList<>();
+        for (int i = 0; i < atualizados.length; i++) {
+            if (atualizados[i] > 0) {
+                devolver.add(Arrays.copyOf(parametros.get(i), 3));
+            }
+        }
+        if (devolver.size() == parametros.size()) {
+            return true;
+        }
+        if (!devolver.isEmpty()) {
+            jdbcTemplate.batchUpdate(DEVOLUCAO, devolver);
+        }
+        return false;
+    }
+
+    private Map<Long, Map<String, Integer>> saldos(Collection<Long> ids, boolean travar) {
+        Map<Long, Map<String, Integer>> saldos = new HashMap<>();
+        jdbcTemplate.query("SELECT produto_id, armazem, qtd FROM estoque_armazem WHERE produto_id = ANY(?) "
+                        + "ORDER BY produto_id, armazem" + (travar ? " FOR UPDATE" : ""),
+                rs -> {
+                    saldos.computeIfAbsent(rs.getLong(1), id -> new HashMap<>()).put(rs.getString(2), rs.getInt(3));
+                },
+                (Object) ids.toArray(Long[]::new));
+        return saldos;
+    }
+
+    private void gravar(Long produtoId, Map<String, Integer> quantidades) {
+        jdbcTemplate.batchUpdate(GRAVAR, quantidades.entrySet().stream()
+                .map(item -> new Object[]{produtoId, item.getKey(), item.getValue()})
+                .toList());
+    }
+
+    private List<String> ordem(String regiao) {
+        return regiao == null ? nomes : ordemPorRegiao.getOrDefault(regiao.toLowerCase(), nomes);
+    }
+
+    // so depois do commit: uma baixa desfeita nao pode chegar a produto.qtd
+    private void aoConfirmar(Map<Long, Integer> quantidades) {
+        aoConfirmar(() -> quantidades.forEach((id, qtd) -> pendentes.merge(id, qtd, Integer::sum)));
+    }
+
+    private static void aoConfirmar(Runnable acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                acao.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.estoque.service;
+
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.stream.Stream;
+
+/**
+ * Busca por nome e descricao sobre um {@link IndiceDeBusca} em memoria, carregado do banco na
+ * subida e mantido a cada {@link ProdutoAlteradoEvent}. Baixas de estoque nao mudam o texto e sao
+ * ignoradas.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.busca", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class BuscaDeProdutos {
+
+    private static final Logger log = LoggerFactory.getLogger(BuscaDeProdutos.class);
+
+    private final ProdutoRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final IndiceDeBusca indice;
+
+    public BuscaDeProdutos(ProdutoRepository repository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry registry,
+                           @Value("${estoque.busca.maximo-expansoes:1024}") int maximoExpansoes) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.indice = new IndiceDeBusca(maximoExpansoes);
+        Gauge.builder("estoque.busca.produtos", indice, IndiceDeBusca::tamanho)
+                .description("Produtos no indice de busca")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void carregar() {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<ProdutoEntity> produtos = repository.percorrerTodos()) {
+                produtos.forEach(produto -> indice.indexar(produto.getId(), produto.getNome(), produto.getDescricao()));
+            }
+        });
+        log.info("Indice de busca carregado: {} produtos", indice.tamanho());
+    }
+
+    public IndiceDeBusca.Resultado buscar(String consulta, int inicio, int limite) {
+        return indice.buscar(consulta, inicio, limite);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        switch (evento.getTipo()) {
+            case CADASTRO, ATUALIZACAO ->
+                    indice.indexar(evento.getId(), evento.getProduto().getNome(), evento.getProduto().getDescricao());
+            case REMOCAO -> indice.remover(evento.getId());
+            case BAIXA -> {
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Catalogo inteiro ({@code GET /estoque} em JSON) ja serializado, em uma {@link Versao} imutavel
+ * com o corpo pronto e uma variante gzip. A leitura e so a leitura de um campo volatil, sem trava
+ * e sem reconstrucao, e a resposta e a copia dos pedacos prontos para a saida.
+ *
+ * <p>Os produtos ficam em blocos de {@value #IDS_POR_BLOCO} ids consecutivos, cada um com o seu
+ * trecho de JSON e esse trecho comprimido em deflate cru terminado com {@code SYNC_FLUSH}, sem bloco
+ * final, que pode ser emendado a outros. O corpo comprimido e um unico membro gzip: cabecalho, os
+ * trechos emendados, um bloco final vazio e o CRC-32 e o tamanho do JSON, calculados a cada versao
+ * (decodificadores que leem so o primeiro membro recebem o catalogo inteiro). Cada
+ * {@link ProdutoAlteradoEvent} conta uma alteracao e anota o produto; a reconstrucao roda a cada
+ * {@code estoque.catalogo.reconstrucao-ms}, fora das requisicoes, juntando as alteracoes do
+ * intervalo, e rele, reserializa e recomprime so os blocos dos produtos anotados. O {@code GET /estoque} fica no maximo esse intervalo (mais a propria
+ * reconstrucao) atras das gravacoes; a listagem paginada continua lendo o banco.
+ *
+ * <p>Alteracoes que nao geram evento (gravacao em lote do ledger, consolidacao dos armazens)
+ * chegam por {@link #invalidar(Collection)}; as de fora da aplicacao (outra instancia no mesmo
+ * banco) aparecem quando o catalogo inteiro e relido, depois de {@code estoque.catalogo.validade}.
+ * O ETag so muda quando o corpo muda.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.catalogo", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CatalogoDeProdutos {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogoDeProdutos.class);
+
+    static final int IDS_POR_BLOCO = 256;
+
+    private static final byte[] ABRE = {'['};
+    private static final byte[] VIRGULA = {','};
+    private static final byte[] FECHA = {']'};
+    private static final byte[] ABRE_DEFLATE = deflate(ABRE);
+    private static final byte[] VIRGULA_DEFLATE = deflate(VIRGULA);
+    private static final byte[] FECHA_DEFLATE = deflate(FECHA);
+    // RFC 1952: deflate, sem nome nem data, sistema desconhecido
+    private static final byte[] CABECALHO_GZIP = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] FIM_DEFLATE = fimDeflate();
+
+    private final ProdutoRepository repository;
+    private final ObjectWriter writer;
+    private final Duration validade;
+    // distingue os ETags de uma subida para outra
+    private final String inicio = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong alteracoes = new AtomicLong(1);
+    private final Set<Long> alterados = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean releitura = new AtomicBoolean(true);
+    private volatile Versao atual;
+
+    // so com a trava
+    private final ReentrantLock reconstrucao = new ReentrantLock();
+    private final TreeMap<Long, Bloco> blocos = new TreeMap<>();
+    private long edicao;
+
+    public CatalogoDeProdutos(ProdutoRepository repository, ObjectMapper objectMapper,
+                              @Value("${estoque.catalogo.validade:30s}") Duration validade) {
+        this.repository = repository;
+        this.writer = objectMapper.writerFor(Produto.class);
+        this.validade = validade;
+    }
+
+    /**
+     * Catalogo serializado, em pedacos prontos para a saida. {@code versao} e o numero de
+     * alteracoes ja incluidas.
+     */
+    public record Versao(long versao, String etag, List<byte[]> json, long tamanhoJson,
+                         List<byte[]> gzip, long tamanhoGzip, long montadaEm) {
+
+        public InputStream lerJson() {
+            return ler(json);
+        }
+
+        public InputStream lerGzip() {
+            return ler(gzip);
+        }
+
+        private static InputStream ler(List<byte[]> pedacos) {
+            return new SequenceInputStream(Collections.enumeration(
+                    pedacos.stream().map(pedaco -> (InputStream) new ByteArrayInputStream(pedaco)).toList()));
+        }
+    }
+
+    /**
+     * A ultima versao publicada. So a primeira chamada, antes de qualquer versao, espera a montagem.
+     */
+    public Versao atual() {
+        Versao versao = atual;
+        return versao != null ? versao : reconstruir();
+    }
+
+    /**
+     * Faz a proxima versao reler os produtos, alterados sem {@link ProdutoAlteradoEvent}.
+     */
+    public void invalidar(Collection<Long> ids) {
+        // os produtos entram antes da contagem: quem ler a contagem ja os encontra anotados
+        alterados.addAll(ids);
+        alteracoes.incrementAndGet();
+    }
+
+    /**
+     * Faz a proxima versao reler o catalogo inteiro.
+     */
+    public void invalidar() {
+        releitura.set(true);
+        alteracoes.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        invalidar(List.of(evento.getId()));
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.catalogo.reconstrucao-ms:100}")
+    public void atualizar() {
+        Versao versao = atual;
+        if (versao != null && System.currentTimeMillis() - versao.montadaEm() >= validade.toMillis()) {
+            invalidar();
+        }
+        if (versao == null || versao.versao() != alteracoes.get()) {
+            reconstruir();
+        }
+    }
+
+    private Versao reconstruir() {
+        reconstrucao.lock();
+        try {
+            // lida antes dos produtos: uma alteracao durante a leitura deixa a versao atrasada, nunca adiantada
+            long versao = alteracoes.get();
+            Versao anterior = atual;
+            if (anterior != null && anterior.versao() == versao) {
+                return anterior;
+            }
+            List<Long> ids = new ArrayList<>(alterados);
+            alterados.removeAll(ids);
+            boolean mudou = releitura.getAndSet(false) ? reler() : reler(ids);
+
+            if (anterior == null || mudou) {
+                edicao++;
+                atual = montar(versao);
+            } else {
+                atual = new Versao(versao, anterior.etag(), anterior.json(), anterior.tamanhoJson(),
+                        anterior.gzip(), anterior.tamanhoGzip(), System.currentTimeMillis());
+            }
+            log.debug("Catalogo na versao {} ({} blocos, {} produtos relidos)", versao, blocos.size(), ids.size());
+            return atual;
+        } catch (RuntimeException e) {
+            // os produtos anotados ja sairam de alterados: so uma releitura completa os recupera
+            releitura.set(true);
+            throw e;
+        } finally {
+            reconstrucao.unlock();
+        }
+    }
+
+    // catalogo inteiro; blocos com o mesmo JSON de antes mantem o deflate ja feito
+    private boolean reler() {
+        Map<Long, TreeMap<Long, byte[]>> porBloco = new TreeMap<>();
+        repository.findAll().forEach(produto ->
+                porBloco.computeIfAbsent(bloco(produto.getId()), b -> new TreeMap<>())
+                        .put(produto.getId(), serializar(produto)));
+        boolean mudou = blocos.keySet().retainAll(porBloco.keySet());
+        for (Map.Entry<Long, TreeMap<Long, byte[]>> entrada : porBloco.entrySet()) {
+            Bloco bloco = blocos.computeIfAbsent(entrada.getKey(), b -> new Bloco());
+            bloco.produtos.clear();
+            bloco.produtos.putAll(entrada.getValue());
+            mudou |= bloco.remontar();
+        }
+        return mudou;
+    }
+
+    // so os blocos dos produtos anotados
+    private boolean reler(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return false;
+        }
+        Set<Long> tocados = new TreeSet<>();
+        Map<Long, byte[]> relidos = new HashMap<>();
+        repository.findAllById(ids).forEach(produto -> relidos.put(produto.getId(), serializar(produto)));
+        for (Long id : ids) {
+            byte[] json = relidos.get(id);
+            Bloco bloco = json != null ? blocos.computeIfAbsent(bloco(id), b -> new Bloco()) : blocos.get(bloco(id));
+            if (bloco == null) {
+                continue;
+            }
+            if (json != null) {
+                bloco.produtos.put(id, json);
+            } else {
+                bloco.produtos.remove(id);
+            }
+            tocados.add(bloco(id));
+        }
+        boolean mudou = false;
+        for (Long chave : tocados) {
+            Bloco bloco = blocos.get(chave);
+            if (bloco.produtos.isEmpty()) {
+                blocos.remove(chave);
+                mudou |= bloco.json != null;
+            } else {
+                mudou |= bloco.remontar();
+            }
+        }
+        return mudou;
+    }
+
+    private Versao montar(long versao) {
+        List<byte[]> json = new ArrayList<>(blocos.size() * 2 + 1);
+        List<byte[]> gzip = new ArrayList<>(blocos.size() * 2 + 5);
+        json.add(ABRE);
+        gzip.add(CABECALHO_GZIP);
+        gzip.add(ABRE_DEFLATE);
+        long tamanhoJson = 2;
+        long tamanhoGzip = CABECALHO_GZIP.length + ABRE_DEFLATE.length + FECHA_DEFLATE.length + FIM_DEFLATE.length + 8;
+        for (Iterator<Bloco> iterador = blocos.values().iterator(); iterador.hasNext(); ) {
+            Bloco bloco = iterador.next();
+            json.add(bloco.json);
+            gzip.add(bloco.deflate);
+            tamanhoJson += bloco.json.length;
+            tamanhoGzip += bloco.deflate.length;
+            if (iterador.hasNext()) {
+                json.add(VIRGULA);
+                gzip.add(VIRGULA_DEFLATE);
+                tamanhoJson++;
+                tamanhoGzip += VIRGULA_DEFLATE.length;
+            }
+        }
+        json.add(FECHA);
+        gzip.add(FECHA_DEFLATE);
+        gzip.add(FIM_DEFLATE);
+        // o CRC do membro cobre o JSON inteiro: refeito a cada versao, sem recomprimir nada
+        CRC32 crc = new CRC32();
+        json.forEach(crc::update);
+        gzip.add(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt((int) crc.getValue()).putInt((int) tamanhoJson).array());
+        return new Versao(versao, "\"" + inicio + "-" + edicao + "\"", List.copyOf(json), tamanhoJson,
+                List.copyOf(gzip), tamanhoGzip, System.currentTimeMillis());
+    }
+
+    private static long bloco(long id) {
+        return Math.floorDiv(id, IDS_POR_BLOCO);
+    }
+
+    private byte[] serializar(ProdutoEntity produto) {
+        try {
+            return writer.writeValueAsBytes(new Produto(produto));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Falha ao serializar o produto " + produto.getId(), e);
+        }
+    }
+
+    // deflate cru terminado com SYNC_FLUSH: alinhado em byte e sem bloco final, emenda com o proximo trecho
+    private static byte[] deflate(byte[] json) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(json);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            int escritos;
+            do {
+                escritos = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                bytes.write(buffer, 0, escritos);
+            } while (escritos == buffer.length);
+            return bytes.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // bloco final vazio, que fecha o fluxo deflate do membro
+    private static byte[] fimDeflate() {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.finish();
+            byte[] buffer = new byte[16];
+            return Arrays.copyOf(buffer, deflater.deflate(buffer));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Produtos de um bloco de ids, com o JSON deles separado por virgulas e o trecho deflate desse JSON.
+     * {@code json} e {@code deflate} sao trocados, nunca alterados: versoes publicadas os compartilham.
+     */
+    private static final class Bloco {
+        private final TreeMap<Long, byte[]> produtos = new TreeMap<>();
+        private byte[] json;
+        private byte[] deflate;
+
+        // true se o JSON do bloco mudou
+        private boolean remontar() {
+            int tamanho = Math.max(produtos.size() - 1, 0);
+            for (byte[] produto : produtos.values()) {
+                tamanho += produto.length;
+            }
+            byte[] novo = new byte[tamanho];
+            int posicao = 0;
+            for (byte[] produto : produtos.values()) {
+                if (posicao > 0) {
+                    novo[posicao++] = ',';
+                }
+                System.arraycopy(produto, 0, novo, posicao, produto.length);
+                posicao += produto.length;
+            }
+            if (Arrays.equals(json, novo)) {
+                return false;
+            }
+            json = novo;
+            deflate = CatalogoDeProdutos.deflate(novo);
+            return true;
+        }
+    }
+}
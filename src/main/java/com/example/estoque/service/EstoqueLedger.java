@@ -0,0 +1,377 @@
+package com.example.estoque.service;
+
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Modo ledger: mantem em memoria a quantidade autoritativa de cada produto e baixa o estoque
+ * com CAS por SKU, sem ir ao banco. As baixas aceitas sao anotadas em um journal local
+ * (append-only) e gravadas em lote na tabela {@code produto} a cada intervalo ou quando o
+ * numero de baixas pendentes atinge o limite configurado. O journal vai para o disco
+ * ({@code force}) a cada {@code estoque.ledger.force-interval-ms} e antes de cada lote; uma queda
+ * da maquina perde no maximo as baixas desse intervalo.
+ *
+ * <p>O lote roda na sua propria transacao, mesmo quando o limite e atingido dentro da transacao
+ * de um pedido: o journal do lote so e apagado depois que o lote foi confirmado no banco.
+ *
+ * <p>Na subida, baixas que ficaram no journal sao reaplicadas no banco e o ledger e
+ * carregado a partir de {@code findAll()}. Um lote que chegou a ser gravado mas cujo journal
+ * nao foi apagado antes de uma queda sera reaplicado (entrega pelo menos uma vez).
+ *
+ * <p>A baixa respeita o que esta reservado e, dentro de uma transacao, so vale se ela for
+ * confirmada: um pedido desfeito depois da baixa (chave de idempotencia, historico) devolve as
+ * quantidades ao saldo e anota no journal um registro negativo que anula o anterior.
+ *
+ * <p>Consultas de produto continuam lendo o banco e podem ficar ate um intervalo de flush
+ * atrasadas em relacao ao ledger.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.ledger", name = "enabled", havingValue = "true")
+public class EstoqueLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(EstoqueLedger.class);
+
+    private final ProdutoRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Path journal;
+    private final Path journalEmFlush;
+    private final int limiteFlush;
+
+    private final Map<Long, Saldo> saldos = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> pendentes = new ConcurrentHashMap<>();
+    private final AtomicInteger baixasDesdeFlush = new AtomicInteger();
+
+    private final AtomicBoolean journalSujo = new AtomicBoolean();
+
+    // leitura: baixas (do CAS ate anotar no journal); escrita: troca do journal no inicio do flush
+    // e acerto do saldo por uma gravacao absoluta
+    private final ReentrantReadWriteLock journalLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private FileChannel canal;
+    private Map<Long, Integer> emFlush;
+
+    // o flush muda produto.qtd sem publicar eventos; ausente com estoque.catalogo.enabled=false
+    private final ObjectProvider<CatalogoDeProdutos> catalogo;
+
+    public EstoqueLedger(ProdutoRepository repository,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${estoque.ledger.journal:estoque-ledger.journal}") String journal,
+                         @Value("${estoque.ledger.flush-size:500}") int limiteFlush,
+                         ObjectProvider<CatalogoDeProdutos> catalogo) {
+        this.repository = repository;
+        this.catalogo = catalogo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // baixar() chama o flush de dentro da transacao do pedido: o lote nao pode depender dela
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.journal = Paths.get(journal);
+        this.journalEmFlush = Paths.get(journal + ".flush");
+        this.limiteFlush = limiteFlush;
+    }
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        Map<Long, Integer> naoGravadas = new HashMap<>();
+        lerJournal(journalEmFlush, naoGravadas);
+        lerJournal(journal, naoGravadas);
+        // baixas estornadas somam zero
+        naoGravadas.values().removeIf(qtd -> qtd == 0);
+        if (!naoGravadas.isEmpty()) {
+            log.info("Reaplicando {} baixas do journal do ledger", naoGravadas.size());
+            transactionTemplate.executeWithoutResult(status -> repository.aplicarBaixas(naoGravadas));
+        }
+        Files.deleteIfExists(journalEmFlush);
+        Files.deleteIfExists(journal);
+
+        for (ProdutoEntity produto : repository.findAll()) {
+            saldos.put(produto.getId(), new Saldo(produto.getNome(), produto.getQtd()));
+        }
+        canal = abrirJournal();
+        log.info("Ledger de estoque carregado com {} produtos", saldos.size());
+    }
+
+    public void baixar(Map<Long, Integer> quantidadesPorProduto) {
+        baixar(quantidadesPorProduto, Map.of());
+    }
+
+    /**
+     * Baixa todas as quantidades ou nenhuma. Lanca {@link ForaDeEstoqueException} se algum
+     * produto nao tiver saldo suficiente alem do que esta reservado para outros pedidos.
+     */
+    public void baixar(Map<Long, Integer> quantidadesPorProduto, Map<Long, Integer> reservadas) {
+        List<Map.Entry<Long, Integer>> aplicadas = new ArrayList<>(quantidadesPorProduto.size());
+        // a trava cobre do CAS ate a baixa aparecer em pendentes: o acerto de aoAlterarProduto
+        // nunca ve uma baixa ja descontada do saldo e ainda fora de pendentes
+        journalLock.readLock().lock();
+        try {
+            for (Map.Entry<Long, Integer> item : quantidadesPorProduto.entrySet()) {
+                Saldo saldo = saldos.get(item.getKey());
+                if (saldo == null) {
+                    desfazer(aplicadas);
+                    throw new RuntimeException("Produto não encontrado com ID: " + item.getKey());
+                }
+                int atual;
+                do {
+                    atual = saldo.qtd.get();
+                    if (atual - reservadas.getOrDefault(item.getKey(), 0) < item.getValue()) {
+                        desfazer(aplicadas);
+                        throw new ForaDeEstoqueException(saldo.nome, atual);
+                    }
+                } while (!saldo.qtd.compareAndSet(atual, atual - item.getValue()));
+                aplicadas.add(item);
+            }
+
+            anotar(quantidadesPorProduto);
+            quantidadesPorProduto.forEach((id, qtd) -> pendentes.merge(id, qtd, Integer::sum));
+        } catch (IOException e) {
+            desfazer(aplicadas);
+            throw new UncheckedIOException("Falha ao gravar o journal do ledger", e);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        estornar(quantidadesPorProduto);
+                    }
+                }
+            });
+        }
+
+        if (baixasDesdeFlush.incrementAndGet() >= limiteFlush) {
+            flush();
+        }
+    }
+
+    /**
+     * Saldo em memoria do produto, ou {@code null} se o ledger nao o conhece.
+     */
+    public Integer saldo(Long id) {
+        Saldo saldo = saldos.get(id);
+        return saldo == null ? null : saldo.qtd.get();
+    }
+
+    /**
+     * Leva ao disco as baixas anotadas no journal desde a ultima chamada.
+     */
+    @Scheduled(fixedDelayString = "${estoque.ledger.force-interval-ms:100}")
+    public void sincronizarJournal() {
+        if (!journalSujo.get()) {
+            return;
+        }
+        // leitura: o canal nao e trocado durante o force
+        journalLock.readLock().lock();
+        try {
+            if (journalSujo.getAndSet(false)) {
+                canal.force(false);
+            }
+        } catch (IOException e) {
+            journalSujo.set(true);
+            log.warn("Falha ao sincronizar o journal do ledger", e);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.ledger.flush-interval-ms:200}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            if (emFlush == null) {
+                journalLock.writeLock().lock();
+                try {
+                    if (pendentes.isEmpty()) {
+                        return;
+                    }
+                    emFlush = new HashMap<>(pendentes);
+                    pendentes.clear();
+                    baixasDesdeFlush.set(0);
+                    canal.force(false);
+                    journalSujo.set(false);
+                    canal.close();
+                    Files.move(journal, journalEmFlush, StandardCopyOption.ATOMIC_MOVE);
+                    canal = abrirJournal();
+                } finally {
+                    journalLock.writeLock().unlock();
+                }
+            }
+            // um lote que falhou permanece em emFlush e e reenviado no proximo ciclo
+            transactionTemplate.executeWithoutResult(status -> repository.aplicarBaixas(emFlush));
+            Files.delete(journalEmFlush);
+            Set<Long> gravados = emFlush.keySet();
+            catalogo.ifAvailable(atual -> atual.invalidar(gravados));
+            emFlush = null;
+        } catch (Exception e) {
+            log.warn("Falha ao gravar baixas do ledger no banco; nova tentativa no proximo flush", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        switch (evento.getTipo()) {
+            case CADASTRO, ATUALIZACAO -> {
+                // o banco recebeu a quantidade absoluta; baixas ainda pendentes serao subtraidas dela no flush
+                flushLock.lock();
+                journalLock.writeLock().lock();
+                try {
+                    int pendente = pendentes.getOrDefault(evento.getId(), 0);
+                    if (emFlush != null) {
+                        pendente += emFlush.getOrDefault(evento.getId(), 0);
+                    }
+                    Saldo saldo = saldos.computeIfAbsent(evento.getId(),
+                            id -> new Saldo(evento.getProduto().getNome(), 0));
+                    saldo.nome = evento.getProduto().getNome();
+                    saldo.qtd.set(evento.getQuantidade() - pendente);
+                } finally {
+                    journalLock.writeLock().unlock();
+                    flushLock.unlock();
+                }
+            }
+            case REMOCAO -> {
+                saldos.remove(evento.getId());
+                pendentes.remove(evento.getId());
+            }
+            case BAIXA -> {
+                // baixas ja foram aplicadas pelo proprio ledger
+            }
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() throws IOException {
+        flush();
+        canal.force(false);
+        canal.close();
+    }
+
+    // baixa de um pedido desfeito: volta ao saldo e sai dos pendentes, com um registro negativo no
+    // journal para que a recuperacao tambem nao a aplique
+    private void estornar(Map<Long, Integer> quantidadesPorProduto) {
+        Map<Long, Integer> estorno = new HashMap<>();
+        journalLock.readLock().lock();
+        try {
+            quantidadesPorProduto.forEach((id, qtd) -> {
+                Saldo saldo = saldos.get(id);
+                if (saldo != null) {
+                    saldo.qtd.addAndGet(qtd);
+                    pendentes.merge(id, -qtd, (atual, delta) -> atual + delta == 0 ? null : atual + delta);
+                    estorno.put(id, -qtd);
+                }
+            });
+            if (!estorno.isEmpty()) {
+                anotar(estorno);
+            }
+        } catch (IOException e) {
+            log.warn("Falha ao anotar o estorno de {} no journal do ledger", estorno, e);
+        } finally {
+            journalLock.readLock().unlock();
+        }
+    }
+
+    private void desfazer(List<Map.Entry<Long, Integer>> aplicadas) {
+        aplicadas.forEach(item -> {
+            Saldo saldo = saldos.get(item.getKey());
+            if (saldo != null) {
+                saldo.qtd.addAndGet(item.getValue());
+            }
+        });
+    }
+
+    // uma linha por pedido ("id:qtd,id:qtd"), para que uma escrita interrompida descarte o pedido inteiro
+    private void anotar(Map<Long, Integer> quantidadesPorProduto) throws IOException {
+        StringBuilder linha = new StringBuilder();
+        quantidadesPorProduto.forEach((id, qtd) -> {
+            if (!linha.isEmpty()) {
+                linha.append(',');
+            }
+            linha.append(id).append(':').append(qtd);
+        });
+        linha.append('\n');
+        ByteBuffer buffer = ByteBuffer.wrap(linha.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        journalSujo.set(true);
+    }
+
+    private FileChannel abrirJournal() throws IOException {
+        Path pasta = journal.toAbsolutePath().getParent();
+        if (pasta != null) {
+            Files.createDirectories(pasta);
+        }
+        return FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static void lerJournal(Path arquivo, Map<Long, Integer> destino) throws IOException {
+        if (!Files.exists(arquivo)) {
+            return;
+        }
+        String conteudo = Files.readString(arquivo, StandardCharsets.US_ASCII);
+        // ignora a ultima linha se ela nao terminou de ser gravada
+        conteudo = conteudo.substring(0, conteudo.lastIndexOf('\n') + 1);
+        for (String linha : conteudo.split("\n")) {
+            if (linha.isEmpty()) {
+                continue;
+            }
+            for (String item : linha.split(",")) {
+                int separador = item.indexOf(':');
+                destino.merge(Long.valueOf(item.substring(0, separador)),
+                        Integer.valueOf(item.substring(separador + 1)), Integer::sum);
+            }
+        }
+    }
+
+    private static final class Saldo {
+        private volatile String nome;
+        private final AtomicInteger qtd;
+
+        private Saldo(String nome, int qtd) {
+            this.nome = nome;
+            this.qtd = new AtomicInteger(qtd);
+        }
+    }
+}
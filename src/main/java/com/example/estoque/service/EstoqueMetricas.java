@@ -0,0 +1,68 @@
+package com.example.estoque.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metricas de negocio dos pedidos de baixa de estoque. Os tempos de cada metodo dos servicos
+ * ficam em {@code estoque.servico} (via {@code @Timed}); aqui ficam o tamanho dos pedidos e o
+ * resultado de cada um, de onde sai a taxa de recusa por falta de estoque.
+ */
+@Component
+public class EstoqueMetricas {
+
+    private final DistributionSummary itensPorPedido;
+    private final DistributionSummary produtosPorPedido;
+    private final Counter aceitos;
+    private final Counter foraDeEstoque;
+    private final Counter comErro;
+    private final Counter repetidos;
+
+    public EstoqueMetricas(MeterRegistry registry) {
+        this.itensPorPedido = DistributionSummary.builder("estoque.pedido.itens")
+                .description("Linhas recebidas por pedido")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.produtosPorPedido = DistributionSummary.builder("estoque.pedido.produtos")
+                .description("Produtos distintos por pedido, apos agrupar linhas repetidas")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.aceitos = resultado(registry, "aceito");
+        this.foraDeEstoque = resultado(registry, "fora_de_estoque");
+        this.comErro = resultado(registry, "erro");
+        this.repetidos = resultado(registry, "repetido");
+    }
+
+    private static Counter resultado(MeterRegistry registry, String resultado) {
+        return Counter.builder("estoque.pedidos")
+                .description("Pedidos de baixa de estoque por resultado")
+                .tag("resultado", resultado)
+                .register(registry);
+    }
+
+    public void pedidoRecebido(int itens, int produtos) {
+        itensPorPedido.record(itens);
+        produtosPorPedido.record(produtos);
+    }
+
+    public void pedidoAceito() {
+        aceitos.increment();
+    }
+
+    public void pedidoForaDeEstoque() {
+        foraDeEstoque.increment();
+    }
+
+    public void pedidoComErro() {
+        comErro.increment();
+    }
+
+    /**
+     * Reenvio de um pedido ja aplicado, respondido sem tocar no estoque.
+     */
+    public void pedidoRepetido() {
+        repetidos.increment();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.estoque.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Como o {@link AlocadorDeEstoque} escolhe de quais armazens sai cada produto do pedido. Todas
+ * percorrem os armazens a partir da ordem de proximidade da regiao do pedido.
+ */
+public enum EstrategiaDeAlocacao {
+
+    /**
+     * Esgota o armazem mais proximo antes de passar ao seguinte.
+     */
+    MAIS_PROXIMO,
+
+    /**
+     * Tira primeiro do armazem com mais saldo do produto, espalhando as baixas de um produto muito
+     * pedido pelas linhas de todos os armazens.
+     */
+    MAIOR_ESTOQUE,
+
+    /**
+     * Prefere o armazem mais proximo que atenda o pedido inteiro; senao, o mais proximo que atenda
+     * cada produto sozinho; senao, junta os maiores saldos.
+     */
+    MENOS_DIVISOES;
+
+    /**
+     * Resultado da alocacao: quanto sai de cada armazem, por produto, ou o primeiro produto que nao
+     * pode ser atendido.
+     */
+    public record Alocacao(Map<Long, Map<String, Integer>> retiradas, Long semEstoque) {
+    }
+
+    /**
+     * @param quantidades quantidade pedida por produto
+     * @param saldos      saldo de cada armazem, por produto; produtos ausentes nao existem
+     * @param reservadas  quantidade reservada de cada produto, que nao pode sair
+     * @param ordem       armazens do mais proximo ao mais distante
+     */
+    public Alocacao alocar(Map<Long, Integer> quantidades, Map<Long, Map<String, Integer>> saldos,
+                           Map<Long, Integer> reservadas, List<String> ordem) {
+        for (Map.Entry<Long, Integer> item : quantidades.entrySet()) {
+            Map<String, Integer> doProduto = saldos.get(item.getKey());
+            int total = doProduto == null ? 0 : doProduto.values().stream().mapToInt(Integer::intValue).sum();
+            if (doProduto == null || total - reservadas.getOrDefault(item.getKey(), 0) < item.getValue()) {
+                return new Alocacao(null, item.getKey());
+            }
+        }
+
+        Map<Long, Map<String, Integer>> retiradas = new LinkedHashMap<>();
+        String unico = this == MENOS_DIVISOES ? atendeTudo(quantidades, saldos, ordem) : null;
+        for (Map.Entry<Long, Integer> item : quantidades.entrySet()) {
+            Map<String, Integer> doProduto = saldos.get(item.getKey());
+            retiradas.put(item.getKey(), unico != null
+                    ? Map.of(unico, item.getValue())
+                    : retirar(item.getValue(), doProduto, candidatos(item.getValue(), doProduto, ordem)));
+        }
+        return new Alocacao(retiradas, null);
+    }
+
+    private List<String> candidatos(int quantidade, Map<String, Integer> saldos, List<String> ordem) {
+        List<String> candidatos = new ArrayList<>(proximos(saldos, ordem));
+        Comparator<String> maiorSaldo = Comparator.comparing(saldos::get, Comparator.reverseOrder());
+        switch (this) {
+            case MAIS_PROXIMO -> {
+            }
+            // sort e estavel: no empate fica o mais proximo
+            case MAIOR_ESTOQUE -> candidatos.sort(maiorSaldo);
+            case MENOS_DIVISOES -> {
+                for (String armazem : candidatos) {
+                    if (saldos.get(armazem) >= quantidade) {
+                        return List.of(armazem);
+                    }
+                }
+                candidatos.sort(maiorSaldo);
+            }
+        }
+        return candidatos;
+    }
+
+    private static String atendeTudo(Map<Long, Integer> quantidades, Map<Long, Map<String, Integer>> saldos,
+                                     List<String> ordem) {
+        for (String armazem : ordem) {
+            boolean atende = quantidades.entrySet().stream()
+                    .allMatch(item -> saldos.get(item.getKey()).getOrDefault(armazem, 0) >= item.getValue());
+            if (atende) {
+                return armazem;
+            }
+        }
+        return null;
+    }
+
+    // armazens com saldo na ordem de proximidade; os que nao estao na ordem vao para o fim
+    private static List<String> proximos(Map<String, Integer> saldos, List<String> ordem) {
+        List<String> proximos = new ArrayList<>(saldos.size());
+        for (String armazem : ordem) {
+            if (saldos.getOrDefault(armazem, 0) > 0) {
+                proximos.add(armazem);
+            }
+        }
+        saldos.forEach((armazem, qtd) -> {
+            if (qtd > 0 && !ordem.contains(armazem)) {
+                proximos.add(armazem);
+            }
+        });
+        return proximos;
+    }
+
+    private static Map<String, Integer> retirar(int quantidade, Map<String, Integer> saldos, List<String> candidatos) {
+        Map<String, Integer> retiradas = new HashMap<>();
+        int restante = quantidade;
+        for (String armazem : candidatos) {
+            if (restante == 0) {
+                break;
+            }
+            int retirada = Math.min(restante, saldos.get(armazem));
+            retiradas.put(armazem, retirada);
+            restante -= retirada;
+        }
+        return retiradas;
+    }
+}
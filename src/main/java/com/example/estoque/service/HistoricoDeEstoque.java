@@ -0,0 +1,199 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.QuantidadeEm;
+import com.example.estoque.entity.MovimentoEstoqueEntity.Tipo;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Historico de movimentos de estoque (tabela {@code movimento_estoque}, so acrescentada) e
+ * snapshots periodicos das quantidades de {@code produto}, para saber a quantidade de um produto
+ * em qualquer momento.
+ *
+ * <p>Cada {@link ProdutoAlteradoEvent} vira um movimento: baixa, ajuste para a nova quantidade
+ * (cadastro, atualizacao, importacao) ou remocao. Os movimentos de uma transacao sao juntados e
+ * gravados em um unico lote JDBC antes do commit, na mesma transacao: o historico nunca tem um
+ * movimento desfeito nem deixa de ter um confirmado.
+ *
+ * <p>O snapshot guarda, para cada produto, a quantidade e o ultimo movimento dele ja incluido
+ * nela. Como os movimentos de um produto sao gravados com a linha dele bloqueada, esse corte e
+ * exato, e a reconstrucao parte do snapshot mais recente anterior ao instante pedido e reaplica so
+ * os movimentos seguintes daquele produto. Com o ledger ou os armazens ligados a tabela
+ * {@code produto} fica atrasada em relacao aos movimentos de baixa, entao o snapshot grava antes as
+ * baixas pendentes; so as baixas aceitas durante o proprio snapshot ainda podem ficar de fora dele.
+ */
+@Component
+@Profile("!arquivo")
+@ConditionalOnProperty(prefix = "estoque.historico", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class HistoricoDeEstoque {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoricoDeEstoque.class);
+
+    private static final String REGISTRAR =
+            "INSERT INTO movimento_estoque (produto_id, tipo, quantidade, registrado_em) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int snapshotsMantidos;
+
+    // presentes apenas com estoque.ledger.enabled=true e estoque.armazens.enabled=true
+    private final ObjectProvider<EstoqueLedger> ledger;
+    private final ObjectProvider<AlocadorDeEstoque> armazens;
+
+    public HistoricoDeEstoque(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${estoque.historico.snapshots-mantidos:48}") int snapshotsMantidos,
+                              ObjectProvider<EstoqueLedger> ledger,
+                              ObjectProvider<AlocadorDeEstoque> armazens) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotsMantidos = snapshotsMantidos;
+        this.ledger = ledger;
+        this.armazens = armazens;
+    }
+
+    // sincrono, para que o movimento entre na transacao que alterou o produto
+    @EventListener
+    public void registrar(ProdutoAlteradoEvent evento) {
+        Object[] movimento = switch (evento.getTipo()) {
+            case BAIXA -> new Object[]{evento.getId(), Tipo.BAIXA.name(), evento.getQuantidade()};
+            case CADASTRO, ATUALIZACAO -> new Object[]{evento.getId(), Tipo.AJUSTE.name(), evento.getQuantidade()};
+            case REMOCAO -> new Object[]{evento.getId(), Tipo.REMOCAO.name(), null};
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            gravar(List.<Object[]>of(movimento));
+            return;
+        }
+        lote().movimentos.add(movimento);
+    }
+
+    /**
+     * Quantidade do produto no instante pedido, ou {@code null} se o produto nao existia (ou ja
+     * tinha sido removido) naquele instante.
+     */
+    public QuantidadeEm quantidadeEm(Long id, Instant instante) {
+        Timestamp ate = Timestamp.from(instante);
+        Snapshot snapshot = jdbcTemplate.query(
+                "SELECT s.tirado_em, i.qtd, i.ultimo_movimento FROM snapshot_estoque_item i "
+                        + "JOIN snapshot_estoque s ON s.id = i.snapshot_id "
+                        + "WHERE i.produto_id = ? AND s.tirado_em <= ? ORDER BY i.snapshot_id DESC FETCH FIRST ROW ONLY",
+                rs -> rs.next()
+                        ? new Snapshot(rs.getTimestamp(1).toInstant(), rs.getInt(2), rs.getLong(3))
+                        : new Snapshot(null, null, 0),
+                id, ate);
+
+        Integer qtd = snapshot.qtd();
+        int aplicados = 0;
+        List<Object[]> movimentos = jdbcTemplate.query(
+                "SELECT tipo, quantidade FROM movimento_estoque "
+                        + "WHERE produto_id = ? AND id > ? AND registrado_em <= ? ORDER BY id",
+                (rs, linha) -> new Object[]{Tipo.valueOf(rs.getString(1)), rs.getInt(2)},
+                id, snapshot.ultimoMovimento(), ate);
+        for (Object[] movimento : movimentos) {
+            int quantidade = (Integer) movimento[1];
+            switch ((Tipo) movimento[0]) {
+                case AJUSTE -> qtd = quantidade;
+                case REMOCAO -> qtd = null;
+                case BAIXA -> {
+                    if (qtd == null) {
+                        // baixa de um produto anterior ao historico e sem snapshot: nao ha de onde partir
+                        return null;
+                    }
+                    qtd -= quantidade;
+                }
+            }
+            aplicados++;
+        }
+        return qtd == null ? null : new QuantidadeEm(id, instante, qtd, snapshot.tiradoEm(), aplicados);
+    }
+
+    /**
+     * Grava as quantidades atuais de todos os produtos e apaga os snapshots alem dos
+     * {@code estoque.historico.snapshots-mantidos} mais recentes. Os movimentos nao sao apagados.
+     */
+    @Scheduled(fixedDelayString = "${estoque.historico.snapshot-ms:3600000}",
+            initialDelayString = "${estoque.historico.snapshot-ms:3600000}")
+    public void tirarSnapshot() {
+        // as baixas ja estao em movimento_estoque: produto.qtd precisa refleti-las antes da leitura
+        ledger.ifAvailable(EstoqueLedger::flush);
+        armazens.ifAvailable(AlocadorDeEstoque::consolidar);
+        transactionTemplate.executeWithoutResult(status -> {
+            Long snapshot = jdbcTemplate.queryForObject(
+                    "SELECT id FROM FINAL TABLE (INSERT INTO snapshot_estoque (tirado_em) VALUES (?))",
+                    Long.class, agora());
+            int produtos = jdbcTemplate.update("INSERT INTO snapshot_estoque_item (snapshot_id, produto_id, qtd, ultimo_movimento) "
+                    + "SELECT ?, p.id, p.qtd, (SELECT MAX(m.id) FROM movimento_estoque m WHERE m.produto_id = p.id) "
+                    + "FROM produto p", snapshot);
+            // o horario e o de depois da leitura: todo movimento incluido no snapshot foi registrado antes dele
+            jdbcTemplate.update("UPDATE snapshot_estoque SET tirado_em = ? WHERE id = ?", agora(), snapshot);
+
+            List<Long> antigos = jdbcTemplate.queryForList(
+                    "SELECT id FROM snapshot_estoque ORDER BY id DESC OFFSET ? ROWS", Long.class, snapshotsMantidos);
+            if (!antigos.isEmpty()) {
+                Long maisRecente = antigos.get(0);
+                jdbcTemplate.update("DELETE FROM snapshot_estoque_item WHERE snapshot_id <= ?", maisRecente);
+                jdbcTemplate.update("DELETE FROM snapshot_estoque WHERE id <= ?", maisRecente);
+            }
+            log.debug("Snapshot {} do estoque com {} produtos", snapshot, produtos);
+        });
+    }
+
+    private void gravar(List<Object[]> movimentos) {
+        Timestamp agora = agora();
+        jdbcTemplate.batchUpdate(REGISTRAR, movimentos.stream()
+                .map(movimento -> new Object[]{movimento[0], movimento[1], movimento[2], agora})
+                .toList());
+    }
+
+    // o lote fica na propria sincronizacao, que o Spring suspende junto com a transacao (REQUIRES_NEW)
+    private Lote lote() {
+        for (TransactionSynchronization sincronizacao : TransactionSynchronizationManager.getSynchronizations()) {
+            if (sincronizacao instanceof Lote lote && lote.dono() == this) {
+                return lote;
+            }
+        }
+        Lote lote = new Lote();
+        TransactionSynchronizationManager.registerSynchronization(lote);
+        return lote;
+    }
+
+    private static Timestamp agora() {
+        return Timestamp.from(Instant.now());
+    }
+
+    // ultimoMovimento 0 quando nao ha snapshot: reaplica desde o primeiro movimento
+    private record Snapshot(Instant tiradoEm, Integer qtd, long ultimoMovimento) {
+    }
+
+    private class Lote implements TransactionSynchronization {
+
+        private final List<Object[]> movimentos = new ArrayList<>();
+
+        HistoricoDeEstoque dono() {
+            return HistoricoDeEstoque.this;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            gravar(movimentos);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.domain.RelatorioImportacao;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Importacao em massa de produtos a partir de CSV ou NDJSON.
+ *
+ * <p>O corpo e lido registro a registro e nunca fica inteiro em memoria; no CSV um campo entre
+ * aspas pode continuar nas linhas seguintes. Cada lote de
+ * {@code estoque.importacao.lote} produtos e gravado em uma transacao propria: uma unica
+ * consulta por nome encontra os que ja existem (que tem descricao, preco e quantidade
+ * regravados) e os novos sao inseridos em lote JDBC. Linhas invalidas sao relatadas com o
+ * numero da linha e nao impedem o resto da importacao.
+ */
+@Service
+@Timed(value = "estoque.servico", histogram = true)
+public class ImportacaoService {
+
+    private static final int TAMANHO_MAXIMO_TEXTO = 255;
+
+    private final ProdutoRepository repository;
+    private final ApplicationEventPublisher publisher;
+    // ausente no perfil arquivo, que nao usa JPA
+    private final ObjectProvider<EntityManager> entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader leitorJson;
+    private final int tamanhoLote;
+
+    public ImportacaoService(ProdutoRepository repository,
+                             ApplicationEventPublisher publisher,
+                             ObjectProvider<EntityManager> entityManager,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             @Value("${estoque.importacao.lote:1000}") int tamanhoLote) {
+        this.repository = repository;
+        this.publisher = publisher;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.leitorJson = objectMapper.readerFor(Produto.class);
+        this.tamanhoLote = tamanhoLote;
+    }
+
+    /**
+     * CSV com cabecalho; as colunas reconhecidas sao {@code nome}, {@code descricao}, {@code preco} e {@code qtd}.
+     * Erros sao relatados com a linha em que o registro comeca.
+     */
+    public RelatorioImportacao importarCsv(InputStream corpo) throws IOException {
+        RelatorioImportacao relatorio = new RelatorioImportacao();
+        try (BufferedReader leitor = leitor(corpo)) {
+            Registros registros = new Registros(leitor, true);
+            String cabecalho = registros.proximo();
+            if (cabecalho == null) {
+                return relatorio;
+            }
+            Map<String, Integer> colunas = new HashMap<>();
+            List<String> nomesColunas = separarCsv(cabecalho);
+            for (int i = 0; i < nomesColunas.size(); i++) {
+                colunas.put(nomesColunas.get(i).trim().toLowerCase(), i);
+            }
+            if (!colunas.containsKey("nome") || !colunas.containsKey("qtd")) {
+                relatorio.erro(1, "Cabeçalho deve ter ao menos as colunas nome e qtd");
+                return relatorio;
+            }
+            importar(registros, relatorio, registro -> produtoCsv(separarCsv(registro), colunas));
+        }
+        return relatorio;
+    }
+
+    /**
+     * Um objeto {@link Produto} em JSON por linha.
+     */
+    public RelatorioImportacao importarNdjson(InputStream corpo) throws IOException {
+        RelatorioImportacao relatorio = new RelatorioImportacao();
+        try (BufferedReader leitor = leitor(corpo)) {
+            importar(new Registros(leitor, false), relatorio, linha -> {
+                try {
+                    return leitorJson.readValue(linha);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("JSON inválido: " + e.getOriginalMessage());
+                }
+            });
+        }
+        return relatorio;
+    }
+
+    private void importar(Registros registros, RelatorioImportacao relatorio,
+                          Function<String, Produto> converter) throws IOException {
+        Map<String, Produto> lote = new LinkedHashMap<>();
+        long numero = registros.linha();
+        String registro;
+        while ((registro = registros.proximo()) != null) {
+            numero = registros.linha();
+            if (registro.isBlank()) {
+                continue;
+            }
+            relatorio.linhaLida();
+            try {
+                Produto produto = converter.apply(registro);
+                validar(produto);
+                // o mesmo nome repetido no lote: vale a ultima linha
+                lote.put(produto.getNome(), produto);
+            } catch (RuntimeException e) {
+                relatorio.erro(numero, e.getMessage());
+                continue;
+            }
+            if (lote.size() >= tamanhoLote) {
+                gravar(lote, numero, relatorio);
+            }
+        }
+        gravar(lote, numero, relatorio);
+    }
+
+    private void gravar(Map<String, Produto> lote, long ultimaLinha, RelatorioImportacao relatorio) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        try {
+            List<ProdutoEntity> gravados = transactionTemplate.execute(status -> {
+                entityManager.ifAvailable(em -> em.unwrap(Session.class).setJdbcBatchSize(tamanhoLote));
+                Map<String, ProdutoEntity> existentes = repository.findByNomeIn(lote.keySet())
+                        .stream()
+                        .collect(Collectors.toMap(ProdutoEntity::getNome, Function.identity()));
+                List<ProdutoEntity> produtos = new ArrayList<>(lote.size());
+                lote.forEach((nome, produto) -> {
+                    ProdutoEntity existente = existentes.get(nome);
+                    if (existente == null) {
+                        produtos.add(new ProdutoEntity(produto));
+                    } else {
+                        if (produto.getDescricao() != null) {
+                            existente.setDescricao(produto.getDescricao());
+                        }
+                        if (produto.getPreco() != null) {
+                            existente.setPreco(produto.getPreco());
+                        }
+                        existente.setQtd(produto.getQtd());
+                        produtos.add(existente);
+                    }
+                });
+                List<ProdutoEntity> salvos = repository.saveAll(produtos);
+                // com open-in-view o EntityManager e o mesmo durante toda a requisicao; sem limpar,
+                // cada flush teria que percorrer todos os lotes anteriores
+                entityManager.ifAvailable(em -> {
+                    em.flush();
+                    em.clear();
+                });
+                // dentro da transacao, para que o historico grave os movimentos do lote junto com ele
+                salvos.forEach(produto -> publisher.publishEvent(ProdutoAlteradoEvent.cadastro(produto)));
+                return salvos;
+            });
+            relatorio.gravados(gravados.size());
+        } catch (RuntimeException e) {
+            relatorio.erro(ultimaLinha, "Lote de " + lote.size() + " produtos terminado nesta linha não foi gravado: "
+                    + e.getMessage());
+        }
+        lote.clear();
+    }
+
+    private static void validar(Produto produto) {
+        if (produto.getNome() == null || produto.getNome().isBlank()) {
+            throw new IllegalArgumentException("Nome é obrigatório");
+        }
+        if (produto.getNome().length() > TAMANHO_MAXIMO_TEXTO) {
+            throw new IllegalArgumentException("Nome com mais de " + TAMANHO_MAXIMO_TEXTO + " caracteres");
+        }
+        if (produto.getDescricao() != null && produto.getDescricao().length() > TAMANHO_MAXIMO_TEXTO) {
+            throw new IllegalArgumentException("Descrição com mais de " + TAMANHO_MAXIMO_TEXTO + " caracteres");
+        }
+        if (produto.getQtd() == null || produto.getQtd() < 0) {
+            throw new IllegalArgumentException("Quantidade deve ser zero ou maior");
+        }
+        if (produto.getPreco() != null && produto.getPreco() < 0) {
+            throw new IllegalArgumentException("Preço não pode ser negativo");
+        }
+    }
+
+    private static Produto produtoCsv(List<String> campos, Map<String, Integer> colunas) {
+        Produto produto = new Produto();
+        produto.setNome(campo(campos, colunas, "nome"));
+        produto.setDescricao(campo(campos, colunas, "descricao"));
+        String preco = campo(campos, colunas, "preco");
+        String qtd = campo(campos, colunas, "qtd");
+        try {
+            produto.setPreco(preco == null ? null : Double.valueOf(preco));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Preço inválido: " + preco);
+        }
+        try {
+            produto.setQtd(qtd == null ? null : Integer.valueOf(qtd));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Quantidade inválida: " + qtd);
+        }
+        return produto;
+    }
+
+    private static String campo(List<String> campos, Map<String, Integer> colunas, String coluna) {
+        Integer indice = colunas.get(coluna);
+        if (indice == null || indice >= campos.size()) {
+            return null;
+        }
+        String valor = campos.get(indice).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    /**
+     * Separa um registro CSV (RFC 4180) respeitando campos entre aspas, aspas duplicadas e quebras de
+     * linha dentro das aspas.
+     */
+    static List<String> separarCsv(String linha) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreAspas = false;
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (entreAspas) {
+                if (c == '"' && i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreAspas = false;
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                entreAspas = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        if (entreAspas) {
+            throw new IllegalArgumentException("Aspas não fechadas");
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private static BufferedReader leitor(InputStream corpo) {
+        return new BufferedReader(new InputStreamReader(corpo, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * Registros do corpo, um por linha. No CSV uma linha que termina com aspas abertas continua na
+     * seguinte (aspas duplicadas contam duas vezes, entao basta a paridade); se o corpo acabar com
+     * aspas abertas o registro volta assim mesmo e {@link #separarCsv} o recusa.
+     */
+    private static final class Registros {
+
+        private final BufferedReader leitor;
+        private final boolean csv;
+        private long linhasLidas;
+        // linha em que comeca o ultimo registro devolvido
+        private long linha;
+
+        Registros(BufferedReader leitor, boolean csv) {
+            this.leitor = leitor;
+            this.csv = csv;
+        }
+
+        String proximo() throws IOException {
+            String primeira = leitor.readLine();
+            if (primeira == null) {
+                return null;
+            }
+            linha = ++linhasLidas;
+            if (!csv || !aspasAbertas(primeira, false)) {
+                return primeira;
+            }
+            StringBuilder registro = new StringBuilder(primeira);
+            boolean abertas = true;
+            String seguinte;
+            while (abertas && (seguinte = leitor.readLine()) != null) {
+                linhasLidas++;
+                registro.append('\n').append(seguinte);
+                abertas = aspasAbertas(seguinte, true);
+            }
+            return registro.toString();
+        }
+
+        long linha() {
+            return linha;
+        }
+
+        private static boolean aspasAbertas(String trecho, boolean abertas) {
+            for (int i = 0; i < trecho.length(); i++) {
+                if (trecho.charAt(i) == '"') {
+                    abertas = !abertas;
+                }
+            }
+            return abertas;
+        }
+    }
+}
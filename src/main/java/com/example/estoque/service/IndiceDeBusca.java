@@ -0,0 +1,517 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.ProdutoEncontrado;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Indice invertido em memoria sobre nome e descricao dos produtos. Os textos sao normalizados
+ * (minusculas, sem acentos) e quebrados em termos; cada termo guarda, em ordem, os numeros internos
+ * dos produtos que o contem e em que campo aparece. Como os termos ficam ordenados, todos os que
+ * comecam com um prefixo formam um intervalo contiguo, o que atende a busca enquanto o usuario digita.
+ *
+ * <p>Na busca, cada termo digitado vale como prefixo e o produto precisa conter todos eles. A
+ * pontuacao sai so das listas de cada termo (nome vale mais que descricao, termo inteiro mais que
+ * prefixo, e o primeiro termo digitado ganha um bonus se abre o nome), e as listas sao cruzadas da
+ * menor para a maior, sem consultar os produtos; so os da pagina pedida sao materializados. Prefixos
+ * curtos expandem no maximo {@code maximoExpansoes} termos.
+ *
+ * <p>Buscas correm em paralelo entre si; alteracoes esperam as buscas em andamento e vice-versa.
+ */
+public class IndiceDeBusca {
+
+    static final int TERMO_NO_NOME = 10;
+    static final int PREFIXO_NO_NOME = 6;
+    static final int TERMO_NA_DESCRICAO = 3;
+    static final int PREFIXO_NA_DESCRICAO = 2;
+    static final int NOME_COMECA_COM_A_BUSCA = 5;
+
+    private static final byte NO_NOME = 1;
+    private static final byte NA_DESCRICAO = 2;
+    private static final byte INICIO_DO_NOME = 4;
+
+    // modo de leitura de cada lista no cursor
+    private static final int EXATO = 1;
+    private static final int PRIMEIRO = 2;
+    private static final int PONTUADO = 4;
+    private static final int TERMOS_POR_CURSOR = 16;
+
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String[] NENHUM = new String[0];
+    private static final Resultado VAZIO = new Resultado(List.of(), 0);
+
+    private final int maximoExpansoes;
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+    private final TreeMap<String, Postagens> termos = new TreeMap<>();
+    // numero interno por id; numeros crescem a cada produto novo para as listas so receberem no fim
+    private final Map<Long, Integer> numeros = new HashMap<>();
+    private Documento[] documentos = new Documento[1024];
+    private int[] tamanhosDoNome = new int[1024];
+    private int proximoNumero;
+
+    public IndiceDeBusca(int maximoExpansoes) {
+        this.maximoExpansoes = maximoExpansoes;
+    }
+
+    public void indexar(Long id, String nome, String descricao) {
+        Documento novo = new Documento(id, nome == null ? "" : nome, descricao);
+        Map<String, Byte> novas = novo.marcas();
+        trava.writeLock().lock();
+        try {
+            Integer numero = numeros.get(id);
+            Map<String, Byte> antigas = Map.of();
+            if (numero == null) {
+                numero = proximoNumero++;
+                numeros.put(id, numero);
+                if (numero == documentos.length) {
+                    documentos = Arrays.copyOf(documentos, numero * 2);
+                    tamanhosDoNome = Arrays.copyOf(tamanhosDoNome, numero * 2);
+                }
+            } else {
+                antigas = documentos[numero].marcas();
+            }
+            documentos[numero] = novo;
+            tamanhosDoNome[numero] = novo.nome.length();
+            for (String termo : antigas.keySet()) {
+                if (!novas.containsKey(termo)) {
+                    desindexar(termo, numero);
+                }
+            }
+            for (Map.Entry<String, Byte> marca : novas.entrySet()) {
+                if (!marca.getValue().equals(antigas.get(marca.getKey()))) {
+                    termos.computeIfAbsent(marca.getKey(), t -> new Postagens()).gravar(numero, marca.getValue());
+                }
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    public void remover(Long id) {
+        trava.writeLock().lock();
+        try {
+            Integer numero = numeros.remove(id);
+            if (numero != null) {
+                documentos[numero].marcas().keySet().forEach(termo -> desindexar(termo, numero));
+                documentos[numero] = null;
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    public int tamanho() {
+        trava.readLock().lock();
+        try {
+            return numeros.size();
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Produtos que contem todos os termos da consulta (como prefixo) no nome ou na descricao, do mais
+     * relevante para o menos, a partir da posicao {@code inicio}. Empates vao para o nome mais curto
+     * e depois para o produto indexado primeiro.
+     */
+    public Resultado buscar(String consulta, int inicio, int limite) {
+        String[] digitados = termos(consulta);
+        if (digitados.length == 0 || limite <= 0) {
+            return VAZIO;
+        }
+        trava.readLock().lock();
+        try {
+            Cursor[] cursores = new Cursor[digitados.length];
+            for (int i = 0; i < digitados.length; i++) {
+                cursores[i] = cursor(digitados[i], i == 0);
+                if (cursores[i].total == 0) {
+                    return VAZIO;
+                }
+            }
+            Arrays.sort(cursores, Comparator.comparingLong(cursor -> cursor.total));
+            return cruzar(cursores, inicio, limite);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // o menor cursor guia; os outros saltam ate o numero dele e, se passarem, o guia salta ate eles
+    private Resultado cruzar(Cursor[] cursores, int inicio, int limite) {
+        Cursor guia = cursores[0];
+        Melhores melhores = new Melhores((int) Math.min((long) inicio + limite, guia.total));
+        int total = 0;
+        int alvo = 0;
+        procura:
+        while (guia.avancarAte(alvo)) {
+            int numero = guia.atual;
+            int pontos = guia.pontos;
+            for (int i = 1; i < cursores.length; i++) {
+                if (!cursores[i].avancarAte(numero)) {
+                    break procura;
+                }
+                if (cursores[i].atual != numero) {
+                    alvo = cursores[i].atual;
+                    continue procura;
+                }
+                pontos += cursores[i].pontos;
+            }
+            total++;
+            melhores.oferecer(chave(pontos, numero));
+            alvo = numero + 1;
+        }
+        if (inicio >= total) {
+            return new Resultado(List.of(), total);
+        }
+        long[] chaves = melhores.ordenadas();
+        List<ProdutoEncontrado> pagina = new ArrayList<>(chaves.length - inicio);
+        for (int i = inicio; i < chaves.length; i++) {
+            int numero = Integer.MAX_VALUE - (int) (chaves[i] & Integer.MAX_VALUE);
+            Documento d = documentos[numero];
+            pagina.add(new ProdutoEncontrado(d.id, d.nome, d.descricao, (int) (chaves[i] >>> 47)));
+        }
+        return new Resultado(pagina, total);
+    }
+
+    // termos que comecam com "digitado"; com muitos termos, junta tudo antes numa unica lista
+    private Cursor cursor(String digitado, boolean primeiro) {
+        List<Map.Entry<String, Postagens>> expansoes = new ArrayList<>();
+        for (Map.Entry<String, Postagens> termo : termos.subMap(digitado, true, digitado + Character.MAX_VALUE, false).entrySet()) {
+            expansoes.add(termo);
+            if (expansoes.size() == maximoExpansoes) {
+                break;
+            }
+        }
+        if (expansoes.size() <= TERMOS_POR_CURSOR) {
+            Cursor cursor = new Cursor(expansoes.size());
+            for (Map.Entry<String, Postagens> termo : expansoes) {
+                Postagens postagens = termo.getValue();
+                int exato = termo.getKey().equals(digitado) ? EXATO : 0;
+                cursor.adicionar(postagens.numeros, postagens.marcas, postagens.tamanho, exato | (primeiro ? PRIMEIRO : 0));
+            }
+            return cursor;
+        }
+        long postagensNoTotal = 0;
+        for (Map.Entry<String, Postagens> termo : expansoes) {
+            postagensNoTotal += termo.getValue().tamanho;
+        }
+        Cursor cursor = new Cursor(1);
+        if (postagensNoTotal < proximoNumero / 16) {
+            juntarOrdenando(expansoes, digitado, primeiro, (int) postagensNoTotal, cursor);
+        } else {
+            juntarNoVetor(expansoes, digitado, primeiro, cursor);
+        }
+        return cursor;
+    }
+
+    // poucas postagens: numero e pontuacao numa chave long, ordenadas; repetidos ficam com a maior
+    private static void juntarOrdenando(List<Map.Entry<String, Postagens>> expansoes, String digitado,
+                                        boolean primeiro, int postagensNoTotal, Cursor cursor) {
+        long[] chaves = new long[postagensNoTotal];
+        int n = 0;
+        for (Map.Entry<String, Postagens> termo : expansoes) {
+            Postagens postagens = termo.getValue();
+            int modo = (termo.getKey().equals(digitado) ? EXATO : 0) | (primeiro ? PRIMEIRO : 0);
+            for (int i = 0; i < postagens.tamanho; i++) {
+                chaves[n++] = ((long) postagens.numeros[i] << 8) | pontos(postagens.marcas[i], modo);
+            }
+        }
+        Arrays.sort(chaves);
+        int[] numeros = new int[n];
+        byte[] pontos = new byte[n];
+        int distintos = 0;
+        for (long chave : chaves) {
+            int numero = (int) (chave >>> 8);
+            if (distintos > 0 && numeros[distintos - 1] == numero) {
+                distintos--;
+            }
+            numeros[distintos] = numero;
+            pontos[distintos++] = (byte) chave;
+        }
+        cursor.adicionar(numeros, pontos, distintos, PONTUADO);
+    }
+
+    // muitas postagens: a melhor pontuacao por produto num vetor do tamanho do catalogo, lido em ordem
+    private void juntarNoVetor(List<Map.Entry<String, Postagens>> expansoes, String digitado, boolean primeiro,
+                               Cursor cursor) {
+        byte[] melhores = new byte[proximoNumero];
+        int distintos = 0;
+        for (Map.Entry<String, Postagens> termo : expansoes) {
+            Postagens postagens = termo.getValue();
+            int modo = (termo.getKey().equals(digitado) ? EXATO : 0) | (primeiro ? PRIMEIRO : 0);
+            for (int i = 0; i < postagens.tamanho; i++) {
+                int numero = postagens.numeros[i];
+                int pontos = pontos(postagens.marcas[i], modo);
+                if (melhores[numero] == 0) {
+                    distintos++;
+                }
+                melhores[numero] = (byte) Math.max(melhores[numero], pontos);
+            }
+        }
+        int[] numeros = new int[distintos];
+        byte[] pontos = new byte[distintos];
+        for (int numero = 0, n = 0; n < distintos; numero++) {
+            if (melhores[numero] != 0) {
+                numeros[n] = numero;
+                pontos[n++] = melhores[numero];
+            }
+        }
+        cursor.adicionar(numeros, pontos, distintos, PONTUADO);
+    }
+
+    private static int pontos(byte marca, int modo) {
+        if ((modo & PONTUADO) != 0) {
+            return marca;
+        }
+        boolean exato = (modo & EXATO) != 0;
+        int pontos;
+        if ((marca & NO_NOME) != 0) {
+            pontos = exato ? TERMO_NO_NOME : PREFIXO_NO_NOME;
+        } else {
+            pontos = exato ? TERMO_NA_DESCRICAO : PREFIXO_NA_DESCRICAO;
+        }
+        return (modo & PRIMEIRO) != 0 && (marca & INICIO_DO_NOME) != 0 ? pontos + NOME_COMECA_COM_A_BUSCA : pontos;
+    }
+
+    private long chave(int pontos, int numero) {
+        long nomeCurto = 0xFFFF - Math.min(tamanhosDoNome[numero], 0xFFFF);
+        return ((long) Math.min(pontos, 0xFFFF) << 47) | (nomeCurto << 31) | (Integer.MAX_VALUE - numero);
+    }
+
+    // chamado com a trava de escrita
+    private void desindexar(String termo, int numero) {
+        Postagens postagens = termos.get(termo);
+        if (postagens != null && postagens.remover(numero)) {
+            termos.remove(termo);
+        }
+    }
+
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String semAcentos = ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return semAcentos.toLowerCase(Locale.ROOT);
+    }
+
+    static String[] termos(String texto) {
+        String normalizado = normalizar(texto).strip();
+        if (normalizado.isEmpty()) {
+            return NENHUM;
+        }
+        return Arrays.stream(SEPARADORES.split(normalizado))
+                .filter(termo -> !termo.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    public record Resultado(List<ProdutoEncontrado> itens, int total) {
+    }
+
+    private record Documento(Long id, String nome, String descricao) {
+
+        // termo -> campos em que aparece
+        Map<String, Byte> marcas() {
+            Map<String, Byte> marcas = new LinkedHashMap<>();
+            String[] doNome = termos(nome);
+            for (int i = 0; i < doNome.length; i++) {
+                marcas.merge(doNome[i], (byte) (i == 0 ? NO_NOME | INICIO_DO_NOME : NO_NOME), (a, b) -> (byte) (a | b));
+            }
+            for (String termo : termos(descricao)) {
+                marcas.merge(termo, NA_DESCRICAO, (a, b) -> (byte) (a | b));
+            }
+            return marcas;
+        }
+    }
+
+    // numeros de produto em ordem crescente e a marca de cada um
+    private static final class Postagens {
+
+        int[] numeros = new int[2];
+        byte[] marcas = new byte[2];
+        int tamanho;
+
+        void gravar(int numero, byte marca) {
+            int i = Arrays.binarySearch(numeros, 0, tamanho, numero);
+            if (i >= 0) {
+                marcas[i] = marca;
+                return;
+            }
+            i = -i - 1;
+            if (tamanho == numeros.length) {
+                numeros = Arrays.copyOf(numeros, tamanho * 2);
+                marcas = Arrays.copyOf(marcas, tamanho * 2);
+            }
+            System.arraycopy(numeros, i, numeros, i + 1, tamanho - i);
+            System.arraycopy(marcas, i, marcas, i + 1, tamanho - i);
+            numeros[i] = numero;
+            marcas[i] = marca;
+            tamanho++;
+        }
+
+        // true se a lista ficou vazia
+        boolean remover(int numero) {
+            int i = Arrays.binarySearch(numeros, 0, tamanho, numero);
+            if (i >= 0) {
+                System.arraycopy(numeros, i + 1, numeros, i, tamanho - i - 1);
+                System.arraycopy(marcas, i + 1, marcas, i, tamanho - i - 1);
+                tamanho--;
+            }
+            return tamanho == 0;
+        }
+    }
+
+    /**
+     * Percorre juntas, em ordem crescente de numero, as listas dos termos de um digitado. Em cada
+     * posicao, {@code pontos} e a melhor pontuacao entre as listas que tem o numero atual.
+     */
+    private static final class Cursor {
+
+        private final int[][] numeros;
+        private final byte[][] marcas;
+        private final int[] tamanhos;
+        private final int[] posicoes;
+        // pontuacao de cada marca na lista, calculada uma vez por busca
+        private final byte[][] tabelas;
+        private int listas;
+        long total;
+        int atual;
+        int pontos;
+
+        Cursor(int capacidade) {
+            numeros = new int[capacidade][];
+            marcas = new byte[capacidade][];
+            tamanhos = new int[capacidade];
+            posicoes = new int[capacidade];
+            tabelas = new byte[capacidade][];
+        }
+
+        void adicionar(int[] numeros, byte[] marcas, int tamanho, int modo) {
+            byte[] tabela = new byte[16];
+            for (int marca = 1; marca < tabela.length; marca++) {
+                tabela[marca] = (byte) pontos((byte) marca, modo);
+            }
+            this.numeros[listas] = numeros;
+            this.marcas[listas] = marcas;
+            this.tamanhos[listas] = tamanho;
+            this.tabelas[listas++] = tabela;
+            total += tamanho;
+        }
+
+        // posiciona no menor numero >= alvo; false se as listas acabaram
+        boolean avancarAte(int alvo) {
+            if (listas == 1) {
+                int[] valores = numeros[0];
+                int p = posicoes[0];
+                // o guia costuma pedir o proximo numero; so salta se o vizinho ainda nao basta
+                if (p < tamanhos[0] && valores[p] < alvo) {
+                    p++;
+                    if (p < tamanhos[0] && valores[p] < alvo) {
+                        p = avancar(valores, p, tamanhos[0], alvo);
+                    }
+                    posicoes[0] = p;
+                }
+                if (p == tamanhos[0]) {
+                    return false;
+                }
+                atual = valores[p];
+                pontos = tabelas[0][marcas[0][p]];
+                return true;
+            }
+            int menor = Integer.MAX_VALUE;
+            int melhor = 0;
+            for (int t = 0; t < listas; t++) {
+                int p = avancar(numeros[t], posicoes[t], tamanhos[t], alvo);
+                posicoes[t] = p;
+                if (p < tamanhos[t]) {
+                    int numero = numeros[t][p];
+                    int pontos = tabelas[t][marcas[t][p]];
+                    if (numero < menor) {
+                        menor = numero;
+                        melhor = pontos;
+                    } else if (numero == menor) {
+                        melhor = Math.max(melhor, pontos);
+                    }
+                }
+            }
+            atual = menor;
+            pontos = melhor;
+            return menor != Integer.MAX_VALUE;
+        }
+
+        // primeira posicao a partir de "de" com valor >= alvo, por busca exponencial
+        private static int avancar(int[] valores, int de, int ate, int alvo) {
+            int fim = de;
+            int passo = 1;
+            while (fim < ate && valores[fim] < alvo) {
+                de = fim + 1;
+                fim += passo;
+                passo <<= 1;
+            }
+            if (de >= Math.min(fim, ate)) {
+                return de;
+            }
+            int i = Arrays.binarySearch(valores, de, Math.min(fim, ate), alvo);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+
+    // as "capacidade" maiores chaves, num heap de minimo sem objetos
+    private static final class Melhores {
+
+        private final long[] heap;
+        private int tamanho;
+
+        Melhores(int capacidade) {
+            heap = new long[capacidade];
+        }
+
+        void oferecer(long chave) {
+            if (tamanho < heap.length) {
+                int i = tamanho++;
+                while (i > 0 && heap[(i - 1) >>> 1] > chave) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = chave;
+            } else if (tamanho > 0 && chave > heap[0]) {
+                int i = 0;
+                while (2 * i + 1 < tamanho) {
+                    int filho = 2 * i + 1;
+                    if (filho + 1 < tamanho && heap[filho + 1] < heap[filho]) {
+                        filho++;
+                    }
+                    if (heap[filho] >= chave) {
+                        break;
+                    }
+                    heap[i] = heap[filho];
+                    i = filho;
+                }
+                heap[i] = chave;
+            }
+        }
+
+        // da maior para a menor
+        long[] ordenadas() {
+            long[] ordenadas = Arrays.copyOf(heap, tamanho);
+            Arrays.sort(ordenadas);
+            for (int i = 0, j = tamanho - 1; i < j; i++, j--) {
+                long troca = ordenadas[i];
+                ordenadas[i] = ordenadas[j];
+                ordenadas[j] = troca;
+            }
+            return ordenadas;
+        }
+    }
+}
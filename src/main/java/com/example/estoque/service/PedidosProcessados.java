@@ -0,0 +1,164 @@
+package com.example.estoque.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Chaves de idempotencia dos pedidos ja aplicados, para que a repeticao de um pedido (um cliente
+ * que reenvia apos um timeout) devolva o mesmo resultado sem baixar o estoque de novo.
+ *
+ * <p>A chave e gravada na tabela {@code pedido_processado} na mesma transacao da baixa: se a baixa
+ * for desfeita a chave tambem e, e dois pedidos com a mesma chave ao mesmo tempo esbarram no indice
+ * unico antes de tocar em {@code produto}. As chaves confirmadas ficam num mapa limitado em memoria,
+ * que responde as repeticoes sem ir ao banco. Chaves com mais de {@code estoque.idempotencia.ttl}
+ * sao apagadas da tabela periodicamente e expiram da memoria no mesmo prazo.
+ *
+ * <p>So pedidos aceitos sao registrados: um pedido recusado nao alterou nada, e a repeticao dele
+ * e avaliada de novo. Sem banco (perfil arquivo) as chaves ficam apenas em memoria.
+ */
+@Component
+public class PedidosProcessados {
+
+    private static final Logger log = LoggerFactory.getLogger(PedidosProcessados.class);
+    private static final int TAMANHO_MAXIMO_CHAVE = 100;
+    private static final String REGISTRAR = "INSERT INTO pedido_processado (chave, processado_em) VALUES (?, ?)";
+
+    private final Cache<String, Boolean> recentes;
+    // ausente no perfil arquivo, que nao usa banco
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+
+    public PedidosProcessados(ObjectProvider<JdbcTemplate> jdbcTemplate,
+                              @Value("${estoque.idempotencia.maximo-em-memoria:100000}") long maximoEmMemoria,
+                              @Value("${estoque.idempotencia.ttl:24h}") Duration ttl) {
+        this.jdbcTemplate = jdbcTemplate.getIfAvailable();
+        this.ttl = ttl;
+        this.recentes = Caffeine.newBuilder()
+                .maximumSize(maximoEmMemoria)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Consulta so a memoria: {@code true} garante que o pedido ja foi aplicado; {@code false} ainda
+     * pode ser uma repeticao, que {@link #registrar} detecta no banco.
+     */
+    public boolean jaProcessado(String chave) {
+        validar(chave);
+        return recentes.getIfPresent(chave) != null;
+    }
+
+    /**
+     * Registra a chave na transacao corrente.
+     *
+     * @return {@code false} se o pedido ja foi aplicado (por esta ou outra instancia) e nao deve ser refeito
+     */
+    public boolean registrar(String chave) {
+        if (jaProcessado(chave)) {
+            return false;
+        }
+        if (jdbcTemplate == null) {
+            if (recentes.asMap().putIfAbsent(chave, Boolean.TRUE) != null) {
+                return false;
+            }
+            // sem banco a chave entra antes do commit; se a baixa for desfeita, sai de novo
+            aoTerminar(confirmada -> {
+                if (!confirmada) {
+                    recentes.invalidate(chave);
+                }
+            });
+            return true;
+        }
+        try {
+            jdbcTemplate.update(REGISTRAR, chave, agora());
+        } catch (DuplicateKeyException e) {
+            recentes.put(chave, Boolean.TRUE);
+            return false;
+        }
+        aoTerminar(confirmada -> {
+            if (confirmada) {
+                recentes.put(chave, Boolean.TRUE);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Registra as chaves de varios pedidos em um unico lote JDBC, na transacao corrente. Se alguma
+     * ja existir o lote falha com {@link DuplicateKeyException} e a transacao deve ser desfeita.
+     */
+    public void registrarTodas(Collection<String> chaves) {
+        if (chaves.isEmpty()) {
+            return;
+        }
+        chaves.forEach(PedidosProcessados::validar);
+        if (jdbcTemplate == null) {
+            for (String chave : chaves) {
+                if (!registrar(chave)) {
+                    throw new DuplicateKeyException("Pedido " + chave + " já processado");
+                }
+            }
+            return;
+        }
+        Timestamp agora = agora();
+        jdbcTemplate.batchUpdate(REGISTRAR, chaves.stream().map(chave -> new Object[]{chave, agora}).toList());
+        aoTerminar(confirmada -> {
+            if (confirmada) {
+                chaves.forEach(chave -> recentes.put(chave, Boolean.TRUE));
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.idempotencia.limpeza-ms:600000}",
+            initialDelayString = "${estoque.idempotencia.limpeza-ms:600000}")
+    public void limpar() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        int apagadas = jdbcTemplate.update("DELETE FROM pedido_processado WHERE processado_em < ?",
+                Timestamp.from(Instant.now().minus(ttl)));
+        if (apagadas > 0) {
+            log.debug("{} chaves de idempotencia expiradas apagadas", apagadas);
+        }
+    }
+
+    private Timestamp agora() {
+        return Timestamp.from(Instant.now());
+    }
+
+    private static void validar(String chave) {
+        if (chave.isBlank() || chave.length() > TAMANHO_MAXIMO_CHAVE) {
+            throw new IllegalArgumentException("Chave do pedido deve ter entre 1 e " + TAMANHO_MAXIMO_CHAVE + " caracteres");
+        }
+    }
+
+    // sem transacao ativa nao ha o que esperar: a gravacao ja esta confirmada
+    private static void aoTerminar(Consumer<Boolean> acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                acao.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.estoque.service;
+
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Cache de leitura (W-TinyLFU, limitado por tamanho e TTL) na frente de {@code findById} e {@code findByNome}.
+ *
+ * <p>Os produtos ficam guardados por id; o nome aponta apenas para o id, entao qualquer escrita
+ * invalida uma unica entrada. Um nome que deixou de corresponder ao produto guardado (renomeado)
+ * e conferido na leitura e cai no banco. A invalidacao acontece apos o commit; o TTL limita o
+ * tempo maximo que uma leitura concorrente com a escrita pode ficar desatualizada.
+ *
+ * <p>O cache guarda uma copia imutavel dos campos, nunca a entidade carregada, e cada leitura
+ * devolve um {@link ProdutoEntity} novo e destacado: quem altera o produto devolvido nao muda o
+ * que os outros leem, e uma entidade gerenciada nao fica presa ao cache.
+ */
+@Component
+public class ProdutoCache implements MeterBinder {
+
+    private final Cache<Long, Guardado> porId;
+    private final Cache<String, Long> idPorNome;
+
+    public ProdutoCache(@Value("${estoque.cache.maximum-size:10000}") long tamanhoMaximo,
+                        @Value("${estoque.cache.ttl:30s}") Duration ttl) {
+        this.porId = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximo)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.idPorNome = Caffeine.newBuilder()
+                .maximumSize(tamanhoMaximo)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public ProdutoEntity buscarPorId(Long id, Function<Long, ProdutoEntity> carregar) {
+        Guardado guardado = porId.get(id, chave -> Guardado.de(carregar.apply(chave)));
+        return guardado == null ? null : guardado.produto();
+    }
+
+    public ProdutoEntity buscarPorNome(String nome, Function<String, ProdutoEntity> carregar) {
+        Long id = idPorNome.getIfPresent(nome);
+        if (id != null) {
+            Guardado guardado = porId.getIfPresent(id);
+            if (guardado != null && nome.equals(guardado.nome())) {
+                return guardado.produto();
+            }
+        }
+        ProdutoEntity produto = carregar.apply(nome);
+        if (produto == null || produto.getId() == null) {
+            return produto;
+        }
+        Guardado guardado = Guardado.de(produto);
+        porId.put(guardado.id(), guardado);
+        idPorNome.put(nome, guardado.id());
+        return guardado.produto();
+    }
+
+    public void invalidar(Long id) {
+        porId.invalidate(id);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        invalidar(evento.getId());
+    }
+
+    // acertos, faltas e remocoes de cada cache em cache.gets / cache.evictions
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, porId, "produtos-por-id");
+        CaffeineCacheMetrics.monitor(registry, idPorNome, "produtos-por-nome");
+    }
+
+    public CacheStats estatisticasPorId() {
+        return porId.stats();
+    }
+
+    public CacheStats estatisticasPorNome() {
+        return idPorNome.stats();
+    }
+
+    private record Guardado(Long id, String nome, String descricao, Double preco, Integer qtd, Long versao) {
+
+        static Guardado de(ProdutoEntity produto) {
+            return produto == null ? null : new Guardado(produto.getId(), produto.getNome(), produto.getDescricao(),
+                    produto.getPreco(), produto.getQtd(), produto.getVersao());
+        }
+
+        ProdutoEntity produto() {
+            return new ProdutoEntity(id, nome, descricao, preco, qtd, versao);
+        }
+    }
+}
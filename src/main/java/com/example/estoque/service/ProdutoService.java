@@ -1,32 +1,75 @@
 package com.example.estoque.service;
 
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.domain.EstoqueDisponivel;
 import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.RelatorioAlteracao;
+import com.example.estoque.domain.Reserva;
 import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
 import com.example.estoque.exception.ForaDeEstoqueException;
 import com.example.estoque.repository.ProdutoRepository;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "estoque.servico", histogram = true)
 public class ProdutoService {
 
     ProdutoRepository repository;
 
-    public ProdutoService(ProdutoRepository repository) {
+    ApplicationEventPublisher publisher;
+
+    ProdutoCache cache;
+
+    EstoqueMetricas metricas;
+
+    // presente apenas com estoque.ledger.enabled=true
+    final ObjectProvider<EstoqueLedger> ledger;
+
+    final ObjectProvider<PedidosProcessados> pedidosProcessados;
+
+    // ausente com estoque.reservas.enabled=false
+    final ObjectProvider<ReservasDeEstoque> reservas;
+
+    // presente apenas com estoque.armazens.enabled=true
+    final ObjectProvider<AlocadorDeEstoque> armazens;
+
+    public ProdutoService(ProdutoRepository repository, ApplicationEventPublisher publisher, ProdutoCache cache,
+                          EstoqueMetricas metricas, ObjectProvider<EstoqueLedger> ledger,
+                          ObjectProvider<PedidosProcessados> pedidosProcessados,
+                          ObjectProvider<ReservasDeEstoque> reservas, ObjectProvider<AlocadorDeEstoque> armazens) {
         this.repository = repository;
+        this.publisher = publisher;
+        this.cache = cache;
+        this.metricas = metricas;
+        this.ledger = ledger;
+        this.pedidosProcessados = pedidosProcessados;
+        this.reservas = reservas;
+        this.armazens = armazens;
     }
 
+    @Transactional
     public void cadastrarProduto(com.example.estoque.domain.Produto produto){
-
-        ProdutoEntity estoque = repository.findByNome(produto.getNome());
-        if(estoque != null){
-            estoque.setQtd(produto.getQtd());
-            repository.save(estoque);
-        }else {
-            repository.save(new ProdutoEntity(produto));
-        }
+        publisher.publishEvent(ProdutoAlteradoEvent.cadastro(repository.gravarPorNome(produto)));
     }
 
     public List<com.example.estoque.domain.Produto> encontrarTodos(){
@@ -37,52 +80,337 @@ public class ProdutoService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Baixa o estoque do pedido, tudo ou nada. Um pedido com chave ja aplicada nao e refeito: a
+     * chave e registrada antes da baixa, na mesma transacao.
+     */
+    @Transactional
     public void atualizarEstoque(Pedido pedido){
-        pedido.getItens().forEach(item -> {
-            ProdutoEntity produto = repository.findById(item.getId()).get();
-            if (produto.getQtd() < item.getQtd()){
-                throw new ForaDeEstoqueException(
-                        "Produto " + produto.getNome() + " possui apenas: " + produto.getQtd() + " em estoque");
+        PedidosProcessados pedidosProcessados = this.pedidosProcessados.getIfAvailable();
+        if (pedido.getChave() != null && pedidosProcessados != null && !pedidosProcessados.registrar(pedido.getChave())){
+            metricas.pedidoRepetido();
+            return;
+        }
+        Map<Long, Integer> quantidades = agruparPorProduto(pedido);
+        metricas.pedidoRecebido(pedido.getItens().size(), quantidades.size());
+        try {
+            baixar(quantidades, pedido.getRegiao());
+        } catch (ForaDeEstoqueException e) {
+            metricas.pedidoForaDeEstoque();
+            throw e;
+        } catch (RuntimeException e) {
+            metricas.pedidoComErro();
+            throw e;
+        }
+        metricas.pedidoAceito();
+        quantidades.forEach((id, qtd) -> publisher.publishEvent(ProdutoAlteradoEvent.baixa(id, qtd)));
+    }
+
+    private void baixar(Map<Long, Integer> quantidades, String regiao){
+        // o que esta reservado para outros pedidos continua em estoque
+        ReservasDeEstoque reservas = this.reservas.getIfAvailable();
+        Map<Long, Integer> reservadas = reservas == null ? Map.of() : reservas.reservadas(quantidades.keySet());
+        EstoqueLedger ledger = this.ledger.getIfAvailable();
+        AlocadorDeEstoque armazens = this.armazens.getIfAvailable();
+        if (ledger != null){
+            ledger.baixar(quantidades, reservadas);
+        } else if (armazens != null){
+            Long semEstoque = armazens.baixar(quantidades, reservadas, regiao);
+            if (semEstoque != null){
+                throw estoqueInsuficiente(semEstoque);
+            }
+        } else {
+            int[] atualizados = reservadas.isEmpty()
+                    ? repository.baixarEstoque(quantidades)
+                    : repository.baixarEstoque(quantidades, reservadas);
+
+            // a baixa condicional so falha se faltar estoque; desfaz o pedido inteiro
+            int i = 0;
+            for (Map.Entry<Long, Integer> item : quantidades.entrySet()){
+                if (atualizados[i++] == 0){
+                    throw estoqueInsuficiente(item.getKey());
+                }
+            }
+        }
+        if (reservas != null){
+            conferirReservadas(quantidades.keySet(), reservadas, reservas);
+        }
+    }
+
+    // Uma reserva criada depois da leitura das reservadas ja esta no contador: com banco ela trava as
+    // linhas antes de contar, e sem trava (ledger, arquivo) ela confere o saldo depois de contar. O
+    // que sobrou da baixa precisa cobri-la; senao a transacao e desfeita, e a baixa com ela.
+    private void conferirReservadas(Collection<Long> ids, Map<Long, Integer> lidas, ReservasDeEstoque reservas){
+        Map<Long, Integer> atuais = reservas.reservadas(ids);
+        List<Long> aumentaram = atuais.keySet().stream()
+                .filter(id -> atuais.get(id) > lidas.getOrDefault(id, 0))
+                .toList();
+        if (aumentaram.isEmpty()){
+            return;
+        }
+        for (ProdutoEntity produto : emEstoque(aumentaram).values()){
+            if (produto.getQtd() < atuais.get(produto.getId())){
+                throw new ForaDeEstoqueException(produto.getNome(), produto.getQtd());
+            }
+        }
+    }
+
+    /**
+     * Copias dos produtos com a quantidade que pode sair agora: o saldo do ledger, a soma dos
+     * armazens ou {@code produto.qtd}. Fora do modo ledger as linhas ficam travadas ate o commit.
+     * Produtos inexistentes ficam de fora.
+     */
+    private Map<Long, ProdutoEntity> emEstoque(Collection<Long> ids){
+        Map<Long, ProdutoEntity> produtos = new HashMap<>();
+        repository.travarProdutos(ids).forEach(produto -> produtos.put(produto.getId(), produto));
+        EstoqueLedger ledger = this.ledger.getIfAvailable();
+        AlocadorDeEstoque armazens = this.armazens.getIfAvailable();
+        if (ledger != null){
+            produtos.values().removeIf(produto -> {
+                Integer saldo = ledger.saldo(produto.getId());
+                produto.setQtd(saldo);
+                return saldo == null;
+            });
+        } else if (armazens != null){
+            Map<Long, Integer> somas = armazens.travarSomas(produtos.keySet());
+            produtos.values().forEach(produto -> produto.setQtd(somas.getOrDefault(produto.getId(), 0)));
+        } else {
+            produtos.values().forEach(produto -> produto.setQtd(produto.getQtd() == null ? 0 : produto.getQtd()));
+        }
+        return produtos;
+    }
+
+    /**
+     * Separa o estoque do pedido por um prazo ({@code null} para o padrao), sem baixar a quantidade.
+     * A baixa so acontece em {@link #confirmarReserva}.
+     *
+     * <p>Com banco as linhas ficam travadas da leitura ate o commit: uma baixa em andamento termina
+     * antes, e as seguintes ja encontram a reserva no contador. Sem trava (ledger, arquivo) o saldo e
+     * lido de novo depois de contar a reserva, e uma baixa que entrou no meio a desfaz.
+     */
+    @Transactional
+    public Reserva reservar(Pedido pedido, Duration prazo){
+        Map<Long, Integer> quantidades = agruparPorProduto(pedido);
+        Map<Long, ProdutoEntity> produtos = emEstoque(quantidades.keySet());
+        for (Long id : quantidades.keySet()){
+            if (!produtos.containsKey(id)){
+                throw new IllegalArgumentException("Produto não encontrado com ID: " + id);
+            }
+        }
+        ReservasDeEstoque reservas = this.reservas.getObject();
+        Reserva reserva = reservas.reservar(quantidades, produtos, prazo);
+        for (ProdutoEntity produto : emEstoque(quantidades.keySet()).values()){
+            if (produto.getQtd() < reservas.reservado(produto.getId())){
+                reservas.liberar(reserva.getId());
+                throw new ForaDeEstoqueException(produto.getNome(), produto.getQtd());
             }
-            produto.setQtd(produto.getQtd() - item.getQtd());
-            repository.save(produto);
-        });
+        }
+        return reserva;
+    }
+
+    /**
+     * Baixa o estoque separado pela reserva. Se a baixa falhar a reserva continua valendo.
+     *
+     * @return {@code false} se a reserva nao existe, ja expirou ou ja foi confirmada
+     */
+    @Transactional
+    public boolean confirmarReserva(String id){
+        Map<Long, Integer> quantidades = reservas.getObject().confirmar(id);
+        if (quantidades == null){
+            return false;
+        }
+        baixar(quantidades, null);
+        quantidades.forEach((produto, qtd) -> publisher.publishEvent(ProdutoAlteradoEvent.baixa(produto, qtd)));
+        return true;
+    }
+
+    public boolean liberarReserva(String id){
+        return reservas.getObject().liberar(id);
+    }
+
+    /**
+     * @return {@code null} se o produto nao existir
+     */
+    public EstoqueDisponivel disponivel(Long id){
+        ProdutoEntity produto = buscarProdutoPorId(id);
+        if (produto == null){
+            return null;
+        }
+        return new EstoqueDisponivel(id, produto.getQtd() == null ? 0 : produto.getQtd(), reservas.getObject().reservado(id));
+    }
+
+    static Map<Long, Integer> agruparPorProduto(Pedido pedido){
+        // ordenado por id para que pedidos concorrentes bloqueiem as linhas sempre na mesma ordem
+        Map<Long, Integer> quantidades = new TreeMap<>();
+        pedido.getItens().forEach(item -> quantidades.merge(item.getId(), item.getQtd(), Integer::sum));
+        return quantidades;
+    }
+
+    private RuntimeException estoqueInsuficiente(Long id){
+        return repository.findById(id)
+                .<RuntimeException>map(produto -> new ForaDeEstoqueException(produto.getNome(), produto.getQtd()))
+                .orElseGet(() -> new RuntimeException("Produto não encontrado com ID: " + id));
     }
 
     public com.example.estoque.domain.Produto encontrarPorNome(String nome) {
-        return new com.example.estoque.domain.Produto(repository.findByNome(nome));
+        return new com.example.estoque.domain.Produto(cache.buscarPorNome(nome, repository::findByNome));
     }
 
+    @Transactional
     public ProdutoEntity criarProduto(ProdutoEntity produto) {
-        return repository.save(produto);
+        ProdutoEntity salvo = repository.save(produto);
+        publisher.publishEvent(ProdutoAlteradoEvent.cadastro(salvo));
+        return salvo;
     }
 
     public List<ProdutoEntity> listarProdutos() {
         return repository.findAll();
     }
 
+    /**
+     * Pagina por chave: devolve ate {@code limite} produtos com id maior que {@code depoisDe}, em ordem de id.
+     */
+    public List<ProdutoEntity> listarProdutos(Long depoisDe, int limite) {
+        return repository.findByIdGreaterThanOrderByIdAsc(depoisDe == null ? 0L : depoisDe, Limit.of(limite));
+    }
+
+    @Transactional(readOnly = true)
+    public void percorrerProdutos(Consumer<ProdutoEntity> consumidor) {
+        try (Stream<ProdutoEntity> produtos = repository.percorrerTodos()) {
+            produtos.forEach(consumidor);
+        }
+    }
+
     public ProdutoEntity buscarProdutoPorId(long id) {
-        return repository.findById(id).orElse(null);
+        return cache.buscarPorId(id, chave -> repository.findById(chave).orElse(null));
     }
 
 
+    @Transactional
     public ProdutoEntity atualizarProduto(ProdutoEntity produtoAtualizado) {
+        return atualizarProduto(produtoAtualizado, null);
+    }
+
+    /**
+     * Regrava o produto so se a versao atual estiver em {@code versoesAceitas} ({@code null} aceita
+     * qualquer uma). Uma alteracao concorrente entre a leitura e a gravacao, inclusive uma baixa de
+     * estoque, tambem falha com {@link OptimisticLockingFailureException}.
+     */
+    @Transactional
+    public ProdutoEntity atualizarProduto(ProdutoEntity produtoAtualizado, Set<Long> versoesAceitas) {
         ProdutoEntity existente = repository.findById(produtoAtualizado.getId())
                 .orElseThrow(() -> new RuntimeException("Produto não encontrado com ID: " + produtoAtualizado.getId()));
+        if (versoesAceitas != null && !versoesAceitas.contains(existente.getVersao())) {
+            throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, existente.getId());
+        }
 
         existente.setNome(produtoAtualizado.getNome());
         existente.setDescricao(produtoAtualizado.getDescricao());
         existente.setPreco(produtoAtualizado.getPreco());
         existente.setQtd(produtoAtualizado.getQtd());
 
-        return repository.save(existente);
+        ProdutoEntity salvo = repository.save(existente);
+        publisher.publishEvent(ProdutoAlteradoEvent.atualizacao(salvo));
+        return salvo;
+    }
+
+    /**
+     * Grava so os campos informados em um unico comando, sem ler o produto antes.
+     *
+     * @return o produto como ficou, ou {@code null} se o id nao existir
+     */
+    @Transactional
+    public ProdutoEntity alterarProduto(Long id, AlteracaoProduto alteracao) {
+        return alterarProduto(id, alteracao, null);
+    }
+
+    /**
+     * Como {@link #alterarProduto(Long, AlteracaoProduto)}, mas so grava se a versao do produto estiver
+     * em {@code versoesAceitas} ({@code null} aceita qualquer uma) e na {@code versao} da alteracao,
+     * se informada; senao, {@link OptimisticLockingFailureException}. A versao e conferida no proprio
+     * {@code UPDATE}.
+     */
+    @Transactional
+    public ProdutoEntity alterarProduto(Long id, AlteracaoProduto alteracao, Set<Long> versoesAceitas) {
+        validar(alteracao);
+        alteracao.setId(id);
+        if (versoesAceitas != null && versoesAceitas.size() == 1) {
+            alteracao.setVersao(versoesAceitas.iterator().next());
+        } else if (versoesAceitas != null) {
+            // nenhuma ou varias ETags: vale a versao atual, se for uma delas
+            Long atual = repository.findById(id).map(ProdutoEntity::getVersao).orElse(null);
+            if (atual == null || !versoesAceitas.contains(atual)) {
+                throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, id);
+            }
+            alteracao.setVersao(atual);
+        }
+        ProdutoEntity alterado = repository.alterarCampos(alteracao);
+        if (alterado == null && alteracao.getVersao() != null && repository.existsById(id)) {
+            throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, id);
+        }
+        if (alterado != null) {
+            publisher.publishEvent(ProdutoAlteradoEvent.atualizacao(alterado));
+        }
+        return alterado;
+    }
+
+    /**
+     * Alteracoes parciais em massa (sincronizacao de precos, por exemplo), tudo ou nada: qualquer
+     * alteracao invalida recusa o pedido inteiro. O mesmo id repetido junta as alteracoes, valendo a
+     * ultima para cada campo. Um produto fora da {@code versao} informada na alteracao recusa tudo com
+     * {@link OptimisticLockingFailureException}.
+     */
+    @Transactional
+    public RelatorioAlteracao alterarProdutos(List<AlteracaoProduto> alteracoes) {
+        Map<Long, AlteracaoProduto> porId = new LinkedHashMap<>();
+        for (AlteracaoProduto alteracao : alteracoes) {
+            if (alteracao.getId() == null) {
+                throw new IllegalArgumentException("Id é obrigatório em cada alteração");
+            }
+            validar(alteracao);
+            porId.merge(alteracao.getId(), alteracao, (anterior, posterior) -> {
+                anterior.juntar(posterior);
+                return anterior;
+            });
+        }
+        List<ProdutoEntity> alterados = repository.alterarCampos(List.copyOf(porId.values()));
+        alterados.forEach(produto -> porId.remove(produto.getId()));
+        for (AlteracaoProduto restante : porId.values()) {
+            if (restante.getVersao() != null && repository.existsById(restante.getId())) {
+                // a transacao desfaz o que os lotes ja gravaram; o repositorio em arquivo ja recusa a lista inteira
+                throw new ObjectOptimisticLockingFailureException(ProdutoEntity.class, restante.getId());
+            }
+        }
+        alterados.forEach(produto -> publisher.publishEvent(ProdutoAlteradoEvent.atualizacao(produto)));
+        return new RelatorioAlteracao(alterados.size(), List.copyOf(porId.keySet()));
+    }
+
+    private static void validar(AlteracaoProduto alteracao) {
+        if (alteracao.getNome() == null && alteracao.getDescricao() == null
+                && alteracao.getPreco() == null && alteracao.getQtd() == null) {
+            throw new IllegalArgumentException("Informe ao menos um campo para alterar");
+        }
+        if (alteracao.getNome() != null && (alteracao.getNome().isBlank() || alteracao.getNome().length() > 255)) {
+            throw new IllegalArgumentException("Nome deve ter entre 1 e 255 caracteres");
+        }
+        if (alteracao.getDescricao() != null && alteracao.getDescricao().length() > 255) {
+            throw new IllegalArgumentException("Descrição com mais de 255 caracteres");
+        }
+        if (alteracao.getPreco() != null && alteracao.getPreco() < 0) {
+            throw new IllegalArgumentException("Preço não pode ser negativo");
+        }
+        if (alteracao.getQtd() != null && alteracao.getQtd() < 0) {
+            throw new IllegalArgumentException("Quantidade deve ser zero ou maior");
+        }
     }
 
+    @Transactional
     public void deletarProduto(Long id) {
         if (!repository.existsById(id)) {
             throw new RuntimeException("Produto com ID " + id + " não encontrado.");
         }
         repository.deleteById(id);
+        publisher.publishEvent(ProdutoAlteradoEvent.remocao(id));
     }
 
 }
@@ -0,0 +1,388 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Reserva;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Reservas de estoque em duas fases: a reserva separa a quantidade enquanto o pagamento corre, sem
+ * baixar {@code qtd}, e depois e confirmada (vira baixa) ou liberada. Quem nao confirma dentro do
+ * prazo perde a reserva sozinho.
+ *
+ * <p>As reservas ativas ficam em memoria, com a soma reservada de cada produto em um contador
+ * proprio: o disponivel e {@code qtd} menos esse contador, em O(1). A reserva sobe o contador com
+ * CAS conferindo a quantidade lida do produto, entao duas reservas concorrentes nunca separam juntas
+ * mais do que havia. Os vencimentos ficam em uma {@link RodaDeTempo}, que a cada tick percorre so a
+ * posicao daquele tick.
+ *
+ * <p>Reservas novas, liberadas e expiradas sao gravadas em lote na tabela {@code reserva_estoque}
+ * a cada {@code estoque.reservas.gravacao-ms} e recarregadas na subida; a confirmacao apaga a
+ * reserva na mesma transacao da baixa, para que uma reserva ja confirmada nunca volte. Uma queda
+ * perde as reservas criadas desde a ultima gravacao e pode devolver, ate o prazo delas, reservas
+ * liberadas nesse intervalo. Sem banco (perfil arquivo) as reservas ficam so em memoria.
+ *
+ * <p>As baixas diretas ({@code POST /estoque/atualizar}) deixam em estoque o que esta reservado. A
+ * reserva trava as linhas dos produtos ate o commit (sem trava, no ledger e no arquivo, confere o
+ * saldo de novo depois de contar), e a baixa confere as reservas outra vez depois de gravar: uma
+ * reserva aceita nao perde o estoque para uma baixa concorrente. No modo ledger a conferencia e
+ * feita contra o saldo em memoria.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.reservas", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ReservasDeEstoque implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ReservasDeEstoque.class);
+
+    // MERGE: uma confirmacao desfeita devolve a reserva, que pode ja estar gravada
+    private static final String GRAVAR =
+            "MERGE INTO reserva_estoque (reserva, produto_id, qtd, expira_em) KEY (reserva, produto_id) VALUES (?, ?, ?, ?)";
+    private static final String APAGAR = "DELETE FROM reserva_estoque WHERE reserva = ?";
+
+    private final Map<String, Ativa> ativas = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> reservado = new ConcurrentHashMap<>();
+    private final RodaDeTempo<Ativa> vencimentos;
+
+    private final Queue<Ativa> aGravar = new ConcurrentLinkedQueue<>();
+    private final Queue<String> aApagar = new ConcurrentLinkedQueue<>();
+    // a confirmacao tira a reserva da memoria com esta trava, entao nunca cai no meio de uma gravacao
+    private final ReentrantLock gravacao = new ReentrantLock();
+
+    // ausente no perfil arquivo, que nao usa banco
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration prazoPadrao;
+    private final Duration prazoMaximo;
+
+    private final Counter criadas;
+    private final Counter confirmadas;
+    private final Counter liberadas;
+    private final Counter expiradas;
+
+    public ReservasDeEstoque(ObjectProvider<JdbcTemplate> jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry registry,
+                             @Value("${estoque.reservas.prazo:15m}") Duration prazoPadrao,
+                             @Value("${estoque.reservas.prazo-maximo:1h}") Duration prazoMaximo,
+                             @Value("${estoque.reservas.tick-ms:1000}") long tickMillis,
+                             @Value("${estoque.reservas.posicoes:512}") int posicoes) {
+        this.jdbcTemplate = jdbcTemplate.getIfAvailable();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.prazoPadrao = prazoPadrao;
+        this.prazoMaximo = prazoMaximo;
+        this.vencimentos = new RodaDeTempo<>(tickMillis, posicoes, System.currentTimeMillis());
+        this.criadas = resultado(registry, "criada");
+        this.confirmadas = resultado(registry, "confirmada");
+        this.liberadas = resultado(registry, "liberada");
+        this.expiradas = resultado(registry, "expirada");
+        Gauge.builder("estoque.reservas.ativas", ativas, Map::size)
+                .description("Reservas de estoque ainda nao confirmadas nem liberadas")
+                .register(registry);
+    }
+
+    private static Counter resultado(MeterRegistry registry, String resultado) {
+        return Counter.builder("estoque.reservas")
+                .description("Reservas de estoque por resultado")
+                .tag("resultado", resultado)
+                .register(registry);
+    }
+
+    // depois de todos os singletons: o Hibernate ja criou a tabela reserva_estoque, e o servidor web
+    // ainda nao aceita requisicoes que reservariam sem ver as reservas gravadas
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        Timestamp agora = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update("DELETE FROM reserva_estoque WHERE expira_em <= ?", agora);
+        Map<String, Ativa> gravadas = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT reserva, produto_id, qtd, expira_em FROM reserva_estoque ORDER BY reserva, produto_id",
+                rs -> {
+                    long expiraEm = rs.getTimestamp(4).getTime();
+                    gravadas.computeIfAbsent(rs.getString(1), id -> new Ativa(id, new TreeMap<>(), expiraEm))
+                            .itens().put(rs.getLong(2), rs.getInt(3));
+                });
+        for (Ativa ativa : gravadas.values()) {
+            // ja conferidas quando foram criadas; voltam sem checar o saldo
+            ativas.put(ativa.id(), ativa);
+            ativa.itens().forEach((produto, qtd) -> contador(produto).addAndGet(qtd));
+            vencimentos.agendar(ativa, ativa.expiraEm());
+        }
+        if (!gravadas.isEmpty()) {
+            log.info("{} reservas de estoque recarregadas", gravadas.size());
+        }
+    }
+
+    /**
+     * Separa as quantidades pedidas, conferindo cada uma contra {@code qtd} menos o que ja esta
+     * reservado. Tudo ou nada.
+     *
+     * @param produtos os produtos do pedido, com a quantidade atual
+     * @param prazo    {@code null} para o prazo padrao
+     */
+    public Reserva reservar(Map<Long, Integer> quantidades, Map<Long, ProdutoEntity> produtos, Duration prazo) {
+        Duration validade = prazo == null ? prazoPadrao : prazo;
+        if (validade.isNegative() || validade.isZero() || validade.compareTo(prazoMaximo) > 0) {
+            throw new IllegalArgumentException("Prazo da reserva deve ser positivo e de no máximo " + prazoMaximo);
+        }
+        quantidades.values().forEach(qtd -> {
+            if (qtd == null || qtd <= 0) {
+                throw new IllegalArgumentException("Quantidade reservada deve ser positiva");
+            }
+        });
+        Map<Long, Integer> separadas = new HashMap<>();
+        for (Map.Entry<Long, Integer> item : quantidades.entrySet()) {
+            ProdutoEntity produto = produtos.get(item.getKey());
+            int qtd = produto.getQtd() == null ? 0 : produto.getQtd();
+            AtomicInteger contador = contador(item.getKey());
+            int atual;
+            do {
+                atual = contador.get();
+                if (qtd - atual < item.getValue()) {
+                    devolver(separadas);
+                    throw new ForaDeEstoqueException(produto.getNome(), Math.max(qtd - atual, 0));
+                }
+            } while (!contador.compareAndSet(atual, atual + item.getValue()));
+            separadas.put(item.getKey(), item.getValue());
+        }
+
+        Ativa ativa = new Ativa(UUID.randomUUID().toString(), Collections.unmodifiableMap(new TreeMap<>(quantidades)),
+                System.currentTimeMillis() + validade.toMillis());
+        ativas.put(ativa.id(), ativa);
+        vencimentos.agendar(ativa, ativa.expiraEm());
+        aGravar.add(ativa);
+        criadas.increment();
+        return reserva(ativa);
+    }
+
+    /**
+     * Tira a reserva das ativas e a apaga da tabela na transacao corrente, que deve baixar as
+     * quantidades devolvidas. Se a transacao for desfeita a reserva volta a valer.
+     *
+     * @return as quantidades reservadas por produto, ou {@code null} se a reserva nao existe ou ja expirou
+     */
+    public Map<Long, Integer> confirmar(String id) {
+        Ativa ativa;
+        gravacao.lock();
+        try {
+            ativa = ativas.remove(id);
+        } finally {
+            gravacao.unlock();
+        }
+        if (ativa == null) {
+            return null;
+        }
+        devolver(ativa.itens());
+        if (jdbcTemplate != null) {
+            jdbcTemplate.update(APAGAR, id);
+        }
+        aoTerminar(confirmada -> {
+            if (confirmada) {
+                confirmadas.increment();
+                return;
+            }
+            ativa.itens().forEach((produto, qtd) -> contador(produto).addAndGet(qtd));
+            ativas.put(ativa.id(), ativa);
+            // o vencimento original pode ter passado pela roda enquanto a reserva estava fora
+            vencimentos.agendar(ativa, ativa.expiraEm());
+            aGravar.add(ativa);
+        });
+        return ativa.itens();
+    }
+
+    /**
+     * @return {@code false} se a reserva nao existe ou ja expirou
+     */
+    public boolean liberar(String id) {
+        Ativa ativa = ativas.remove(id);
+        if (ativa == null) {
+            return false;
+        }
+        devolver(ativa.itens());
+        aApagar.add(id);
+        liberadas.increment();
+        return true;
+    }
+
+    /**
+     * Soma das reservas ativas do produto.
+     */
+    public int reservado(Long produto) {
+        AtomicInteger contador = reservado.get(produto);
+        return contador == null ? 0 : contador.get();
+    }
+
+    /**
+     * Quantidade reservada de cada um dos produtos; os que nao tem reserva ficam de fora.
+     */
+    public Map<Long, Integer> reservadas(Collection<Long> produtos) {
+        Map<Long, Integer> reservadas = new HashMap<>();
+        for (Long produto : produtos) {
+            int qtd = reservado(produto);
+            if (qtd > 0) {
+                reservadas.put(produto, qtd);
+            }
+        }
+        return reservadas;
+    }
+
+    @Scheduled(fixedRateString = "${estoque.reservas.tick-ms:1000}")
+    public void expirar() {
+        for (Ativa ativa : vencimentos.avancar(System.currentTimeMillis())) {
+            // confirmadas e liberadas continuam na roda ate o vencimento; aqui sao ignoradas
+            if (ativas.remove(ativa.id(), ativa)) {
+                devolver(ativa.itens());
+                aApagar.add(ativa.id());
+                expiradas.increment();
+            }
+        }
+    }
+
+    /**
+     * Grava em lote as reservas criadas e apaga as liberadas ou expiradas desde a ultima gravacao.
+     */
+    @Scheduled(fixedDelayString = "${estoque.reservas.gravacao-ms:500}")
+    @PreDestroy
+    public void gravar() {
+        if (jdbcTemplate == null) {
+            aGravar.clear();
+            aApagar.clear();
+            return;
+        }
+        gravacao.lock();
+        try {
+            List<Ativa> novas = new ArrayList<>();
+            for (Ativa ativa; (ativa = aGravar.poll()) != null; ) {
+                // criada e ja liberada ou confirmada antes desta gravacao: nao ha o que gravar
+                if (ativas.get(ativa.id()) == ativa) {
+                    novas.add(ativa);
+                }
+            }
+            List<String> apagadas = new ArrayList<>();
+            for (String id; (id = aApagar.poll()) != null; ) {
+                apagadas.add(id);
+            }
+            if (novas.isEmpty() && apagadas.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<Object[]> itens = new ArrayList<>();
+                    for (Ativa ativa : novas) {
+                        Timestamp expiraEm = new Timestamp(ativa.expiraEm());
+                        ativa.itens().forEach((produto, qtd) -> itens.add(new Object[]{ativa.id(), produto, qtd, expiraEm}));
+                    }
+                    if (!itens.isEmpty()) {
+                        jdbcTemplate.batchUpdate(GRAVAR, itens);
+                    }
+                    if (!apagadas.isEmpty()) {
+                        jdbcTemplate.batchUpdate(APAGAR, apagadas.stream().map(id -> new Object[]{id}).toList());
+                    }
+                });
+            } catch (RuntimeException e) {
+                // tenta de novo na proxima gravacao
+                log.warn("Falha ao gravar {} reservas e apagar {}: {}", novas.size(), apagadas.size(), e.getMessage());
+                aGravar.addAll(novas);
+                aApagar.addAll(apagadas);
+            }
+        } finally {
+            gravacao.unlock();
+        }
+    }
+
+    private AtomicInteger contador(Long produto) {
+        return reservado.computeIfAbsent(produto, id -> new AtomicInteger());
+    }
+
+    private void devolver(Map<Long, Integer> itens) {
+        itens.forEach((produto, qtd) -> reservado.get(produto).addAndGet(-qtd));
+    }
+
+    private static Reserva reserva(Ativa ativa) {
+        List<ItemPedido> itens = new ArrayList<>(ativa.itens().size());
+        ativa.itens().forEach((produto, qtd) -> {
+            ItemPedido item = new ItemPedido();
+            item.setId(produto);
+            item.setQtd(qtd);
+            itens.add(item);
+        });
+        return new Reserva(ativa.id(), itens, Instant.ofEpochMilli(ativa.expiraEm()));
+    }
+
+    // sem transacao ativa nao ha o que esperar: a confirmacao ja valeu
+    private static void aoTerminar(Consumer<Boolean> acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                acao.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    // comparada por identidade: a mesma reserva pode entrar mais de uma vez na roda
+    private static final class Ativa {
+
+        private final String id;
+        private final Map<Long, Integer> itens;
+        private final long expiraEm;
+
+        private Ativa(String id, Map<Long, Integer> itens, long expiraEm) {
+            this.id = id;
+            this.itens = itens;
+            this.expiraEm = expiraEm;
+        }
+
+        String id() {
+            return id;
+        }
+
+        Map<Long, Integer> itens() {
+            return itens;
+        }
+
+        long expiraEm() {
+            return expiraEm;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.estoque.service;
+
+import com.example.estoque.domain.ResumoEstoque;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Totais do estoque (produtos, valor total e produtos sem estoque) mantidos a cada alteracao, para
+ * que o resumo seja respondido sem consultar o catalogo. Guarda preco e quantidade de cada produto
+ * para calcular a diferenca que cada {@link ProdutoAlteradoEvent} causa nos totais.
+ *
+ * <p>A cada {@code estoque.resumo.reconciliacao-ms} os totais sao comparados com uma agregacao no
+ * banco. Antes da comparacao as baixas pendentes do ledger e dos armazens sao gravadas, ja que os
+ * eventos delas chegam aqui antes de {@code produto.qtd} mudar. Uma divergencia so recarrega tudo
+ * quando aparece em duas conferencias seguidas (alteracao feita fora da aplicacao, por exemplo);
+ * uma alteracao confirmada entre a agregacao e a leitura dos totais nao para os eventos com a
+ * recarga. Uma alteracao confirmada durante a recarga pode ser contada duas vezes; as proximas
+ * reconciliacoes corrigem.
+ */
+@Component
+@ConditionalOnProperty(prefix = "estoque.resumo", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ResumoDeEstoque {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumoDeEstoque.class);
+    private static final BigDecimal TOLERANCIA_MINIMA = new BigDecimal("0.01");
+    private static final BigDecimal TOLERANCIA_RELATIVA = new BigDecimal("1e-9");
+
+    private final ProdutoRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter divergencias;
+    // ausentes com estoque.ledger.enabled=false ou estoque.armazens.enabled=false
+    private final ObjectProvider<EstoqueLedger> ledger;
+    private final ObjectProvider<AlocadorDeEstoque> armazens;
+    // a conferencia anterior tambem divergiu
+    private volatile boolean divergiuAntes;
+
+    private final Map<Long, Linha> linhas = new ConcurrentHashMap<>();
+    // leitura: eventos aplicando diferencas; escrita: recarga completa
+    private final ReentrantReadWriteLock recarga = new ReentrantReadWriteLock();
+    private final Object totais = new Object();
+    private long produtos;
+    private BigDecimal valorTotal = BigDecimal.ZERO;
+    private long foraDeEstoque;
+
+    public ResumoDeEstoque(ProdutoRepository repository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry registry,
+                           ObjectProvider<EstoqueLedger> ledger,
+                           ObjectProvider<AlocadorDeEstoque> armazens) {
+        this.repository = repository;
+        this.ledger = ledger;
+        this.armazens = armazens;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.divergencias = Counter.builder("estoque.resumo.divergencias")
+                .description("Reconciliacoes em que os totais em memoria diferiam do banco em duas conferencias seguidas")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void carregar() {
+        recarga.writeLock().lock();
+        try {
+            linhas.clear();
+            synchronized (totais) {
+                produtos = 0;
+                valorTotal = BigDecimal.ZERO;
+                foraDeEstoque = 0;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<ProdutoEntity> todos = repository.percorrerTodos()) {
+                    todos.forEach(produto -> {
+                        Linha linha = new Linha(produto.getPreco(), qtd(produto.getQtd()));
+                        linhas.put(produto.getId(), linha);
+                        somar(null, linha);
+                    });
+                }
+            });
+        } finally {
+            recarga.writeLock().unlock();
+        }
+    }
+
+    public ResumoEstoque resumo() {
+        synchronized (totais) {
+            return new ResumoEstoque(produtos, valorTotal, foraDeEstoque);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${estoque.resumo.reconciliacao-ms:60000}",
+            initialDelayString = "${estoque.resumo.reconciliacao-ms:60000}")
+    public void reconciliar() {
+        ledger.ifAvailable(EstoqueLedger::flush);
+        armazens.ifAvailable(AlocadorDeEstoque::consolidar);
+        ResumoEstoque banco = repository.resumir();
+        ResumoEstoque memoria = resumo();
+        boolean divergente = banco.getProdutos() != memoria.getProdutos()
+                || banco.getForaDeEstoque() != memoria.getForaDeEstoque()
+                || valorDivergente(banco.getValorTotal(), memoria.getValorTotal());
+        if (divergente && !divergiuAntes) {
+            divergiuAntes = true;
+            log.debug("Resumo do estoque divergente do banco; conferindo de novo na proxima reconciliacao");
+        } else if (divergente) {
+            divergiuAntes = false;
+            divergencias.increment();
+            log.warn("Resumo do estoque divergente (memoria: {} produtos, {} sem estoque, valor {}; banco: {}, {}, {}); recarregando",
+                    memoria.getProdutos(), memoria.getForaDeEstoque(), memoria.getValorTotal(),
+                    banco.getProdutos(), banco.getForaDeEstoque(), banco.getValorTotal());
+            carregar();
+        } else {
+            divergiuAntes = false;
+        }
+    }
+
+    // a soma do banco e feita em double; a tolerancia cobre o arredondamento acumulado
+    private static boolean valorDivergente(BigDecimal banco, BigDecimal memoria) {
+        BigDecimal tolerancia = banco.abs().multiply(TOLERANCIA_RELATIVA).max(TOLERANCIA_MINIMA);
+        return banco.subtract(memoria).abs().compareTo(tolerancia) > 0;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void aoAlterarProduto(ProdutoAlteradoEvent evento) {
+        recarga.readLock().lock();
+        try {
+            switch (evento.getTipo()) {
+                case CADASTRO, ATUALIZACAO -> linhas.compute(evento.getId(), (id, anterior) -> {
+                    Linha nova = new Linha(evento.getProduto().getPreco(), qtd(evento.getQuantidade()));
+                    somar(anterior, nova);
+                    return nova;
+                });
+                case BAIXA -> linhas.computeIfPresent(evento.getId(), (id, anterior) -> {
+                    Linha nova = new Linha(anterior.preco, anterior.qtd - evento.getQuantidade());
+                    somar(anterior, nova);
+                    return nova;
+                });
+                case REMOCAO -> linhas.computeIfPresent(evento.getId(), (id, anterior) -> {
+                    somar(anterior, null);
+                    return null;
+                });
+            }
+        } finally {
+            recarga.readLock().unlock();
+        }
+    }
+
+    // troca a contribuicao de "anterior" pela de "nova" nos totais; null = produto ausente
+    private void somar(Linha anterior, Linha nova) {
+        synchronized (totais) {
+            if (anterior != null) {
+                produtos--;
+                valorTotal = valorTotal.subtract(anterior.valor());
+                foraDeEstoque -= anterior.qtd <= 0 ? 1 : 0;
+            }
+            if (nova != null) {
+                produtos++;
+                valorTotal = valorTotal.add(nova.valor());
+                foraDeEstoque += nova.qtd <= 0 ? 1 : 0;
+            }
+        }
+    }
+
+    private static int qtd(Integer qtd) {
+        return qtd == null ? 0 : qtd;
+    }
+
+    private record Linha(Double preco, int qtd) {
+
+        BigDecimal valor() {
+            return preco == null ? BigDecimal.ZERO : BigDecimal.valueOf(preco).multiply(BigDecimal.valueOf(qtd));
+        }
+    }
+}
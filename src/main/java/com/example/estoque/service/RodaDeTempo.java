@@ -0,0 +1,84 @@
+package com.example.estoque.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roda de tempo (hashed timing wheel): cada item agendado cai na posicao do tick em que vence,
+ * modulo o numero de posicoes, e cada {@link #avancar} percorre so as posicoes dos ticks que
+ * passaram. Agendar custa O(1) e a varredura por tick custa o numero de itens da posicao, em vez
+ * de uma tarefa agendada por item ou de uma consulta periodica por vencimento.
+ *
+ * <p>Um item pode vencer ate um tick depois do horario pedido. Nao ha cancelamento: quem agenda
+ * confere, ao receber o item vencido, se ele ainda vale.
+ */
+public class RodaDeTempo<T> {
+
+    private final long tickMillis;
+    private final Posicao<T>[] posicoes;
+    private final int mascara;
+    // ultimo tick ja percorrido; so muda com a trava da posicao desse tick
+    private volatile long processado;
+
+    @SuppressWarnings("unchecked")
+    public RodaDeTempo(long tickMillis, int quantidadePosicoes, long agoraMillis) {
+        if (tickMillis <= 0 || Integer.bitCount(quantidadePosicoes) != 1) {
+            throw new IllegalArgumentException("Tick deve ser positivo e o número de posições uma potência de 2");
+        }
+        this.tickMillis = tickMillis;
+        this.posicoes = new Posicao[quantidadePosicoes];
+        for (int i = 0; i < quantidadePosicoes; i++) {
+            posicoes[i] = new Posicao<>();
+        }
+        this.mascara = quantidadePosicoes - 1;
+        this.processado = agoraMillis / tickMillis;
+    }
+
+    public void agendar(T item, long venceEmMillis) {
+        // arredonda para cima: o item nunca sai antes do vencimento
+        long tick = Math.floorDiv(venceEmMillis + tickMillis - 1, tickMillis);
+        while (true) {
+            long alvo = Math.max(tick, processado + 1);
+            Posicao<T> posicao = posicoes[(int) (alvo & mascara)];
+            synchronized (posicao) {
+                // se a roda passou do alvo enquanto esperavamos a trava, o item esperaria uma volta inteira
+                if (alvo > processado) {
+                    posicao.itens.add(new Agendado<>(item, alvo));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Percorre os ticks ate {@code agoraMillis} e devolve os itens vencidos neles.
+     */
+    public List<T> avancar(long agoraMillis) {
+        long ate = agoraMillis / tickMillis;
+        List<T> vencidos = new ArrayList<>();
+        // depois de uma pausa maior que uma volta, basta percorrer cada posicao uma vez
+        long inicio = Math.max(processado + 1, ate - mascara);
+        for (long tick = inicio; tick <= ate; tick++) {
+            Posicao<T> posicao = posicoes[(int) (tick & mascara)];
+            long atual = tick;
+            synchronized (posicao) {
+                processado = atual;
+                posicao.itens.removeIf(agendado -> {
+                    if (agendado.tick > atual) {
+                        return false;
+                    }
+                    vencidos.add(agendado.item);
+                    return true;
+                });
+            }
+        }
+        return vencidos;
+    }
+
+    private static class Posicao<T> {
+        private final List<Agendado<T>> itens = new ArrayList<>();
+    }
+
+    private record Agendado<T>(T item, long tick) {
+    }
+}
@@ -0,0 +1,17 @@
+-- Esquema do perfil inicio-rapido, no lugar do ddl-auto=update: a subida so executa este script,
+-- sem comparar as entidades com o banco. Idempotente, para rodar em banco ja criado.
+-- Gerado a partir das entidades; InicioRapidoIntegrationTest valida com ddl-auto=validate.
+
+CREATE SEQUENCE IF NOT EXISTS produto_seq start with 1 increment by 50;
+CREATE TABLE IF NOT EXISTS estoque_armazem (qtd integer not null, produto_id bigint not null, armazem varchar(50) not null, primary key (produto_id, armazem));
+CREATE TABLE IF NOT EXISTS movimento_estoque (quantidade integer, id bigint generated by default as identity, produto_id bigint not null, registrado_em timestamp(6) with time zone not null, tipo enum ('AJUSTE','BAIXA','REMOCAO') not null, primary key (id));
+CREATE TABLE IF NOT EXISTS pedido_processado (processado_em timestamp(6) with time zone not null, chave varchar(100) not null, primary key (chave));
+CREATE TABLE IF NOT EXISTS produto (preco float(53), qtd integer, id bigint not null, versao bigint default 0 not null, descricao varchar(255), nome varchar(255), primary key (id), constraint uk_produto_nome unique (nome));
+CREATE TABLE IF NOT EXISTS reserva_estoque (qtd integer not null, expira_em timestamp(6) with time zone not null, produto_id bigint not null, reserva varchar(36) not null, primary key (produto_id, reserva));
+CREATE TABLE IF NOT EXISTS snapshot_estoque (id bigint generated by default as identity, tirado_em timestamp(6) with time zone not null, primary key (id));
+CREATE TABLE IF NOT EXISTS snapshot_estoque_item (qtd integer, produto_id bigint not null, snapshot_id bigint not null, ultimo_movimento bigint, primary key (produto_id, snapshot_id));
+CREATE INDEX IF NOT EXISTS ix_movimento_produto on movimento_estoque (produto_id, id);
+CREATE INDEX IF NOT EXISTS ix_pedido_processado_em on pedido_processado (processado_em);
+CREATE INDEX IF NOT EXISTS ix_reserva_expira_em on reserva_estoque (expira_em);
+CREATE INDEX IF NOT EXISTS ix_snapshot_tirado_em on snapshot_estoque (tirado_em);
+CREATE INDEX IF NOT EXISTS ix_snapshot_item_produto on snapshot_estoque_item (produto_id);
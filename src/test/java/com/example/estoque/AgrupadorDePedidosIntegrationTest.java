@@ -0,0 +1,134 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.AgrupadorDePedidos;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"estoque.agrupamento.enabled=true", "estoque.agrupamento.janela=5ms"})
+public class AgrupadorDePedidosIntegrationTest {
+
+    @Autowired
+    private AgrupadorDePedidos agrupador;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void testPedidosConcorrentesSaoAgrupadosSemVenderAlemDoEstoque() throws Exception {
+        Long id = salvar("Lapis Agrupado", 50);
+
+        int pedidos = 200;
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<String>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(32)) {
+            for (int i = 0; i < pedidos; i++) {
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    try {
+                        agrupador.atualizarEstoque(pedidoDe(List.of(id), 1));
+                        return null;
+                    } catch (ForaDeEstoqueException e) {
+                        return e.getMessage();
+                    }
+                }));
+            }
+            largada.countDown();
+        }
+
+        long aceitos = 0;
+        for (Future<String> resultado : resultados) {
+            String recusa = resultado.get();
+            if (recusa == null) {
+                aceitos++;
+            } else {
+                assertEquals("Produto Lapis Agrupado possui apenas: 0 em estoque", recusa);
+            }
+        }
+
+        assertEquals(50, aceitos);
+        assertEquals(0, produtoRepository.findById(id).orElseThrow().getQtd());
+        assertTrue(registry.get("estoque.agrupamento.pedidos-por-lote").summary().max() > 1);
+    }
+
+    @Test
+    public void testPedidoRecusadoNoLoteNaoBaixaNenhumItem() {
+        Long idBorracha = salvar("Borracha Agrupada", 10);
+        Long idCompasso = salvar("Compasso Agrupado", 1);
+
+        ForaDeEstoqueException recusa = assertThrows(ForaDeEstoqueException.class,
+                () -> agrupador.atualizarEstoque(pedidoDe(List.of(idBorracha, idCompasso), 2)));
+        RuntimeException inexistente = assertThrows(RuntimeException.class,
+                () -> agrupador.atualizarEstoque(pedidoDe(List.of(idBorracha, -1L), 1)));
+        assertDoesNotThrow(() -> agrupador.atualizarEstoque(pedidoDe(List.of(idBorracha, idBorracha), 3)));
+
+        assertEquals("Produto Compasso Agrupado possui apenas: 1 em estoque", recusa.getMessage());
+        assertEquals("Produto não encontrado com ID: -1", inexistente.getMessage());
+        assertEquals(4, produtoRepository.findById(idBorracha).orElseThrow().getQtd());
+        assertEquals(1, produtoRepository.findById(idCompasso).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testReenviosComAMesmaChaveBaixamUmaVez() throws Exception {
+        Long id = salvar("Regua Agrupada", 20);
+
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 16; i++) {
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    Pedido pedido = pedidoDe(List.of(id), 3);
+                    pedido.setChave("agrupado-regua");
+                    agrupador.atualizarEstoque(pedido);
+                    return null;
+                }));
+            }
+            largada.countDown();
+        }
+        for (Future<?> resultado : resultados) {
+            resultado.get();
+        }
+
+        assertEquals(17, produtoRepository.findById(id).orElseThrow().getQtd());
+        assertEquals(15, registry.get("estoque.pedidos").tag("resultado", "repetido").counter().count());
+    }
+
+    private Long salvar(String nome, int qtd) {
+        ProdutoEntity produto = new ProdutoEntity();
+        produto.setNome(nome);
+        produto.setQtd(qtd);
+        return produtoRepository.save(produto).getId();
+    }
+
+    private static Pedido pedidoDe(List<Long> ids, int qtd) {
+        List<ItemPedido> itens = new ArrayList<>();
+        for (Long id : ids) {
+            ItemPedido item = new ItemPedido();
+            item.setId(id);
+            item.setQtd(qtd);
+            itens.add(item);
+        }
+        Pedido pedido = new Pedido();
+        pedido.setItens(itens);
+        return pedido;
+    }
+}
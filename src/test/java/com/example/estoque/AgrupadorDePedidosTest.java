@@ -0,0 +1,85 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.AgrupadorDePedidos;
+import com.example.estoque.service.EstoqueLedger;
+import com.example.estoque.service.EstoqueMetricas;
+import com.example.estoque.service.PedidosProcessados;
+import com.example.estoque.service.ProdutoService;
+import com.example.estoque.service.ReservasDeEstoque;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AgrupadorDePedidosTest {
+
+    @Mock
+    private ProdutoService produtoService;
+
+    @Mock
+    private ProdutoRepository produtoRepository;
+
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AgrupadorDePedidos agrupador;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StaticListableBeanFactory opcionais = new StaticListableBeanFactory();
+        agrupador = new AgrupadorDePedidos(produtoService, produtoRepository, publisher, new EstoqueMetricas(registry),
+                transactionManager, registry, Duration.ofMillis(1), 16, Duration.ofSeconds(5),
+                opcionais.getBeanProvider(EstoqueLedger.class), opcionais.getBeanProvider(PedidosProcessados.class),
+                opcionais.getBeanProvider(ReservasDeEstoque.class));
+        agrupador.iniciar();
+    }
+
+    @Test
+    public void testErroNaThreadDoAgrupadorRecusaOsPedidosEmVezDePendura() {
+        when(produtoRepository.findByIdInOrderByIdAsc(any())).thenThrow(new StackOverflowError("teste"));
+
+        long inicio = System.nanoTime();
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> agrupador.atualizarEstoque(pedido()));
+        assertEquals("Agrupador de pedidos encerrado", e.getMessage());
+        assertTrue(System.nanoTime() - inicio < Duration.ofSeconds(5).toNanos());
+
+        // sem consumidor, os pedidos seguintes sao recusados na hora
+        assertThrows(IllegalStateException.class, () -> agrupador.atualizarEstoque(pedido()));
+    }
+
+    @Test
+    public void testPedidoDepoisDoEncerramentoERecusado() throws Exception {
+        agrupador.encerrar();
+
+        assertThrows(IllegalStateException.class, () -> agrupador.atualizarEstoque(pedido()));
+        verifyNoInteractions(produtoRepository);
+    }
+
+    private static Pedido pedido() {
+        ItemPedido item = new ItemPedido();
+        item.setId(1L);
+        item.setQtd(1);
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item));
+        return pedido;
+    }
+}
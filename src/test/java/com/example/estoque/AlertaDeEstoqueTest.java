@@ -0,0 +1,111 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.AlertaEstoque;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.AlertaDeEstoque;
+import com.example.estoque.service.AlocadorDeEstoque;
+import com.example.estoque.service.EstoqueLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+public class AlertaDeEstoqueTest {
+
+    @Mock
+    private ProdutoRepository produtoRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AlertaDeEstoque alertas;
+
+    private final BlockingQueue<AlertaEstoque> recebidos = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(produtoRepository.percorrerTodos()).thenReturn(Stream.of(
+                new ProdutoEntity(1L, "Caneta", null, 2.0, 12),
+                new ProdutoEntity(2L, "Cola", null, 5.0, 3)));
+        StaticListableBeanFactory opcionais = new StaticListableBeanFactory();
+        alertas = new AlertaDeEstoque(produtoRepository, transactionManager, new SimpleMeterRegistry(), 10,
+                opcionais.getBeanProvider(EstoqueLedger.class), opcionais.getBeanProvider(AlocadorDeEstoque.class));
+        alertas.carregar();
+        alertas.adicionarOuvinte(recebidos::add);
+    }
+
+    @Test
+    public void testCargaInicialNaoAvisaMasListaQuemEstaAbaixo() throws Exception {
+        assertEquals(1, alertas.abaixoDoLimite().size());
+        assertEquals("Cola", alertas.abaixoDoLimite().get(0).getNome());
+        assertNull(recebidos.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testAvisaSoNoMomentoEmQueCruzaOLimite() throws Exception {
+        alertas.aoAlterarProduto(ProdutoAlteradoEvent.baixa(1L, 2));
+        assertNull(recebidos.poll(100, TimeUnit.MILLISECONDS));
+
+        alertas.aoAlterarProduto(ProdutoAlteradoEvent.baixa(1L, 1));
+        AlertaEstoque alerta = recebidos.poll(1, TimeUnit.SECONDS);
+        assertEquals(AlertaEstoque.Tipo.ABAIXO_DO_LIMITE, alerta.getTipo());
+        assertEquals(9, alerta.getQtd());
+        assertEquals(10, alerta.getLimite());
+
+        alertas.aoAlterarProduto(ProdutoAlteradoEvent.baixa(1L, 1));
+        assertNull(recebidos.poll(100, TimeUnit.MILLISECONDS));
+
+        alertas.aoAlterarProduto(ProdutoAlteradoEvent.atualizacao(new ProdutoEntity(1L, "Caneta", null, 2.0, 40)));
+        assertEquals(AlertaEstoque.Tipo.NORMALIZADO, recebidos.poll(1, TimeUnit.SECONDS).getTipo());
+        assertEquals(1, alertas.abaixoDoLimite().size());
+    }
+
+    @Test
+    public void testLimitePorProdutoERemocao() throws Exception {
+        alertas.definirLimite(2L, 2);
+        assertEquals(AlertaEstoque.Tipo.NORMALIZADO, recebidos.poll(1, TimeUnit.SECONDS).getTipo());
+
+        alertas.definirLimite(1L, 20);
+        assertEquals("Caneta", recebidos.poll(1, TimeUnit.SECONDS).getNome());
+
+        alertas.aoAlterarProduto(ProdutoAlteradoEvent.remocao(1L));
+        assertTrue(alertas.abaixoDoLimite().isEmpty());
+        assertEquals(10, alertas.limite(1L));
+    }
+
+    @Test
+    public void testConferenciaCorrigeQuemDivergeDuasVezesSeguidas() throws Exception {
+        // a atualizacao chegou depois da baixa que foi confirmada depois dela: memoria 8, banco 5
+        alertas.aoAlterarProduto(ProdutoAlteradoEvent.atualizacao(new ProdutoEntity(1L, "Caneta", null, 2.0, 8)));
+        assertEquals(8, recebidos.poll(1, TimeUnit.SECONDS).getQtd());
+        when(produtoRepository.percorrerTodos()).thenAnswer(chamada -> Stream.of(
+                new ProdutoEntity(1L, "Caneta", null, 2.0, 5),
+                new ProdutoEntity(2L, "Cola", null, 5.0, 3)));
+
+        alertas.reconciliar();
+        assertEquals(8, qtdAbaixoDoLimite(1L));
+
+        alertas.reconciliar();
+        assertEquals(5, qtdAbaixoDoLimite(1L));
+        assertEquals(3, qtdAbaixoDoLimite(2L));
+    }
+
+    private int qtdAbaixoDoLimite(Long id) {
+        return alertas.abaixoDoLimite().stream().filter(alerta -> id.equals(alerta.getId()))
+                .findFirst().orElseThrow().getQtd();
+    }
+}
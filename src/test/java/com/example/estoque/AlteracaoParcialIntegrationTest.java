@@ -0,0 +1,163 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.ProdutoService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class AlteracaoParcialIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void testPatchAlteraSoOsCamposEnviadosEmUmComando() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Estojo", "Zíper", 18.0, 6)).getId();
+        double comandosAntes = comandos("/produtos/{id}");
+
+        mockMvc.perform(patch("/produtos/" + id).contentType(MediaType.APPLICATION_JSON).content("{\"preco\":19.9}"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.preco").value(19.9))
+                .andExpect(jsonPath("$.descricao").value("Zíper"))
+                .andExpect(jsonPath("$.qtd").value(6));
+
+        // o UPDATE e o lote do historico de movimentos
+        assertEquals(2, comandos("/produtos/{id}") - comandosAntes);
+        ProdutoEntity gravado = produtoRepository.findById(id).orElseThrow();
+        assertEquals("Parcial Estojo", gravado.getNome());
+        assertEquals(19.9, gravado.getPreco());
+        assertEquals(1L, gravado.getVersao());
+        assertEquals(19.9, produtoService.buscarProdutoPorId(id).getPreco());
+
+        mockMvc.perform(patch("/produtos/" + id).contentType(MediaType.APPLICATION_JSON).content("{\"preco\":-1}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/produtos/" + id).contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/produtos/999999").contentType(MediaType.APPLICATION_JSON).content("{\"qtd\":1}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testPatchEmMassaAgrupaPorCamposEmLotes() throws Exception {
+        Long borracha = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Borracha", null, 1.0, 10)).getId();
+        Long apontador = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Apontador", null, 2.0, 20)).getId();
+        Long cola = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Cola", null, 3.0, 30)).getId();
+        double comandosAntes = comandos("/produtos");
+
+        String alteracoes = "[{\"id\":" + borracha + ",\"preco\":1.5},"
+                + "{\"id\":" + apontador + ",\"preco\":2.5},"
+                + "{\"id\":" + cola + ",\"qtd\":31,\"descricao\":\"Branca\"},"
+                + "{\"id\":999999,\"preco\":9.0}]";
+        mockMvc.perform(patch("/produtos").contentType(MediaType.APPLICATION_JSON).content(alteracoes))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.produtosAlterados").value(3))
+                .andExpect(jsonPath("$.naoEncontrados[0]").value(999999));
+
+        // dois lotes (preco; descricao e qtd), a leitura final e o lote do historico de movimentos
+        assertEquals(4, comandos("/produtos") - comandosAntes);
+        assertEquals(1.5, produtoRepository.findById(borracha).orElseThrow().getPreco());
+        assertEquals(10, produtoRepository.findById(borracha).orElseThrow().getQtd());
+        assertEquals(2.5, produtoRepository.findById(apontador).orElseThrow().getPreco());
+        ProdutoEntity colaGravada = produtoRepository.findById(cola).orElseThrow();
+        assertEquals("Branca", colaGravada.getDescricao());
+        assertEquals(31, colaGravada.getQtd());
+        assertEquals(3.0, colaGravada.getPreco());
+    }
+
+    @Test
+    public void testPatchEmMassaComNomeRepetidoNaoGravaNada() throws Exception {
+        Long lapis = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Lápis", null, 1.0, 5)).getId();
+        Long caneta = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Caneta", null, 2.0, 5)).getId();
+
+        mockMvc.perform(patch("/produtos").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":" + lapis + ",\"preco\":9.0},{\"id\":" + caneta + ",\"nome\":\"Parcial Lápis\"}]"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(patch("/produtos").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":" + lapis + ",\"preco\":9.0},{\"preco\":1.0}]"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(1.0, produtoRepository.findById(lapis).orElseThrow().getPreco());
+        assertEquals("Parcial Caneta", produtoRepository.findById(caneta).orElseThrow().getNome());
+    }
+
+    @Test
+    public void testPatchComIfMatchSoGravaNaVersaoInformada() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Régua", null, 4.0, 8)).getId();
+
+        mockMvc.perform(patch("/produtos/" + id).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"preco\":4.5}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+        // a versao 0 ja foi usada: quem leu antes da alteracao acima nao sobrescreve
+        mockMvc.perform(patch("/produtos/" + id).header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"preco\":5.0}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(patch("/produtos/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"preco\":5.0,\"versao\":0}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(patch("/produtos/" + id).header("If-Match", "\"0\", \"1\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"qtd\":9}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""));
+        mockMvc.perform(patch("/produtos/999999").header("If-Match", "\"0\"")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"qtd\":1}"))
+                .andExpect(status().isNotFound());
+
+        ProdutoEntity gravado = produtoRepository.findById(id).orElseThrow();
+        assertEquals(4.5, gravado.getPreco());
+        assertEquals(9, gravado.getQtd());
+    }
+
+    @Test
+    public void testPatchEmMassaComVersaoDesatualizadaNaoGravaNada() throws Exception {
+        Long caderno = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Caderno", null, 10.0, 5)).getId();
+        Long pasta = produtoService.criarProduto(new ProdutoEntity(null, "Parcial Pasta", null, 6.0, 5)).getId();
+        produtoService.alterarProduto(pasta, new AlteracaoProduto(null, null, null, 6.5, null));
+
+        mockMvc.perform(patch("/produtos").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":" + caderno + ",\"preco\":11.0,\"versao\":0},"
+                                + "{\"id\":" + pasta + ",\"preco\":7.0,\"versao\":0}]"))
+                .andExpect(status().isPreconditionFailed());
+
+        assertEquals(10.0, produtoRepository.findById(caderno).orElseThrow().getPreco());
+        assertEquals(6.5, produtoRepository.findById(pasta).orElseThrow().getPreco());
+
+        mockMvc.perform(patch("/produtos").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":" + caderno + ",\"preco\":11.0,\"versao\":0},"
+                                + "{\"id\":" + pasta + ",\"preco\":7.0,\"versao\":1}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.produtosAlterados").value(2));
+        assertEquals(7.0, produtoRepository.findById(pasta).orElseThrow().getPreco());
+    }
+
+    private double comandos(String uri) {
+        DistributionSummary resumo = registry.find("estoque.requisicao.comandos-sql")
+                .tags("method", "PATCH", "uri", uri)
+                .summary();
+        return resumo == null ? 0 : resumo.totalAmount();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.service.AlocadorDeEstoque;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {"estoque.armazens.enabled=true", "estoque.armazens.nomes=CD-SP,CD-RJ,CD-MG",
+        "estoque.armazens.proximidade.rj=CD-RJ,CD-MG", "estoque.armazens.consolidacao-ms=3600000"})
+@AutoConfigureMockMvc
+public class ArmazensIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private AlocadorDeEstoque alocador;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testPedidoSaiDoArmazemMaisProximoDaRegiao() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Armazem Cadeira", null, 300.0, 10)).getId();
+        mockMvc.perform(get("/estoque/armazens/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].armazem").value("CD-SP"))
+                .andExpect(jsonPath("$[0].qtd").value(10));
+
+        repor(id, "[{\"armazem\":\"CD-RJ\",\"qtd\":5}]").andExpect(status().isOk());
+        repor(id, "[{\"armazem\":\"CD-XX\",\"qtd\":5}]").andExpect(status().isBadRequest());
+        repor(999999L, "[{\"armazem\":\"CD-RJ\",\"qtd\":5}]").andExpect(status().isNotFound());
+        // produto.qtd so recebe a reposicao na consolidacao
+        assertEquals(10, produtoService.buscarProdutoPorId(id).getQtd());
+        alocador.consolidar();
+        assertEquals(15, produtoService.buscarProdutoPorId(id).getQtd());
+
+        baixar(id, 7, "rj").andExpect(status().isOk());
+        mockMvc.perform(get("/estoque/armazens/" + id))
+                .andExpect(jsonPath("$[0].armazem").value("CD-RJ"))
+                .andExpect(jsonPath("$[0].qtd").value(0))
+                .andExpect(jsonPath("$[1].armazem").value("CD-SP"))
+                .andExpect(jsonPath("$[1].qtd").value(8));
+        baixar(id, 9, null).andExpect(status().isBadRequest());
+
+        alocador.consolidar();
+        assertEquals(8, produtoService.buscarProdutoPorId(id).getQtd());
+    }
+
+    @Test
+    public void testAlteracaoDaQuantidadeTiraPrimeiroDoArmazemPadrao() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Armazem Mesa", null, 500.0, 4)).getId();
+        repor(id, "[{\"armazem\":\"CD-MG\",\"qtd\":6}]").andExpect(status().isOk());
+        alocador.consolidar();
+
+        produtoService.alterarProduto(id, new AlteracaoProduto(null, null, null, null, 3));
+        mockMvc.perform(get("/estoque/armazens/" + id))
+                .andExpect(jsonPath("$[0].armazem").value("CD-MG"))
+                .andExpect(jsonPath("$[0].qtd").value(3))
+                .andExpect(jsonPath("$[1].armazem").value("CD-SP"))
+                .andExpect(jsonPath("$[1].qtd").value(0));
+
+        produtoService.alterarProduto(id, new AlteracaoProduto(null, null, null, null, 5));
+        mockMvc.perform(get("/estoque/armazens/" + id))
+                .andExpect(jsonPath("$[1].armazem").value("CD-SP"))
+                .andExpect(jsonPath("$[1].qtd").value(2));
+
+        produtoService.deletarProduto(id);
+        mockMvc.perform(get("/estoque/armazens/" + id)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testReducaoAbaixoDasBaixasPendentesERecusada() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Armazem Estante", null, 200.0, 10)).getId();
+        baixar(id, 8, null).andExpect(status().isOk());
+
+        // a baixa ainda nao chegou a produto.qtd: 3 menos as 8 baixadas deixaria o armazem com -5,
+        // e a recusa desfaz tambem a alteracao do produto
+        mockMvc.perform(patch("/produtos/" + id).contentType(MediaType.APPLICATION_JSON).content("{\"qtd\":3,\"preco\":1.0}"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(put("/produtos/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"nome\":\"Armazem Estante\",\"preco\":1.0,\"qtd\":3}"))
+                .andExpect(status().isConflict());
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT qtd FROM produto WHERE id = ?", Integer.class, id));
+        assertEquals(200.0, jdbcTemplate.queryForObject("SELECT preco FROM produto WHERE id = ?", Double.class, id));
+        mockMvc.perform(get("/estoque/armazens/" + id))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].armazem").value("CD-SP"))
+                .andExpect(jsonPath("$[0].qtd").value(2));
+
+        alocador.consolidar();
+        assertEquals(2, produtoService.buscarProdutoPorId(id).getQtd());
+
+        // uma reducao que cabe nos armazens desconta a baixa pendente, e a consolidacao nao a conta de novo
+        baixar(id, 1, null).andExpect(status().isOk());
+        produtoService.alterarProduto(id, new AlteracaoProduto(null, null, null, null, 2));
+        alocador.consolidar();
+        alocador.consolidar();
+        assertEquals(1, produtoService.buscarProdutoPorId(id).getQtd());
+        mockMvc.perform(get("/estoque/armazens/" + id)).andExpect(jsonPath("$[0].qtd").value(1));
+    }
+
+    private ResultActions repor(Long id, String corpo) throws Exception {
+        return mockMvc.perform(put("/estoque/armazens/" + id).contentType(MediaType.APPLICATION_JSON).content(corpo));
+    }
+
+    private ResultActions baixar(Long id, int qtd, String regiao) throws Exception {
+        return mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"regiao\":" + (regiao == null ? "null" : "\"" + regiao + "\"")
+                        + ",\"itens\":[{\"id\":" + id + ",\"qtd\":" + qtd + "}]}"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.repository.ProdutoRepositoryArquivo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "estoque.arquivo.caminho=target/arquivo-integracao/produtos.dat")
+@ActiveProfiles("arquivo")
+public class ArquivoIntegrationTest {
+
+    @Autowired
+    private ApplicationContext contexto;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    public void testAplicacaoSobeSemBancoEAtendePedidos() {
+        assertInstanceOf(ProdutoRepositoryArquivo.class, produtoRepository);
+        assertTrue(contexto.getBeansOfType(DataSource.class).isEmpty());
+
+        String nome = "Arquivo Clips " + System.nanoTime();
+        rest.postForEntity("/estoque", new Produto(nome, "Caixa", 2.0, 10), String.class);
+        Long id = produtoRepository.findByNome(nome).getId();
+
+        String pedido = "{\"itens\":[{\"id\":" + id + ",\"qtd\":4}]}";
+        assertEquals("Estoque Atualizado", rest.postForEntity("/estoque/atualizar", json(pedido), String.class).getBody());
+        assertEquals(6, rest.getForObject("/estoque/" + nome, Produto.class).getQtd());
+    }
+
+    private static HttpEntity<String> json(String corpo) {
+        HttpHeaders cabecalhos = new HttpHeaders();
+        cabecalhos.setContentType(MediaType.APPLICATION_JSON);
+        return new HttpEntity<>(corpo, cabecalhos);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.estoque;
+
+import com.example.estoque.controller.BuscaController;
+import com.example.estoque.domain.ProdutoEncontrado;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.BuscaDeProdutos;
+import com.example.estoque.service.IndiceDeBusca;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class BuscaDeProdutosTest {
+
+    @Mock
+    private ProdutoRepository produtoRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BuscaDeProdutos busca;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(produtoRepository.percorrerTodos()).thenReturn(Stream.of(
+                new ProdutoEntity(1L, "Caneta Azul", "Esferográfica 0.7", 2.0, 12),
+                new ProdutoEntity(2L, "Caderno", "Capa dura, 96 folhas", 15.0, 3),
+                new ProdutoEntity(3L, "Lápis de cor", "Caixa com 12 cores, azul e vermelho", 9.0, 5),
+                new ProdutoEntity(4L, "Canetinha hidrográfica", "Estojo com 24", 20.0, 8)));
+        busca = new BuscaDeProdutos(produtoRepository, transactionManager, new SimpleMeterRegistry(), 1024);
+        busca.carregar();
+    }
+
+    @Test
+    public void testPrefixoIgnoraAcentosEOrdenaPorRelevancia() {
+        IndiceDeBusca.Resultado resultado = busca.buscar("can", 0, 10);
+
+        assertEquals(2, resultado.total());
+        // mesma pontuacao: nome mais curto primeiro
+        assertEquals(List.of(1L, 4L), ids(resultado));
+
+        resultado = busca.buscar("AZUL", 0, 10);
+        assertEquals(List.of(1L, 3L), ids(resultado));
+        assertTrue(resultado.itens().get(0).getPontuacao() > resultado.itens().get(1).getPontuacao());
+
+        assertEquals(List.of(3L), ids(busca.buscar("lapis cor", 0, 10)));
+        assertEquals(List.of(1L), ids(busca.buscar("esferografica", 0, 10)));
+        assertEquals(0, busca.buscar("caneta vermelha", 0, 10).total());
+        assertEquals(0, busca.buscar("  ", 0, 10).total());
+    }
+
+    @Test
+    public void testPaginacaoMantemOTotal() {
+        IndiceDeBusca.Resultado primeira = busca.buscar("c", 0, 2);
+        IndiceDeBusca.Resultado segunda = busca.buscar("c", 2, 2);
+
+        assertEquals(4, primeira.total());
+        assertEquals(4, segunda.total());
+        assertEquals(2, primeira.itens().size());
+        assertEquals(2, segunda.itens().size());
+        assertTrue(primeira.itens().stream().map(ProdutoEncontrado::getId).noneMatch(ids(segunda)::contains));
+        assertTrue(busca.buscar("c", 4, 2).itens().isEmpty());
+    }
+
+    @Test
+    public void testAlteracoesAtualizamOIndice() {
+        busca.aoAlterarProduto(ProdutoAlteradoEvent.atualizacao(new ProdutoEntity(2L, "Agenda", "Capa mole", 15.0, 3)));
+        busca.aoAlterarProduto(ProdutoAlteradoEvent.cadastro(new ProdutoEntity(5L, "Caderno universitário", null, 25.0, 1)));
+        busca.aoAlterarProduto(ProdutoAlteradoEvent.remocao(1L));
+        busca.aoAlterarProduto(ProdutoAlteradoEvent.baixa(4L, 1));
+
+        assertEquals(List.of(5L), ids(busca.buscar("cad", 0, 10)));
+        assertEquals(List.of(2L), ids(busca.buscar("agen", 0, 10)));
+        assertEquals(0, busca.buscar("dura", 0, 10).total());
+        assertEquals(List.of(3L), ids(busca.buscar("azul", 0, 10)));
+        assertEquals(List.of(4L), ids(busca.buscar("canet", 0, 10)));
+    }
+
+    @Test
+    public void testEndpointPaginaComTotalELink() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new BuscaController(busca)).build();
+
+        mockMvc.perform(get("/produtos/busca").param("q", "c").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "4"))
+                .andExpect(header().string("Link", containsString("page=1")))
+                .andExpect(jsonPath("$.length()").value(3));
+
+        mockMvc.perform(get("/produtos/busca").param("q", "c").param("limit", "3").param("page", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    private static List<Long> ids(IndiceDeBusca.Resultado resultado) {
+        return resultado.itens().stream().map(ProdutoEncontrado::getId).toList();
+    }
+}
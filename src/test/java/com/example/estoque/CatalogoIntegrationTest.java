@@ -0,0 +1,174 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.ProdutoService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CatalogoIntegrationTest {
+
+    private static final TypeReference<List<Produto>> LISTA = new TypeReference<>() {};
+
+    @LocalServerPort
+    private int porta;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    private final HttpClient cliente = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testCatalogoComEtagAcompanhaAsAlteracoes() throws Exception {
+        produtoService.cadastrarProduto(new Produto("Catalogo Lapis", "Grafite", 1.5, 30));
+        Long id = produtoRepository.findByNome("Catalogo Lapis").getId();
+
+        HttpResponse<byte[]> resposta = listarAte(null, r -> qtd(r) == 30);
+        assertEquals(200, resposta.statusCode());
+        assertTrue(resposta.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+        String etag = resposta.headers().firstValue("ETag").orElseThrow();
+        assertEquals(30, qtd(objectMapper.readValue(resposta.body(), LISTA), "Catalogo Lapis"));
+
+        resposta = listar(etag, null);
+        assertEquals(304, resposta.statusCode());
+        assertEquals(0, resposta.body().length);
+
+        // a gravacao aparece na versao montada pela tarefa agendada, com outro ETag; ate la, 304
+        produtoService.alterarProduto(id, new AlteracaoProduto(null, null, null, null, 12));
+        resposta = listarAte(etag, r -> r.statusCode() == 200);
+        assertNotEquals(etag, resposta.headers().firstValue("ETag").orElseThrow());
+        assertEquals(12, qtd(objectMapper.readValue(resposta.body(), LISTA), "Catalogo Lapis"));
+
+        produtoService.deletarProduto(id);
+        assertEquals(-1, qtd(objectMapper.readValue(listarAte(null, r -> qtd(r) == -1).body(), LISTA), "Catalogo Lapis"));
+    }
+
+    @Test
+    public void testVarianteGzipTemOutroEtag() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            produtoService.cadastrarProduto(new Produto("Catalogo Caderno " + i, "Capa dura", 9.9, i));
+        }
+
+        HttpResponse<byte[]> simples = listarAte(null, r -> qtd(r, "Catalogo Caderno 49") == 49);
+        HttpResponse<byte[]> comprimida = listar(null, "br;q=1, gzip;q=0.8");
+        assertEquals("gzip", comprimida.headers().firstValue("Content-Encoding").orElseThrow());
+        String etag = comprimida.headers().firstValue("ETag").orElseThrow();
+        assertNotEquals(simples.headers().firstValue("ETag").orElseThrow(), etag);
+        try (GZIPInputStream corpo = new GZIPInputStream(new ByteArrayInputStream(comprimida.body()))) {
+            assertArrayEquals(simples.body(), corpo.readAllBytes());
+        }
+        assertArrayEquals(simples.body(), membroUnico(comprimida.body()));
+        assertEquals(304, listar(etag, "gzip").statusCode());
+        assertTrue(listar(null, "gzip;q=0").headers().firstValue("Content-Encoding").isEmpty());
+    }
+
+    @Test
+    public void testPaginacaoContinuaForaDoCatalogo() throws Exception {
+        produtoService.cadastrarProduto(new Produto("Catalogo Borracha", "Branca", 2.0, 8));
+
+        HttpResponse<byte[]> todos = cliente.send(HttpRequest.newBuilder(URI.create("http://localhost:" + porta + "/estoque"))
+                .header("Accept", "*/*").build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertTrue(todos.headers().firstValue("ETag").isPresent());
+
+        HttpResponse<byte[]> pagina = cliente.send(HttpRequest.newBuilder(URI.create("http://localhost:" + porta + "/estoque?limit=1"))
+                .header("Accept", "application/json").build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(1, objectMapper.readValue(pagina.body(), LISTA).size());
+        assertTrue(pagina.headers().firstValue("ETag").isEmpty());
+        assertTrue(pagina.headers().firstValue("Link").isPresent());
+    }
+
+    // como um decodificador que le so o primeiro membro: o corpo inteiro tem que estar nele
+    private static byte[] membroUnico(byte[] gzip) throws Exception {
+        assertEquals(0x1f, gzip[0] & 0xff);
+        assertEquals(0x8b, gzip[1] & 0xff);
+        assertEquals(0, gzip[3], "cabecalho sem campos opcionais");
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(gzip, 10, gzip.length - 10);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!inflater.finished()) {
+            int lidos = inflater.inflate(buffer);
+            assertFalse(lidos == 0 && inflater.needsInput(), "fluxo deflate sem bloco final");
+            json.write(buffer, 0, lidos);
+        }
+        // depois do bloco final, so o rodape do membro
+        assertEquals(8, inflater.getRemaining());
+        inflater.end();
+        ByteBuffer rodape = ByteBuffer.wrap(gzip, gzip.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(json.toByteArray());
+        assertEquals((int) crc.getValue(), rodape.getInt());
+        assertEquals(json.size(), rodape.getInt());
+        return json.toByteArray();
+    }
+
+    private HttpResponse<byte[]> listar(String etag, String codificacoes) throws Exception {
+        HttpRequest.Builder requisicao = HttpRequest.newBuilder(URI.create("http://localhost:" + porta + "/estoque"));
+        if (etag != null) {
+            requisicao.header("If-None-Match", etag);
+        }
+        if (codificacoes != null) {
+            requisicao.header("Accept-Encoding", codificacoes);
+        }
+        return cliente.send(requisicao.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    // a versao publicada acompanha as gravacoes a cada estoque.catalogo.reconstrucao-ms
+    private HttpResponse<byte[]> listarAte(String etag, Predicate<HttpResponse<byte[]>> condicao) throws Exception {
+        long prazo = System.currentTimeMillis() + 5000;
+        HttpResponse<byte[]> resposta = listar(etag, null);
+        while (!condicao.test(resposta) && System.currentTimeMillis() < prazo) {
+            Thread.sleep(20);
+            resposta = listar(etag, null);
+        }
+        assertTrue(condicao.test(resposta), "catalogo nao acompanhou a gravacao");
+        return resposta;
+    }
+
+    private int qtd(HttpResponse<byte[]> resposta) {
+        return qtd(resposta, "Catalogo Lapis");
+    }
+
+    private int qtd(HttpResponse<byte[]> resposta, String nome) {
+        if (resposta.statusCode() != 200) {
+            return -2;
+        }
+        try {
+            return qtd(objectMapper.readValue(resposta.body(), LISTA), nome);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int qtd(List<Produto> produtos, String nome) {
+        return produtos.stream().filter(p -> nome.equals(p.getNome())).mapToInt(Produto::getQtd).findFirst().orElse(-1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class EstoqueConcorrenciaIntegrationTest {
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Test
+    public void testPedidosConcorrentesNaoVendemAlemDoEstoque() throws Exception {
+        ProdutoEntity produto = new ProdutoEntity();
+        produto.setNome("Agenda Concorrente");
+        produto.setDescricao("Item disputado");
+        produto.setPreco(12.0);
+        produto.setQtd(50);
+        Long id = produtoRepository.save(produto).getId();
+
+        int pedidos = 200;
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<Boolean>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < pedidos; i++) {
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    try {
+                        produtoService.atualizarEstoque(pedidoDe(id, 1));
+                        return true;
+                    } catch (ForaDeEstoqueException e) {
+                        return false;
+                    }
+                }));
+            }
+            largada.countDown();
+        }
+
+        long aceitos = 0;
+        for (Future<Boolean> resultado : resultados) {
+            if (resultado.get()) {
+                aceitos++;
+            }
+        }
+
+        assertEquals(50, aceitos);
+        assertEquals(0, produtoRepository.findById(id).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testPedidoComItemSemEstoqueNaoBaixaNenhumItem() {
+        ProdutoEntity caneta = new ProdutoEntity();
+        caneta.setNome("Caneta Atomica");
+        caneta.setQtd(10);
+        Long idCaneta = produtoRepository.save(caneta).getId();
+
+        ProdutoEntity cola = new ProdutoEntity();
+        cola.setNome("Cola Atomica");
+        cola.setQtd(1);
+        Long idCola = produtoRepository.save(cola).getId();
+
+        Pedido pedido = pedidoDe(idCaneta, 4);
+        pedido.getItens().add(pedidoDe(idCola, 2).getItens().get(0));
+
+        ForaDeEstoqueException e = assertThrows(ForaDeEstoqueException.class,
+                () -> produtoService.atualizarEstoque(pedido));
+
+        assertTrue(e.getMessage().contains("Produto Cola Atomica possui apenas: 1 em estoque"));
+        assertEquals(10, produtoRepository.findById(idCaneta).orElseThrow().getQtd());
+        assertEquals(1, produtoRepository.findById(idCola).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testCadastrosConcorrentesDoMesmoNomeGeramUmUnicoProduto() throws Exception {
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 50; i++) {
+                int qtd = i;
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    produtoService.cadastrarProduto(new Produto("Clipe Concorrente", "Niquelado", 3.0, qtd));
+                    return null;
+                }));
+            }
+            largada.countDown();
+        }
+        for (Future<?> resultado : resultados) {
+            resultado.get();
+        }
+
+        ProdutoEntity produto = produtoRepository.findByNome("Clipe Concorrente");
+        assertNotNull(produto);
+        assertEquals("Niquelado", produto.getDescricao());
+    }
+
+    private Pedido pedidoDe(Long id, int qtd) {
+        ItemPedido item = new ItemPedido();
+        item.setId(id);
+        item.setQtd(qtd);
+
+        Pedido pedido = new Pedido();
+        pedido.setItens(new ArrayList<>(List.of(item)));
+        return pedido;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.estoque;
+
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.CatalogoDeProdutos;
+import com.example.estoque.service.EstoqueLedger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class EstoqueLedgerTest {
+
+    @Mock
+    private ProdutoRepository produtoRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path pasta;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(produtoRepository.findAll()).thenReturn(List.of(produto(1L, "Caneta", 10), produto(2L, "Cola", 1)));
+    }
+
+    @Test
+    public void testBaixaEmMemoriaEGravaEmLoteNoFlush() throws Exception {
+        EstoqueLedger ledger = novoLedger();
+
+        ledger.baixar(Map.of(1L, 3));
+        ledger.baixar(Map.of(1L, 2, 2L, 1));
+
+        verify(produtoRepository, never()).aplicarBaixas(anyMap());
+
+        ledger.flush();
+
+        verify(produtoRepository).aplicarBaixas(Map.of(1L, 5, 2L, 1));
+    }
+
+    @Test
+    public void testPedidoSemEstoqueNaoBaixaNenhumItem() throws Exception {
+        EstoqueLedger ledger = novoLedger();
+
+        ForaDeEstoqueException e = assertThrows(ForaDeEstoqueException.class,
+                () -> ledger.baixar(new TreeMap<>(Map.of(1L, 4, 2L, 2))));
+
+        assertTrue(e.getMessage().contains("Produto Cola possui apenas: 1 em estoque"));
+        ledger.baixar(Map.of(1L, 10));
+        assertThrows(ForaDeEstoqueException.class, () -> ledger.baixar(Map.of(1L, 1)));
+    }
+
+    @Test
+    public void testAtualizacaoDoProdutoConsideraBaixasPendentes() throws Exception {
+        EstoqueLedger ledger = novoLedger();
+
+        ledger.baixar(Map.of(1L, 4));
+        ledger.aoAlterarProduto(ProdutoAlteradoEvent.atualizacao(produto(1L, "Caneta", 20)));
+
+        // o flush ainda vai subtrair as 4 unidades dos 20 gravados no banco
+        ledger.baixar(Map.of(1L, 16));
+        assertThrows(ForaDeEstoqueException.class, () -> ledger.baixar(Map.of(1L, 1)));
+    }
+
+    @Test
+    public void testBaixaNaoUsaOQueEstaReservado() throws Exception {
+        EstoqueLedger ledger = novoLedger();
+
+        assertThrows(ForaDeEstoqueException.class, () -> ledger.baixar(Map.of(1L, 8), Map.of(1L, 3)));
+        ledger.baixar(Map.of(1L, 7), Map.of(1L, 3));
+        assertThrows(ForaDeEstoqueException.class, () -> ledger.baixar(Map.of(1L, 1), Map.of(1L, 3)));
+    }
+
+    @Test
+    public void testPedidoDesfeitoDevolveOSaldoEAnulaOJournal() throws Exception {
+        EstoqueLedger ledger = novoLedger();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            ledger.baixar(Map.of(1L, 4, 2L, 1));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        ledger.baixar(Map.of(1L, 10, 2L, 1));
+        ledger.flush();
+        verify(produtoRepository).aplicarBaixas(Map.of(1L, 10, 2L, 1));
+
+        // queda com o estorno ainda no journal: a recuperacao nao aplica a baixa desfeita
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            ledger.aoAlterarProduto(ProdutoAlteradoEvent.atualizacao(produto(1L, "Caneta", 5)));
+            ledger.baixar(Map.of(1L, 2));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sincronizacao -> sincronizacao.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        novoLedger();
+        verify(produtoRepository, times(1)).aplicarBaixas(anyMap());
+    }
+
+    @Test
+    public void testReaplicaJournalNaSubida() throws Exception {
+        EstoqueLedger ledger = novoLedger();
+        ledger.baixar(Map.of(1L, 3));
+        ledger.baixar(Map.of(2L, 1));
+        // queda antes do flush: nada foi gravado no banco
+
+        novoLedger();
+
+        verify(produtoRepository).aplicarBaixas(Map.of(1L, 3, 2L, 1));
+    }
+
+    @Test
+    public void testLoteDisparadoPeloLimiteNaoEntraNaTransacaoDoPedido() throws Exception {
+        EstoqueLedger ledger = novoLedger(1);
+
+        ledger.baixar(Map.of(1L, 2));
+
+        // o journal do lote e apagado logo depois: a gravacao precisa estar confirmada, e nao
+        // pendurada na transacao do pedido, que ainda pode ser desfeita
+        verify(transactionManager).getTransaction(argThat(definicao ->
+                definicao.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(produtoRepository).aplicarBaixas(Map.of(1L, 2));
+        assertFalse(Files.exists(pasta.resolve("estoque.journal.flush")));
+    }
+
+    private EstoqueLedger novoLedger() throws Exception {
+        return novoLedger(1000);
+    }
+
+    private EstoqueLedger novoLedger(int limiteFlush) throws Exception {
+        EstoqueLedger ledger = new EstoqueLedger(produtoRepository, transactionManager,
+                pasta.resolve("estoque.journal").toString(), limiteFlush,
+                new StaticListableBeanFactory().getBeanProvider(CatalogoDeProdutos.class));
+        ledger.iniciar();
+        return ledger;
+    }
+
+    private ProdutoEntity produto(Long id, String nome, int qtd) {
+        ProdutoEntity produto = new ProdutoEntity();
+        produto.setId(id);
+        produto.setNome(nome);
+        produto.setQtd(qtd);
+        return produto;
+    }
+}
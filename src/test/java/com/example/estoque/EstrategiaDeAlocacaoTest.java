@@ -0,0 +1,63 @@
+package com.example.estoque;
+
+import com.example.estoque.service.EstrategiaDeAlocacao;
+import com.example.estoque.service.EstrategiaDeAlocacao.Alocacao;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EstrategiaDeAlocacaoTest {
+
+    private static final List<String> ORDEM = List.of("CD-SP", "CD-RJ", "CD-MG");
+
+    private final Map<Long, Map<String, Integer>> saldos = Map.of(
+            1L, Map.of("CD-SP", 2, "CD-RJ", 5, "CD-MG", 8),
+            2L, Map.of("CD-SP", 1, "CD-MG", 4));
+
+    @Test
+    public void testMaisProximoEsgotaOsArmazensNaOrdem() {
+        Alocacao alocacao = EstrategiaDeAlocacao.MAIS_PROXIMO.alocar(pedido(1L, 6), saldos, Map.of(), ORDEM);
+
+        assertNull(alocacao.semEstoque());
+        assertEquals(Map.of("CD-SP", 2, "CD-RJ", 4), alocacao.retiradas().get(1L));
+    }
+
+    @Test
+    public void testMaiorEstoqueTiraPrimeiroDoMaiorSaldo() {
+        Alocacao alocacao = EstrategiaDeAlocacao.MAIOR_ESTOQUE.alocar(pedido(1L, 10), saldos, Map.of(), ORDEM);
+
+        assertEquals(Map.of("CD-MG", 8, "CD-RJ", 2), alocacao.retiradas().get(1L));
+    }
+
+    @Test
+    public void testMenosDivisoesPrefereUmArmazemParaOPedidoInteiro() {
+        Map<Long, Integer> pedido = pedido(1L, 2);
+        pedido.put(2L, 3);
+
+        Alocacao alocacao = EstrategiaDeAlocacao.MENOS_DIVISOES.alocar(pedido, saldos, Map.of(), ORDEM);
+
+        // CD-SP atende o produto 1 mas nao o 2; CD-MG atende os dois
+        assertEquals(Map.of("CD-MG", 2), alocacao.retiradas().get(1L));
+        assertEquals(Map.of("CD-MG", 3), alocacao.retiradas().get(2L));
+        // sem um armazem para tudo, cada produto sai do mais proximo que o atenda sozinho
+        assertEquals(Map.of("CD-RJ", 5),
+                EstrategiaDeAlocacao.MENOS_DIVISOES.alocar(pedido(1L, 5), saldos, Map.of(), ORDEM).retiradas().get(1L));
+    }
+
+    @Test
+    public void testReservadoEProdutoInexistenteFicamSemEstoque() {
+        assertEquals(1L, EstrategiaDeAlocacao.MAIS_PROXIMO.alocar(pedido(1L, 10), saldos, Map.of(1L, 6), ORDEM).semEstoque());
+        assertNull(EstrategiaDeAlocacao.MAIS_PROXIMO.alocar(pedido(1L, 9), saldos, Map.of(1L, 6), ORDEM).semEstoque());
+        assertEquals(3L, EstrategiaDeAlocacao.MAIS_PROXIMO.alocar(pedido(3L, 1), saldos, Map.of(), ORDEM).semEstoque());
+    }
+
+    private static Map<Long, Integer> pedido(Long id, int qtd) {
+        Map<Long, Integer> pedido = new TreeMap<>();
+        pedido.put(id, qtd);
+        return pedido;
+    }
+}
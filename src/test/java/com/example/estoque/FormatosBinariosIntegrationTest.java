@@ -0,0 +1,95 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.ProdutoService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class FormatosBinariosIntegrationTest {
+
+    @LocalServerPort
+    private int porta;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    private final HttpClient cliente = HttpClient.newHttpClient();
+
+    @Test
+    public void testListagemEPedidoEmSmileECbor() throws Exception {
+        produtoService.cadastrarProduto(new Produto("Binario Marcador", "Amarelo", 4.5, 10));
+        Long id = produtoRepository.findByNome("Binario Marcador").getId();
+
+        HttpResponse<byte[]> resposta = enviar(HttpRequest.newBuilder(uri("/estoque"))
+                .header("Accept", "application/x-jackson-smile").build());
+        assertEquals(200, resposta.statusCode());
+        assertEquals("application/x-jackson-smile", resposta.headers().firstValue("Content-Type").orElseThrow());
+        List<Produto> produtos = new SmileMapper().readValue(resposta.body(), new TypeReference<>() {});
+        assertTrue(produtos.stream().anyMatch(p -> "Binario Marcador".equals(p.getNome()) && p.getQtd() == 10));
+
+        ItemPedido item = new ItemPedido();
+        item.setId(id);
+        item.setQtd(4);
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item));
+        resposta = enviar(HttpRequest.newBuilder(uri("/estoque/atualizar"))
+                .header("Content-Type", "application/cbor")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new CBORMapper().writeValueAsBytes(pedido))).build());
+        assertEquals(200, resposta.statusCode());
+
+        resposta = enviar(HttpRequest.newBuilder(uri("/produtos/" + id)).header("Accept", "application/cbor").build());
+        assertEquals(6, new CBORMapper().readValue(resposta.body(), ProdutoEntity.class).getQtd());
+
+        // sem Accept especifico, continua JSON
+        resposta = enviar(HttpRequest.newBuilder(uri("/produtos/" + id)).build());
+        assertTrue(resposta.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+    }
+
+    @Test
+    public void testListagemGrandeVemComGzip() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            produtoService.cadastrarProduto(new Produto("Binario Gzip " + i, "Descrição repetida", 1.0, i));
+        }
+
+        HttpResponse<byte[]> resposta = enviar(HttpRequest.newBuilder(uri("/estoque"))
+                .header("Accept", "application/json").header("Accept-Encoding", "gzip").build());
+
+        assertEquals("gzip", resposta.headers().firstValue("Content-Encoding").orElseThrow());
+        try (GZIPInputStream corpo = new GZIPInputStream(new ByteArrayInputStream(resposta.body()))) {
+            List<Produto> produtos = new ObjectMapper().readValue(corpo, new TypeReference<>() {});
+            assertTrue(produtos.size() >= 50);
+        }
+    }
+
+    private HttpResponse<byte[]> enviar(HttpRequest requisicao) throws Exception {
+        return cliente.send(requisicao, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String caminho) {
+        return URI.create("http://localhost:" + porta + caminho);
+    }
+}
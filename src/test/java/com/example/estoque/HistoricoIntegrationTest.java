@@ -0,0 +1,101 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.QuantidadeEm;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.service.HistoricoDeEstoque;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class HistoricoIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private HistoricoDeEstoque historico;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testQuantidadeEmQualquerMomento() throws Exception {
+        Instant antesDoCadastro = marcar();
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Historico Caderno", null, 12.0, 10)).getId();
+        Instant cadastrado = marcar();
+        baixar(id, 3);
+        Instant aposPrimeiraBaixa = marcar();
+
+        historico.tirarSnapshot();
+        Instant aposSnapshot = marcar();
+        baixar(id, 2);
+        Instant aposSegundaBaixa = marcar();
+        produtoService.atualizarProduto(new ProdutoEntity(id, "Historico Caderno", null, 12.0, 40));
+        Instant reposto = marcar();
+        produtoService.deletarProduto(id);
+
+        mockMvc.perform(get("/estoque/historico/" + id).param("em", antesDoCadastro.toString()))
+                .andExpect(status().isNotFound());
+        assertEquals(10, historico.quantidadeEm(id, cadastrado).getQtd());
+        assertEquals(7, historico.quantidadeEm(id, aposPrimeiraBaixa).getQtd());
+
+        // depois do snapshot so os movimentos seguintes sao reaplicados
+        QuantidadeEm noSnapshot = historico.quantidadeEm(id, aposSnapshot);
+        assertEquals(7, noSnapshot.getQtd());
+        assertNotNull(noSnapshot.getSnapshotEm());
+        assertEquals(0, noSnapshot.getMovimentosAplicados());
+        mockMvc.perform(get("/estoque/historico/" + id).param("em", aposSegundaBaixa.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.qtd").value(5))
+                .andExpect(jsonPath("$.movimentosAplicados").value(1));
+        assertEquals(40, historico.quantidadeEm(id, reposto).getQtd());
+        assertEquals(2, historico.quantidadeEm(id, reposto).getMovimentosAplicados());
+        mockMvc.perform(get("/estoque/historico/" + id)).andExpect(status().isNotFound());
+
+        assertEquals(5, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM movimento_estoque WHERE produto_id = ?", Integer.class, id));
+    }
+
+    @Test
+    public void testPedidoRecusadoNaoEntraNoHistorico() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Historico Régua", null, 3.0, 2)).getId();
+
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"itens\":[{\"id\":" + id + ",\"qtd\":5}]}"))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM movimento_estoque WHERE produto_id = ?", Integer.class, id));
+        assertEquals(2, historico.quantidadeEm(id, Instant.now()).getQtd());
+    }
+
+    private void baixar(Long id, int qtd) throws Exception {
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"itens\":[{\"id\":" + id + ",\"qtd\":" + qtd + "}]}"))
+                .andExpect(status().isOk());
+    }
+
+    // separa os instantes consultados dos horarios gravados nos movimentos
+    private static Instant marcar() throws InterruptedException {
+        Thread.sleep(5);
+        Instant agora = Instant.now();
+        Thread.sleep(5);
+        return agora;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.QuantidadeEm;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.service.HistoricoDeEstoque;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// mesmas propriedades do ResumoIntegrationTest: as baixas ficam pendentes no ledger ate o snapshot
+@SpringBootTest(properties = {"estoque.ledger.enabled=true", "estoque.ledger.journal=target/resumo-ledger.journal",
+        "estoque.ledger.flush-interval-ms=600000"})
+public class HistoricoLedgerIntegrationTest {
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private HistoricoDeEstoque historico;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testSnapshotIncluiBaixasPendentesNoLedger() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Historico Ledger Lápis", null, 1.5, 10)).getId();
+        ItemPedido item = new ItemPedido();
+        item.setId(id);
+        item.setQtd(3);
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item));
+        produtoService.atualizarEstoque(pedido);
+        assertEquals(10, jdbcTemplate.queryForObject("SELECT qtd FROM produto WHERE id = ?", Integer.class, id));
+
+        historico.tirarSnapshot();
+        Thread.sleep(5);
+
+        QuantidadeEm agora = historico.quantidadeEm(id, Instant.now());
+        assertEquals(7, agora.getQtd());
+        assertNotNull(agora.getSnapshotEm());
+        assertEquals(0, agora.getMovimentosAplicados());
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.PedidosProcessados;
+import com.example.estoque.service.ProdutoService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class IdempotenciaIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private PedidosProcessados pedidosProcessados;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void testReenvioRespondeComoOOriginalSemIrAoBanco() throws Exception {
+        Long id = salvar("Idempotente Caderno", 10);
+        String corpo = "{\"itens\":[{\"id\":" + id + ",\"qtd\":3}]}";
+
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                        .header("Idempotency-Key", "pedido-caderno-1").content(corpo))
+                .andExpect(status().isOk());
+        double comandosAntes = comandos();
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"chave\":\"pedido-caderno-1\",\"itens\":[{\"id\":" + id + ",\"qtd\":3}]}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Estoque Atualizado"));
+
+        assertEquals(0, comandos() - comandosAntes);
+        assertEquals(7, produtoRepository.findById(id).orElseThrow().getQtd());
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pedido_processado WHERE chave = 'pedido-caderno-1'", Integer.class));
+    }
+
+    @Test
+    public void testChaveGravadaPorOutraInstanciaNaoBaixaDeNovo() {
+        Long id = salvar("Idempotente Cola", 5);
+        jdbcTemplate.update("INSERT INTO pedido_processado (chave, processado_em) VALUES (?, ?)",
+                "pedido-cola-outra-instancia", Timestamp.from(Instant.now()));
+
+        produtoService.atualizarEstoque(pedido("pedido-cola-outra-instancia", id, 2));
+
+        assertEquals(5, produtoRepository.findById(id).orElseThrow().getQtd());
+        assertTrue(pedidosProcessados.jaProcessado("pedido-cola-outra-instancia"));
+    }
+
+    @Test
+    public void testPedidoRecusadoNaoRegistraAChave() {
+        Long id = salvar("Idempotente Tesoura", 1);
+
+        assertThrows(ForaDeEstoqueException.class, () -> produtoService.atualizarEstoque(pedido("pedido-tesoura", id, 2)));
+        assertFalse(pedidosProcessados.jaProcessado("pedido-tesoura"));
+
+        // o reenvio e avaliado de novo, agora com saldo
+        produtoRepository.aplicarBaixas(Map.of(id, -1));
+        produtoService.atualizarEstoque(pedido("pedido-tesoura", id, 2));
+        assertEquals(0, produtoRepository.findById(id).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testPedidosConcorrentesComAMesmaChaveBaixamUmaVez() throws Exception {
+        Long id = salvar("Idempotente Grampo", 100);
+
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                resultados.add(executor.submit(() -> {
+                    largada.await();
+                    produtoService.atualizarEstoque(pedido("pedido-grampo", id, 4));
+                    return null;
+                }));
+            }
+            largada.countDown();
+        }
+        for (Future<?> resultado : resultados) {
+            resultado.get();
+        }
+
+        assertEquals(96, produtoRepository.findById(id).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testLimpezaApagaChavesExpiradas() throws Exception {
+        jdbcTemplate.update("INSERT INTO pedido_processado (chave, processado_em) VALUES (?, ?)",
+                "pedido-antigo", Timestamp.from(Instant.now().minus(Duration.ofDays(2))));
+        jdbcTemplate.update("INSERT INTO pedido_processado (chave, processado_em) VALUES (?, ?)",
+                "pedido-recente", Timestamp.from(Instant.now()));
+
+        pedidosProcessados.limpar();
+
+        assertEquals(List.of("pedido-recente"), jdbcTemplate.queryForList(
+                "SELECT chave FROM pedido_processado WHERE chave IN ('pedido-antigo', 'pedido-recente')", String.class));
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                        .header("Idempotency-Key", "x".repeat(101)).content("{\"itens\":[]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private double comandos() {
+        DistributionSummary resumo = registry.find("estoque.requisicao.comandos-sql")
+                .tags("method", "POST", "uri", "/estoque/atualizar")
+                .summary();
+        return resumo == null ? 0 : resumo.totalAmount();
+    }
+
+    private Long salvar(String nome, int qtd) {
+        return produtoRepository.save(new ProdutoEntity(null, nome, null, 1.0, qtd)).getId();
+    }
+
+    private static Pedido pedido(String chave, Long id, int qtd) {
+        ItemPedido item = new ItemPedido();
+        item.setId(id);
+        item.setQtd(qtd);
+        Pedido pedido = new Pedido();
+        pedido.setChave(chave);
+        pedido.setItens(List.of(item));
+        return pedido;
+    }
+}
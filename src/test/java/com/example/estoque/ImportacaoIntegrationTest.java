@@ -0,0 +1,109 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.domain.RelatorioImportacao;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.ImportacaoService;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "estoque.importacao.lote=2")
+public class ImportacaoIntegrationTest {
+
+    @Autowired
+    private ImportacaoService importacaoService;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Test
+    public void testImportarCsvComLinhasInvalidas() throws Exception {
+        produtoService.cadastrarProduto(new Produto("Import Borracha", "Branca", 1.0, 5));
+
+        String csv = """
+                nome,descricao,preco,qtd
+                Import Borracha,"Branca, macia",1.25,40
+                Import Régua,30 cm,3.5,10
+                ,Sem nome,1.0,1
+                Import Compasso,"Metal \"\"pro\"\"",abc,2
+                Import Estojo,Zíper,12.0,-1
+
+                Import Apontador,Duplo,2.0,8
+                Import Régua,30 cm,3.5,12
+                """;
+
+        RelatorioImportacao relatorio = importacaoService.importarCsv(corpo(csv));
+
+        assertEquals(7, relatorio.getLinhasLidas());
+        assertEquals(3, relatorio.getTotalErros());
+        assertEquals(4, relatorio.getErros().get(0).getLinha());
+        assertEquals("Nome é obrigatório", relatorio.getErros().get(0).getMensagem());
+        assertTrue(relatorio.getErros().get(1).getMensagem().startsWith("Preço inválido"));
+        assertEquals(6, relatorio.getErros().get(2).getLinha());
+
+        ProdutoEntity borracha = produtoRepository.findByNome("Import Borracha");
+        assertEquals("Branca, macia", borracha.getDescricao());
+        assertEquals(40, borracha.getQtd());
+        assertEquals(12, produtoRepository.findByNome("Import Régua").getQtd());
+        assertNotNull(produtoRepository.findByNome("Import Apontador"));
+        assertNull(produtoRepository.findByNome("Import Estojo"));
+    }
+
+    @Test
+    public void testImportarCsvComQuebraDeLinhaEntreAspas() throws Exception {
+        String csv = """
+                nome,descricao,preco,qtd
+                Import Mochila,"Dois bolsos
+                alça ""acolchoada""
+                e zíper",89.9,3
+                Import Lancheira,Térmica,abc,1
+                Import Garrafa,"Inox",25.0,6
+                Import Squeeze,"Sem fim,1.0,2
+                """;
+
+        RelatorioImportacao relatorio = importacaoService.importarCsv(corpo(csv));
+
+        assertEquals(4, relatorio.getLinhasLidas());
+        assertEquals(2, relatorio.getProdutosGravados());
+        assertEquals(2, relatorio.getTotalErros());
+        assertEquals(5, relatorio.getErros().get(0).getLinha());
+        assertTrue(relatorio.getErros().get(0).getMensagem().startsWith("Preço inválido"));
+        assertEquals(7, relatorio.getErros().get(1).getLinha());
+        assertEquals("Aspas não fechadas", relatorio.getErros().get(1).getMensagem());
+
+        assertEquals("Dois bolsos\nalça \"acolchoada\"\ne zíper", produtoRepository.findByNome("Import Mochila").getDescricao());
+        assertEquals(6, produtoRepository.findByNome("Import Garrafa").getQtd());
+    }
+
+    @Test
+    public void testImportarNdjson() throws Exception {
+        String ndjson = """
+                {"nome":"Import Caderno","descricao":"Capa dura","preco":22.0,"qtd":15}
+                {"nome":"Import Fichário"
+                {"nome":"Import Agenda","preco":30.0,"qtd":4}
+                """;
+
+        RelatorioImportacao relatorio = importacaoService.importarNdjson(corpo(ndjson));
+
+        assertEquals(3, relatorio.getLinhasLidas());
+        assertEquals(2, relatorio.getProdutosGravados());
+        assertEquals(1, relatorio.getTotalErros());
+        assertEquals(2, relatorio.getErros().get(0).getLinha());
+        assertEquals(4, produtoRepository.findByNome("Import Agenda").getQtd());
+    }
+
+    private ByteArrayInputStream corpo(String conteudo) {
+        return new ByteArrayInputStream(conteudo.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.AlertaEstoque;
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.AlertaDeEstoque;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// ddl-auto=validate: o contexto so sobe se schema-inicio-rapido.sql ainda bate com as entidades
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.url=jdbc:h2:mem:inicio-rapido", "spring.jpa.hibernate.ddl-auto=validate"})
+@ActiveProfiles("inicio-rapido")
+public class InicioRapidoIntegrationTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private ConfigurableApplicationContext contexto;
+
+    @Test
+    public void testSobeComEsquemaProntoEAgendadosNaSubida() {
+        var beans = contexto.getBeanFactory();
+        // quem agenda tarefas nasce na subida, o resto fica para o primeiro uso
+        assertTrue(beans.containsSingleton("reservasDeEstoque"));
+        assertTrue(beans.containsSingleton("catalogoDeProdutos"));
+        assertFalse(beans.containsSingleton("produtoController"));
+
+        ResponseEntity<String> cadastro = rest.postForEntity("/estoque",
+                new Produto("Inicio Rapido Caneta", "Azul", 2.5, 7), String.class);
+        assertEquals(HttpStatus.OK, cadastro.getStatusCode());
+
+        // o catalogo publica a gravacao na proxima reconstrucao agendada
+        long prazo = System.currentTimeMillis() + 5000;
+        Produto caneta = null;
+        while (caneta == null && System.currentTimeMillis() < prazo) {
+            ResponseEntity<Produto[]> lista = rest.getForEntity("/estoque", Produto[].class);
+            assertEquals(HttpStatus.OK, lista.getStatusCode());
+            caneta = Arrays.stream(lista.getBody())
+                    .filter(p -> "Inicio Rapido Caneta".equals(p.getNome())).findFirst().orElse(null);
+        }
+        assertNotNull(caneta);
+        assertEquals(7, caneta.getQtd());
+    }
+
+    @Test
+    public void testPrimeiraBaixaDepoisDeReiniciarNaoDescontaDuasVezes() {
+        ResponseEntity<String> cadastro = rest.postForEntity("/estoque",
+                new Produto("Inicio Rapido Borracha", "Branca", 1.0, 9), String.class);
+        assertEquals(HttpStatus.OK, cadastro.getStatusCode());
+        Long id = contexto.getBean(ProdutoRepository.class).findByNome("Inicio Rapido Borracha").getId();
+
+        // outra instancia no mesmo banco: o primeiro evento que ela ve e a baixa
+        try (ConfigurableApplicationContext reiniciada = new SpringApplicationBuilder(EstoqueApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("inicio-rapido")
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:inicio-rapido")) {
+            assertTrue(reiniciada.getBeanFactory().containsSingleton("alertaDeEstoque"));
+            ItemPedido item = new ItemPedido();
+            item.setId(id);
+            item.setQtd(2);
+            Pedido pedido = new Pedido();
+            pedido.setItens(List.of(item));
+            reiniciada.getBean(ProdutoService.class).atualizarEstoque(pedido);
+
+            AlertaEstoque alerta = reiniciada.getBean(AlertaDeEstoque.class).abaixoDoLimite().stream()
+                    .filter(a -> id.equals(a.getId())).findFirst().orElseThrow();
+            assertEquals(7, alerta.getQtd());
+        }
+    }
+}
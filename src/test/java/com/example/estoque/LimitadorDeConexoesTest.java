@@ -0,0 +1,88 @@
+package com.example.estoque;
+
+import com.example.estoque.config.LimitadorDeConexoes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LimitadorDeConexoesTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final LimitadorDeConexoes limitador = new LimitadorDeConexoes(1, Duration.ofMillis(20), registry);
+
+    @Test
+    public void testRecusaQuandoAsPermissoesAcabam() throws Exception {
+        MockHttpServletRequest primeira = new MockHttpServletRequest();
+        MockHttpServletRequest segunda = new MockHttpServletRequest();
+        MockHttpServletResponse respostaSegunda = new MockHttpServletResponse();
+
+        assertTrue(limitador.preHandle(primeira, new MockHttpServletResponse(), null));
+        assertFalse(limitador.preHandle(segunda, respostaSegunda, null));
+
+        assertEquals(503, respostaSegunda.getStatus());
+        assertEquals(1.0, registry.get("estoque.limitador.rejeitadas").counter().count());
+        assertEquals(1.0, registry.get("estoque.limitador.em-uso").gauge().value());
+
+        limitador.afterCompletion(primeira, new MockHttpServletResponse(), null, null);
+
+        assertTrue(limitador.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), null));
+        assertEquals(3, registry.get("estoque.limitador.espera").timer().count());
+    }
+
+    @Test
+    public void testStreamingDevolvePermissaoUmaUnicaVez() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        // SSE: so espera eventos, a permissao volta quando o controller retorna
+        assertTrue(limitador.preHandle(request, new MockHttpServletResponse(), null));
+        limitador.afterConcurrentHandlingStarted(request, new MockHttpServletResponse(), null);
+        assertEquals(0.0, registry.get("estoque.limitador.em-uso").gauge().value());
+
+        // redespacho assincrono da mesma requisicao nao consome nem devolve outra permissao
+        assertTrue(limitador.preHandle(request, new MockHttpServletResponse(), null));
+        limitador.afterCompletion(request, new MockHttpServletResponse(), null, null);
+
+        assertEquals(0.0, registry.get("estoque.limitador.em-uso").gauge().value());
+    }
+
+    @Test
+    public void testStreamingSeguraPermissaoAteARespostaTerminar() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertTrue(limitador.preHandle(request, response, null));
+
+        // o que o Spring faz com um StreamingResponseBody: escreve a resposta em outra thread
+        CountDownLatch escrevendo = new CountDownLatch(1);
+        WebAsyncManager async = WebAsyncUtils.getAsyncManager(request);
+        async.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+        async.setTaskExecutor(new SimpleAsyncTaskExecutor());
+        async.startCallableProcessing(() -> {
+            escrevendo.await();
+            return null;
+        });
+        limitador.afterConcurrentHandlingStarted(request, response, null);
+
+        assertEquals(1.0, registry.get("estoque.limitador.em-uso").gauge().value());
+        assertFalse(limitador.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), null));
+
+        escrevendo.countDown();
+        while (!async.hasConcurrentResult()) {
+            Thread.sleep(5);
+        }
+        request.getAsyncContext().complete();
+
+        assertEquals(0.0, registry.get("estoque.limitador.em-uso").gauge().value());
+    }
+}
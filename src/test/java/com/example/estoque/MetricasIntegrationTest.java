@@ -0,0 +1,54 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.Produto;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class MetricasIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Test
+    public void testMetricasExpostasNoPrometheus() throws Exception {
+        produtoService.cadastrarProduto(new Produto("Metricas Clips", "Caixa", 2.0, 1));
+        Long id = produtoRepository.findByNome("Metricas Clips").getId();
+        String pedido = "{\"itens\":[{\"id\":" + id + ",\"qtd\":5}]}";
+
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON).content(pedido))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/produtos/" + id)).andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString(
+                        "estoque_servico_seconds_count{application=\"estoque\",class=\"com.example.estoque.service.ProdutoService\",exception=\"ForaDeEstoqueException\",method=\"atualizarEstoque\"")))
+                .andExpect(content().string(containsString("estoque_pedidos_total{application=\"estoque\",resultado=\"fora_de_estoque\"} 1.0")))
+                .andExpect(content().string(containsString("estoque_pedido_itens_count")))
+                .andExpect(content().string(containsString(
+                        "estoque_requisicao_comandos_sql_count{application=\"estoque\",method=\"GET\",uri=\"/produtos/{id}\"}")))
+                .andExpect(content().string(containsString("cache_gets_total{application=\"estoque\",cache=\"produtos-por-id\"")));
+    }
+}
@@ -12,12 +12,18 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -60,6 +66,46 @@ public class ProdutoControllerIntegrationTest {
                 .andExpect(jsonPath("$[1].nome").value("Lápis"));
     }
 
+    @Test
+    public void testListarPaginado() throws Exception {
+        ProdutoEntity produto1 = new ProdutoEntity(11L, "Caneta", "Azul", 1.50, 100);
+        ProdutoEntity produto2 = new ProdutoEntity(12L, "Lápis", "Preto", 0.80, 200);
+
+        Mockito.when(produtoService.listarProdutos(10L, 2)).thenReturn(List.of(produto1, produto2));
+
+        mockMvc.perform(get("/produtos").param("after", "10").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(2))
+                .andExpect(jsonPath("$[1].id").value(12))
+                .andExpect(header().string("Link", containsString("after=12")));
+    }
+
+    @Test
+    public void testExportarNdjson() throws Exception {
+        ProdutoEntity produto1 = new ProdutoEntity(1L, "Caneta", "Azul", 1.50, 100);
+        ProdutoEntity produto2 = new ProdutoEntity(2L, "Lápis", "Preto", 0.80, 200);
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<ProdutoEntity> consumidor = invocation.getArgument(0);
+            consumidor.accept(produto1);
+            consumidor.accept(produto2);
+            return null;
+        }).when(produtoService).percorrerProdutos(any());
+
+        MvcResult resultado = mockMvc.perform(get("/produtos").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String corpo = mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] linhas = corpo.split("\n");
+        assertEquals(2, linhas.length);
+        assertEquals("Lápis", objectMapper.readValue(linhas[1], ProdutoEntity.class).getNome());
+    }
+
     @Test
     public void testBuscarPorId() throws Exception {
         ProdutoEntity produto = new ProdutoEntity();
@@ -107,7 +153,7 @@ public class ProdutoControllerIntegrationTest {
         produtoAtualizado.setNome("Caneta Vermelha");
         produtoAtualizado.setQtd(150);
 
-        Mockito.when(produtoService.atualizarProduto(any(ProdutoEntity.class))).thenReturn(produtoAtualizado);
+        Mockito.when(produtoService.atualizarProduto(any(ProdutoEntity.class), isNull())).thenReturn(produtoAtualizado);
 
         mockMvc.perform(put("/produtos/1")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -0,0 +1,252 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.AlteracaoProduto;
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.repository.ProdutoRepositoryArquivo;
+import com.example.estoque.service.AlocadorDeEstoque;
+import com.example.estoque.service.EstoqueLedger;
+import com.example.estoque.service.EstoqueMetricas;
+import com.example.estoque.service.PedidosProcessados;
+import com.example.estoque.service.ProdutoCache;
+import com.example.estoque.service.ProdutoService;
+import com.example.estoque.service.ReservasDeEstoque;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProdutoRepositoryArquivoTest {
+
+    @TempDir
+    Path pasta;
+
+    private ProdutoRepositoryArquivo repository;
+    private ProdutoService produtoService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        repository = abrir();
+        ProdutoCache cache = new ProdutoCache(100, Duration.ofMinutes(1));
+        StaticListableBeanFactory opcionais = new StaticListableBeanFactory();
+        produtoService = new ProdutoService(repository, evento -> cache.aoAlterarProduto((ProdutoAlteradoEvent) evento),
+                cache, new EstoqueMetricas(new SimpleMeterRegistry()), opcionais.getBeanProvider(EstoqueLedger.class),
+                opcionais.getBeanProvider(PedidosProcessados.class), opcionais.getBeanProvider(ReservasDeEstoque.class),
+                opcionais.getBeanProvider(AlocadorDeEstoque.class));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        repository.fechar();
+    }
+
+    private ProdutoRepositoryArquivo abrir() throws Exception {
+        return new ProdutoRepositoryArquivo(pasta.resolve("produtos.dat").toString(), 1000);
+    }
+
+    @Test
+    public void testCadastroConsultaEAtualizacaoPeloServico() {
+        produtoService.cadastrarProduto(new Produto("Caneta", "Azul", 2.5, 10));
+        produtoService.cadastrarProduto(new Produto("Caneta", "Azul", 2.5, 15));
+
+        Produto caneta = produtoService.encontrarPorNome("Caneta");
+        assertEquals(15, caneta.getQtd());
+        assertEquals(1, produtoService.listarProdutos().size());
+
+        ProdutoEntity alterado = new ProdutoEntity(repository.findByNome("Caneta").getId(), "Caneta Preta", null, 3.0, 7);
+        produtoService.atualizarProduto(alterado);
+
+        assertNull(repository.findByNome("Caneta"));
+        ProdutoEntity lido = produtoService.buscarProdutoPorId(alterado.getId());
+        assertEquals("Caneta Preta", lido.getNome());
+        assertNull(lido.getDescricao());
+        assertEquals(3.0, lido.getPreco());
+        assertEquals(7, lido.getQtd());
+    }
+
+    @Test
+    public void testAtualizarEstoqueETudoOuNada() {
+        Long lapis = produtoService.criarProduto(entidade("Lapis", 10)).getId();
+        Long cola = produtoService.criarProduto(entidade("Cola", 1)).getId();
+
+        produtoService.atualizarEstoque(pedido(Map.of(lapis, 4)));
+        ForaDeEstoqueException erro = assertThrows(ForaDeEstoqueException.class,
+                () -> produtoService.atualizarEstoque(pedido(Map.of(lapis, 2, cola, 5))));
+
+        assertEquals("Produto Cola possui apenas: 1 em estoque", erro.getMessage());
+        assertEquals(6, repository.findById(lapis).orElseThrow().getQtd());
+        assertEquals(1, repository.findById(cola).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testNomeUnicoERemocao() {
+        Long id = repository.save(entidade("Grampo", 3)).getId();
+
+        assertThrows(DuplicateKeyException.class, () -> repository.save(entidade("Grampo", 1)));
+
+        produtoService.deletarProduto(id);
+        assertFalse(repository.existsById(id));
+        assertNull(repository.findByNome("Grampo"));
+        assertEquals(0, repository.count());
+        assertNotEquals(id, repository.save(entidade("Grampo", 1)).getId());
+    }
+
+    @Test
+    public void testDadosSobrevivemAReabertura() throws Exception {
+        Long id = repository.save(new ProdutoEntity(null, "Régua", "30 cm", 4.0, 20)).getId();
+        repository.baixarEstoque(Map.of(id, 5));
+        repository.save(entidade("Borracha", 2));
+        repository.deleteById(repository.findByNome("Borracha").getId());
+        repository.fechar();
+
+        repository = abrir();
+
+        ProdutoEntity regua = repository.findByNome("Régua");
+        assertEquals(id, regua.getId());
+        assertEquals("30 cm", regua.getDescricao());
+        assertEquals(15, regua.getQtd());
+        assertNull(repository.findByNome("Borracha"));
+        assertEquals(List.of(regua.getId()),
+                repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(10)).stream().map(ProdutoEntity::getId).toList());
+    }
+
+    @Test
+    public void testBaixasConcorrentesNaoPassamDoEstoque() throws Exception {
+        Long id = repository.save(entidade("Agenda", 50)).getId();
+
+        List<Future<Boolean>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < 200; i++) {
+                resultados.add(executor.submit(() -> repository.baixarEstoque(Map.of(id, 1))[0] == 1));
+            }
+        }
+
+        long aceitos = 0;
+        for (Future<Boolean> resultado : resultados) {
+            if (resultado.get()) {
+                aceitos++;
+            }
+        }
+        assertEquals(50, aceitos);
+        assertEquals(0, repository.findById(id).orElseThrow().getQtd());
+    }
+
+    @Test
+    public void testVersaoSobeEmCadaAlteracaoERecusaGravacaoDesatualizada() {
+        Long id = repository.save(entidade("Pasta", 10)).getId();
+        ProdutoEntity lida = repository.findById(id).orElseThrow();
+        assertEquals(0L, lida.getVersao());
+
+        repository.baixarEstoque(Map.of(id, 2));
+        assertEquals(1L, repository.findById(id).orElseThrow().getVersao());
+
+        lida.setQtd(10);
+        assertThrows(OptimisticLockingFailureException.class, () -> repository.save(lida));
+        assertEquals(8, repository.findById(id).orElseThrow().getQtd());
+
+        ProdutoEntity atual = repository.findById(id).orElseThrow();
+        atual.setPreco(6.0);
+        repository.save(atual);
+        assertEquals(2L, atual.getVersao());
+        assertEquals(6.0, repository.findById(id).orElseThrow().getPreco());
+    }
+
+    @Test
+    public void testAlteracaoParcialGravaSoOsCamposInformados() {
+        Long clips = repository.save(new ProdutoEntity(null, "Clips", "Caixa", 3.0, 10)).getId();
+        Long fita = repository.save(entidade("Fita", 4)).getId();
+
+        ProdutoEntity alterado = repository.alterarCampos(new AlteracaoProduto(clips, null, null, 3.5, null));
+        assertEquals(3.5, alterado.getPreco());
+        assertEquals("Caixa", alterado.getDescricao());
+        assertEquals(10, alterado.getQtd());
+        assertEquals(1L, alterado.getVersao());
+        assertNull(repository.alterarCampos(new AlteracaoProduto(999L, null, null, 1.0, null)));
+        AlteracaoProduto desatualizada = new AlteracaoProduto(clips, null, null, 4.0, null);
+        desatualizada.setVersao(0L);
+        assertNull(repository.alterarCampos(desatualizada));
+        assertEquals(3.5, repository.findById(clips).orElseThrow().getPreco());
+
+        List<ProdutoEntity> alterados = repository.alterarCampos(List.of(
+                new AlteracaoProduto(fita, "Fita Crepe", null, null, 6),
+                new AlteracaoProduto(999L, null, null, 1.0, null)));
+        assertEquals(List.of(fita), alterados.stream().map(ProdutoEntity::getId).toList());
+        assertNull(repository.findByNome("Fita"));
+        assertEquals(6, repository.findByNome("Fita Crepe").getQtd());
+        assertThrows(DuplicateKeyException.class,
+                () -> repository.alterarCampos(new AlteracaoProduto(clips, "Fita Crepe", null, null, null)));
+    }
+
+    @Test
+    public void testAlteracaoEmListaComVersaoDesatualizadaNaoGravaNada() {
+        Long cola = repository.save(new ProdutoEntity(null, "Cola", "Bastão", 5.0, 10)).getId();
+        Long tinta = repository.save(entidade("Tinta", 4)).getId();
+        Long pincel = repository.save(entidade("Pincel", 7)).getId();
+
+        AlteracaoProduto primeira = new AlteracaoProduto(cola, "Cola Branca", null, 6.0, 20);
+        primeira.setVersao(0L);
+        AlteracaoProduto desatualizada = new AlteracaoProduto(tinta, null, null, 9.0, null);
+        desatualizada.setVersao(5L);
+        AlteracaoProduto ultima = new AlteracaoProduto(pincel, null, "Chato", null, 1);
+        ultima.setVersao(0L);
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> repository.alterarCampos(List.of(primeira, desatualizada, ultima)));
+
+        ProdutoEntity colaGravada = repository.findById(cola).orElseThrow();
+        assertEquals("Cola", colaGravada.getNome());
+        assertEquals(5.0, colaGravada.getPreco());
+        assertEquals(10, colaGravada.getQtd());
+        assertNotNull(repository.findByNome("Cola"));
+        assertNull(repository.findByNome("Cola Branca"));
+        assertNull(repository.findById(tinta).orElseThrow().getPreco());
+        assertNull(repository.findById(pincel).orElseThrow().getDescricao());
+        assertEquals(7, repository.findById(pincel).orElseThrow().getQtd());
+
+        assertThrows(DuplicateKeyException.class, () -> repository.alterarCampos(List.of(
+                new AlteracaoProduto(tinta, null, null, 2.0, 1),
+                new AlteracaoProduto(pincel, "Cola", null, null, null))));
+        assertEquals(4, repository.findById(tinta).orElseThrow().getQtd());
+        assertNull(repository.findById(tinta).orElseThrow().getPreco());
+    }
+
+    private static ProdutoEntity entidade(String nome, int qtd) {
+        ProdutoEntity produto = new ProdutoEntity();
+        produto.setNome(nome);
+        produto.setQtd(qtd);
+        return produto;
+    }
+
+    private static Pedido pedido(Map<Long, Integer> quantidades) {
+        List<ItemPedido> itens = new ArrayList<>();
+        quantidades.forEach((id, qtd) -> {
+            ItemPedido item = new ItemPedido();
+            item.setId(id);
+            item.setQtd(qtd);
+            itens.add(item);
+        });
+        Pedido pedido = new Pedido();
+        pedido.setItens(itens);
+        return pedido;
+    }
+}
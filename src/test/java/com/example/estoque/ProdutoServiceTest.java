@@ -3,18 +3,29 @@ package com.example.estoque;
 import com.example.estoque.domain.ItemPedido;
 import com.example.estoque.domain.Pedido;
 import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.event.ProdutoAlteradoEvent;
 import com.example.estoque.exception.ForaDeEstoqueException;
 import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.EstoqueMetricas;
+import com.example.estoque.service.ProdutoCache;
 import com.example.estoque.service.ProdutoService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,6 +35,21 @@ public class ProdutoServiceTest {
     @Mock
     private ProdutoRepository produtoRepository;
 
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    @Spy
+    private ProdutoCache produtoCache = new ProdutoCache(100, Duration.ofMinutes(1));
+
+    private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private EstoqueMetricas metricas = new EstoqueMetricas(registry);
+
+    // ledger, reservas e armazens desligados: getIfAvailable do mock devolve null
+    @Mock
+    private ObjectProvider<?> opcionais;
+
     @InjectMocks
     private ProdutoService produtoService;
 
@@ -47,6 +73,20 @@ public class ProdutoServiceTest {
         verify(produtoRepository).save(produto);
     }
 
+    @Test
+    public void testCadastrarProdutoEmUmaUnicaGravacao() {
+        com.example.estoque.domain.Produto produto =
+                new com.example.estoque.domain.Produto("Grampo", "Caixa com 100", 4.0, 30);
+
+        when(produtoRepository.gravarPorNome(produto)).thenReturn(new ProdutoEntity(3L, "Grampo", "Caixa com 100", 4.0, 30));
+
+        produtoService.cadastrarProduto(produto);
+
+        verify(produtoRepository).gravarPorNome(produto);
+        verify(produtoRepository, never()).findByNome(any());
+        verify(produtoRepository, never()).save(any());
+    }
+
     @Test
     public void testListarProdutos() {
         ProdutoEntity produto1 = new ProdutoEntity();
@@ -82,11 +122,6 @@ public class ProdutoServiceTest {
 
     @Test
     public void testAtualizarEstoqueComSucesso() {
-        ProdutoEntity produto = new ProdutoEntity();
-        produto.setId(1L);
-        produto.setNome("Borracha");
-        produto.setQtd(10);
-
         ItemPedido item = new ItemPedido();
         item.setId(1L);
         item.setQtd(5);
@@ -94,13 +129,14 @@ public class ProdutoServiceTest {
         Pedido pedido = new Pedido();
         pedido.setItens(List.of(item));
 
-        when(produtoRepository.findById(1L)).thenReturn(Optional.of(produto));
-        when(produtoRepository.save(any(ProdutoEntity.class))).thenReturn(produto);
+        when(produtoRepository.baixarEstoque(anyMap())).thenReturn(new int[]{1});
 
         assertDoesNotThrow(() -> produtoService.atualizarEstoque(pedido));
 
-        assertEquals(5, produto.getQtd());
-        verify(produtoRepository).save(produto);
+        verify(produtoRepository).baixarEstoque(Map.of(1L, 5));
+        verify(produtoRepository, never()).findById(anyLong());
+        verify(produtoRepository, never()).save(any());
+        assertEquals(1.0, registry.get("estoque.pedidos").tag("resultado", "aceito").counter().count());
     }
 
     @Test
@@ -117,6 +153,7 @@ public class ProdutoServiceTest {
         Pedido pedido = new Pedido();
         pedido.setItens(List.of(item));
 
+        when(produtoRepository.baixarEstoque(anyMap())).thenReturn(new int[]{0});
         when(produtoRepository.findById(1L)).thenReturn(Optional.of(produto));
 
         ForaDeEstoqueException exception = assertThrows(
@@ -126,6 +163,32 @@ public class ProdutoServiceTest {
 
         assertTrue(exception.getMessage().contains("Produto Tesoura possui apenas: 3 em estoque"));
         verify(produtoRepository, never()).save(any());
+        assertEquals(1.0, registry.get("estoque.pedidos").tag("resultado", "fora_de_estoque").counter().count());
+        assertEquals(0.0, registry.get("estoque.pedidos").tag("resultado", "aceito").counter().count());
+    }
+
+    @Test
+    public void testAtualizarEstoqueAgrupaItensDoMesmoProduto() {
+        ItemPedido item1 = new ItemPedido();
+        item1.setId(2L);
+        item1.setQtd(4);
+
+        ItemPedido item2 = new ItemPedido();
+        item2.setId(1L);
+        item2.setQtd(1);
+
+        ItemPedido item3 = new ItemPedido();
+        item3.setId(2L);
+        item3.setQtd(3);
+
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item1, item2, item3));
+
+        when(produtoRepository.baixarEstoque(anyMap())).thenReturn(new int[]{1, 1});
+
+        produtoService.atualizarEstoque(pedido);
+
+        verify(produtoRepository).baixarEstoque(Map.of(1L, 1, 2L, 7));
     }
 
     @Test
@@ -169,6 +232,19 @@ public class ProdutoServiceTest {
         assertTrue(ex.getMessage().contains("Produto não encontrado com ID: 99"));
     }
 
+    @Test
+    public void testAtualizarProdutoComVersaoDesatualizada() {
+        ProdutoEntity existente = new ProdutoEntity(1L, "Produto", "Desc", 10.0, 5, 3L);
+        ProdutoEntity atualizado = new ProdutoEntity(1L, "Produto Novo", "Desc", 12.0, 5);
+
+        when(produtoRepository.findById(1L)).thenReturn(Optional.of(existente));
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> produtoService.atualizarProduto(atualizado, Set.of(2L)));
+        verify(produtoRepository, never()).save(any(ProdutoEntity.class));
+        assertEquals("Produto", existente.getNome());
+    }
+
     @Test
     public void testDeletarProdutoComSucesso() {
         when(produtoRepository.existsById(1L)).thenReturn(true);
@@ -208,4 +284,51 @@ public class ProdutoServiceTest {
         assertEquals(20, resultado.getQtd());
     }
 
+    @Test
+    public void testEncontrarPorNomeUsaCache() {
+        ProdutoEntity entity = new ProdutoEntity(7L, "Chá", "Camomila", 6.50, 12);
+
+        when(produtoRepository.findByNome("Chá")).thenReturn(entity);
+
+        produtoService.encontrarPorNome("Chá");
+        com.example.estoque.domain.Produto resultado = produtoService.encontrarPorNome("Chá");
+        produtoService.buscarProdutoPorId(7L);
+
+        assertEquals(12, resultado.getQtd());
+        verify(produtoRepository, times(1)).findByNome("Chá");
+        verify(produtoRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testAlteracaoInvalidaCache() {
+        ProdutoEntity antes = new ProdutoEntity(8L, "Mate", "Tostado", 9.0, 30);
+        ProdutoEntity depois = new ProdutoEntity(8L, "Mate", "Tostado", 9.0, 25);
+
+        when(produtoRepository.findById(8L)).thenReturn(Optional.of(antes), Optional.of(depois));
+
+        assertEquals(30, produtoService.buscarProdutoPorId(8L).getQtd());
+        produtoCache.aoAlterarProduto(ProdutoAlteradoEvent.baixa(8L, 5));
+
+        assertEquals(25, produtoService.buscarProdutoPorId(8L).getQtd());
+        verify(produtoRepository, times(2)).findById(8L);
+    }
+
+    @Test
+    public void testProdutoDoCacheNaoECompartilhado() {
+        ProdutoEntity carregado = new ProdutoEntity(9L, "Erva", "Moída", 11.0, 20, 3L);
+
+        when(produtoRepository.findById(9L)).thenReturn(Optional.of(carregado));
+
+        ProdutoEntity primeiro = produtoService.buscarProdutoPorId(9L);
+        primeiro.setQtd(0);
+        carregado.setNome("Erva alterada");
+        ProdutoEntity segundo = produtoService.buscarProdutoPorId(9L);
+
+        assertNotSame(primeiro, segundo);
+        assertEquals(20, segundo.getQtd());
+        assertEquals("Erva", segundo.getNome());
+        assertEquals(3L, segundo.getVersao());
+        verify(produtoRepository, times(1)).findById(9L);
+    }
+
 }
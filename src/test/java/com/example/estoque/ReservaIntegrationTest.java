@@ -0,0 +1,169 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Reserva;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.exception.ForaDeEstoqueException;
+import com.example.estoque.service.ProdutoService;
+import com.example.estoque.service.ReservasDeEstoque;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ReservaIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ReservasDeEstoque reservas;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testReservaSeparaEstoqueAteConfirmar() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Reserva Mochila", null, 90.0, 10)).getId();
+
+        String reserva = reservar(id, 6, "").andExpect(status().isCreated())
+                .andExpect(jsonPath("$.itens[0].qtd").value(6))
+                .andExpect(jsonPath("$.expiraEm").exists())
+                .andReturn().getResponse().getContentAsString();
+        String reservaId = objectMapper.readTree(reserva).get("id").asText();
+
+        mockMvc.perform(get("/estoque/reservas/disponivel/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.qtd").value(10))
+                .andExpect(jsonPath("$.reservado").value(6))
+                .andExpect(jsonPath("$.disponivel").value(4));
+        reservar(id, 5, "").andExpect(status().isBadRequest());
+        // a baixa direta tambem respeita a reserva
+        baixar(id, 5).andExpect(status().isBadRequest());
+        baixar(id, 4).andExpect(status().isOk());
+
+        reservas.gravar();
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reserva_estoque WHERE reserva = ?", Integer.class, reservaId));
+
+        mockMvc.perform(post("/estoque/reservas/" + reservaId + "/confirmar")).andExpect(status().isOk());
+        assertEquals(0, produtoService.buscarProdutoPorId(id).getQtd());
+        assertEquals(0, reservas.reservado(id));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reserva_estoque WHERE reserva = ?", Integer.class, reservaId));
+        mockMvc.perform(post("/estoque/reservas/" + reservaId + "/confirmar")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testReservaLiberadaOuExpiradaDevolveOEstoque() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Reserva Estojo", null, 15.0, 5)).getId();
+
+        String liberada = objectMapper.readTree(reservar(id, 5, "").andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("id").asText();
+        mockMvc.perform(delete("/estoque/reservas/" + liberada)).andExpect(status().isNoContent());
+        mockMvc.perform(delete("/estoque/reservas/" + liberada)).andExpect(status().isNotFound());
+        assertEquals(0, reservas.reservado(id));
+
+        String expirada = objectMapper.readTree(reservar(id, 3, "?prazo=1s").andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("id").asText();
+        reservas.gravar();
+        assertEquals(3, reservas.reservado(id));
+        for (int i = 0; i < 50 && reservas.reservado(id) > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, reservas.reservado(id));
+        mockMvc.perform(post("/estoque/reservas/" + expirada + "/confirmar")).andExpect(status().isNotFound());
+
+        reservas.gravar();
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reserva_estoque WHERE reserva = ?", Integer.class, expirada));
+        assertEquals(5, produtoService.buscarProdutoPorId(id).getQtd());
+        reservar(id, 1, "?prazo=2h").andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testReservaEsperaABaixaEmAndamentoDoMesmoProduto() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Reserva Garrafa", null, 25.0, 5)).getId();
+        TransactionTemplate transacao = new TransactionTemplate(transactionManager);
+        CountDownLatch baixou = new CountDownLatch(1);
+        CountDownLatch terminar = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> baixa = executor.submit(() -> transacao.executeWithoutResult(status -> {
+                produtoService.atualizarEstoque(pedido(id, 4));
+                baixou.countDown();
+                try {
+                    terminar.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            assertTrue(baixou.await(5, TimeUnit.SECONDS));
+
+            // a baixa ainda nao foi confirmada: a reserva espera a linha em vez de ler os 5 antigos
+            Future<Reserva> reserva = executor.submit(() -> produtoService.reservar(pedido(id, 3), null));
+            Thread.sleep(200);
+            assertFalse(reserva.isDone());
+            terminar.countDown();
+            baixa.get(5, TimeUnit.SECONDS);
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> reserva.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(ForaDeEstoqueException.class, e.getCause());
+            assertEquals(0, reservas.reservado(id));
+            assertEquals(1, produtoService.buscarProdutoPorId(id).getQtd());
+        } finally {
+            terminar.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static Pedido pedido(Long id, int qtd) {
+        ItemPedido item = new ItemPedido();
+        item.setId(id);
+        item.setQtd(qtd);
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item));
+        return pedido;
+    }
+
+    private ResultActions reservar(Long id, int qtd, String parametros) throws Exception {
+        return mockMvc.perform(post("/estoque/reservas" + parametros).contentType(MediaType.APPLICATION_JSON)
+                .content("{\"itens\":[{\"id\":" + id + ",\"qtd\":" + qtd + "}]}"));
+    }
+
+    private ResultActions baixar(Long id, int qtd) throws Exception {
+        return mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"itens\":[{\"id\":" + id + ",\"qtd\":" + qtd + "}]}"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.estoque;
+
+import com.example.estoque.domain.ItemPedido;
+import com.example.estoque.domain.Pedido;
+import com.example.estoque.domain.Produto;
+import com.example.estoque.domain.ResumoEstoque;
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.repository.ProdutoRepository;
+import com.example.estoque.service.EstoqueLedger;
+import com.example.estoque.service.ProdutoService;
+import com.example.estoque.service.ResumoDeEstoque;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// flush do ledger bem espacado: as baixas ficam pendentes ate a reconciliacao
+@SpringBootTest(properties = {"estoque.ledger.enabled=true", "estoque.ledger.journal=target/resumo-ledger.journal",
+        "estoque.ledger.flush-interval-ms=600000"})
+public class ResumoIntegrationTest {
+
+    @Autowired
+    private ResumoDeEstoque resumoDeEstoque;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EstoqueLedger ledger;
+
+    @Test
+    public void testTotaisAcompanhamAsAlteracoes() {
+        // outros contextos de teste gravam no mesmo banco em memoria sem passar por este
+        resumoDeEstoque.reconciliar();
+        resumoDeEstoque.reconciliar();
+        ResumoEstoque inicial = resumoDeEstoque.resumo();
+
+        produtoService.cadastrarProduto(new Produto("Resumo Caderno", "Capa dura", 12.5, 4));
+        ProdutoEntity cola = produtoService.criarProduto(new ProdutoEntity(null, "Resumo Cola", null, 3.0, 2));
+        produtoService.atualizarEstoque(pedido(cola.getId(), 2));
+
+        ResumoEstoque resumo = resumoDeEstoque.resumo();
+        assertEquals(inicial.getProdutos() + 2, resumo.getProdutos());
+        assertEquals(inicial.getForaDeEstoque() + 1, resumo.getForaDeEstoque());
+        assertEquals(0, inicial.getValorTotal().add(new BigDecimal("50.00")).compareTo(resumo.getValorTotal()));
+
+        ProdutoEntity caderno = produtoRepository.findByNome("Resumo Caderno");
+        caderno.setPreco(10.0);
+        produtoService.atualizarProduto(caderno);
+        produtoService.deletarProduto(cola.getId());
+
+        resumo = resumoDeEstoque.resumo();
+        assertEquals(inicial.getProdutos() + 1, resumo.getProdutos());
+        assertEquals(inicial.getForaDeEstoque(), resumo.getForaDeEstoque());
+        assertEquals(0, inicial.getValorTotal().add(new BigDecimal("40.00")).compareTo(resumo.getValorTotal()));
+        assertResumoIgualAoBanco();
+    }
+
+    @Test
+    public void testReconciliacaoCorrigeAlteracaoFeitaForaDaAplicacao() {
+        resumoDeEstoque.reconciliar();
+        resumoDeEstoque.reconciliar();
+        produtoService.cadastrarProduto(new Produto("Resumo Tinta", "Azul", 7.0, 3));
+        jdbcTemplate.update("UPDATE produto SET qtd = 0 WHERE nome = ?", "Resumo Tinta");
+
+        // uma conferencia divergente sozinha nao recarrega
+        ResumoEstoque antes = resumoDeEstoque.resumo();
+        resumoDeEstoque.reconciliar();
+        assertEquals(antes.getForaDeEstoque(), resumoDeEstoque.resumo().getForaDeEstoque());
+
+        resumoDeEstoque.reconciliar();
+
+        assertResumoIgualAoBanco();
+    }
+
+    @Test
+    public void testBaixasPendentesNoLedgerNaoContamComoDivergencia() {
+        resumoDeEstoque.reconciliar();
+        resumoDeEstoque.reconciliar();
+        ProdutoEntity giz = produtoService.criarProduto(new ProdutoEntity(null, "Resumo Giz", null, 1.5, 10));
+
+        // o resumo ja descontou a baixa; produto.qtd so muda no flush do ledger
+        produtoService.atualizarEstoque(pedido(giz.getId(), 4));
+        resumoDeEstoque.reconciliar();
+        resumoDeEstoque.reconciliar();
+
+        assertResumoIgualAoBanco();
+    }
+
+    private void assertResumoIgualAoBanco() {
+        ledger.flush();
+        ResumoEstoque banco = produtoRepository.resumir();
+        ResumoEstoque memoria = resumoDeEstoque.resumo();
+        assertEquals(banco.getProdutos(), memoria.getProdutos());
+        assertEquals(banco.getForaDeEstoque(), memoria.getForaDeEstoque());
+        assertEquals(0, banco.getValorTotal().compareTo(memoria.getValorTotal()));
+    }
+
+    private static Pedido pedido(Long id, int qtd) {
+        ItemPedido item = new ItemPedido();
+        item.setId(id);
+        item.setQtd(qtd);
+        Pedido pedido = new Pedido();
+        pedido.setItens(List.of(item));
+        return pedido;
+    }
+}
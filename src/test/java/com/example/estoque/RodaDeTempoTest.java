@@ -0,0 +1,52 @@
+package com.example.estoque;
+
+import com.example.estoque.service.RodaDeTempo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RodaDeTempoTest {
+
+    @Test
+    public void testItensVencemNoTickDoVencimento() {
+        RodaDeTempo<String> roda = new RodaDeTempo<>(100, 8, 0);
+        roda.agendar("a", 250);
+        roda.agendar("b", 300);
+        // mais de uma volta (8 ticks de 100 ms) a frente: cai na mesma posicao de "a"
+        roda.agendar("c", 1050);
+
+        assertEquals(List.of(), roda.avancar(200));
+        assertEquals(List.of("a", "b"), roda.avancar(300));
+        assertEquals(List.of(), roda.avancar(1000));
+        assertEquals(List.of("c"), roda.avancar(1100));
+    }
+
+    @Test
+    public void testItemJaVencidoSaiNoProximoTick() {
+        RodaDeTempo<String> roda = new RodaDeTempo<>(100, 8, 0);
+        roda.avancar(500);
+        roda.agendar("atrasado", 100);
+
+        assertEquals(List.of("atrasado"), roda.avancar(600));
+    }
+
+    @Test
+    public void testPausaMaiorQueUmaVoltaNaoPerdeItens() {
+        RodaDeTempo<Integer> roda = new RodaDeTempo<>(100, 8, 0);
+        for (int i = 1; i <= 20; i++) {
+            roda.agendar(i, i * 100L);
+        }
+
+        List<Integer> vencidos = roda.avancar(5_000);
+
+        assertEquals(20, vencidos.size());
+        assertEquals(List.of(), roda.avancar(5_100));
+    }
+
+    @Test
+    public void testPosicoesPrecisamSerPotenciaDeDois() {
+        assertThrows(IllegalArgumentException.class, () -> new RodaDeTempo<>(100, 10, 0));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.estoque;
+
+import com.example.estoque.entity.ProdutoEntity;
+import com.example.estoque.service.ProdutoService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class VersaoIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Test
+    public void testGetCondicionalDevolve304() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Versao Grampeador", null, 30.0, 4)).getId();
+
+        String etag = mockMvc.perform(get("/produtos/" + id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/produtos/" + id).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void testIfMatchDesatualizadoPorUmaBaixaDa412() throws Exception {
+        Long id = produtoService.criarProduto(new ProdutoEntity(null, "Versao Perfurador", null, 25.0, 10)).getId();
+        String lida = mockMvc.perform(get("/produtos/" + id)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(post("/estoque/atualizar").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"itens\":[{\"id\":" + id + ",\"qtd\":3}]}"))
+                .andExpect(status().isOk());
+
+        // o cliente ainda acha que ha 10 unidades; sem a versao, a baixa seria desfeita
+        String produto = "{\"nome\":\"Versao Perfurador\",\"preco\":20.0,\"qtd\":10}";
+        mockMvc.perform(put("/produtos/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, lida).content(produto))
+                .andExpect(status().isPreconditionFailed());
+        assertEquals(7, produtoService.buscarProdutoPorId(id).getQtd());
+
+        String atual = mockMvc.perform(get("/produtos/" + id)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(lida, atual);
+        String nova = mockMvc.perform(put("/produtos/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, atual)
+                        .content("{\"nome\":\"Versao Perfurador\",\"preco\":20.0,\"qtd\":7}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.preco").value(20.0))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(atual, nova);
+
+        mockMvc.perform(put("/produtos/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "W/" + nova).content(produto))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(put("/produtos/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "*").content(produto))
+                .andExpect(status().isOk());
+    }
+}